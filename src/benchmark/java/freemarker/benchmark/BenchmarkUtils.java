@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import freemarker.template.Configuration;
+import freemarker.template.TemplateExceptionHandler;
+
+/**
+ * Utilities shared by the benchmarks.
+ */
+final class BenchmarkUtils {
+
+    private BenchmarkUtils() {
+        // Not meant to be instantiated
+    }
+
+    static Configuration newConfiguration() {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_29);
+        cfg.setTemplateExceptionHandler(TemplateExceptionHandler.RETHROW_HANDLER);
+        cfg.setLogTemplateExceptions(false);
+        cfg.setLocale(Locale.US);
+        cfg.setTimeZone(TimeZone.getTimeZone("UTC"));
+        cfg.setURLEscapingCharset("UTF-8");
+        return cfg;
+    }
+
+    /**
+     * Reads a template from the {@code freemarker/benchmark} resource directory.
+     */
+    static String readTemplate(String name) throws IOException {
+        InputStream in = BenchmarkUtils.class.getResourceAsStream(name);
+        if (in == null) {
+            throw new IOException("Benchmark template not found: " + name);
+        }
+        try {
+            Reader r = new InputStreamReader(in, "UTF-8");
+            StringWriter sw = new StringWriter();
+            char[] buf = new char[4096];
+            int ln;
+            while ((ln = r.read(buf)) != -1) {
+                sw.write(buf, 0, ln);
+            }
+            return sw.toString();
+        } finally {
+            in.close();
+        }
+    }
+
+    static List<Product> createProducts(int count) {
+        List<Product> products = new ArrayList<Product>(count);
+        for (int i = 0; i < count; i++) {
+            products.add(new Product(
+                    "Product " + i,
+                    i % 7 == 0 ? "Fish & Chips <special>" : "A plain description of product number " + i,
+                    new BigDecimal(i).movePointLeft(2).add(BigDecimal.TEN),
+                    i % 3 == 0,
+                    Arrays.asList("tag" + (i % 5), "tag" + (i % 11))));
+        }
+        return products;
+    }
+
+    /**
+     * Converts the products to {@link Map}-s and {@link List}-s only, for data models that don't use reflection.
+     */
+    static List<Map<String, Object>> toMaps(List<Product> products) {
+        List<Map<String, Object>> result = new ArrayList<Map<String, Object>>(products.size());
+        for (Product product : products) {
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            map.put("name", product.getName());
+            map.put("description", product.getDescription());
+            map.put("price", product.getPrice());
+            map.put("onSale", product.isOnSale());
+            map.put("tags", product.getTags());
+            result.add(map);
+        }
+        return result;
+    }
+
+    public static class Product {
+        private final String name;
+        private final String description;
+        private final BigDecimal price;
+        private final boolean onSale;
+        private final List<String> tags;
+
+        Product(String name, String description, BigDecimal price, boolean onSale, List<String> tags) {
+            this.name = name;
+            this.description = description;
+            this.price = price;
+            this.onSale = onSale;
+            this.tags = tags;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public BigDecimal getPrice() {
+            return price;
+        }
+
+        public boolean isOnSale() {
+            return onSale;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.benchmark;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import freemarker.core.Environment;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.utility.NullWriter;
+
+/**
+ * Measures processing a small template with a new {@link Environment} each time, and with reusing the same
+ * {@link Environment} (as with {@link Template#resetProcessingEnvironment}). Use {@code -prof gc} to see the
+ * difference in allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnvironmentReuseBenchmark {
+
+    private Template template;
+    private Map<String, Object> dataModel;
+    private Environment env;
+
+    @Setup
+    public void setup() throws IOException, TemplateException {
+        Configuration cfg = BenchmarkUtils.newConfiguration();
+        template = new Template("small",
+                "<#macro greet name>Hello ${name}!</#macro><@greet name=user />"
+                + "<#list 1..3 as i>${i}<#sep>, </#list>", cfg);
+        dataModel = Collections.<String, Object>singletonMap("user", "Joe");
+        env = template.createProcessingEnvironment(dataModel, NullWriter.INSTANCE);
+    }
+
+    @Benchmark
+    public void newEnvironment() throws IOException, TemplateException {
+        template.process(dataModel, NullWriter.INSTANCE);
+    }
+
+    @Benchmark
+    public void reusedEnvironment() throws IOException, TemplateException {
+        template.resetProcessingEnvironment(env, dataModel, NullWriter.INSTANCE, null).process();
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.benchmark;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.utility.NullWriter;
+import freemarker.template.utility.StringUtil;
+
+/**
+ * Measures the escaping functions directly, and auto-escaping in HTML templates, on content mixes typical for
+ * web pages:
+ * <ul>
+ *   <li>{@code plain}: Text with nothing to escape
+ *   <li>{@code occasional}: Text with a few characters to escape, like user-entered content
+ *   <li>{@code dense}: Markup-like content where a large share of the characters has to be escaped
+ *   <li>{@code nonLatin}: Mostly non-ASCII text, with occasional characters to escape
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EscapingBenchmark {
+
+    @Param({ "plain", "occasional", "dense", "nonLatin" })
+    public String contentMix;
+
+    private String content;
+    private Template autoEscapingTemplate;
+    private Object dataModel;
+
+    @Setup
+    public void setup() throws IOException {
+        String unit;
+        if (contentMix.equals("plain")) {
+            unit = "The quick brown fox jumps over the lazy dog. ";
+        } else if (contentMix.equals("occasional")) {
+            unit = "Tom & Jerry's \"best\" episodes, rated 5 > 4. The quick brown fox jumps over the lazy dog. ";
+        } else if (contentMix.equals("dense")) {
+            unit = "<a href=\"x?a=1&b=2\">'link'</a> ";
+        } else if (contentMix.equals("nonLatin")) {
+            unit = "Árvíztűrő tükörfúrógép 日本語 & more. ";
+        } else {
+            throw new IllegalArgumentException("Unknown content mix: " + contentMix);
+        }
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 1000) {
+            sb.append(unit);
+        }
+        content = sb.toString();
+
+        Configuration cfg = BenchmarkUtils.newConfiguration();
+        autoEscapingTemplate = new Template("escaping.ftlh", "<#list 1..10 as _>${s}</#list>", cfg);
+        dataModel = Collections.singletonMap("s", content);
+    }
+
+    @Benchmark
+    public String xhtmlEncToString() {
+        return StringUtil.XHTMLEnc(content);
+    }
+
+    @Benchmark
+    public void xhtmlEncToWriter() throws IOException {
+        StringUtil.XHTMLEnc(content, NullWriter.INSTANCE);
+    }
+
+    @Benchmark
+    public String xmlEncToString() {
+        return StringUtil.XMLEnc(content);
+    }
+
+    @Benchmark
+    public String jsStringEnc() {
+        return StringUtil.javaScriptStringEnc(content);
+    }
+
+    @Benchmark
+    public String jsonStringEnc() {
+        return StringUtil.jsonStringEnc(content);
+    }
+
+    @Benchmark
+    public void autoEscapingInterpolation() throws IOException, TemplateException {
+        autoEscapingTemplate.process(dataModel, NullWriter.INSTANCE);
+    }
+
+}
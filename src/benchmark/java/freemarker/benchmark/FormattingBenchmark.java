@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.benchmark;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.utility.NullWriter;
+
+/**
+ * Measures number and date/time formatting; each template formats the same value many times.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormattingBenchmark {
+
+    private static final int REPEAT_COUNT = 100;
+
+    @Param({
+            "${i}", "${bd}", "${d}", "${bd?string('0.00')}", "${i?c}", "${bd?c}",
+            "${date}", "${date?string('yyyy-MM-dd HH:mm')}", "${date?iso_utc}" })
+    public String interpolation;
+
+    private Template template;
+    private Map<String, Object> dataModel;
+
+    @Setup
+    public void setup() throws IOException {
+        Configuration cfg = BenchmarkUtils.newConfiguration();
+        StringBuilder sb = new StringBuilder();
+        sb.append("<#list 1..").append(REPEAT_COUNT).append(" as _>").append(interpolation).append(" </#list>");
+        template = new Template("formatting", sb.toString(), cfg);
+
+        dataModel = new HashMap<String, Object>();
+        dataModel.put("i", 1234567);
+        dataModel.put("bd", new BigDecimal("12345.6789"));
+        dataModel.put("d", 1234.5);
+        dataModel.put("date", new Timestamp(1500000000000L));
+    }
+
+    @Benchmark
+    public void format() throws IOException, TemplateException {
+        template.process(dataModel, NullWriter.INSTANCE);
+    }
+
+}
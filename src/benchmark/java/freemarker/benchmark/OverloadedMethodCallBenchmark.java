@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.utility.NullWriter;
+
+/**
+ * Measures calling overloaded Java methods from templates in a loop, where the overloaded method has to be chosen
+ * based on the argument types on each call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OverloadedMethodCallBenchmark {
+
+    private static final int SIZE = 1000;
+
+    @Param({
+            "<#list xs as x>${f.format('%s-%s', x, x)}</#list>",
+            "<#list xs as x>${f.pad(x)}</#list>",
+            "<#list xs as x>${f.pad(x?string)}${f.pad(x)}${f.pad(x, 2)}</#list>",
+            "<#list objs as o>${f.pad(o)}</#list>" })
+    public String templateSource;
+
+    private Template template;
+    private Map<String, Object> dataModel;
+
+    @Setup
+    public void setup() throws IOException {
+        Configuration cfg = BenchmarkUtils.newConfiguration();
+        template = new Template("overloaded", templateSource, cfg);
+        
+        List<Integer> xs = new ArrayList<Integer>(SIZE);
+        List<Object> objs = new ArrayList<Object>(SIZE);
+        for (int i = 0; i < SIZE; i++) {
+            xs.add(i);
+            objs.add(i % 3 == 0 ? Integer.valueOf(i) : i % 3 == 1 ? (Object) String.valueOf(i) : Long.valueOf(i));
+        }
+        dataModel = new HashMap<String, Object>();
+        dataModel.put("xs", xs);
+        dataModel.put("objs", objs);
+        dataModel.put("f", new Formatter());
+    }
+
+    @Benchmark
+    public void call() throws IOException, TemplateException {
+        template.process(dataModel, NullWriter.INSTANCE);
+    }
+
+    /**
+     * Has {@code String.format}-style and other overloaded helper methods.
+     */
+    public static class Formatter {
+
+        public String format(String format, Object... args) {
+            return String.format(format, args);
+        }
+
+        public String format(String format, int arg) {
+            return String.format(format, arg);
+        }
+
+        public String pad(String s) {
+            return s;
+        }
+
+        public String pad(int n) {
+            return n < 10 ? "0" + n : String.valueOf(n);
+        }
+
+        public String pad(long n) {
+            return n < 10 ? "0" + n : String.valueOf(n);
+        }
+
+        public String pad(int n, int width) {
+            return String.valueOf(n);
+        }
+
+    }
+
+}
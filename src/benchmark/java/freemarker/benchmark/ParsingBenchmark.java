@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+/**
+ * Measures parsing (and the post-parse cleanup) of representative templates, without any caching. With a high
+ * {@link #copies} value the template is concatenated with itself, to see how parsing scales with very large templates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParsingBenchmark {
+
+    @Param({ "product-list.ftlh", "macro-library.ftl", "text-heavy.ftl" })
+    public String templateName;
+
+    @Param({ "1", "100" })
+    public int copies;
+
+    private Configuration cfg;
+    private String templateSource;
+
+    @Setup
+    public void setup() throws IOException {
+        cfg = BenchmarkUtils.newConfiguration();
+        String singleCopy = BenchmarkUtils.readTemplate(templateName);
+        StringBuilder sb = new StringBuilder(singleCopy.length() * copies);
+        for (int i = 0; i < copies; i++) {
+            sb.append(singleCopy);
+        }
+        templateSource = sb.toString();
+    }
+
+    @Benchmark
+    public Template parse() throws IOException {
+        return new Template(templateName, templateSource, cfg);
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.benchmark;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import freemarker.ext.beans.BeansWrapper;
+import freemarker.ext.beans.BeansWrapperBuilder;
+import freemarker.template.Configuration;
+import freemarker.template.DefaultObjectWrapper;
+import freemarker.template.DefaultObjectWrapperBuilder;
+import freemarker.template.SimpleHash;
+import freemarker.template.SimpleSequence;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.utility.NullWriter;
+
+/**
+ * Measures rendering an HTML page (with auto-escaping) from the same data, but with different kind of data models.
+ * <ul>
+ *   <li>{@code SimpleHash}: The data model is built from {@link SimpleHash}-es and {@link SimpleSequence}-s, which
+ *       replace the values with their wrapped form on first access, so after warm-up no wrapping happens.
+ *   <li>{@code BeansWrapper}: Java beans, wrapped with {@link BeansWrapper}.
+ *   <li>{@code DefaultObjectWrapper}: Java beans, wrapped with {@link DefaultObjectWrapper}.
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderingBenchmark {
+
+    @Param({ "SimpleHash", "BeansWrapper", "DefaultObjectWrapper" })
+    public String dataModelKind;
+
+    @Param({ "100" })
+    public int productCount;
+
+    private Template template;
+    private Object dataModel;
+
+    @Setup
+    public void setup() throws IOException {
+        Configuration cfg = BenchmarkUtils.newConfiguration();
+        List<BenchmarkUtils.Product> products = BenchmarkUtils.createProducts(productCount);
+        if (dataModelKind.equals("SimpleHash")) {
+            DefaultObjectWrapperBuilder owb = new DefaultObjectWrapperBuilder(Configuration.VERSION_2_3_29);
+            owb.setUseAdaptersForContainers(false);
+            DefaultObjectWrapper ow = owb.build();
+            cfg.setObjectWrapper(ow);
+            SimpleHash root = new SimpleHash(ow);
+            root.put("title", "Products & Offers");
+            root.put("products", new SimpleSequence(BenchmarkUtils.toMaps(products), ow));
+            dataModel = root;
+        } else {
+            if (dataModelKind.equals("BeansWrapper")) {
+                cfg.setObjectWrapper(new BeansWrapperBuilder(Configuration.VERSION_2_3_29).build());
+            } else if (dataModelKind.equals("DefaultObjectWrapper")) {
+                cfg.setObjectWrapper(new DefaultObjectWrapperBuilder(Configuration.VERSION_2_3_29).build());
+            } else {
+                throw new IllegalArgumentException("Unknown data model kind: " + dataModelKind);
+            }
+            Map<String, Object> root = new HashMap<String, Object>();
+            root.put("title", "Products & Offers");
+            root.put("products", products);
+            dataModel = root;
+        }
+        template = new Template(
+                "product-list.ftlh", BenchmarkUtils.readTemplate("product-list.ftlh"), cfg);
+    }
+
+    @Benchmark
+    public void render() throws IOException, TemplateException {
+        template.process(dataModel, NullWriter.INSTANCE);
+    }
+
+}
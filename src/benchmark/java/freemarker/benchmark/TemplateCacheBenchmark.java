@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import freemarker.cache.CacheStorage;
+import freemarker.cache.MruCacheStorage;
+import freemarker.cache.SoftCacheStorage;
+import freemarker.cache.StringTemplateLoader;
+import freemarker.cache.StrongCacheStorage;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+/**
+ * Measures {@link Configuration#getTemplate(String)} when the template is already in the cache, from multiple
+ * threads concurrently, with each {@link CacheStorage} implementation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class TemplateCacheBenchmark {
+
+    private static final int TEMPLATE_COUNT = 100;
+
+    @Param({ "strong", "soft", "mru" })
+    public String cacheStorage;
+
+    /**
+     * The {@code template_update_delay} in milliseconds; with 0 the template loader is asked about the last
+     * modification time on each hit.
+     */
+    @Param({ "0", "3600000" })
+    public long updateDelay;
+
+    private Configuration cfg;
+    private String[] templateNames;
+
+    @Setup
+    public void setup() throws IOException {
+        cfg = BenchmarkUtils.newConfiguration();
+        if (cacheStorage.equals("strong")) {
+            cfg.setCacheStorage(new StrongCacheStorage());
+        } else if (cacheStorage.equals("soft")) {
+            cfg.setCacheStorage(new SoftCacheStorage());
+        } else if (cacheStorage.equals("mru")) {
+            cfg.setCacheStorage(new MruCacheStorage(TEMPLATE_COUNT * 2, Integer.MAX_VALUE));
+        } else {
+            throw new IllegalArgumentException("Unknown cache storage: " + cacheStorage);
+        }
+        cfg.setTemplateUpdateDelayMilliseconds(updateDelay);
+
+        StringTemplateLoader templateLoader = new StringTemplateLoader();
+        templateNames = new String[TEMPLATE_COUNT];
+        for (int i = 0; i < TEMPLATE_COUNT; i++) {
+            String name = "t" + i + ".ftl";
+            templateLoader.putTemplate(name, "Template " + i + ": ${x}");
+            templateNames[i] = name;
+        }
+        cfg.setTemplateLoader(templateLoader);
+
+        // Fill the cache:
+        for (String name : templateNames) {
+            cfg.getTemplate(name);
+        }
+    }
+
+    @Benchmark
+    public Template getTemplate() throws IOException {
+        return cfg.getTemplate(templateNames[ThreadLocalRandom.current().nextInt(TEMPLATE_COUNT)]);
+    }
+
+}
@@ -0,0 +1,73 @@
+<#--
+  Licensed to the Apache Software Foundation (ASF) under one
+  or more contributor license agreements.  See the NOTICE file
+  distributed with this work for additional information
+  regarding copyright ownership.  The ASF licenses this file
+  to you under the Apache License, Version 2.0 (the
+  "License"); you may not use this file except in compliance
+  with the License.  You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing,
+  software distributed under the License is distributed on an
+  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+  KIND, either express or implied.  See the License for the
+  specific language governing permissions and limitations
+  under the License.
+-->
+<#macro page title>
+  <html>
+  <head><title>${title?html}</title></head>
+  <body>
+    <#nested>
+  </body>
+  </html>
+</#macro>
+
+<#macro table rows columns=[] striped=true>
+  <table<#if striped> class="striped"</#if>>
+    <#if columns?has_content>
+      <tr><#list columns as column><th>${column?html}</th></#list></tr>
+    </#if>
+    <#list rows as row>
+      <tr><#list row as cell><td>${cell?html}</td></#list></tr>
+    </#list>
+  </table>
+</#macro>
+
+<#function formatPrice price currency="EUR">
+  <#if price?is_number>
+    <#return price?string('0.00') + ' ' + currency>
+  <#else>
+    <#return price>
+  </#if>
+</#function>
+
+<#macro pager current total>
+  <#local first = [current - 2, 1]?max>
+  <#local last = [current + 2, total]?min>
+  <div class="pager">
+    <#if current gt 1><a href="?page=${current - 1}">&laquo;</a></#if>
+    <#list first..last as p>
+      <#if p == current><b>${p}</b><#else><a href="?page=${p}">${p}</a></#if>
+    </#list>
+    <#if current lt total><a href="?page=${current + 1}">&raquo;</a></#if>
+  </div>
+</#macro>
+
+<#macro messages items>
+  <#switch items?size>
+    <#case 0>
+      <#break>
+    <#case 1>
+      <p class="message">${items[0]?html}</p>
+      <#break>
+    <#default>
+      <ul class="messages">
+        <#list items as item><li>${item?html}</li></#list>
+      </ul>
+  </#switch>
+</#macro>
+
+<#assign defaults = {"currency": "EUR", "pageSize": 20, "showTags": true}>
@@ -0,0 +1,298 @@
+<#--
+  Licensed to the Apache Software Foundation (ASF) under one
+  or more contributor license agreements.  See the NOTICE file
+  distributed with this work for additional information
+  regarding copyright ownership.  The ASF licenses this file
+  to you under the Apache License, Version 2.0 (the
+  "License"); you may not use this file except in compliance
+  with the License.  You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing,
+  software distributed under the License is distributed on an
+  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+  KIND, either express or implied.  See the License for the
+  specific language governing permissions and limitations
+  under the License.
+-->
+<h2>Section 1</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section1??><p>${section1}</p></#if>
+<h2>Section 2</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section2??><p>${section2}</p></#if>
+<h2>Section 3</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section3??><p>${section3}</p></#if>
+<h2>Section 4</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section4??><p>${section4}</p></#if>
+<h2>Section 5</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section5??><p>${section5}</p></#if>
+<h2>Section 6</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section6??><p>${section6}</p></#if>
+<h2>Section 7</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section7??><p>${section7}</p></#if>
+<h2>Section 8</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section8??><p>${section8}</p></#if>
+<h2>Section 9</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section9??><p>${section9}</p></#if>
+<h2>Section 10</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section10??><p>${section10}</p></#if>
+<h2>Section 11</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section11??><p>${section11}</p></#if>
+<h2>Section 12</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section12??><p>${section12}</p></#if>
+<h2>Section 13</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section13??><p>${section13}</p></#if>
+<h2>Section 14</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section14??><p>${section14}</p></#if>
+<h2>Section 15</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section15??><p>${section15}</p></#if>
+<h2>Section 16</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section16??><p>${section16}</p></#if>
+<h2>Section 17</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section17??><p>${section17}</p></#if>
+<h2>Section 18</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section18??><p>${section18}</p></#if>
+<h2>Section 19</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section19??><p>${section19}</p></#if>
+<h2>Section 20</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section20??><p>${section20}</p></#if>
+<h2>Section 21</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section21??><p>${section21}</p></#if>
+<h2>Section 22</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section22??><p>${section22}</p></#if>
+<h2>Section 23</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section23??><p>${section23}</p></#if>
+<h2>Section 24</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section24??><p>${section24}</p></#if>
+<h2>Section 25</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section25??><p>${section25}</p></#if>
+<h2>Section 26</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section26??><p>${section26}</p></#if>
+<h2>Section 27</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section27??><p>${section27}</p></#if>
+<h2>Section 28</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section28??><p>${section28}</p></#if>
+<h2>Section 29</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section29??><p>${section29}</p></#if>
+<h2>Section 30</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section30??><p>${section30}</p></#if>
+<h2>Section 31</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section31??><p>${section31}</p></#if>
+<h2>Section 32</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section32??><p>${section32}</p></#if>
+<h2>Section 33</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section33??><p>${section33}</p></#if>
+<h2>Section 34</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section34??><p>${section34}</p></#if>
+<h2>Section 35</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section35??><p>${section35}</p></#if>
+<h2>Section 36</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section36??><p>${section36}</p></#if>
+<h2>Section 37</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section37??><p>${section37}</p></#if>
+<h2>Section 38</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section38??><p>${section38}</p></#if>
+<h2>Section 39</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section39??><p>${section39}</p></#if>
+<h2>Section 40</h2>
+<p>
+  Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et
+  dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+  ex ea commodo consequat. <#-- A comment that is skipped -->Duis aute irure dolor in reprehenderit.
+</p>
+<#if section40??><p>${section40}</p></#if>
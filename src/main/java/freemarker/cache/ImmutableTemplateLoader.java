@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.cache;
+
+import freemarker.template.Configuration;
+
+/**
+ * An optional interface for {@link TemplateLoader}-s that know whether the templates they load can change (including
+ * appearing or disappearing) during the lifetime of the template loader. For example, templates packed into the jar of
+ * the application can't change. For such a template loader, the {@link TemplateCache} will never check if a cached
+ * template (or a cached "not found" result) is still up to date, regardless of the
+ * {@link Configuration#setTemplateUpdateDelayMilliseconds(long) template_update_delay} setting.
+ * {@link Configuration#clearTemplateCache()} still works as usual.
+ * 
+ * @see IndexedClassTemplateLoader
+ * 
+ * @since 2.3.30
+ */
+public interface ImmutableTemplateLoader extends TemplateLoader {
+
+    /**
+     * Returns {@code true} if the templates loaded by this instance can't change during its lifetime. This should
+     * return the same value during the whole lifetime of the object.
+     */
+    public boolean isImmutable();
+    
+}
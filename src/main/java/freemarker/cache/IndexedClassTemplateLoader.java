@@ -0,0 +1,337 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import freemarker.template.Configuration;
+import freemarker.template.utility.NullArgumentException;
+import freemarker.template.utility.StringUtil;
+
+/**
+ * A {@link TemplateLoader} that loads templates from the "classpath", like {@link ClassTemplateLoader}, but assumes
+ * that the templates can't change while the application runs (as they are packed into the jar of the application,
+ * typically). Thus, it finds all the templates in the base package (including its sub-packages) only once, when the
+ * template loader is created, and then it serves all lookups from that in-memory index. The templates are read
+ * directly from the jar files (or from the directories), not via {@link java.net.URLConnection}-s. The jar files are
+ * only kept open while the index is built, and while a template is read, so they aren't locked (like on Windows)
+ * after that.
+ * 
+ * <p>
+ * This is an {@link ImmutableTemplateLoader}, so the {@link TemplateCache} will never check if the templates it has
+ * loaded with this are up to date, regardless of the {@link Configuration#setTemplateUpdateDelayMilliseconds(long)
+ * template_update_delay} setting.
+ * 
+ * <p>
+ * Only those classpath elements are supported that are directories, or jar (zip) files in the file system (the most
+ * common cases). If the base package is found in some other kind of classpath element (like in a jar that's nested
+ * into another jar), the constructor will throw {@link IOException}; use {@link ClassTemplateLoader} then. Also,
+ * jar files must contain the entry of the base package directory itself (as jars created by the usual tools do),
+ * otherwise the class loader won't find the base package in them.
+ * 
+ * @since 2.3.30
+ */
+public class IndexedClassTemplateLoader implements ImmutableTemplateLoader {
+
+    private final ClassLoader classLoader;
+    private final String basePackagePath;
+    private final Map<String, IndexedTemplateSource> index;
+
+    /**
+     * Similar to {@link ClassTemplateLoader#ClassTemplateLoader(Class, String)}; uses the class loader of the
+     * {@code resourceLoaderClass}, and resolves {@code basePackagePath} relatively to the package of that class, unless
+     * it starts with {@code /}.
+     */
+    public IndexedClassTemplateLoader(Class<?> resourceLoaderClass, String basePackagePath) throws IOException {
+        this(getClassLoader(resourceLoaderClass), resolveBasePackagePath(resourceLoaderClass, basePackagePath));
+    }
+
+    /**
+     * Similar to {@link ClassTemplateLoader#ClassTemplateLoader(ClassLoader, String)}, but finds all the templates
+     * right now.
+     * 
+     * @param basePackagePath
+     *            The package that contains the templates, in path ({@code /}-separated) format, like
+     *            {@code "com/example/myapp/templates"}. It's always relative to the root of the package hierarchy, even
+     *            if it starts with {@code /}. Can't be {@code null}, and can't be the root package either.
+     * 
+     * @throws IOException
+     *             If the base package was found in an unsupported kind of classpath element, or reading a directory
+     *             or jar file has failed.
+     */
+    public IndexedClassTemplateLoader(ClassLoader classLoader, String basePackagePath) throws IOException {
+        NullArgumentException.check("classLoader", classLoader);
+        NullArgumentException.check("basePackagePath", basePackagePath);
+        this.classLoader = classLoader;
+
+        String canonBasePackagePath = URLTemplateLoader.canonicalizePrefix(basePackagePath);
+        while (canonBasePackagePath.startsWith("/")) {
+            canonBasePackagePath = canonBasePackagePath.substring(1);
+        }
+        if (canonBasePackagePath.length() == 0) {
+            throw new IllegalArgumentException("The base package path can't be the root package.");
+        }
+        this.basePackagePath = canonBasePackagePath;
+
+        index = buildIndex();
+    }
+
+    private static ClassLoader getClassLoader(Class<?> resourceLoaderClass) {
+        NullArgumentException.check("resourceLoaderClass", resourceLoaderClass);
+        ClassLoader classLoader = resourceLoaderClass.getClassLoader();
+        return classLoader != null ? classLoader : ClassLoader.getSystemClassLoader();
+    }
+
+    private static String resolveBasePackagePath(Class<?> resourceLoaderClass, String basePackagePath) {
+        NullArgumentException.check("basePackagePath", basePackagePath);
+        if (basePackagePath.startsWith("/")) {
+            return basePackagePath;
+        }
+        String className = resourceLoaderClass.getName();
+        int lastDotIdx = className.lastIndexOf('.');
+        return lastDotIdx == -1
+                ? basePackagePath
+                : className.substring(0, lastDotIdx).replace('.', '/') + "/" + basePackagePath;
+    }
+
+    private Map<String, IndexedTemplateSource> buildIndex() throws IOException {
+        Map<String, IndexedTemplateSource> index = new HashMap<String, IndexedTemplateSource>();
+        Map<File, ZipFile> zipFiles = new HashMap<File, ZipFile>();
+        try {
+            buildIndex(index, zipFiles);
+        } finally {
+            for (ZipFile zipFile : zipFiles.values()) {
+                zipFile.close();
+            }
+        }
+        return index;
+    }
+
+    private void buildIndex(Map<String, IndexedTemplateSource> index, Map<File, ZipFile> zipFiles)
+            throws IOException {
+        // Without the trailing "/", as some class loaders don't find directory entries with that:
+        Enumeration<URL> baseURLs = classLoader.getResources(
+                basePackagePath.substring(0, basePackagePath.length() - 1));
+        while (baseURLs.hasMoreElements()) {
+            URL baseURL = baseURLs.nextElement();
+            String protocol = baseURL.getProtocol();
+            if (protocol.equals("file")) {
+                indexDirectory(urlToFile(baseURL), "", index);
+            } else if (protocol.equals("jar")) {
+                String path = baseURL.getPath();
+                int sepIdx = path.indexOf("!/");
+                URL jarURL = sepIdx != -1 ? new URL(path.substring(0, sepIdx)) : null;
+                if (jarURL == null || !jarURL.getProtocol().equals("file") || path.indexOf("!/", sepIdx + 2) != -1) {
+                    throw newUnsupportedURLException(baseURL);
+                }
+                File jarFile = urlToFile(jarURL).getCanonicalFile();
+                ZipFile zipFile = zipFiles.get(jarFile);
+                if (zipFile == null) {
+                    zipFile = new ZipFile(jarFile);
+                    zipFiles.put(jarFile, zipFile);
+                }
+                indexZipFile(jarFile, zipFile, index);
+            } else {
+                throw newUnsupportedURLException(baseURL);
+            }
+        }
+    }
+
+    private void indexDirectory(File dir, String namePrefix, Map<String, IndexedTemplateSource> index) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = namePrefix + file.getName();
+            if (file.isDirectory()) {
+                indexDirectory(file, name + "/", index);
+            } else if (!index.containsKey(name)) {
+                // As with ClassLoader.getResource, the first occurrence wins
+                index.put(name, new IndexedTemplateSource(file, null, file.lastModified()));
+            }
+        }
+    }
+
+    private void indexZipFile(File jarFile, ZipFile zipFile, Map<String, IndexedTemplateSource> index) {
+        for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();) {
+            ZipEntry entry = entries.nextElement();
+            String entryName = entry.getName();
+            if (!entry.isDirectory() && entryName.startsWith(basePackagePath)) {
+                String name = entryName.substring(basePackagePath.length());
+                if (!index.containsKey(name)) {
+                    index.put(name, new IndexedTemplateSource(jarFile, entryName, entry.getTime()));
+                }
+            }
+        }
+    }
+
+    private static File urlToFile(URL url) throws IOException {
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException e) {
+            // Some class loaders return URL-s with unescaped characters, like spaces
+            return new File(URLDecoder.decode(url.getPath(), "UTF-8"));
+        } catch (IllegalArgumentException e) {
+            return new File(URLDecoder.decode(url.getPath(), "UTF-8"));
+        }
+    }
+
+    private IOException newUnsupportedURLException(URL baseURL) {
+        return new IOException("The base package " + StringUtil.jQuote(basePackagePath)
+                + " was found in an unsupported kind of classpath element: " + baseURL
+                + "; only directories and jar files in the file system are supported. "
+                + "Use " + ClassTemplateLoader.class.getName() + " instead.");
+    }
+
+    public Object findTemplateSource(String name) throws IOException {
+        return index.get(name);
+    }
+
+    /**
+     * Returns the last modification time of the template as it was when the index was built; this will never change.
+     */
+    public long getLastModified(Object templateSource) {
+        return ((IndexedTemplateSource) templateSource).lastModified;
+    }
+
+    public Reader getReader(Object templateSource, String encoding) throws IOException {
+        IndexedTemplateSource source = (IndexedTemplateSource) templateSource;
+        InputStream in = source.entryName != null
+                ? getZipEntryInputStream(source.file, source.entryName)
+                : new FileInputStream(source.file);
+        try {
+            return new InputStreamReader(in, encoding);
+        } catch (UnsupportedEncodingException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the jar file again, and returns a stream that also closes it when it's closed.
+     */
+    private static InputStream getZipEntryInputStream(File jarFile, String entryName) throws IOException {
+        final ZipFile zipFile = new ZipFile(jarFile);
+        try {
+            ZipEntry entry = zipFile.getEntry(entryName);
+            if (entry == null) {
+                throw new FileNotFoundException("The jar file " + jarFile + " doesn't contain the "
+                        + StringUtil.jQuote(entryName) + " entry anymore.");
+            }
+            return new FilterInputStream(zipFile.getInputStream(entry)) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        zipFile.close();
+                    }
+                }
+            };
+        } catch (IOException e) {
+            zipFile.close();
+            throw e;
+        } catch (RuntimeException e) {
+            zipFile.close();
+            throw e;
+        }
+    }
+
+    public void closeTemplateSource(Object templateSource) throws IOException {
+        // Do nothing; the readers are closed by the caller, and they close the jar file too.
+    }
+
+    /**
+     * Always returns {@code true}.
+     */
+    public boolean isImmutable() {
+        return true;
+    }
+
+    /**
+     * The number of templates (or rather, files) found in the base package.
+     */
+    public int getTemplateCount() {
+        return index.size();
+    }
+
+    /**
+     * See the similar parameter of {@link #IndexedClassTemplateLoader(ClassLoader, String)}.
+     */
+    public ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    /**
+     * The normalized base package path, always ending with {@code /}, and never starting with {@code /}.
+     */
+    public String getBasePackagePath() {
+        return basePackagePath;
+    }
+
+    /**
+     * Show class name and some details that are useful in template-not-found errors.
+     */
+    @Override
+    public String toString() {
+        return TemplateLoaderUtils.getClassNameForToString(this) + "("
+                + "classLoader=" + StringUtil.jQuote(classLoader)
+                + ", basePackagePath=" + StringUtil.jQuote(basePackagePath)
+                + ", templateCount=" + index.size()
+                + ")";
+    }
+
+    private static final class IndexedTemplateSource {
+        /** The template file, or the jar file if {@link #entryName} isn't {@code null}. */
+        private final File file;
+        private final String entryName;
+        private final long lastModified;
+
+        IndexedTemplateSource(File file, String entryName, long lastModified) {
+            this.file = file;
+            this.entryName = entryName;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public String toString() {
+            return entryName != null ? "jar:" + file + "!/" + entryName : file.toString();
+        }
+    }
+
+}
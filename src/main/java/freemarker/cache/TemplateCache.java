@@ -23,17 +23,29 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.Serializable;
 import java.io.StringWriter;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.net.URLConnection;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
 
 import freemarker.cache.MultiTemplateLoader.MultiSource;
 import freemarker.core.BugException;
 import freemarker.core.Environment;
 import freemarker.core.TemplateConfiguration;
+import freemarker.core._CoreAPI;
 import freemarker.log.Logger;
 import freemarker.template.Configuration;
 import freemarker.template.MalformedTemplateNameException;
@@ -80,10 +92,20 @@ public class TemplateCache {
     private final TemplateConfigurationFactory templateConfigurations;
     
     private final boolean isStorageConcurrent;
+    /** {@link ImmutableTemplateLoader#isImmutable()} */
+    private final boolean isTemplateLoaderImmutable;
     /** {@link Configuration#setTemplateUpdateDelayMilliseconds(long)} */
     private long updateDelay = DEFAULT_TEMPLATE_UPDATE_DELAY_MILLIS;
     /** {@link Configuration#setLocalizedLookup(boolean)} */
     private boolean localizedLookup = true;
+    /** {@link Configuration#setTemplateLookupMissCacheSize(int)}; {@code null} if that's 0. */
+    private volatile LookupMissCache lookupMissCache;
+    
+    /**
+     * Only accessed when a template is (re)loaded, re-checked or removed, never when a cached template is returned.
+     * It's updated after the {@link #storage}, and has its own lock, so storage writes aren't serialized by it.
+     */
+    private final DependencyGraph dependencyGraph = new DependencyGraph();
 
     private Configuration config;
 
@@ -177,6 +199,8 @@ public class TemplateCache {
             TemplateConfigurationFactory templateConfigurations,
             Configuration config) {
         this.templateLoader = templateLoader;
+        isTemplateLoaderImmutable = templateLoader instanceof ImmutableTemplateLoader
+                && ((ImmutableTemplateLoader) templateLoader).isImmutable();
         
         NullArgumentException.check("cacheStorage", cacheStorage);
         this.storage = cacheStorage;
@@ -345,8 +369,10 @@ public class TemplateCache {
         TemplateLookupResult newLookupResult = null;
         try {
             if (cachedTemplate != null) {
-                // If we're within the refresh delay, return the cached copy
-                if (now - cachedTemplate.lastChecked < updateDelay) {
+                // If we're within the refresh delay, return the cached copy. If the templates can't change, the
+                // cached copy never becomes stale, except for failed loads, which are retried as usual.
+                if (now - cachedTemplate.lastChecked < updateDelay
+                        || isTemplateLoaderImmutable && !(cachedTemplate.templateOrException instanceof Exception)) {
                     if (debug) {
                         LOG.debug(debugName + " cached copy not yet stale; using cached.");
                     }
@@ -440,8 +466,11 @@ public class TemplateCache {
                     templateLoader, source,
                     name, newLookupResult.getTemplateSourceName(), locale, customLookupCondition,
                     encoding, parseAsFTL);
+            _TemplateAPI.setLastModified(template, lastModified);
             cachedTemplate.templateOrException = template;
             cachedTemplate.lastModified = lastModified;
+            cachedTemplate.dependencyNames = parseAsFTL
+                    ? getDependencyNames(template) : Collections.<String>emptySet();
             storeCached(tk, cachedTemplate);
             return template;
         } catch (RuntimeException e) {
@@ -507,6 +536,7 @@ public class TemplateCache {
         cachedTemplate.templateOrException = e;
         cachedTemplate.source = null;
         cachedTemplate.lastModified = 0L;
+        cachedTemplate.dependencyNames = null;
         storeCached(tk, cachedTemplate);
     }
 
@@ -518,8 +548,42 @@ public class TemplateCache {
                 storage.put(tk, cachedTemplate);
             }
         }
+        dependencyGraph.update(tk, cachedTemplate);
+    }
+
+    /**
+     * Returns the normalized root based names of the templates that the template statically depends on: those that
+     * are included or imported with a literal name, and the auto-includes and auto-imports.
+     */
+    private Set<String> getDependencyNames(Template template) {
+        Set<String> names = new LinkedHashSet<String>();
+        boolean classicCompatible = template.isClassicCompatible();
+        for (String name : _CoreAPI.getLiteralIncludedAndImportedTemplateNames(template)) {
+            try {
+                // Must resolve the name as Environment.toFullTemplateName does
+                addNormalizedName(names,
+                        classicCompatible ? name : templateNameFormat.toRootBasedName(template.getName(), name));
+            } catch (MalformedTemplateNameException e) {
+                // The directive will fail when executed; it's not a dependency that can exist.
+            }
+        }
+        for (String name : template.getAutoImports().values()) {
+            addNormalizedName(names, name);
+        }
+        for (String name : template.getAutoIncludes()) {
+            addNormalizedName(names, name);
+        }
+        return names;
     }
 
+    private void addNormalizedName(Set<String> names, String name) {
+        try {
+            names.add(templateNameFormat.normalizeRootBasedName(name));
+        } catch (MalformedTemplateNameException e) {
+            // Ignored, like for a missing template
+        }
+    }
+    
     private Template loadTemplate(
             final TemplateLoader templateLoader, final Object source,
             final String name, final String sourceName, Locale locale, final Object customLookupCondition,
@@ -642,6 +706,53 @@ public class TemplateCache {
         }
     }
 
+    /**
+     * Returns the maximum number of template source names for which it's remembered that the
+     * {@link TemplateLoader} hasn't found them; 0 if this is disabled.
+     * 
+     * @see Configuration#setTemplateLookupMissCacheSize(int)
+     * 
+     * @since 2.3.30
+     */
+    public int getLookupMissCacheSize() {
+        LookupMissCache lookupMissCache = this.lookupMissCache;
+        return lookupMissCache != null ? lookupMissCache.maxSize : 0;
+    }
+
+    /**
+     * Sets the maximum number of template source names for which it's remembered that the {@link TemplateLoader}
+     * hasn't found them; 0 disables this. Setting this discards the currently remembered misses.
+     * 
+     * @see Configuration#setTemplateLookupMissCacheSize(int)
+     * 
+     * @since 2.3.30
+     */
+    public void setLookupMissCacheSize(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize can't be negative: " + maxSize);
+        }
+        // synchronized was moved here so that we don't advertise that it's thread-safe, as it's not.
+        synchronized (this) {
+            lookupMissCache = maxSize != 0 ? new LookupMissCache(maxSize) : null;
+        }
+    }
+
+    /**
+     * Forgets all the template source names that the {@link TemplateLoader} was earlier found to not have (see
+     * {@link #setLookupMissCacheSize(int)}), so they will be looked up again on the next occasion. This is also done
+     * by {@link #clear()} and by {@link #removeTemplate(String, Locale, Object, String, boolean)}.
+     * 
+     * @since 2.3.30
+     */
+    public void clearLookupMissCache() {
+        LookupMissCache lookupMissCache = this.lookupMissCache;
+        if (lookupMissCache != null) {
+            synchronized (lookupMissCache) {
+                lookupMissCache.clear();
+            }
+        }
+    }
+
     /**
      * Removes all entries from the cache, forcing reloading of templates
      * on subsequent {@link #getTemplate(String, Locale, String, boolean)}
@@ -652,10 +763,12 @@ public class TemplateCache {
     public void clear() {
         synchronized (storage) {
             storage.clear();
+            clearLookupMissCache();
             if (templateLoader instanceof StatefulTemplateLoader) {
                 ((StatefulTemplateLoader) templateLoader).resetState();
             }
         }
+        dependencyGraph.clear();
     }
 
     /**
@@ -695,19 +808,117 @@ public class TemplateCache {
                     : null;
             TemplateKey tk = new TemplateKey(name, locale, customLookupCondition, encoding, parse);
             
-            if (isStorageConcurrent) {
-                storage.remove(tk);
-            } else {
-                synchronized (storage) {
-                    storage.remove(tk);
-                }
-            }
+            removeFromStorage(tk);
+            // We don't know which other template names were tried during the lookup, so forget all misses:
+            clearLookupMissCache();
             if (debug) {
                 LOG.debug(debugName + " was removed from the cache, if it was there");
             }
         }
     }
 
+    private void removeFromStorage(TemplateKey tk) {
+        if (isStorageConcurrent) {
+            storage.remove(tk);
+        } else {
+            synchronized (storage) {
+                storage.remove(tk);
+            }
+        }
+        dependencyGraph.remove(tk);
+    }
+    
+    /** For unit testing only: behaves as if the garbage collector has freed all templates in the dependency graph. */
+    void enqueueAllDependencyGraphEntries() {
+        dependencyGraph.enqueueAll();
+    }
+
+    /**
+     * Returns the (normalized, root based) names of the cached templates that depend on the given template, that is,
+     * that include or import it with a literal name (like {@code <#include "foo.ftl">}, but not
+     * {@code <#include x>}), or that has it as auto-include or auto-import. The dependencies are discovered when a
+     * template is loaded, so only templates that are currently in the cache are considered. (A template that the
+     * {@link CacheStorage} has dropped on its own, like because of its size limit, is forgotten after the garbage
+     * collector has freed the template, so until then it may still be returned.)
+     * 
+     * <p>
+     * Note that the templates are always resolved while the dependent template is processed, so this information is
+     * not needed to keep a template in sync with its dependencies. It's useful where the dependent templates must be
+     * invalidated, or pre-loaded (re-validated) together, like with
+     * {@link #removeTemplateAndDependents(String)} and {@link #reloadTemplateAndDependents(String)}.
+     * 
+     * @param name
+     *            The root based name of the template; will be normalized.
+     * @param transitive
+     *            Whether to return the dependents of the dependents too (recursively), or only the direct dependents.
+     * 
+     * @return The set of template names, in no particular order; not {@code null}. Doesn't contain {@code name}
+     *         itself, unless there's a cyclic dependency.
+     * 
+     * @since 2.3.30
+     */
+    public Set<String> getDependentTemplateNames(String name, boolean transitive)
+            throws MalformedTemplateNameException {
+        NullArgumentException.check("name", name);
+        return dependencyGraph.getDependentNames(templateNameFormat.normalizeRootBasedName(name), transitive);
+    }
+
+    /**
+     * Removes all cache entries of the template with the given name (for all locales, encodings, etc.), and of all the
+     * templates that depend on it (see {@link #getDependentTemplateNames(String, boolean)} with {@code transitive}
+     * {@code true}), so they will be re-loaded when they are next time requested.
+     * 
+     * @param name
+     *            The root based name of the template; will be normalized.
+     * 
+     * @since 2.3.30
+     */
+    public void removeTemplateAndDependents(String name) throws MalformedTemplateNameException {
+        removeTemplateAndDependentsInternal(name);
+    }
+
+    /**
+     * Like {@link #removeTemplateAndDependents(String)}, but then immediately loads the removed templates again (with
+     * the same locale, encoding, etc. that they were cached with), so that the next request doesn't have to wait for
+     * that. If loading a template fails, the others are still loaded, and then the first exception is thrown.
+     * 
+     * @param name
+     *            The root based name of the template; will be normalized.
+     * 
+     * @since 2.3.30
+     */
+    public void reloadTemplateAndDependents(String name) throws IOException {
+        IOException firstException = null;
+        for (TemplateKey tk : removeTemplateAndDependentsInternal(name)) {
+            try {
+                getTemplateInternal(tk.name, tk.locale, tk.customLookupCondition, tk.encoding, tk.parse);
+            } catch (IOException e) {
+                if (firstException == null) {
+                    firstException = e;
+                }
+            }
+        }
+        if (firstException != null) {
+            throw firstException;
+        }
+    }
+    
+    private Collection<TemplateKey> removeTemplateAndDependentsInternal(String name)
+            throws MalformedTemplateNameException {
+        NullArgumentException.check("name", name);
+        name = templateNameFormat.normalizeRootBasedName(name);
+        Collection<TemplateKey> keys = dependencyGraph.getKeysOfTemplateAndDependents(name);
+        for (TemplateKey tk : keys) {
+            removeFromStorage(tk);
+        }
+        clearLookupMissCache();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(StringUtil.jQuoteNoXSS(name) + " and its dependents were removed from the cache ("
+                    + keys.size() + " entries)");
+        }
+        return keys;
+    }
+
     private String buildDebugName(String name, Locale locale, Object customLookupCondition, String encoding,
             boolean parse) {
         return StringUtil.jQuoteNoXSS(name) + "("
@@ -788,11 +999,29 @@ public class TemplateCache {
     }
 
     private Object findTemplateSource(String path) throws IOException {
+        final LookupMissCache lookupMissCache = this.lookupMissCache;
+        final long now;
+        if (lookupMissCache != null) {
+            now = System.currentTimeMillis();
+            if (lookupMissCache.isRecentMiss(path, now)) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("TemplateLoader.findTemplateSource(" +  StringUtil.jQuote(path) + "): "
+                            + "Not found (cached miss)");
+                }
+                return null;
+            }
+        } else {
+            now = 0;
+        }
+        
         final Object result = templateLoader.findTemplateSource(path);
         if (LOG.isDebugEnabled()) {
             LOG.debug("TemplateLoader.findTemplateSource(" +  StringUtil.jQuote(path) + "): "
                     + (result == null ? "Not found" : "Found"));
         }
+        if (result == null && lookupMissCache != null) {
+            lookupMissCache.putMiss(path, now);
+        }
         return modifyForConfIcI(result);
     }
 
@@ -826,6 +1055,208 @@ public class TemplateCache {
         return buf.toString();
     }
     
+    /**
+     * Remembers the template source names (as passed to {@link TemplateLoader#findTemplateSource(String)}) that weren't
+     * found, and when that was checked. Unlike the {@link CacheStorage}, this is shared by all the lookups, regardless
+     * of the locale, encoding, etc. The least recently used entries are dropped when {@link #maxSize} is reached.
+     */
+    private final class LookupMissCache extends LinkedHashMap<String, Long> {
+        private static final long serialVersionUID = 1L;
+        
+        private final int maxSize;
+
+        LookupMissCache(int maxSize) {
+            super(Math.min(maxSize, 64), 0.75f, true);
+            this.maxSize = maxSize;
+        }
+        
+        synchronized boolean isRecentMiss(String sourceName, long now) {
+            Long lastChecked = get(sourceName);
+            if (lastChecked == null) {
+                return false;
+            }
+            if (isTemplateLoaderImmutable || now - lastChecked.longValue() < updateDelay) {
+                return true;
+            }
+            remove(sourceName);
+            return false;
+        }
+        
+        synchronized void putMiss(String sourceName, long now) {
+            put(sourceName, Long.valueOf(now));
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > maxSize;
+        }
+    }
+    
+    /**
+     * Stores which cached template depends on which template names. Template names are used on the dependency side,
+     * because a dependency is resolved independently of the locale and such of the dependent. The methods that
+     * modify or query the graph are synchronized, but they are only called when templates are (re)loaded or removed;
+     * re-checking a template that hasn't changed doesn't lock.
+     * 
+     * <p>
+     * The graph only weakly references the cached {@link Template}-s, so when the {@link CacheStorage} drops an entry
+     * on its own, the corresponding part of the graph is removed after the template was garbage collected. Thus, the
+     * size of the graph follows the size of the cache. As the graph is updated after the storage, without a common
+     * lock, if two threads load the same template concurrently, the graph may end up referring to the template that
+     * lost the race in the storage, and then it forgets the entry too early. That only means that
+     * {@link TemplateCache#removeTemplateAndDependents(String)} and such can miss that entry.
+     */
+    private static final class DependencyGraph {
+        /** Only modified while the graph is locked, but also read without locking. */
+        private final Map<TemplateKey, GraphEntry> entriesByKey = new ConcurrentHashMap<TemplateKey, GraphEntry>();
+        private final Map<String, Set<TemplateKey>> keysByName = new HashMap<String, Set<TemplateKey>>();
+        private final Map<String, Set<TemplateKey>> dependentKeysByName = new HashMap<String, Set<TemplateKey>>();
+        private final ReferenceQueue<Template> collectedEntriesQueue = new ReferenceQueue<Template>();
+        
+        /**
+         * Makes the graph follow a {@link CacheStorage} write.
+         * 
+         * @param cachedTemplate
+         *            The object that was put into the {@link CacheStorage}.
+         */
+        void update(TemplateKey tk, CachedTemplate cachedTemplate) {
+            GraphEntry entry = entriesByKey.get(tk);
+            if (cachedTemplate.dependencyNames != null) {
+                // Re-checking an unchanged template stores a clone that shares the template and its dependencies.
+                if (entry == null || entry.get() != cachedTemplate.templateOrException
+                        || entry.dependencyNames != cachedTemplate.dependencyNames) {
+                    put(tk, cachedTemplate);
+                }
+            } else if (entry != null) {
+                remove(tk);
+            }
+        }
+        
+        /**
+         * @param cachedTemplate
+         *            Its {@link CachedTemplate#dependencyNames} must be non-{@code null}, and so its
+         *            {@link CachedTemplate#templateOrException} must be a {@link Template}.
+         */
+        private synchronized void put(TemplateKey tk, CachedTemplate cachedTemplate) {
+            removeCollectedEntries();
+            remove(tk);
+            GraphEntry entry = new GraphEntry(
+                    tk, (Template) cachedTemplate.templateOrException, cachedTemplate.dependencyNames,
+                    collectedEntriesQueue);
+            entriesByKey.put(tk, entry);
+            addToMultiMap(keysByName, tk.name, tk);
+            for (String dependencyName : entry.dependencyNames) {
+                addToMultiMap(dependentKeysByName, dependencyName, tk);
+            }
+        }
+        
+        synchronized void remove(TemplateKey tk) {
+            GraphEntry entry = entriesByKey.remove(tk);
+            if (entry != null) {
+                removeEntryFromMultiMaps(entry);
+            }
+        }
+        
+        synchronized void enqueueAll() {
+            for (GraphEntry entry : entriesByKey.values()) {
+                entry.enqueue();
+            }
+        }
+        
+        synchronized void clear() {
+            entriesByKey.clear();
+            keysByName.clear();
+            dependentKeysByName.clear();
+            while (collectedEntriesQueue.poll() != null) {
+                // Just empty the queue
+            }
+        }
+        
+        synchronized Set<String> getDependentNames(String name, boolean transitive) {
+            removeCollectedEntries();
+            Set<String> result = new HashSet<String>();
+            List<String> unvisitedNames = new ArrayList<String>();
+            unvisitedNames.add(name);
+            while (!unvisitedNames.isEmpty()) {
+                Set<TemplateKey> dependentKeys = dependentKeysByName.get(
+                        unvisitedNames.remove(unvisitedNames.size() - 1));
+                if (dependentKeys != null) {
+                    for (TemplateKey dependentKey : dependentKeys) {
+                        if (result.add(dependentKey.name) && transitive) {
+                            unvisitedNames.add(dependentKey.name);
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+        
+        synchronized Collection<TemplateKey> getKeysOfTemplateAndDependents(String name) {
+            Set<TemplateKey> result = new LinkedHashSet<TemplateKey>();
+            addKeys(result, name);
+            for (String dependentName : getDependentNames(name, true)) {
+                addKeys(result, dependentName);
+            }
+            return result;
+        }
+
+        private void addKeys(Set<TemplateKey> result, String name) {
+            Set<TemplateKey> keys = keysByName.get(name);
+            if (keys != null) {
+                result.addAll(keys);
+            }
+        }
+        
+        private void removeCollectedEntries() {
+            GraphEntry collectedEntry;
+            while ((collectedEntry = (GraphEntry) collectedEntriesQueue.poll()) != null) {
+                // The key might have been put again since then, in which case the new entry must be kept.
+                if (entriesByKey.get(collectedEntry.key) == collectedEntry) {
+                    entriesByKey.remove(collectedEntry.key);
+                    removeEntryFromMultiMaps(collectedEntry);
+                }
+            }
+        }
+        
+        private void removeEntryFromMultiMaps(GraphEntry entry) {
+            removeFromMultiMap(keysByName, entry.key.name, entry.key);
+            for (String dependencyName : entry.dependencyNames) {
+                removeFromMultiMap(dependentKeysByName, dependencyName, entry.key);
+            }
+        }
+        
+        private static <K, V> void addToMultiMap(Map<K, Set<V>> map, K key, V value) {
+            Set<V> values = map.get(key);
+            if (values == null) {
+                values = new HashSet<V>();
+                map.put(key, values);
+            }
+            values.add(value);
+        }
+        
+        private static <K, V> void removeFromMultiMap(Map<K, Set<V>> map, K key, V value) {
+            Set<V> values = map.get(key);
+            if (values != null && values.remove(value) && values.isEmpty()) {
+                map.remove(key);
+            }
+        }
+    }
+    
+    /**
+     * Weakly references the cached {@link Template} instead of the {@link CachedTemplate}, as the last is replaced
+     * with a clone on each re-check, while the template (and its dependencies) only changes when it's reloaded.
+     */
+    private static final class GraphEntry extends WeakReference<Template> {
+        private final TemplateKey key;
+        private final Set<String> dependencyNames;
+        
+        GraphEntry(TemplateKey key, Template template, Set<String> dependencyNames, ReferenceQueue<Template> queue) {
+            super(template, queue);
+            this.key = key;
+            this.dependencyNames = dependencyNames;
+        }
+    }
+    
     /**
      * This class holds a (name, locale) pair and is used as the key in
      * the cached templates map.
@@ -891,6 +1322,11 @@ public class TemplateCache {
         Object source;
         long lastChecked;
         long lastModified;
+        /**
+         * The normalized names of the templates that the cached template depends on; {@code null} if there's no
+         * template cached (negative lookup or failed load).
+         */
+        Set<String> dependencyNames;
         
         public CachedTemplate cloneCachedTemplate() {
             try {
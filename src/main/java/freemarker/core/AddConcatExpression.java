@@ -22,7 +22,6 @@ package freemarker.core;
 import java.util.HashSet;
 import java.util.Set;
 
-import freemarker.template.SimpleNumber;
 import freemarker.template.SimpleScalar;
 import freemarker.template.SimpleSequence;
 import freemarker.template.TemplateCollectionModel;
@@ -149,7 +148,7 @@ final class AddConcatExpression extends Expression {
     static TemplateModel _evalOnNumbers(Environment env, TemplateObject parent, Number first, Number second)
             throws TemplateException {
         ArithmeticEngine ae = EvalUtil.getArithmeticEngine(env, parent);
-        return new SimpleNumber(ae.add(first, second));
+        return SmallIntegerModels.toNumberModel(ae.add(first, second));
     }
 
     @Override
@@ -48,6 +48,13 @@ public abstract class ArithmeticEngine {
      * converting everything to BigDecimal up front.
      */
     public static final ConservativeEngine CONSERVATIVE_ENGINE = new ConservativeEngine();
+    /**
+     * Arithmetic engine that gives numerically the same results as {@link #BIGDECIMAL_ENGINE}, but does the common
+     * integer operations on primitive {@code long}-s. See {@link IntegerFastPathEngine} for more.
+     * 
+     * @since 2.3.30
+     */
+    public static final IntegerFastPathEngine INTEGER_FAST_PATH_ENGINE = new IntegerFastPathEngine();
 
     public abstract int compareNumbers(Number first, Number second) throws TemplateException;
     public abstract Number add(Number first, Number second) throws TemplateException;
@@ -258,6 +265,116 @@ public abstract class ArithmeticEngine {
         }
     }
 
+    /**
+     * A {@link BigDecimalEngine} that avoids {@link BigDecimal} arithmetic where the operands are integers (like
+     * {@code i + 1}, or loop counters): integer literals are parsed to {@link Integer} or {@link Long}, and addition,
+     * subtraction, multiplication and comparison of {@link Integer}, {@link Long}, {@link Short} and {@link Byte}
+     * values is done on {@code long}-s, with overflow check. If the operation would overflow, or some operands aren't
+     * of those types, it falls back to the {@link BigDecimalEngine} behavior. Thus the results are numerically equal
+     * to what {@link BigDecimalEngine} gives.
+     * 
+     * <p>
+     * The type of the results can differ though: where {@link BigDecimalEngine} returns a {@link BigDecimal}, this
+     * engine might returns an {@link Integer} or {@link Long}. That's normally invisible for the template, but Java
+     * methods called from the template can receive these different types (for example, an overloaded method might
+     * be chosen differently), which is why this isn't the default engine.
+     * 
+     * @since 2.3.30
+     */
+    public static class IntegerFastPathEngine extends BigDecimalEngine {
+
+        @Override
+        public int compareNumbers(Number first, Number second) {
+            if (isFastPathInteger(first) && isFastPathInteger(second)) {
+                long n1 = first.longValue();
+                long n2 = second.longValue();
+                return n1 < n2 ? -1 : (n1 == n2 ? 0 : 1);
+            }
+            return super.compareNumbers(first, second);
+        }
+
+        @Override
+        public Number add(Number first, Number second) {
+            if (isFastPathInteger(first) && isFastPathInteger(second)) {
+                long n1 = first.longValue();
+                long n2 = second.longValue();
+                long n = n1 + n2;
+                if (((n ^ n1) & (n ^ n2)) >= 0) { // overflow check
+                    return toIntegerOrLong(n);
+                }
+            }
+            return super.add(first, second);
+        }
+
+        @Override
+        public Number subtract(Number first, Number second) {
+            if (isFastPathInteger(first) && isFastPathInteger(second)) {
+                long n1 = first.longValue();
+                long n2 = second.longValue();
+                long n = n1 - n2;
+                if (((n1 ^ n2) & (n1 ^ n)) >= 0) { // overflow check
+                    return toIntegerOrLong(n);
+                }
+            }
+            return super.subtract(first, second);
+        }
+
+        @Override
+        public Number multiply(Number first, Number second) {
+            if (isFastPathInteger(first) && isFastPathInteger(second)) {
+                long n1 = first.longValue();
+                long n2 = second.longValue();
+                if (n1 >= Integer.MIN_VALUE && n1 <= Integer.MAX_VALUE
+                        && n2 >= Integer.MIN_VALUE && n2 <= Integer.MAX_VALUE) {
+                    // Can't overflow
+                    return toIntegerOrLong(n1 * n2);
+                }
+                long n = n1 * n2;
+                if (n1 == 0 || (n / n1 == n2 && !(n1 == -1 && n2 == Long.MIN_VALUE))) { // overflow check
+                    return toIntegerOrLong(n);
+                }
+            }
+            return super.multiply(first, second);
+        }
+
+        /**
+         * Parses integers that surely fit into {@code long} without any {@link BigDecimal} involvement, and returns
+         * them as {@link Integer} or {@link Long}. Otherwise does the same as {@link BigDecimalEngine#toNumber}.
+         */
+        @Override
+        public Number toNumber(String s) {
+            int ln = s.length();
+            int start = ln > 0 && (s.charAt(0) == '-' || s.charAt(0) == '+') ? 1 : 0;
+            // 18 digits always fit into a long
+            if (ln > start && ln - start <= 18) {
+                long n = 0;
+                int i = start;
+                while (i < ln) {
+                    char c = s.charAt(i);
+                    if (c < '0' || c > '9') {
+                        break;
+                    }
+                    n = n * 10 + (c - '0');
+                    i++;
+                }
+                if (i == ln) {
+                    return toIntegerOrLong(s.charAt(0) == '-' ? -n : n);
+                }
+            }
+            return super.toNumber(s);
+        }
+
+        private static boolean isFastPathInteger(Number n) {
+            return n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte;
+        }
+
+        private static Number toIntegerOrLong(long n) {
+            return n >= Integer.MIN_VALUE && n <= Integer.MAX_VALUE
+                    ? (Number) Integer.valueOf((int) n)
+                    : (Number) Long.valueOf(n);
+        }
+    }
+
     /**
      * An arithmetic engine that conservatively widens the operation arguments
      * to extent that they can hold the result of the operation. Widening 
@@ -605,7 +722,7 @@ public abstract class ArithmeticEngine {
      * @throws NumberFormatException
      *             If the conversion is not possible, e.g. Infinite and NaN can't be converted to {@link BigDecimal}.
      */
-    private static BigDecimal toBigDecimal(Number num) {
+    static BigDecimal toBigDecimal(Number num) {
         if (num instanceof BigDecimal) {
             return (BigDecimal) num;
         }
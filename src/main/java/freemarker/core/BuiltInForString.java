@@ -21,6 +21,7 @@ package freemarker.core;
 
 import freemarker.template.TemplateException;
 import freemarker.template.TemplateModel;
+import freemarker.template.TemplateScalarModel;
 
 abstract class BuiltInForString extends BuiltIn {
     @Override
@@ -29,6 +30,21 @@ abstract class BuiltInForString extends BuiltIn {
         return calculateResult(getTargetString(target, env), env);
     }
     abstract TemplateModel calculateResult(String s, Environment env) throws TemplateException;
+
+    /**
+     * Tells if {@link #calculateResult(String, Environment)} only depends on its string argument, and so doesn't use
+     * the {@link Environment} (like the current locale) at all. If this returns {@code true}, and the target is a
+     * string literal, the built-in is evaluated during parsing (constant folding).
+     */
+    boolean isEnvironmentIndependent() {
+        return false;
+    }
+
+    @Override
+    boolean isLiteral() {
+        // Only strings are accepted, as coercing a number or date to string would depend on the Environment.
+        return isEnvironmentIndependent() && target.constantValue instanceof TemplateScalarModel;
+    }
     
     static String getTargetString(Expression target, Environment env) throws TemplateException {
         return target.evalAndCoerceToStringOrUnsupportedMarkup(env);
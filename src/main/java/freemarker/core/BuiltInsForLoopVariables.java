@@ -21,7 +21,6 @@ package freemarker.core;
 import java.util.List;
 
 import freemarker.core.IteratorBlock.IterationContext;
-import freemarker.template.SimpleNumber;
 import freemarker.template.SimpleScalar;
 import freemarker.template.TemplateBooleanModel;
 import freemarker.template.TemplateException;
@@ -36,7 +35,7 @@ class BuiltInsForLoopVariables {
 
         @Override
         TemplateModel calculateResult(IterationContext iterCtx, Environment env) throws TemplateException {
-            return new SimpleNumber(iterCtx.getIndex());
+            return SmallIntegerModels.valueOf(iterCtx.getIndex());
         }
         
     }
@@ -45,7 +44,7 @@ class BuiltInsForLoopVariables {
 
         @Override
         TemplateModel calculateResult(IterationContext iterCtx, Environment env) throws TemplateException {
-            return new SimpleNumber(iterCtx.getIndex() + 1);
+            return SmallIntegerModels.valueOf(iterCtx.getIndex() + 1);
         }
         
     }
@@ -148,7 +147,13 @@ class BuiltInsForLoopVariables {
         
         @Override
         TemplateModel calculateResult(IterationContext iterCtx, Environment env) throws TemplateException {
-            return new BIMethod(iterCtx);
+            // The method only depends on the IterationContext, so it's enough to create it once per listing
+            TemplateModel method = iterCtx.getItemCycleMethod();
+            if (method == null) {
+                method = new BIMethod(iterCtx);
+                iterCtx.setItemCycleMethod(method);
+            }
+            return method;
         }
         
     }
@@ -20,6 +20,8 @@
 package freemarker.core;
 
 import java.io.Serializable;
+import java.math.BigDecimal;
+import java.text.CollationKey;
 import java.text.Collator;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -53,27 +55,114 @@ import freemarker.template.utility.StringUtil;
  */
 class BuiltInsForSequences {
     
-    static class chunkBI extends BuiltInForSequence {
+    static class chunkBI extends BuiltInWithDirectCallOptimization {
 
-        private class BIMethod implements TemplateMethodModelEx {
-            
-            private final TemplateSequenceModel tsm;
+        private boolean directlyCalled;
+        private boolean lazilyGeneratedResultEnabled;
 
-            private BIMethod(TemplateSequenceModel tsm) {
-                this.tsm = tsm;
+        @Override
+        protected void setDirectlyCalled() {
+            directlyCalled = true;
+        }
+
+        /**
+         * Only has effect if the built-in is called directly (like {@code xs?chunk(3)}), as only then we know that the
+         * returned method is called once, and that its result is consumed as the value of the enclosing
+         * {@link MethodCall}.
+         */
+        @Override
+        void enableLazilyGeneratedResult() {
+            if (directlyCalled) {
+                lazilyGeneratedResultEnabled = true;
+                target.enableLazilyGeneratedResult();
             }
+        }
 
-            public Object exec(List args) throws TemplateModelException {
+        private abstract class AbstractBIMethod implements TemplateMethodModelEx {
+
+            public final Object exec(List args) throws TemplateModelException {
                 checkMethodArgCount(args, 1, 2);
                 int chunkSize = getNumberMethodArg(args, 0).intValue();
                 if (chunkSize < 1) {
                     throw new _TemplateModelException("The 1st argument to ?", key, " (...) must be at least 1.");
                 }
-                
-                return new ChunkedSequence(
-                        tsm,
-                        chunkSize,
-                        args.size() > 1 ? (TemplateModel) args.get(1) : null);
+
+                return calculateResult(chunkSize, args.size() > 1 ? (TemplateModel) args.get(1) : null);
+            }
+
+            protected abstract TemplateModel calculateResult(int chunkSize, TemplateModel fillerItem)
+                    throws TemplateModelException;
+        }
+
+        private class BIMethod extends AbstractBIMethod {
+            
+            private final TemplateSequenceModel tsm;
+
+            private BIMethod(TemplateSequenceModel tsm) {
+                this.tsm = tsm;
+            }
+
+            @Override
+            protected TemplateModel calculateResult(int chunkSize, TemplateModel fillerItem)
+                    throws TemplateModelException {
+                return new ChunkedSequence(tsm, chunkSize, fillerItem);
+            }
+        }
+
+        /**
+         * Used when the input is a lazily generated sequence (like {@code xs?filter(f)}); reads the input only once,
+         * and only holds the current chunk in memory.
+         */
+        private class BIMethodForLazilyGeneratedSequence extends AbstractBIMethod {
+
+            private final TemplateCollectionModel lazySeq;
+
+            private BIMethodForLazilyGeneratedSequence(TemplateCollectionModel lazySeq) {
+                this.lazySeq = lazySeq;
+            }
+
+            @Override
+            protected TemplateModel calculateResult(int chunkSize, TemplateModel fillerItem)
+                    throws TemplateModelException {
+                return new LazilyGeneratedCollectionModelWithUnknownSize(
+                        new ChunkIterator(lazySeq.iterator(), chunkSize, fillerItem),
+                        true);
+            }
+        }
+
+        private static class ChunkIterator implements TemplateModelIterator {
+
+            private final TemplateModelIterator wrappedIterator;
+
+            private final int chunkSize;
+
+            private final TemplateModel fillerItem;
+
+            private ChunkIterator(TemplateModelIterator wrappedIterator, int chunkSize, TemplateModel fillerItem) {
+                this.wrappedIterator = wrappedIterator;
+                this.chunkSize = chunkSize;
+                this.fillerItem = fillerItem;
+            }
+
+            public TemplateModel next() throws TemplateModelException {
+                if (!wrappedIterator.hasNext()) {
+                    throw new IllegalStateException("next() was called when hasNext() is false");
+                }
+
+                List<TemplateModel> chunk = new ArrayList<TemplateModel>(Math.min(chunkSize, 16));
+                do {
+                    chunk.add(wrappedIterator.next());
+                } while (chunk.size() < chunkSize && wrappedIterator.hasNext());
+                if (fillerItem != null) {
+                    while (chunk.size() < chunkSize) {
+                        chunk.add(fillerItem);
+                    }
+                }
+                return new TemplateModelListSequence(chunk);
+            }
+
+            public boolean hasNext() throws TemplateModelException {
+                return wrappedIterator.hasNext();
             }
         }
 
@@ -134,8 +223,16 @@ class BuiltInsForSequences {
         }
         
         @Override
-        TemplateModel calculateResult(TemplateSequenceModel tsm) throws TemplateModelException {
-            return new BIMethod(tsm);
+        TemplateModel _eval(Environment env) throws TemplateException {
+            TemplateModel model = target.eval(env);
+            if (model instanceof TemplateSequenceModel) {
+                return new BIMethod((TemplateSequenceModel) model);
+            } else if (lazilyGeneratedResultEnabled && model instanceof LazilyGeneratedCollectionModel
+                    && ((LazilyGeneratedCollectionModel) model).isSequence()) {
+                return new BIMethodForLazilyGeneratedSequence((TemplateCollectionModel) model);
+            } else {
+                throw new NonSequenceException(target, model, env);
+            }
         }
         
     }
@@ -619,16 +716,16 @@ class BuiltInsForSequences {
                 this.value = value;
             }
         }
-        private static class LexicalKVPComparator implements Comparator {
-            private Collator collator;
+        /**
+         * Compares keys that were already converted to a {@link Comparable} that gives the desired ordering, like
+         * {@link CollationKey}-s.
+         */
+        private static class ComparableKVPComparator implements Comparator, Serializable {
 
-            LexicalKVPComparator(Collator collator) {
-                this.collator = collator;
-            }
+            private static final ComparableKVPComparator INSTANCE = new ComparableKVPComparator();
 
             public int compare(Object arg0, Object arg1) {
-                return collator.compare(
-                        ((KVP) arg0).key, ((KVP) arg1).key);
+                return ((Comparable) ((KVP) arg0).key).compareTo(((KVP) arg1).key);
             }
         }
         private static class NumericalKVPComparator implements Comparator {
@@ -695,6 +792,8 @@ class BuiltInsForSequences {
             // Copy the Seq into a Java List[KVP] (also detects key type at the 1st item):
             int keyType = KEY_TYPE_NOT_YET_DETECTED;
             Comparator keyComparator = null;
+            Collator collator = null;
+            ArithmeticEngine arithmeticEngine = null;
             for (int i = 0; i < ln; i++) {
                 final TemplateModel item = seq.get(i);
                 TemplateModel key = item;
@@ -726,13 +825,12 @@ class BuiltInsForSequences {
                 if (keyType == KEY_TYPE_NOT_YET_DETECTED) {
                     if (key instanceof TemplateScalarModel) {
                         keyType = KEY_TYPE_STRING;
-                        keyComparator = new LexicalKVPComparator(
-                                Environment.getCurrentEnvironment().getCollator());
+                        collator = Environment.getCurrentEnvironment().getCollator();
+                        keyComparator = ComparableKVPComparator.INSTANCE;
                     } else if (key instanceof TemplateNumberModel) {
                         keyType = KEY_TYPE_NUMBER;
-                        keyComparator = new NumericalKVPComparator(
-                                Environment.getCurrentEnvironment()
-                                        .getArithmeticEngine());
+                        arithmeticEngine = Environment.getCurrentEnvironment().getArithmeticEngine();
+                        keyComparator = new NumericalKVPComparator(arithmeticEngine);
                     } else if (key instanceof TemplateDateModel) {
                         keyType = KEY_TYPE_DATE;
                         keyComparator = new DateKVPComparator();
@@ -748,8 +846,10 @@ class BuiltInsForSequences {
                 switch(keyType) {
                     case KEY_TYPE_STRING:
                         try {
+                            // Converting to CollationKey once per item is much cheaper than letting the Collator
+                            // re-process both strings on each of the n*log(n) comparisons.
                             res.add(new KVP(
-                                    ((TemplateScalarModel) key).getAsString(),
+                                    collator.getCollationKey(((TemplateScalarModel) key).getAsString()),
                                     item));
                         } catch (ClassCastException e) {
                             if (!(key instanceof TemplateScalarModel)) {
@@ -805,7 +905,11 @@ class BuiltInsForSequences {
                 }
             }
 
-            // Sort tje List[KVP]:
+            if (keyType == KEY_TYPE_NUMBER) {
+                keyComparator = optimizeNumericalKeys(res, arithmeticEngine, keyComparator);
+            }
+
+            // Sort the List[KVP]:
             try {
                 Collections.sort(res, keyComparator);
             } catch (Exception exc) {
@@ -821,6 +925,60 @@ class BuiltInsForSequences {
             return new TemplateModelListSequence(res);
         }
 
+        /**
+         * If it doesn't change the ordering, replaces the number keys so that they can be compared without the
+         * per-comparison type dispatching done by {@link ArithmeticEngine#compareNumbers(Number, Number)}.
+         * 
+         * @return The {@link Comparator} to use for the (possibly replaced) keys.
+         */
+        private static Comparator optimizeNumericalKeys(
+                ArrayList res, ArithmeticEngine ae, Comparator keyComparator) {
+            // Custom engines might define a different ordering, so we only know what's safe for the standard ones.
+            boolean bigDecimalEngine = ae.getClass() == ArithmeticEngine.BigDecimalEngine.class;
+            if (!bigDecimalEngine && ae.getClass() != ArithmeticEngine.ConservativeEngine.class) {
+                return keyComparator;
+            }
+
+            int ln = res.size();
+            Class keyClass = null;
+            boolean sameKeyClass = true;
+            for (int i = 0; i < ln; i++) {
+                Object key = ((KVP) res.get(i)).key;
+                if (key == null) {
+                    return keyComparator;
+                }
+                if (keyClass == null) {
+                    keyClass = key.getClass();
+                } else if (key.getClass() != keyClass) {
+                    sameKeyClass = false;
+                }
+            }
+            // For these types both standard engines give the natural ordering. (Not so for Double and Float, because
+            // of NaN and -0.)
+            if (sameKeyClass && (keyClass == Integer.class || keyClass == Long.class || keyClass == BigDecimal.class
+                    || keyClass == Short.class || keyClass == Byte.class)) {
+                return ComparableKVPComparator.INSTANCE;
+            }
+
+            if (!bigDecimalEngine) {
+                return keyComparator;
+            }
+            // BigDecimalEngine orders numbers as their BigDecimal equivalents, but it converts them again and again
+            // on each comparison when the types differ. Infinity and NaN can't be converted, so then we give up.
+            BigDecimal[] convertedKeys = new BigDecimal[ln];
+            for (int i = 0; i < ln; i++) {
+                try {
+                    convertedKeys[i] = ArithmeticEngine.toBigDecimal((Number) ((KVP) res.get(i)).key);
+                } catch (NumberFormatException e) {
+                    return keyComparator;
+                }
+            }
+            for (int i = 0; i < ln; i++) {
+                ((KVP) res.get(i)).key = convertedKeys[i];
+            }
+            return ComparableKVPComparator.INSTANCE;
+        }
+
         static Object[] startErrorMessage(int keyNamesLn) {
             return new Object[] { (keyNamesLn == 0 ? "?sort" : "?sort_by(...)"), " failed: " };
         }
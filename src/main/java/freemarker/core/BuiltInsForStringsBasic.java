@@ -40,6 +40,11 @@ import freemarker.template.utility.StringUtil;
 class BuiltInsForStringsBasic {
 
     static class cap_firstBI extends BuiltInForString {
+        @Override
+        boolean isEnvironmentIndependent() {
+            return true;
+        }
+
         @Override
         TemplateModel calculateResult(String s, Environment env) {
             int i = 0;
@@ -57,6 +62,11 @@ class BuiltInsForStringsBasic {
     }
 
     static class capitalizeBI extends BuiltInForString {
+        @Override
+        boolean isEnvironmentIndependent() {
+            return true;
+        }
+
         @Override
         TemplateModel calculateResult(String s, Environment env) {
             return new SimpleScalar(StringUtil.capitalize(s));
@@ -64,6 +74,11 @@ class BuiltInsForStringsBasic {
     }
 
     static class chop_linebreakBI extends BuiltInForString {
+        @Override
+        boolean isEnvironmentIndependent() {
+            return true;
+        }
+
         @Override
         TemplateModel calculateResult(String s, Environment env) {
             return new SimpleScalar(StringUtil.chomp(s));
@@ -412,7 +427,11 @@ class BuiltInsForStringsBasic {
     }
     
     static class lengthBI extends BuiltInForString {
-    
+        @Override
+        boolean isEnvironmentIndependent() {
+            return true;
+        }
+
         @Override
         TemplateModel calculateResult(String s, Environment env) throws TemplateException {
             return new SimpleNumber(s.length());
@@ -636,6 +655,11 @@ class BuiltInsForStringsBasic {
     }
 
     static class trimBI extends BuiltInForString {
+        @Override
+        boolean isEnvironmentIndependent() {
+            return true;
+        }
+
         @Override
         TemplateModel calculateResult(String s, Environment env) {
             return new SimpleScalar(s.trim());
@@ -778,6 +802,11 @@ class BuiltInsForStringsBasic {
     }
 
     static class uncap_firstBI extends BuiltInForString {
+        @Override
+        boolean isEnvironmentIndependent() {
+            return true;
+        }
+
         @Override
         TemplateModel calculateResult(String s, Environment env) {
             int i = 0;
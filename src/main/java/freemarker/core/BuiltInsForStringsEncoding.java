@@ -60,6 +60,11 @@ class BuiltInsForStringsEncoding {
     }
 
     static class j_stringBI extends BuiltInForString {
+        @Override
+        boolean isEnvironmentIndependent() {
+            return true;
+        }
+
         @Override
         TemplateModel calculateResult(String s, Environment env) {
             return new SimpleScalar(StringUtil.javaStringEnc(s));
@@ -67,6 +72,11 @@ class BuiltInsForStringsEncoding {
     }
 
     static class js_stringBI extends BuiltInForString {
+        @Override
+        boolean isEnvironmentIndependent() {
+            return true;
+        }
+
         @Override
         TemplateModel calculateResult(String s, Environment env) {
             return new SimpleScalar(StringUtil.javaScriptStringEnc(s));
@@ -74,6 +84,11 @@ class BuiltInsForStringsEncoding {
     }
 
     static class json_stringBI extends BuiltInForString {
+        @Override
+        boolean isEnvironmentIndependent() {
+            return true;
+        }
+
         @Override
         TemplateModel calculateResult(String s, Environment env) {
             return new SimpleScalar(StringUtil.jsonStringEnc(s));
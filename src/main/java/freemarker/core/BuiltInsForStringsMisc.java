@@ -21,6 +21,8 @@ package freemarker.core;
 
 import java.io.StringReader;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import freemarker.template.MalformedTemplateNameException;
 import freemarker.template.SimpleNumber;
@@ -56,19 +58,69 @@ class BuiltInsForStringsMisc {
 
     static class evalBI extends OutputFormatBoundBuiltIn {
         
+        /**
+         * The maximum number of parsed expressions cached per {@code ?eval} call place. When it's reached, new
+         * expressions won't be cached anymore, so that a call place that evaluates ever changing strings doesn't
+         * churn.
+         */
+        private static final int MAX_CACHED_EXPRESSIONS = 100;
+        
+        /**
+         * Longer strings aren't cached, to avoid holding large parsed structures in memory for the lifetime of the
+         * template.
+         */
+        private static final int MAX_CACHED_EXPRESSION_LENGTH = 10000;
+        
+        /**
+         * Maps the evaluated strings to their parsed form. It can be per call place, because the parsed form only
+         * depends on the parent template (and its parser configuration), and on the inherited output format, all of
+         * which are fixed for a call place.
+         */
+        private ConcurrentMap<String, Expression> expressionCache;
+        
+        @Override
+        void bindToOutputFormat(OutputFormat outputFormat, int autoEscapingPolicy) {
+            super.bindToOutputFormat(outputFormat, autoEscapingPolicy);
+            // Not initialized in the field declaration, as the prototype instances are cloned by the parser.
+            expressionCache = new ConcurrentHashMap<String, Expression>();
+        }
+        
         @Override
         protected TemplateModel calculateResult(Environment env) throws TemplateException {
             return calculateResult(BuiltInForString.getTargetString(target, env), env);
         }
         
         TemplateModel calculateResult(String s, Environment env) throws TemplateException {
+            Expression exp = expressionCache.get(s);
+            if (exp == null) {
+                exp = parse(s, env);
+                if (s.length() <= MAX_CACHED_EXPRESSION_LENGTH && expressionCache.size() < MAX_CACHED_EXPRESSIONS) {
+                    expressionCache.put(s, exp);
+                }
+            }
+            try {
+                return exp.eval(env);
+            } catch (TemplateException e) {
+                throw new _MiscTemplateException(e, this, env,
+                        "Failed to \"?", key, "\" string with this error:\n\n",
+                        _MessageUtil.EMBEDDED_MESSAGE_BEGIN,
+                        new _DelayedGetMessageWithoutStackTop(e),
+                        _MessageUtil.EMBEDDED_MESSAGE_END,
+                        "\n\nThe failing expression:");
+            }
+        }
+
+        private Expression parse(String s, Environment env) throws TemplateException {
             Template parentTemplate = getTemplate();
+            ParserConfiguration pCfg = parentTemplate.getParserConfiguration();
+            
+            Expression exp = JSONLiteralParser.parse(parentTemplate, pCfg, s);
+            if (exp != null) {
+                return exp;
+            }
             
-            Expression exp = null;
             try {
                 try {
-                    ParserConfiguration pCfg = parentTemplate.getParserConfiguration();
-                    
                     SimpleCharStream simpleCharStream = new SimpleCharStream(
                             new StringReader("(" + s + ")"),
                             RUNTIME_EVAL_LINE_DISPLACEMENT, 1,
@@ -87,7 +139,7 @@ class BuiltInsForStringsMisc {
                     FMParser parser = new FMParser(
                             parentTemplate, false, tkMan, pCfg);
                     
-                    exp = parser.Expression();
+                    return parser.Expression();
                 } catch (TokenMgrError e) {
                     throw e.toParseException(parentTemplate);
                 }
@@ -99,16 +151,6 @@ class BuiltInsForStringsMisc {
                         _MessageUtil.EMBEDDED_MESSAGE_END,
                         "\n\nThe failing expression:");
             }
-            try {
-                return exp.eval(env);
-            } catch (TemplateException e) {
-                throw new _MiscTemplateException(e, this, env,
-                        "Failed to \"?", key, "\" string with this error:\n\n",
-                        _MessageUtil.EMBEDDED_MESSAGE_BEGIN,
-                        new _DelayedGetMessageWithoutStackTop(e),
-                        _MessageUtil.EMBEDDED_MESSAGE_END,
-                        "\n\nThe failing expression:");
-            }
         }
         
     }
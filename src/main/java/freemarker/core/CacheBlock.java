@@ -0,0 +1,428 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+
+import freemarker.cache.CacheStorage;
+import freemarker.cache.ConcurrentCacheStorage;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template._TemplateAPI;
+import freemarker.template.utility.NullArgumentException;
+
+/**
+ * An instruction that caches the output of its nested content in the
+ * {@link Configuration#getFragmentCacheStorage() fragment cache}, and on later calls prints the cached output
+ * instead of executing the nested content again.
+ * 
+ * <p>The cache key is made of the call place, the value of the {@code key} parameter, and the current values of the
+ * settings that most commonly influence formatting: the locale, the time zones, and the number, date/time, and boolean
+ * formats. (Other settings the output depends on must be put into the {@code key} by the template author.) The
+ * call place is identified by the source name and last modification time of the template, and the position in it, so
+ * the keys don't keep the {@link Template} reachable, and the cached fragments survive reloading an unchanged template.
+ * (If the last modification time is unknown, an object specific to this element is used instead.) The output is
+ * cached as is, so it's already escaped according the auto-escaping in effect at the call place, and hence is printed
+ * without further escaping on a cache hit. On a cache hit only the output is reproduced; the side effects of the
+ * nested content (like variable assignments and imports) are not.
+ * 
+ * <p>When multiple threads miss the same key at the same time, only one of them renders the content, and the others
+ * wait for and reuse its result. But a thread that's already rendering a fragment never waits for others, as with
+ * nested {@code #cache}-s that could be a deadlock (like when two threads take the same keys in opposite order).
+ */
+final class CacheBlock extends TemplateElement {
+
+    private final Expression keyExp;
+    private final Expression ttlExp;
+    
+    /**
+     * The number of renderings the current thread coordinates (i.e., that others may wait for). If it's not 0, the
+     * thread must not wait for other renderings. 
+     */
+    private static final ThreadLocal<int[]> OWNED_RENDERING_COUNT = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    /** Identifies this call place if the template has no known last modification time. */
+    private final Object anonymousCallPlaceId = new Object();
+    /** Lazily initialized by {@link #getCallPlaceId()}; possibly initialized by multiple threads to equal values. */
+    private Object callPlaceId;
+    
+    /** The renderings of this block in progress, used to avoid rendering the same fragment in parallel. */
+    private final ConcurrentMap<FragmentKey, FragmentRendering> renderingsInProgress
+            = new ConcurrentHashMap<FragmentKey, FragmentRendering>();
+
+    CacheBlock(TemplateElements children, Expression keyExp, Expression ttlExp) {
+        this.keyExp = keyExp;
+        this.ttlExp = ttlExp;
+        setChildren(children);
+    }
+
+    @Override
+    TemplateElement[] accept(Environment env) throws TemplateException, IOException {
+        FragmentKey key = new FragmentKey(
+                getCallPlaceId(), keyExp != null ? keyExp.evalAndCoerceToPlainText(env) : null, env);
+        long ttlMillis = evalTtlMillis(env);
+        
+        Configuration cfg = env.getConfiguration();
+        CacheStorage storage = cfg.getFragmentCacheStorage();
+        CachedFragment cachedFragment = (CachedFragment) getFromStorage(storage, key);
+        if (cachedFragment != null && !cachedFragment.isExpired(System.currentTimeMillis())) {
+            env.getOut().write(cachedFragment.content);
+            return null;
+        }
+        
+        int[] ownedRenderingCount = OWNED_RENDERING_COUNT.get();
+        FragmentRendering rendering = new FragmentRendering();
+        FragmentRendering otherRendering = renderingsInProgress.putIfAbsent(key, rendering);
+        if (otherRendering != null) {
+            // If we are inside a rendering that others may wait for, we can't wait, as the other rendering might
+            // wait for us (directly, or through a chain of threads), or we were called recursively from it.
+            if (ownedRenderingCount[0] == 0) {
+                String content = otherRendering.awaitContent();
+                if (content != null) {
+                    env.getOut().write(content);
+                    return null;
+                }
+            }
+            // The other rendering has failed (or we can't wait for it), so we just render without coordination.
+            renderAndStore(env, storage, key, ttlMillis, null);
+            return null;
+        }
+        
+        ownedRenderingCount[0]++;
+        try {
+            renderAndStore(env, storage, key, ttlMillis, rendering);
+        } finally {
+            ownedRenderingCount[0]--;
+            renderingsInProgress.remove(key, rendering);
+            rendering.finish();
+        }
+        return null;
+    }
+    
+    private Object getCallPlaceId() {
+        Object callPlaceId = this.callPlaceId;
+        if (callPlaceId == null) {
+            Template template = getTemplate();
+            String sourceName = template.getSourceName();
+            long lastModified = _TemplateAPI.getLastModified(template);
+            callPlaceId = sourceName != null && lastModified != -1
+                    ? new CallPlaceId(sourceName, lastModified, beginLine, beginColumn)
+                    : anonymousCallPlaceId;
+            this.callPlaceId = callPlaceId;
+        }
+        return callPlaceId;
+    }
+
+    private void renderAndStore(
+            Environment env, CacheStorage storage, FragmentKey key, long ttlMillis, FragmentRendering rendering)
+            throws TemplateException, IOException {
+        TemplateElement[] childBuffer = getChildBuffer();
+        int handledErrorCountBefore = env.getHandledTemplateExceptionCount();
+        String content;
+        if (childBuffer != null) {
+            StringWriter out = new StringWriter();
+            try {
+                env.visit(childBuffer, out);
+            } finally {
+                // Even if the nested content was left with an exception (like with #return, or with an error inside
+                // #attempt), what was printed till that point must appear in the output, just as without #cache.
+                // But such incomplete output is never cached.
+                StringBuffer buf = out.getBuffer();
+                if (buf.length() != 0) {
+                    env.getOut().write(buf.toString());
+                }
+            }
+            content = out.toString();
+        } else {
+            content = "";
+        }
+        
+        if (env.getHandledTemplateExceptionCount() != handledErrorCountBefore) {
+            // An error was handled by the TemplateExceptionHandler (like IGNORE_HANDLER) without stopping the
+            // processing, so the output is possibly broken, or contains the error page. Other threads waiting for
+            // this rendering will render the content themselves.
+            return;
+        }
+        if (content.length() <= env.getConfiguration().getFragmentCacheMaxEntryLength()) {
+            long expiresAt = ttlMillis == Long.MAX_VALUE
+                    ? Long.MAX_VALUE : System.currentTimeMillis() + ttlMillis;
+            putToStorage(storage, key, new CachedFragment(content, expiresAt));
+        }
+        if (rendering != null) {
+            rendering.content = content;
+        }
+    }
+
+    /**
+     * @return The time to live in milliseconds, or {@link Long#MAX_VALUE} if the fragment never expires. 
+     */
+    private long evalTtlMillis(Environment env) throws TemplateException {
+        if (ttlExp == null) {
+            return Long.MAX_VALUE;
+        }
+        double ttlSeconds = ttlExp.evalToNumber(env).doubleValue();
+        if (ttlSeconds < 0 || Double.isNaN(ttlSeconds)) {
+            throw new _MiscTemplateException(ttlExp, env,
+                    "The \"ttl\" parameter of #cache must be a non-negative number (seconds), but it was ",
+                    new _DelayedToString(ttlSeconds), ".");
+        }
+        double ttlMillis = ttlSeconds * 1000;
+        return ttlMillis >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) ttlMillis;
+    }
+
+    private static Object getFromStorage(CacheStorage storage, Object key) {
+        if (isConcurrent(storage)) {
+            return storage.get(key);
+        }
+        synchronized (storage) {
+            return storage.get(key);
+        }
+    }
+
+    private static void putToStorage(CacheStorage storage, Object key, Object value) {
+        if (isConcurrent(storage)) {
+            storage.put(key, value);
+        } else {
+            synchronized (storage) {
+                storage.put(key, value);
+            }
+        }
+    }
+
+    private static boolean isConcurrent(CacheStorage storage) {
+        return storage instanceof ConcurrentCacheStorage && ((ConcurrentCacheStorage) storage).isConcurrent();
+    }
+
+    @Override
+    protected String dump(boolean canonical) {
+        StringBuilder sb = new StringBuilder();
+        if (canonical) sb.append('<');
+        sb.append(getNodeTypeSymbol());
+        if (keyExp != null) {
+            sb.append(" key=").append(keyExp.getCanonicalForm());
+        }
+        if (ttlExp != null) {
+            sb.append(" ttl=").append(ttlExp.getCanonicalForm());
+        }
+        if (canonical) {
+            sb.append('>');
+            sb.append(getChildrenCanonicalForm());
+            sb.append("</").append(getNodeTypeSymbol()).append('>');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    String getNodeTypeSymbol() {
+        return "#cache";
+    }
+
+    @Override
+    int getParameterCount() {
+        return 2;
+    }
+
+    @Override
+    Object getParameterValue(int idx) {
+        switch (idx) {
+        case 0: return keyExp;
+        case 1: return ttlExp;
+        default: throw new IndexOutOfBoundsException();
+        }
+    }
+
+    @Override
+    ParameterRole getParameterRole(int idx) {
+        switch (idx) {
+        case 0: return ParameterRole.KEY_PARAMETER;
+        case 1: return ParameterRole.TTL_PARAMETER;
+        default: throw new IndexOutOfBoundsException();
+        }
+    }
+
+    @Override
+    boolean isNestedBlockRepeater() {
+        return false;
+    }
+    
+    /**
+     * Identifies the call place without referring to the {@link Template}. It's only used if the last modification
+     * time of the template is known, so that a changed template doesn't get the output cached for the old one. 
+     */
+    private static final class CallPlaceId {
+        
+        private final String templateSourceName;
+        private final long templateLastModified;
+        private final int line;
+        private final int column;
+        
+        CallPlaceId(String templateSourceName, long templateLastModified, int line, int column) {
+            this.templateSourceName = templateSourceName;
+            this.templateLastModified = templateLastModified;
+            this.line = line;
+            this.column = column;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = templateSourceName.hashCode();
+            result = 31 * result + (int) (templateLastModified ^ (templateLastModified >>> 32));
+            result = 31 * result + line;
+            result = 31 * result + column;
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof CallPlaceId)) return false;
+            CallPlaceId other = (CallPlaceId) obj;
+            return templateSourceName.equals(other.templateSourceName)
+                    && templateLastModified == other.templateLastModified
+                    && line == other.line && column == other.column;
+        }
+        
+    }
+    
+    private static final class FragmentKey {
+        
+        /** A {@link CallPlaceId}, or a plain {@link Object} that's only equal to itself. */
+        private final Object callPlaceId;
+        private final String key;
+        private final Locale locale;
+        private final TimeZone timeZone;
+        private final TimeZone sqlDateAndTimeTimeZone;
+        private final String numberFormat;
+        private final String dateFormat;
+        private final String timeFormat;
+        private final String dateTimeFormat;
+        private final String booleanFormat;
+        
+        FragmentKey(Object callPlaceId, String key, Environment env) {
+            NullArgumentException.check(callPlaceId);
+            this.callPlaceId = callPlaceId;
+            this.key = key;
+            this.locale = env.getLocale();
+            this.timeZone = env.getTimeZone();
+            this.sqlDateAndTimeTimeZone = env.getSQLDateAndTimeTimeZone();
+            this.numberFormat = env.getNumberFormat();
+            this.dateFormat = env.getDateFormat();
+            this.timeFormat = env.getTimeFormat();
+            this.dateTimeFormat = env.getDateTimeFormat();
+            this.booleanFormat = env.getBooleanFormat();
+        }
+
+        @Override
+        public int hashCode() {
+            int result = callPlaceId.hashCode();
+            result = 31 * result + hashCodeOf(key);
+            result = 31 * result + hashCodeOf(locale);
+            result = 31 * result + hashCodeOf(timeZone);
+            result = 31 * result + hashCodeOf(sqlDateAndTimeTimeZone);
+            result = 31 * result + hashCodeOf(numberFormat);
+            result = 31 * result + hashCodeOf(dateFormat);
+            result = 31 * result + hashCodeOf(timeFormat);
+            result = 31 * result + hashCodeOf(dateTimeFormat);
+            result = 31 * result + hashCodeOf(booleanFormat);
+            return result;
+        }
+        
+        private static int hashCodeOf(Object o) {
+            return o != null ? o.hashCode() : 0;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof FragmentKey)) return false;
+            FragmentKey other = (FragmentKey) obj;
+            return callPlaceId.equals(other.callPlaceId)
+                    && equal(key, other.key)
+                    && equal(locale, other.locale)
+                    && equal(timeZone, other.timeZone)
+                    && equal(sqlDateAndTimeTimeZone, other.sqlDateAndTimeTimeZone)
+                    && equal(numberFormat, other.numberFormat)
+                    && equal(dateFormat, other.dateFormat)
+                    && equal(timeFormat, other.timeFormat)
+                    && equal(dateTimeFormat, other.dateTimeFormat)
+                    && equal(booleanFormat, other.booleanFormat);
+        }
+        
+        private static boolean equal(Object o1, Object o2) {
+            return o1 == null ? o2 == null : o1.equals(o2);
+        }
+        
+    }
+    
+    private static final class CachedFragment {
+        
+        private final String content;
+        private final long expiresAt;
+
+        CachedFragment(String content, long expiresAt) {
+            this.content = content;
+            this.expiresAt = expiresAt;
+        }
+        
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+        
+    }
+    
+    private static final class FragmentRendering {
+        
+        private final CountDownLatch done = new CountDownLatch(1);
+        /** Only set if the rendering was successful; visibility is ensured by the {@link CountDownLatch}. */
+        private String content;
+        
+        void finish() {
+            done.countDown();
+        }
+        
+        /**
+         * @return The rendered content, or {@code null} if the rendering has failed, or the thread was interrupted.
+         */
+        String awaitContent() {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            return content;
+        }
+        
+    }
+
+}
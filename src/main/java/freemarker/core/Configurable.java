@@ -552,6 +552,51 @@ public class Configurable {
         this.parent = parent;
     }
     
+    /**
+     * Restores the state that {@link #Configurable(Configurable)} has left behind, that is, all settings will be
+     * inherited from the parent again, and there will be no custom attributes. Used when an {@link Environment} is
+     * reused. If you add a new setting, you must reset it here too.
+     */
+    void resetToInheritedSettings() {
+        properties.clear(); // Keeps the parent's properties as defaults
+        customAttributes.clear();
+        
+        locale = null;
+        numberFormat = null;
+        timeFormat = null;
+        dateFormat = null;
+        dateTimeFormat = null;
+        timeZone = null;
+        sqlDataAndTimeTimeZone = null;
+        sqlDataAndTimeTimeZoneSet = false;
+        booleanFormat = null;
+        trueStringValue = null;
+        falseStringValue = null;
+        classicCompatible = null;
+        templateExceptionHandler = null;
+        attemptExceptionReporter = null;
+        arithmeticEngine = null;
+        objectWrapper = null;
+        outputEncoding = null;
+        outputEncodingSet = false;
+        urlEscapingCharset = null;
+        urlEscapingCharsetSet = false;
+        autoFlush = null;
+        showErrorTips = null;
+        newBuiltinClassResolver = null;
+        apiBuiltinEnabled = null;
+        truncateBuiltinAlgorithm = null;
+        logTemplateExceptions = null;
+        wrapUncheckedExceptions = null;
+        customDateFormats = null;
+        customNumberFormats = null;
+        autoImports = null;
+        autoIncludes = null;
+        lazyImports = null;
+        lazyAutoImports = null;
+        lazyAutoImportsSet = false;
+    }
+    
     /**
      * Toggles the "Classic Compatible" mode. For a comprehensive description
      * of this mode, see {@link #isClassicCompatible()}.
@@ -2214,7 +2259,7 @@ public class Configurable {
      *       expression</a>.
      *       If the value does not contain dot,
      *       then it must be one of these special values (case insensitive):
-     *       {@code "bigdecimal"}, {@code "conservative"}.
+     *       {@code "bigdecimal"}, {@code "conservative"}, {@code "integer_fast_path"} (since 2.3.30).
      *       
      *   <li><p>{@code "object_wrapper"}:
      *       See {@link #setObjectWrapper(ObjectWrapper)}.
@@ -2475,6 +2520,24 @@ public class Configurable {
      *       {@code "t"}, {@code "f"}, {@code "y"}, {@code "n"}).
      *       Case insensitive.
      *
+     *   <li><p>{@code "compact_templates"}:
+     *       See {@link Configuration#setCompactTemplates(boolean)}.
+     *       <br>String value: {@code "true"}, {@code "false"} (also the equivalents: {@code "yes"}, {@code "no"},
+     *       {@code "t"}, {@code "f"}, {@code "y"}, {@code "n"}).
+     *       Case insensitive.
+     *
+     *   <li><p>{@code "compress_output"}:
+     *       See {@link Configuration#setCompressOutput(boolean)}.
+     *       <br>String value: {@code "true"}, {@code "false"} (also the equivalents: {@code "yes"}, {@code "no"},
+     *       {@code "t"}, {@code "f"}, {@code "y"}, {@code "n"}).
+     *       Case insensitive.
+     *
+     *   <li><p>{@code "data_model_lookup_caching"}:
+     *       See {@link Configuration#setDataModelLookupCaching(boolean)}.
+     *       <br>String value: {@code "true"}, {@code "false"} (also the equivalents: {@code "yes"}, {@code "no"},
+     *       {@code "t"}, {@code "f"}, {@code "y"}, {@code "n"}).
+     *       Case insensitive.
+     *
      *   <li><p>{@code "incompatible_improvements"}:
      *       See {@link Configuration#setIncompatibleImprovements(Version)}.
      *       <br>String value: version number like {@code 2.3.20}.
@@ -2498,6 +2561,10 @@ public class Configurable {
      *       <br>String value: {@code "default"} (case insensitive) for the default, or else interpreted as an
      *       <a href="#fm_obe">object builder expression</a>. {@code "null"} is also allowed since 2.3.26.
      *       
+     *   <li><p>{@code "template_lookup_miss_cache_size"}:
+     *       See: {@link Configuration#setTemplateLookupMissCacheSize(int)}.
+     *       <br>String value: non-negative integer.
+     *       
      *   <li><p>{@code "template_lookup_strategy"}:
      *       See: {@link Configuration#setTemplateLookupStrategy(freemarker.cache.TemplateLookupStrategy)}.
      *       <br>String value: {@code "default"} (case insensitive) for the default, or else interpreted as an
@@ -2712,6 +2779,9 @@ public class Configurable {
                         setArithmeticEngine(ArithmeticEngine.BIGDECIMAL_ENGINE);
                     } else if ("conservative".equalsIgnoreCase(value)) {
                         setArithmeticEngine(ArithmeticEngine.CONSERVATIVE_ENGINE);
+                    } else if ("integer_fast_path".equalsIgnoreCase(value)
+                            || "integerFastPath".equals(value)) {
+                        setArithmeticEngine(ArithmeticEngine.INTEGER_FAST_PATH_ENGINE);
                     } else {
                         throw invalidSettingValueException(name, value);
                     }
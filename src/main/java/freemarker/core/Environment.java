@@ -30,6 +30,7 @@ import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -58,6 +59,7 @@ import freemarker.template.TemplateCollectionModel;
 import freemarker.template.TemplateDateModel;
 import freemarker.template.TemplateDirectiveBody;
 import freemarker.template.TemplateDirectiveModel;
+import freemarker.template.TemplateFutureModel;
 import freemarker.template.TemplateException;
 import freemarker.template.TemplateExceptionHandler;
 import freemarker.template.TemplateHashModel;
@@ -76,6 +78,7 @@ import freemarker.template._TemplateAPI;
 import freemarker.template.utility.DateUtil;
 import freemarker.template.utility.DateUtil.DateToISO8601CalendarFactory;
 import freemarker.template.utility.NullWriter;
+import freemarker.template.utility.StandardCompress;
 import freemarker.template.utility.StringUtil;
 import freemarker.template.utility.TemplateModelUtils;
 import freemarker.template.utility.UndeclaredThrowableException;
@@ -115,7 +118,13 @@ public final class Environment extends Configurable {
 
     private final Configuration configuration;
     private final boolean incompatibleImprovementsGE2328;
-    private final TemplateHashModel rootDataModel;
+    private TemplateHashModel rootDataModel;
+    /**
+     * Caches the results of {@link #getDataModelOrSharedVariable(String)}, with {@link TemplateNullModel#INSTANCE}
+     * standing for missing variables; {@code null} if {@link Configuration#getDataModelLookupCaching()} is
+     * {@code false}.
+     */
+    private final HashMap<String, TemplateModel> dataModelLookupCache;
     private TemplateElement[] instructionStack = new TemplateElement[16];
     private int instructionStackSize = 0;
     private final ArrayList recoveredErrorStack = new ArrayList();
@@ -165,13 +174,15 @@ public final class Environment extends Configurable {
     private Writer out;
     private Macro.Context currentMacroContext;
     private LocalContextStack localContextStack;
-    private final Namespace mainNamespace;
+    private Namespace mainNamespace;
     private Namespace currentNamespace, globalNamespace;
     private HashMap<String, Namespace> loadedLibs;
     private Configurable legacyParent;
 
     private boolean inAttemptBlock;
     private Throwable lastThrowable;
+    /** The number of errors that the {@link TemplateExceptionHandler} has handled without rethrowing them. */
+    private int handledTemplateExceptionCount;
 
     private TemplateModel lastReturnValue;
     private Map<Object, Namespace> macroToNamespaceLookup = new IdentityHashMap<Object, Namespace>();
@@ -186,6 +197,8 @@ public final class Environment extends Configurable {
     private boolean cachedURLEscapingCharsetSet;
 
     private boolean fastInvalidReferenceExceptions;
+    
+    private boolean processing;
 
     /**
      * Retrieves the environment object associated with the current thread, or {@code null} if there's no template
@@ -209,6 +222,8 @@ public final class Environment extends Configurable {
         this.currentNamespace = mainNamespace = new Namespace(template);
         this.out = out;
         this.rootDataModel = rootDataModel;
+        this.dataModelLookupCache = configuration.getDataModelLookupCaching()
+                ? new HashMap<String, TemplateModel>() : null;
         importMacros(template);
     }
 
@@ -284,6 +299,90 @@ public final class Environment extends Configurable {
         return null;
     }
 
+    /**
+     * Prepares this {@link Environment} for processing its main template again, with another data-model and output,
+     * as if it was newly created with {@link #Environment(Template, TemplateHashModel, Writer)}. This avoids creating
+     * a new {@link Environment} and its internal data structures for each processing, which can matter when small
+     * templates are processed at a high rate. The typical way of using this is keeping an {@link Environment} per
+     * thread (or per other caller owned context) for the frequently used templates, and using
+     * {@link Template#resetProcessingEnvironment(Environment, Object, Writer, ObjectWrapper)} instead of
+     * {@link Template#createProcessingEnvironment(Object, Writer, ObjectWrapper)} after the first processing.
+     * 
+     * <p>
+     * All state left behind by the earlier processing is dropped, including the settings changed via the
+     * {@link Environment} (like with {@code #setting}), the custom attributes, the custom state variables, the global
+     * and main namespace variables, and the imported libraries. However, {@link TemplateModel}-s and other objects that
+     * the earlier processing has created and are still referred from somewhere (like a namespace returned by
+     * {@link #getMainNamespace()}) shouldn't be used after this method was called, as they may belong to this
+     * {@link Environment}.
+     * 
+     * <p>
+     * This method must not be called while this {@link Environment} is processing a template, and the
+     * {@link Environment} must not be used by multiple threads concurrently.
+     * 
+     * @param rootDataModel
+     *            The data-model, similarly as for {@link #Environment(Template, TemplateHashModel, Writer)}.
+     * @param out
+     *            The output, similarly as for {@link #Environment(Template, TemplateHashModel, Writer)}.
+     * 
+     * @throws IllegalStateException
+     *             If this {@link Environment} is processing a template at the moment.
+     * 
+     * @since 2.3.30
+     */
+    public void reset(TemplateHashModel rootDataModel, Writer out) {
+        if (processing) {
+            throw new IllegalStateException("Can't reset the Environment while it's processing a template.");
+        }
+        
+        resetToInheritedSettings();
+        
+        this.rootDataModel = rootDataModel;
+        this.out = out;
+        
+        if (dataModelLookupCache != null) {
+            dataModelLookupCache.clear();
+        }
+        Arrays.fill(instructionStack, null);
+        instructionStackSize = 0;
+        recoveredErrorStack.clear();
+        
+        clearCachedValues();
+        cachedSQLDateAndTimeTimeZoneSameAsNormal = null;
+        // cNumberFormat and isoBuiltInCalendarFactory don't depend on the settings, so they are kept.
+        
+        currentMacroContext = null;
+        if (localContextStack != null && localContextStack.size() != 0) {
+            localContextStack = null;
+        }
+        // The namespaces are possibly referred from outside, so we don't clear them in place.
+        Template template = getMainTemplate();
+        globalNamespace = new Namespace(null);
+        currentNamespace = mainNamespace = new Namespace(template);
+        if (loadedLibs != null) {
+            loadedLibs.clear();
+        }
+        legacyParent = null;
+        
+        inAttemptBlock = false;
+        lastThrowable = null;
+        lastReturnValue = null;
+        macroToNamespaceLookup.clear();
+        
+        currentVisitorNode = null;
+        nodeNamespaces = null;
+        nodeNamespaceIndex = 0;
+        currentNodeName = null;
+        currentNodeNS = null;
+        
+        fastInvalidReferenceExceptions = false;
+        if (customStateVariables != null) {
+            customStateVariables.clear();
+        }
+        
+        importMacros(template);
+    }
+
     /**
      * Deletes cached values that meant to be valid only during a single template execution.
      */
@@ -305,12 +404,32 @@ public final class Environment extends Configurable {
     public void process() throws TemplateException, IOException {
         Object savedEnv = threadEnv.get();
         threadEnv.set(this);
+        boolean prevProcessing = processing;
+        processing = true;
+        TemplateSamplingProfiler samplingProfiler = configuration.getTemplateSamplingProfiler();
+        if (samplingProfiler != null) {
+            samplingProfiler.register(this);
+        }
         try {
             // Cached values from a previous execution are possibly outdated.
             clearCachedValues();
+            Writer prevOut = out;
+            Writer compressWriter = configuration.getCompressOutput()
+                    ? StandardCompress.INSTANCE.getWriter(out, null) : null;
             try {
-                doAutoImportsAndIncludes(this);
-                visit(getTemplate().getRootTreeNode());
+                if (compressWriter != null) {
+                    out = compressWriter;
+                }
+                try {
+                    doAutoImportsAndIncludes(this);
+                    visit(getTemplate().getRootTreeNode());
+                } finally {
+                    if (compressWriter != null) {
+                        out = prevOut;
+                        // Like at #compress, what was output before an exception is still written out.
+                        compressWriter.close();
+                    }
+                }
                 // It's here as we must not flush if there was an exception.
                 if (getAutoFlush()) {
                     out.flush();
@@ -320,10 +439,31 @@ public final class Environment extends Configurable {
                 clearCachedValues();
             }
         } finally {
+            if (samplingProfiler != null) {
+                samplingProfiler.unregister(this);
+            }
+            processing = prevProcessing;
             threadEnv.set(savedEnv);
         }
     }
 
+    /**
+     * Returns the value of a {@link TemplateFutureModel}; if it's not yet available, and {@link #getAutoFlush()} is
+     * {@code true}, it flushes the output before starting to wait, so that what was already rendered can reach the
+     * client meanwhile.
+     */
+    TemplateModel resolveFutureModel(TemplateFutureModel futureModel) throws TemplateModelException {
+        if (!futureModel.isDone() && getAutoFlush()) {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                throw new _TemplateModelException(e,
+                        "Failed to flush the output before waiting for a value that's still being computed.");
+            }
+        }
+        return futureModel.get();
+    }
+
     /**
      * "Visit" the template element.
      */
@@ -592,6 +732,14 @@ public final class Environment extends Configurable {
         return inAttemptBlock;
     }
 
+    /**
+     * The number of errors so far that the {@link TemplateExceptionHandler} has handled without throwing an exception,
+     * and so the processing has continued after them. Used to tell if some output was produced despite an error. 
+     */
+    int getHandledTemplateExceptionCount() {
+        return handledTemplateExceptionCount;
+    }
+
     /**
      * Used for {@code #nested}.
      */
@@ -1172,11 +1320,25 @@ public final class Environment extends Configurable {
         if (children == null) {
             return;
         }
-        int size = children.size();
-        for (int i = 0; i < size; i++) {
-            TemplateNodeModel child = (TemplateNodeModel) children.get(i);
-            if (child != null) {
-                invokeNodeHandlerFor(child, namespaces);
+        if (children instanceof TemplateCollectionModel) {
+            // Allows forward-only child node lists (like with streamed XML), where size() is unknown in advance.
+            TemplateModelIterator it = ((TemplateCollectionModel) children).iterator();
+            while (it.hasNext()) {
+                TemplateNodeModel child = (TemplateNodeModel) it.next();
+                if (child != null) {
+                    invokeNodeHandlerFor(child, namespaces);
+                }
+                if (it instanceof _ForwardOnlyTemplateModelIterator) {
+                    ((_ForwardOnlyTemplateModelIterator) it).releaseLastItem();
+                }
+            }
+        } else {
+            int size = children.size();
+            for (int i = 0; i < size; i++) {
+                TemplateNodeModel child = (TemplateNodeModel) children.get(i);
+                if (child != null) {
+                    invokeNodeHandlerFor(child, namespaces);
+                }
             }
         }
     }
@@ -1214,6 +1376,7 @@ public final class Environment extends Configurable {
     
             // Finally, pass the exception to the handler
             getTemplateExceptionHandler().handleTemplateException(templateException, this, out);
+            handledTemplateExceptionCount++;
         } catch (TemplateException e) {
             // Note that if the TemplateExceptionHandler doesn't rethrow the exception, we don't get in there.
             if (isInAttemptBlock()) {
@@ -2299,17 +2462,30 @@ public final class Environment extends Configurable {
 
     /**
      * Returns the variable from the data-model, or if it's not there, then from the
-     * {@linkplain Configuration#setSharedVariables(Map)} shared variables}
+     * {@linkplain Configuration#setSharedVariables(Map)} shared variables}. If
+     * {@link Configuration#setDataModelLookupCaching(boolean)} was set to {@code true}, the result (even if it's
+     * {@code null}) is reused when the same variable is requested again during this processing.
      *
      * @since 2.3.30
      */
     public TemplateModel getDataModelOrSharedVariable(String name) throws TemplateModelException {
-        TemplateModel dataModelVal = rootDataModel.get(name);
-        if (dataModelVal != null) {
-            return dataModelVal;
+        final HashMap<String, TemplateModel> dataModelLookupCache = this.dataModelLookupCache;
+        if (dataModelLookupCache != null) {
+            TemplateModel cachedVal = dataModelLookupCache.get(name);
+            if (cachedVal != null) {
+                return cachedVal != TemplateNullModel.INSTANCE ? cachedVal : null;
+            }
         }
 
-        return configuration.getSharedVariable(name);
+        TemplateModel result = rootDataModel.get(name);
+        if (result == null) {
+            result = configuration.getSharedVariable(name);
+        }
+
+        if (dataModelLookupCache != null) {
+            dataModelLookupCache.put(name, result != null ? result : TemplateNullModel.INSTANCE);
+        }
+        return result;
     }
 
     /**
@@ -2515,6 +2691,31 @@ public final class Environment extends Configurable {
         return result;
     }
 
+    /**
+     * Similar to {@link #getInstructionStackSnapshot()}, but it's called from the thread of
+     * {@link TemplateSamplingProfiler}, not from the thread that processes the template. As there's no synchronization
+     * with the processing thread, the result might be slightly outdated or inconsistent, which is acceptable for
+     * sampling. Unlike {@link #getInstructionStackSnapshot()}, this contains all elements (not only those that are
+     * {@link TemplateElement#isShownInStackTrace()}), and the outermost element is the first.
+     * 
+     * @return Not {@code null}, but maybe an empty array
+     * 
+     * @since 2.3.30
+     */
+    TemplateElement[] getInstructionStackSnapshotForSampling() {
+        final TemplateElement[] instructionStack = this.instructionStack;
+        final int ln = Math.min(instructionStackSize, instructionStack.length);
+        
+        final List<TemplateElement> result = new ArrayList<TemplateElement>(ln);
+        for (int i = 0; i < ln; i++) {
+            TemplateElement stackEl = instructionStack[i];
+            if (stackEl != null) {
+                result.add(stackEl);
+            }
+        }
+        return result.toArray(new TemplateElement[result.size()]);
+    }
+
     static String instructionStackItemToString(TemplateElement stackEl) {
         StringBuilder sb = new StringBuilder();
         appendInstructionStackItem(stackEl, sb);
@@ -2634,8 +2835,7 @@ public final class Environment extends Configurable {
                 }
 
                 public TemplateModel get(String key) throws TemplateModelException {
-                    TemplateModel value = rootDataModel.get(key);
-                    return value != null ? value : configuration.getSharedVariable(key);
+                    return getDataModelOrSharedVariable(key);
                 }
             };
     }
@@ -2653,14 +2853,7 @@ public final class Environment extends Configurable {
             }
 
             public TemplateModel get(String key) throws TemplateModelException {
-                TemplateModel result = globalNamespace.get(key);
-                if (result == null) {
-                    result = rootDataModel.get(key);
-                }
-                if (result == null) {
-                    result = configuration.getSharedVariable(key);
-                }
-                return result;
+                return getGlobalVariable(key);
             }
         };
     }
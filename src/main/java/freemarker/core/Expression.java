@@ -26,6 +26,7 @@ import freemarker.template.TemplateBooleanModel;
 import freemarker.template.TemplateCollectionModel;
 import freemarker.template.TemplateDateModel;
 import freemarker.template.TemplateException;
+import freemarker.template.TemplateFutureModel;
 import freemarker.template.TemplateHashModel;
 import freemarker.template.TemplateModel;
 import freemarker.template.TemplateModelException;
@@ -98,7 +99,10 @@ abstract public class Expression extends TemplateObject {
     
     final TemplateModel eval(Environment env) throws TemplateException {
         try {
-            return constantValue != null ? constantValue : _eval(env);
+            TemplateModel result = constantValue != null ? constantValue : _eval(env);
+            return result instanceof TemplateFutureModel
+                    ? resolveFutureModel((TemplateFutureModel) result, env)
+                    : result;
         } catch (FlowControlException e) {
             throw e;
         } catch (TemplateException e) {
@@ -115,6 +119,11 @@ abstract public class Expression extends TemplateObject {
         }
     }
     
+    private static TemplateModel resolveFutureModel(TemplateFutureModel futureModel, Environment env)
+            throws TemplateModelException {
+        return env != null ? env.resolveFutureModel(futureModel) : futureModel.get();
+    }
+
     String evalAndCoerceToPlainText(Environment env) throws TemplateException {
         return EvalUtil.coerceModelToPlainText(eval(env), this, null, env);
     }
@@ -193,6 +193,15 @@ final class Include extends TemplateElement {
         return buf.toString();
     }
 
+    /**
+     * Returns the included template name as written in the template (so possibly relative), or {@code null} if it's
+     * not a literal.
+     */
+    String getLiteralTemplateName() {
+        return includedTemplateNameExp instanceof StringLiteral && includedTemplateNameExp.isLiteral()
+                ? ((StringLiteral) includedTemplateNameExp).getAsString() : null;
+    }
+
     @Override
     String getNodeTypeSymbol() {
         return "#include";
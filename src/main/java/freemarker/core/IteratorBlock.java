@@ -24,7 +24,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 
-import freemarker.template.SimpleNumber;
 import freemarker.template.TemplateBooleanModel;
 import freemarker.template.TemplateCollectionModel;
 import freemarker.template.TemplateException;
@@ -201,6 +200,7 @@ final class IteratorBlock extends TemplateElement {
         private int index;
         private boolean alreadyEntered;
         private Collection<String> localVarNames = null;
+        private TemplateModel itemCycleMethod;
         
         /**
          * The name of the 1st loop variable.
@@ -313,8 +313,15 @@ final class IteratorBlock extends TemplateElement {
                 listNotEmpty = size != 0;
                 if (listNotEmpty) {
                     if (loopVar1Name != null) {
+                            // Numerical ranges are common, and their items are easily calculated without get(int):
+                            final boolean isRange = seqModel instanceof RangeModel;
+                            final int rangeBegin = isRange ? ((RangeModel) seqModel).getBegining() : 0;
+                            final int rangeStep = isRange ? ((RangeModel) seqModel).getStep() : 0;
                             listLoop: for (index = 0; index < size; index++) {
-                                loopVar1Value = seqModel.get(index);
+                                // A listed range is bounded, so its items are in the int range.
+                                loopVar1Value = isRange
+                                        ? SmallIntegerModels.valueOf(rangeBegin + rangeStep * index)
+                                        : seqModel.get(index);
                                 hasNext = (size > index + 1);
                                 try {
                                     visibleLoopVar1Name = loopVar1Name; // Makes all loop variables visible in FTL
@@ -467,7 +474,7 @@ final class IteratorBlock extends TemplateElement {
                                         ? null : TemplateNullModel.INSTANCE;
                     case 6: 
                         if (name.endsWith(LOOP_STATE_INDEX)) {
-                            return new SimpleNumber(index);
+                            return SmallIntegerModels.valueOf(index);
                         }
                         break;
                     case 9: 
@@ -510,6 +517,17 @@ final class IteratorBlock extends TemplateElement {
             return index;
         }
         
+        /**
+         * The value of {@code ?item_cycle} for this listing, or {@code null} if it wasn't created yet.
+         */
+        TemplateModel getItemCycleMethod() {
+            return itemCycleMethod;
+        }
+
+        void setItemCycleMethod(TemplateModel itemCycleMethod) {
+            this.itemCycleMethod = itemCycleMethod;
+        }
+        
     }
     
 }
@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import java.util.ArrayList;
+
+import freemarker.template.Template;
+import freemarker.template.utility.StringUtil;
+
+/**
+ * Builds the AST of a JSON array or object literal directly, without using {@link FMParser}; used by {@code ?eval}.
+ * As JSON is mostly a subset of the FTL expression language, the result is the same as what {@link FMParser} would
+ * produce. Where the two languages differ (like {@code null}, exponents in numbers, JSON-only escapes, or
+ * interpolations in FTL string literals), or the input is not valid JSON, the parsing gives up, and the caller has to
+ * fall back to {@link FMParser}, so the semantics is exactly as of FTL.
+ * 
+ * <p>
+ * As the nodes produced can't fail during evaluation, they all simply get the location of the whole evaluated string.
+ */
+final class JSONLiteralParser {
+
+    private final Template template;
+    private final ParserConfiguration pCfg;
+    private final String src;
+    private final int ln;
+    private int pos;
+
+    private JSONLiteralParser(Template template, ParserConfiguration pCfg, String src) {
+        this.template = template;
+        this.pCfg = pCfg;
+        this.src = src;
+        this.ln = src.length();
+    }
+
+    /**
+     * @return The expression, or {@code null} if {@code src} is not a JSON array or object literal, or it uses
+     *         something where JSON and FTL differ.
+     */
+    static Expression parse(Template template, ParserConfiguration pCfg, String src) {
+        JSONLiteralParser parser = new JSONLiteralParser(template, pCfg, src);
+        parser.skipWS();
+        if (parser.pos == parser.ln) {
+            return null;
+        }
+        char c = src.charAt(parser.pos);
+        if (c != '{' && c != '[') {
+            return null;
+        }
+        Expression result = parser.parseValue();
+        if (result == null) {
+            return null;
+        }
+        parser.skipWS();
+        return parser.pos == parser.ln ? result : null;
+    }
+
+    private Expression parseValue() {
+        skipWS();
+        if (pos == ln) {
+            return null;
+        }
+        char c = src.charAt(pos);
+        switch (c) {
+        case '{':
+            return parseObject();
+        case '[':
+            return parseArray();
+        case '"':
+            return parseString();
+        case 't':
+            return parseBoolean("true", true);
+        case 'f':
+            return parseBoolean("false", false);
+        default:
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                return parseNumber();
+            }
+            return null;
+        }
+    }
+
+    private Expression parseObject() {
+        pos++; // Skip '{'
+        ArrayList<Expression> keys = new ArrayList<Expression>();
+        ArrayList<Expression> values = new ArrayList<Expression>();
+        skipWS();
+        if (!skipChar('}')) {
+            do {
+                skipWS();
+                if (pos == ln || src.charAt(pos) != '"') {
+                    return null;
+                }
+                Expression key = parseString();
+                if (key == null) {
+                    return null;
+                }
+                skipWS();
+                if (!skipChar(':')) {
+                    return null;
+                }
+                Expression value = parseValue();
+                if (value == null) {
+                    return null;
+                }
+                keys.add(key);
+                values.add(value);
+                skipWS();
+            } while (skipChar(','));
+            if (!skipChar('}')) {
+                return null;
+            }
+        }
+        keys.trimToSize();
+        values.trimToSize();
+        return setLocation(new HashLiteral(keys, values));
+    }
+
+    private Expression parseArray() {
+        pos++; // Skip '['
+        ArrayList<Expression> items = new ArrayList<Expression>();
+        skipWS();
+        if (!skipChar(']')) {
+            do {
+                Expression item = parseValue();
+                if (item == null) {
+                    return null;
+                }
+                items.add(item);
+                skipWS();
+            } while (skipChar(','));
+            if (!skipChar(']')) {
+                return null;
+            }
+        }
+        return setLocation(new ListLiteral(items));
+    }
+
+    private Expression parseString() {
+        int start = ++pos; // Skip '"'
+        boolean hasEscapes = false;
+        while (pos < ln) {
+            char c = src.charAt(pos);
+            if (c == '"') {
+                String s = src.substring(start, pos);
+                pos++;
+                if (s.indexOf("${") != -1 || s.indexOf("#{") != -1 || s.indexOf("[=") != -1) {
+                    // Might be an interpolation in FTL, depending on the interpolation_syntax setting.
+                    return null;
+                }
+                if (hasEscapes) {
+                    try {
+                        s = StringUtil.FTLStringLiteralDec(s);
+                    } catch (ParseException e) {
+                        return null;
+                    }
+                }
+                return setLocation(new StringLiteral(s));
+            } else if (c == '\\') {
+                hasEscapes = true;
+                if (pos + 1 < ln) {
+                    char escaped = src.charAt(pos + 1);
+                    if (escaped == 'u' || escaped == '/') {
+                        // JSON-only escapes
+                        return null;
+                    }
+                }
+                pos += 2;
+            } else if (c < 0x20) {
+                return null;
+            } else {
+                pos++;
+            }
+        }
+        return null;
+    }
+
+    private Expression parseNumber() {
+        boolean negative = skipChar('-');
+        int start = pos;
+        if (!skipDigits()) {
+            return null;
+        }
+        if (skipChar('.') && !skipDigits()) {
+            return null;
+        }
+        if (pos < ln) {
+            char c = src.charAt(pos);
+            if (c == 'e' || c == 'E' || Character.isLetterOrDigit(c) || c == '.') {
+                return null;
+            }
+        }
+        Expression result = setLocation(
+                new NumberLiteral(pCfg.getArithmeticEngine().toNumber(src.substring(start, pos))));
+        return negative ? setLocation(new UnaryPlusMinusExpression(result, true)) : result;
+    }
+
+    private Expression parseBoolean(String keyword, boolean value) {
+        if (!src.startsWith(keyword, pos)) {
+            return null;
+        }
+        pos += keyword.length();
+        if (pos < ln && Character.isJavaIdentifierPart(src.charAt(pos))) {
+            return null;
+        }
+        return setLocation(new BooleanLiteral(value));
+    }
+
+    private boolean skipDigits() {
+        int start = pos;
+        while (pos < ln) {
+            char c = src.charAt(pos);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            pos++;
+        }
+        return pos != start;
+    }
+
+    private boolean skipChar(char c) {
+        if (pos < ln && src.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWS() {
+        while (pos < ln) {
+            char c = src.charAt(pos);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                break;
+            }
+            pos++;
+        }
+    }
+
+    private Expression setLocation(Expression exp) {
+        // Same as the location of the whole "(" + src + ")" when parsed by FMParser, minus the line breaks in it
+        exp.setLocation(template,
+                1, TemplateObject.RUNTIME_EVAL_LINE_DISPLACEMENT, ln + 2, TemplateObject.RUNTIME_EVAL_LINE_DISPLACEMENT);
+        return exp;
+    }
+
+}
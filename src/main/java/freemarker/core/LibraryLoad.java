@@ -117,6 +117,15 @@ public final class LibraryLoad extends TemplateElement {
         return importedTemplateNameExp.toString();
     }
 
+    /**
+     * Returns the imported template name as written in the template (so possibly relative), or {@code null} if it's
+     * not a literal.
+     */
+    String getLiteralTemplateName() {
+        return importedTemplateNameExp instanceof StringLiteral && importedTemplateNameExp.isLiteral()
+                ? ((StringLiteral) importedTemplateNameExp).getAsString() : null;
+    }
+
     @Override
     boolean isNestedBlockRepeater() {
         return false;
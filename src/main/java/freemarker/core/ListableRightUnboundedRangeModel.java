@@ -77,7 +77,7 @@ final class ListableRightUnboundedRangeModel extends RightUnboundedRangeModel im
                     }
                 }
                 needInc = true;
-                return nextType == 1 ? new SimpleNumber(nextInt)
+                return nextType == 1 ? SmallIntegerModels.valueOf(nextInt)
                         : (nextType == 2 ? new SimpleNumber(nextLong)
                         : new SimpleNumber(nextBigInteger)); 
             }
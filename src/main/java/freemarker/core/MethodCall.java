@@ -68,6 +68,15 @@ final class MethodCall extends Expression {
         }
     }
 
+    @Override
+    void enableLazilyGeneratedResult() {
+        // For a directly called built-in, like xs?chunk(n), the result of the method returned by the built-in is the
+        // value of this node.
+        if (target instanceof BuiltInWithDirectCallOptimization) {
+            target.enableLazilyGeneratedResult();
+        }
+    }
+
     @Override
     public String getCanonicalForm() {
         StringBuilder buf = new StringBuilder();
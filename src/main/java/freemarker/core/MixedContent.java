@@ -53,6 +53,12 @@ final class MixedContent extends TemplateElement {
         return getChildCount() == 1 ? getChild(0) : this;
     }
 
+    @Override
+    TemplateElement mergeAdjacentTextBlocks() {
+        super.mergeAdjacentTextBlocks();
+        return getChildCount() == 1 ? getChild(0) : this;
+    }
+
     /**
      * Processes the contents of the internal <tt>TemplateElement</tt> list,
      * and outputs the resulting text.
@@ -55,6 +55,8 @@ final class ParameterRole {
     static final ParameterRole PARSE_PARAMETER = new ParameterRole("\"parse\" parameter");
     static final ParameterRole ENCODING_PARAMETER = new ParameterRole("\"encoding\" parameter");
     static final ParameterRole IGNORE_MISSING_PARAMETER = new ParameterRole("\"ignore_missing\" parameter");
+    static final ParameterRole KEY_PARAMETER = new ParameterRole("\"key\" parameter");
+    static final ParameterRole TTL_PARAMETER = new ParameterRole("\"ttl\" parameter");
     static final ParameterRole PARAMETER_NAME = new ParameterRole("parameter name");
     static final ParameterRole PARAMETER_DEFAULT = new ParameterRole("parameter default");
     static final ParameterRole CATCH_ALL_PARAMETER_NAME = new ParameterRole("catch-all parameter name");
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import freemarker.template.SimpleNumber;
+import freemarker.template.TemplateModel;
+
+/**
+ * Shares the {@link SimpleNumber} instances of small {@code int}-s, like {@link Integer#valueOf(int)} does for
+ * {@link Integer}-s. Used where FreeMarker would otherwise create a new number model very often, like for the result
+ * of arithmetical operations, {@code ?index}, {@code ?counter}, or the items of a numerical range.
+ */
+final class SmallIntegerModels {
+    
+    private static final int MIN = -128;
+    private static final int MAX = 1023;
+    
+    private static final SimpleNumber[] CACHE = new SimpleNumber[MAX - MIN + 1];
+    static {
+        for (int i = MIN; i <= MAX; i++) {
+            CACHE[i - MIN] = new SimpleNumber(i);
+        }
+    }
+
+    private SmallIntegerModels() {
+        // Not meant to be instantiated
+    }
+
+    static SimpleNumber valueOf(int value) {
+        return value >= MIN && value <= MAX ? CACHE[value - MIN] : new SimpleNumber(value);
+    }
+    
+    /**
+     * Wraps the result of an arithmetical operation; re-uses the same immutable {@link SimpleNumber} for the most
+     * common small integers (as returned by {@link ArithmeticEngine#INTEGER_FAST_PATH_ENGINE} for example).
+     */
+    static TemplateModel toNumberModel(Number n) {
+        if (n instanceof Integer) {
+            int i = n.intValue();
+            if (i >= MIN && i <= MAX) {
+                return CACHE[i - MIN];
+            }
+        }
+        return new SimpleNumber(n);
+    }
+    
+}
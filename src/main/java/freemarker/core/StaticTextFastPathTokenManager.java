@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import java.io.IOException;
+
+/**
+ * {@link FMParserTokenManager} that recognizes the {@link #STATIC_TEXT_WS} and {@link #STATIC_TEXT_NON_WS} tokens with
+ * a simple loop, and only delegates to the generated automaton for everything else. Most of a typical template is
+ * static text, and the generated automaton method of the {@link #DEFAULT} lexical state is too big to be compiled by
+ * the JIT of most JVM-s, so this speeds up parsing considerably.
+ * 
+ * <p>The tokens produced are exactly the same as those the generated token manager would produce, as in the
+ * {@link #DEFAULT} and {@link #NO_DIRECTIVE} lexical states no other token can start with a character that can start
+ * the above two tokens, and neither has a lexical action or lexical state change.
+ * 
+ * @since 2.3.30
+ */
+final class StaticTextFastPathTokenManager extends FMParserTokenManager {
+
+    StaticTextFastPathTokenManager(SimpleCharStream stream) {
+        super(stream);
+    }
+
+    @Override
+    public Token getNextToken() {
+        if (curLexState != DEFAULT && curLexState != NO_DIRECTIVE) {
+            return super.getNextToken();
+        }
+
+        char c;
+        try {
+            c = input_stream.BeginToken();
+        } catch (IOException e) {
+            // EOF; let the generated code create the EOF token.
+            return super.getNextToken();
+        }
+
+        final boolean ws;
+        if (isStaticTextWS(c)) {
+            ws = true;
+        } else if (isStaticTextNonWS(c)) {
+            ws = false;
+        } else {
+            input_stream.backup(1);
+            return super.getNextToken();
+        }
+
+        try {
+            do {
+                c = input_stream.readChar();
+            } while (ws ? isStaticTextWS(c) : isStaticTextNonWS(c));
+            input_stream.backup(1);
+        } catch (IOException e) {
+            // EOF ends the token; the stream has already restored its position.
+        }
+
+        jjmatchedKind = ws ? STATIC_TEXT_WS : STATIC_TEXT_NON_WS;
+        return jjFillToken();
+    }
+
+    private static boolean isStaticTextWS(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private static boolean isStaticTextNonWS(char c) {
+        switch (c) {
+        case '$':
+        case '<':
+        case '#':
+        case '[':
+        case '{':
+        case ' ':
+        case '\n':
+        case '\r':
+        case '\t':
+            return false;
+        default:
+            return true;
+        }
+    }
+
+}
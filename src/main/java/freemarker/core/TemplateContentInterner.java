@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import freemarker.template.Configuration;
+
+/**
+ * Shares identical identifier names and short static texts among the templates that were parsed with
+ * {@link Configuration#setCompactTemplates(boolean)} set to {@code true}, as the same names and small texts (like
+ * indentation, or short HTML fragments) tend to occur in a lot of templates. The values are stored for the lifetime of
+ * the class, but their number is bounded; when the limit is reached, new values are simply not shared anymore.
+ */
+final class TemplateContentInterner {
+
+    static final int MAX_STRING_LENGTH = 64;
+    static final int MAX_TEXT_LENGTH = 128;
+    static final int MAX_ENTRIES = 8 * 1024;
+
+    private static final ConcurrentMap<String, String> STRINGS = new ConcurrentHashMap<String, String>();
+    private static final ConcurrentMap<CharArrayKey, char[]> TEXTS = new ConcurrentHashMap<CharArrayKey, char[]>();
+
+    private TemplateContentInterner() {
+        // Not meant to be instantiated
+    }
+
+    /**
+     * Returns the shared instance that's equal to the argument, or the argument itself if it's not shared.
+     */
+    static String intern(String s) {
+        if (s.length() > MAX_STRING_LENGTH) {
+            return s;
+        }
+        String interned = STRINGS.get(s);
+        if (interned != null) {
+            return interned;
+        }
+        if (STRINGS.size() >= MAX_ENTRIES) {
+            return s;
+        }
+        interned = STRINGS.putIfAbsent(s, s);
+        return interned != null ? interned : s;
+    }
+
+    /**
+     * Returns the shared array whose content is equal to the argument, or the argument itself if it's not shared.
+     * The content of the returned array must not be modified.
+     */
+    static char[] intern(char[] text) {
+        if (text.length > MAX_TEXT_LENGTH) {
+            return text;
+        }
+        CharArrayKey key = new CharArrayKey(text);
+        char[] interned = TEXTS.get(key);
+        if (interned != null) {
+            return interned;
+        }
+        if (TEXTS.size() >= MAX_ENTRIES) {
+            return text;
+        }
+        interned = TEXTS.putIfAbsent(key, text);
+        return interned != null ? interned : text;
+    }
+
+    /**
+     * Tells if the argument is the very object that's shared by this class.
+     */
+    static boolean isInterned(Object obj) {
+        if (obj instanceof String) {
+            String s = (String) obj;
+            return s.length() <= MAX_STRING_LENGTH && STRINGS.get(s) == s;
+        } else if (obj instanceof char[]) {
+            char[] text = (char[]) obj;
+            return text.length <= MAX_TEXT_LENGTH && TEXTS.get(new CharArrayKey(text)) == text;
+        } else {
+            return false;
+        }
+    }
+
+    private static final class CharArrayKey {
+
+        private final char[] chars;
+        private final int hashCode;
+
+        CharArrayKey(char[] chars) {
+            this.chars = chars;
+            this.hashCode = Arrays.hashCode(chars);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof CharArrayKey && Arrays.equals(chars, ((CharArrayKey) obj).chars);
+        }
+
+    }
+
+}
@@ -24,6 +24,7 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Map;
 
+import freemarker.template.Configuration;
 import freemarker.template.SimpleSequence;
 import freemarker.template.TemplateException;
 import freemarker.template.TemplateNodeModel;
@@ -427,6 +428,55 @@ abstract public class TemplateElement extends TemplateObject {
         return this;
     }
 
+    /**
+     * Walks the AST subtree rooted by this element, and merges adjacent {@link TextBlock}-s (which typically remain
+     * after whitespace stripping has removed the elements between them), so that they are written out in one step.
+     * This must be called after {@link #postParseCleanup(boolean)} was done on the whole tree, as whitespace
+     * stripping depends on the original text block boundaries.
+     * 
+     * @return The element this element should be replaced with in the parent; see
+     *         {@link #postParseCleanup(boolean)}.
+     */
+    TemplateElement mergeAdjacentTextBlocks() {
+        int childCount = this.childCount;
+        if (childCount != 0) {
+            int newChildCount = 0;
+            for (int i = 0; i < childCount; i++) {
+                TemplateElement te = childBuffer[i].mergeAdjacentTextBlocks();
+                childBuffer[i] = null;
+                if (newChildCount != 0 && te instanceof TextBlock) {
+                    TemplateElement prevTe = childBuffer[newChildCount - 1];
+                    if (prevTe instanceof TextBlock && ((TextBlock) prevTe).appendSiblingText((TextBlock) te)) {
+                        continue;
+                    }
+                }
+                childBuffer[newChildCount] = te;
+                te.parent = this;
+                te.index = newChildCount;
+                newChildCount++;
+            }
+            this.childCount = newChildCount;
+        }
+        return this;
+    }
+
+    /**
+     * Walks the AST subtree rooted by this element, and reduces its memory footprint, if the template is parsed with
+     * {@link Configuration#getCompactTemplates()} set to {@code true}. This must be called after
+     * {@link #mergeAdjacentTextBlocks()}.
+     */
+    void compact() {
+        int childCount = this.childCount;
+        if (childCount != 0) {
+            if (childBuffer.length != childCount) {
+                setChildBufferCapacity(childCount);
+            }
+            for (int i = 0; i < childCount; i++) {
+                childBuffer[i].compact();
+            }
+        }
+    }
+
     boolean isIgnorable(boolean stripWhitespace) {
         return false;
     }
@@ -0,0 +1,301 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import freemarker.log.Logger;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+/**
+ * Periodically takes a snapshot of the FTL instruction stack (the same stack that's shown as the "FTL stack trace"
+ * in error messages) of each template that's being processed, and counts how many times each stack was seen. As the
+ * time spent somewhere is roughly proportional to how often it's seen in the samples, this tells which templates,
+ * macros, {@code #list}-s, etc. are slow. The result can be written in the "collapsed stack" format (see
+ * {@link #writeCollapsedStacks(Writer)}), which can be turned into a flame graph with common tools.
+ * 
+ * <p>
+ * To use it, set it with {@link Configuration#setTemplateSamplingProfiler(TemplateSamplingProfiler)}, then call
+ * {@link #start()}. The same profiler can be used by multiple {@link Configuration}-s. Template processing threads
+ * only add and remove their {@link Environment} to a concurrent set at the beginning and end of
+ * {@link Environment#process()}; the snapshots are taken on a background thread, without synchronizing with the
+ * processing threads. Hence the overhead is low enough to keep this enabled in production, but a sample might
+ * occasionally be slightly inconsistent or outdated. Also note that time spent outside FreeMarker (like in a method
+ * called from the template) is attributed to the FTL instruction that has called it, which is usually what you want.
+ * 
+ * <p>
+ * This class is thread-safe.
+ * 
+ * @since 2.3.30
+ */
+public class TemplateSamplingProfiler {
+    
+    private static final Logger LOG = Logger.getLogger("freemarker.runtime");
+    
+    /** The default of {@link #getSamplingIntervalMillis()}. */
+    public static final long DEFAULT_SAMPLING_INTERVAL_MILLIS = 10;
+    
+    private static final int MAX_DESCRIPTION_LENGTH = 40;
+    
+    private final long samplingIntervalMillis;
+    
+    private final Map<Environment, Boolean> runningEnvironments = new ConcurrentHashMap<Environment, Boolean>();
+    
+    /** Guarded by itself. Only the sampler thread modifies it. */
+    private final Map<String, SampleCounter> sampleCountsByStack = new HashMap<String, SampleCounter>();
+    
+    /** Guarded by {@link #sampleCountsByStack}. */
+    private long sampleCount;
+    
+    /** Guarded by {@code this}. */
+    private Thread samplerThread;
+    
+    /**
+     * Same as {@link #TemplateSamplingProfiler(long)} with {@link #DEFAULT_SAMPLING_INTERVAL_MILLIS} argument.
+     */
+    public TemplateSamplingProfiler() {
+        this(DEFAULT_SAMPLING_INTERVAL_MILLIS);
+    }
+    
+    /**
+     * @param samplingIntervalMillis
+     *            How often to take samples; must be at least 1. The smaller it is, the more accurate the result will
+     *            be for short template executions, but the more CPU time the sampling will take.
+     */
+    public TemplateSamplingProfiler(long samplingIntervalMillis) {
+        if (samplingIntervalMillis < 1) {
+            throw new IllegalArgumentException("\"samplingIntervalMillis\" must be at least 1");
+        }
+        this.samplingIntervalMillis = samplingIntervalMillis;
+    }
+    
+    /**
+     * Starts the background thread that takes the samples. Does nothing if it was already started. Samples taken
+     * earlier are kept; use {@link #reset()} to drop them.
+     */
+    public synchronized void start() {
+        if (samplerThread != null) {
+            return;
+        }
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                runSampler();
+            }
+        }, "FreeMarker template sampling profiler");
+        thread.setDaemon(true);
+        samplerThread = thread;
+        thread.start();
+    }
+    
+    /**
+     * Stops the background thread that takes the samples. Does nothing if it wasn't running. The samples taken so far
+     * are kept.
+     */
+    public synchronized void stop() {
+        if (samplerThread == null) {
+            return;
+        }
+        samplerThread.interrupt();
+        samplerThread = null;
+    }
+    
+    /**
+     * Tells if the background thread that takes the samples is running.
+     */
+    public synchronized boolean isRunning() {
+        return samplerThread != null;
+    }
+    
+    public long getSamplingIntervalMillis() {
+        return samplingIntervalMillis;
+    }
+    
+    /**
+     * Drops all samples taken so far.
+     */
+    public void reset() {
+        synchronized (sampleCountsByStack) {
+            sampleCountsByStack.clear();
+            sampleCount = 0;
+        }
+    }
+    
+    /**
+     * The number of samples taken so far. A sample is taken for each running template processing, so this can
+     * increase by more than 1 at each sampling.
+     */
+    public long getSampleCount() {
+        synchronized (sampleCountsByStack) {
+            return sampleCount;
+        }
+    }
+    
+    /**
+     * Returns the number of samples for each distinct instruction stack seen, with the stack in the format described
+     * at {@link #writeCollapsedStacks(Writer)}. The returned {@link Map} is a snapshot, ordered by the stacks.
+     */
+    public Map<String, Long> getSampleCountsByStack() {
+        List<String> stacks;
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        synchronized (sampleCountsByStack) {
+            stacks = new ArrayList<String>(sampleCountsByStack.keySet());
+            Collections.sort(stacks);
+            for (String stack : stacks) {
+                result.put(stack, Long.valueOf(sampleCountsByStack.get(stack).value));
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Writes the samples in the "collapsed stack" format, which is one line per distinct stack, where the line is the
+     * list of frames (outermost first) separated by {@code ;}, then a space, then the number of samples. A frame
+     * looks like {@code foo.ftl:12:5 #list users as user}, that is, the template source name, the line and column of
+     * the instruction, and the shortened description of the instruction. This is the input format of common flame
+     * graph generators.
+     */
+    public void writeCollapsedStacks(Writer out) throws IOException {
+        for (Map.Entry<String, Long> ent : getSampleCountsByStack().entrySet()) {
+            out.write(ent.getKey());
+            out.write(' ');
+            out.write(ent.getValue().toString());
+            out.write('\n');
+        }
+    }
+    
+    /**
+     * Returns what {@link #writeCollapsedStacks(Writer)} would write.
+     */
+    public String getCollapsedStacks() {
+        StringWriter sw = new StringWriter();
+        try {
+            writeCollapsedStacks(sw);
+        } catch (IOException e) {
+            throw new BugException(e);
+        }
+        return sw.toString();
+    }
+    
+    /**
+     * Called by {@link Environment#process()} when it starts.
+     */
+    void register(Environment env) {
+        runningEnvironments.put(env, Boolean.TRUE);
+    }
+
+    /**
+     * Called by {@link Environment#process()} when it ends.
+     */
+    void unregister(Environment env) {
+        runningEnvironments.remove(env);
+    }
+    
+    private void runSampler() {
+        final Thread currentThread = Thread.currentThread();
+        while (true) {
+            try {
+                Thread.sleep(samplingIntervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            synchronized (this) {
+                if (samplerThread != currentThread) {
+                    return;
+                }
+            }
+            try {
+                takeSamples();
+            } catch (Throwable e) {
+                // As we read the stacks without synchronization, we don't want to die on some unforeseen problem.
+                LOG.error("Error while taking FTL instruction stack samples", e);
+            }
+        }
+    }
+    
+    /**
+     * Takes a sample from each running template processing. Normally called periodically on the background thread,
+     * but can be called directly (like in tests).
+     */
+    void takeSamples() {
+        for (Environment env : runningEnvironments.keySet()) {
+            TemplateElement[] stack = env.getInstructionStackSnapshotForSampling();
+            if (stack.length == 0) {
+                continue;
+            }
+            
+            String collapsedStack = toCollapsedStack(stack);
+            synchronized (sampleCountsByStack) {
+                SampleCounter counter = sampleCountsByStack.get(collapsedStack);
+                if (counter == null) {
+                    counter = new SampleCounter();
+                    sampleCountsByStack.put(collapsedStack, counter);
+                }
+                counter.value++;
+                sampleCount++;
+            }
+        }
+    }
+    
+    private static String toCollapsedStack(TemplateElement[] stack) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < stack.length; i++) {
+            if (i != 0) {
+                sb.append(';');
+            }
+            appendFrame(stack[i], sb);
+        }
+        return sb.toString();
+    }
+
+    private static void appendFrame(TemplateElement element, StringBuilder sb) {
+        Template template = element.getTemplate();
+        String templateName = template != null ? template.getSourceName() : null;
+        appendSanitized(templateName != null ? templateName : "nameless template", sb);
+        sb.append(':').append(element.getBeginLine()).append(':').append(element.getBeginColumn()).append(' ');
+        appendSanitized(_MessageUtil.shorten(element.getDescription(), MAX_DESCRIPTION_LENGTH), sb);
+    }
+    
+    /**
+     * Replaces the characters that have special meaning in the collapsed stack format.
+     */
+    private static void appendSanitized(String s, StringBuilder sb) {
+        final int ln = s.length();
+        for (int i = 0; i < ln; i++) {
+            char c = s.charAt(i);
+            sb.append(c == ';' ? ',' : c == '\n' || c == '\r' || c == '\t' ? ' ' : c);
+        }
+    }
+    
+    private static class SampleCounter {
+        private long value;
+    }
+
+}
@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import freemarker.template.ObjectWrapper;
+import freemarker.template.Template;
+import freemarker.template.Version;
+
+/**
+ * Estimates the heap memory retained by a {@link Template}; see {@link Template#getEstimatedRetainedSize()}. It walks
+ * the object graph with reflection, and calculates the object sizes as on a 64 bit JVM with compressed object
+ * pointers. Objects that are possibly shared with other templates aren't counted, nor walked. The internals of JDK
+ * classes aren't walked either; their size is estimated based on their public API.
+ */
+final class TemplateSizeEstimator {
+
+    private static final int OBJECT_HEADER_SIZE = 12;
+    private static final int ARRAY_HEADER_SIZE = 16;
+    private static final int REFERENCE_SIZE = 4;
+    private static final int OBJECT_ALIGNMENT = 8;
+    /** The estimated size of a hash table entry, like {@code HashMap.Node}. */
+    private static final int MAP_ENTRY_SIZE = 32;
+
+    private final Template template;
+    private final Map<Object, Object> visited = new IdentityHashMap<Object, Object>();
+    private final List<Object> unwalked = new ArrayList<Object>();
+    private final Map<Class<?>, Field[]> instanceFieldsByClass = new HashMap<Class<?>, Field[]>();
+    private final Map<Class<?>, Long> shallowSizeByClass = new HashMap<Class<?>, Long>();
+
+    private TemplateSizeEstimator(Template template) {
+        this.template = template;
+    }
+
+    static long estimateRetainedSize(Template template) {
+        return new TemplateSizeEstimator(template).estimate();
+    }
+
+    private long estimate() {
+        long size = 0;
+        push(template);
+        while (!unwalked.isEmpty()) {
+            size += walk(unwalked.remove(unwalked.size() - 1));
+        }
+        return size;
+    }
+
+    private void push(Object obj) {
+        if (obj != null && !visited.containsKey(obj) && !isShared(obj)) {
+            visited.put(obj, null);
+            unwalked.add(obj);
+        }
+    }
+
+    private boolean isShared(Object obj) {
+        if (obj == template) {
+            return false;
+        }
+        return obj instanceof Configurable  // Configuration, other Template-s, TemplateConfiguration, Environment
+                || obj instanceof ParserConfiguration
+                || obj instanceof OutputFormat
+                || obj instanceof ObjectWrapper
+                || obj instanceof Version
+                || obj instanceof Class
+                || obj instanceof ClassLoader
+                || obj instanceof Thread
+                || obj instanceof Enum
+                || obj instanceof Locale
+                || obj instanceof TimeZone
+                || obj instanceof Charset
+                || TemplateContentInterner.isInterned(obj);
+    }
+
+    private long walk(Object obj) {
+        Class<?> cl = obj.getClass();
+        if (cl.isArray()) {
+            return walkArray(obj, cl.getComponentType());
+        }
+        if (obj instanceof String) {
+            // The layout before Java 9; since Java 9, Latin-1 strings need less.
+            return align(OBJECT_HEADER_SIZE + REFERENCE_SIZE + 4)
+                    + align(ARRAY_HEADER_SIZE + 2L * ((String) obj).length());
+        }
+        long size = getShallowSize(cl);
+        if (isJDKClass(cl)) {
+            if (obj instanceof Collection) {
+                size += walkCollection((Collection<?>) obj);
+            } else if (obj instanceof Map) {
+                size += walkMap((Map<?, ?>) obj);
+            }
+        } else {
+            Field[] fields = getInstanceFields(cl);
+            for (int i = 0; i < fields.length; i++) {
+                Field field = fields[i];
+                if (!field.getType().isPrimitive()) {
+                    try {
+                        push(field.get(obj));
+                    } catch (IllegalAccessException e) {
+                        // Can't happen, as we have called setAccessible
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
+    private long walkArray(Object array, Class<?> componentType) {
+        int length = Array.getLength(array);
+        if (!componentType.isPrimitive()) {
+            Object[] objArray = (Object[]) array;
+            for (int i = 0; i < length; i++) {
+                push(objArray[i]);
+            }
+        }
+        return align(ARRAY_HEADER_SIZE + (long) length * getFieldSize(componentType));
+    }
+
+    private long walkCollection(Collection<?> collection) {
+        int size = 0;
+        try {
+            for (Iterator<?> it = collection.iterator(); it.hasNext(); ) {
+                push(it.next());
+                size++;
+            }
+        } catch (RuntimeException e) {
+            // Concurrently modified; we just give a less accurate estimate
+        }
+        return align(ARRAY_HEADER_SIZE + (long) size * REFERENCE_SIZE);
+    }
+
+    private long walkMap(Map<?, ?> map) {
+        int size = 0;
+        try {
+            for (Iterator<? extends Map.Entry<?, ?>> it = map.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<?, ?> entry = it.next();
+                push(entry.getKey());
+                push(entry.getValue());
+                size++;
+            }
+        } catch (RuntimeException e) {
+            // Concurrently modified; we just give a less accurate estimate
+        }
+        int tableLength = 16;
+        while (tableLength * 3 / 4 < size) {
+            tableLength *= 2;
+        }
+        return align(ARRAY_HEADER_SIZE + (long) tableLength * REFERENCE_SIZE) + (long) size * MAP_ENTRY_SIZE;
+    }
+
+    private long getShallowSize(Class<?> cl) {
+        Long size = shallowSizeByClass.get(cl);
+        if (size == null) {
+            long fieldsSize = 0;
+            for (Class<?> c = cl; c != null; c = c.getSuperclass()) {
+                Field[] fields = c.getDeclaredFields();
+                for (int i = 0; i < fields.length; i++) {
+                    if (!Modifier.isStatic(fields[i].getModifiers())) {
+                        fieldsSize += getFieldSize(fields[i].getType());
+                    }
+                }
+            }
+            size = Long.valueOf(align(OBJECT_HEADER_SIZE + fieldsSize));
+            shallowSizeByClass.put(cl, size);
+        }
+        return size.longValue();
+    }
+
+    /**
+     * Returns the non-static fields of a non-JDK class that we can read; the others are silently skipped.
+     */
+    private Field[] getInstanceFields(Class<?> cl) {
+        Field[] result = instanceFieldsByClass.get(cl);
+        if (result == null) {
+            List<Field> fields = new ArrayList<Field>();
+            for (Class<?> c = cl; c != null && !isJDKClass(c); c = c.getSuperclass()) {
+                Field[] declaredFields = c.getDeclaredFields();
+                for (int i = 0; i < declaredFields.length; i++) {
+                    Field field = declaredFields[i];
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        try {
+                            field.setAccessible(true);
+                            fields.add(field);
+                        } catch (RuntimeException e) {
+                            // Not allowed by the security manager or the module system
+                        }
+                    }
+                }
+            }
+            result = fields.toArray(new Field[fields.size()]);
+            instanceFieldsByClass.put(cl, result);
+        }
+        return result;
+    }
+
+    private static boolean isJDKClass(Class<?> cl) {
+        String name = cl.getName();
+        return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("sun.")
+                || name.startsWith("jdk.") || name.startsWith("com.sun.");
+    }
+
+    private static int getFieldSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == int.class || type == float.class) {
+            return 4;
+        } else if (type == short.class || type == char.class) {
+            return 2;
+        } else if (type == byte.class || type == boolean.class) {
+            return 1;
+        } else {
+            return REFERENCE_SIZE;
+        }
+    }
+
+    private static long align(long size) {
+        return (size + OBJECT_ALIGNMENT - 1) / OBJECT_ALIGNMENT * OBJECT_ALIGNMENT;
+    }
+
+}
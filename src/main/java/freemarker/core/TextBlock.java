@@ -20,6 +20,7 @@
 package freemarker.core;
 
 import java.io.IOException;
+import java.io.Writer;
 
 import freemarker.template.utility.CollectionUtils;
 import freemarker.template.utility.StringUtil;
@@ -38,6 +39,13 @@ public final class TextBlock extends TemplateElement {
     // write. 
     private char[] text;
     private final boolean unparsed;
+    
+    /**
+     * Lazily calculated, as most text blocks are never written into a {@link _StandardCompressWriter}. Only the
+     * result for the last used single-line mode is kept, as the same text is practically never compressed in both.
+     * It's immutable, so it can be published without synchronization.
+     */
+    private _StandardCompressWriter.PrecompressedText precompressedText;
 
     public TextBlock(String text) {
         this(text, false);
@@ -54,6 +62,7 @@ public final class TextBlock extends TemplateElement {
     
     void replaceText(String text) {
         this.text = text.toCharArray();
+        precompressedText = null;
     }
 
     /**
@@ -64,9 +73,25 @@ public final class TextBlock extends TemplateElement {
     @Override
     public TemplateElement[] accept(Environment env)
     throws IOException {
-        env.getOut().write(text);
+        Writer out = env.getOut();
+        if (out instanceof _StandardCompressWriter) {
+            _StandardCompressWriter compressWriter = (_StandardCompressWriter) out;
+            compressWriter.write(getPrecompressedText(compressWriter.isSingleLine()));
+        } else {
+            out.write(text);
+        }
         return null;
     }
+    
+    private _StandardCompressWriter.PrecompressedText getPrecompressedText(boolean singleLine) {
+        _StandardCompressWriter.PrecompressedText result = precompressedText;
+        if (result == null || result.isSingleLine() != singleLine) {
+            // Benign race: all threads calculate the same for the same mode.
+            result = _StandardCompressWriter.precompress(text, singleLine);
+            precompressedText = result;
+        }
+        return result;
+    }
 
     @Override
     protected String dump(boolean canonical) {
@@ -136,6 +161,30 @@ public final class TextBlock extends TemplateElement {
         return this;
     }
     
+    @Override
+    void compact() {
+        text = TemplateContentInterner.intern(text);
+        super.compact();
+    }
+
+    /**
+     * Appends the text of the next sibling text block to the text of this one, if that doesn't change the canonical
+     * form.
+     * 
+     * @return Whether the text was appended, in which case the sibling should be removed from the parent.
+     */
+    boolean appendSiblingText(TextBlock next) {
+        if (unparsed || next.unparsed) {
+            return false;
+        }
+        char[] newText = new char[text.length + next.text.length];
+        System.arraycopy(text, 0, newText, 0, text.length);
+        System.arraycopy(next.text, 0, newText, text.length, next.text.length);
+        text = newText;
+        setLocation(getTemplate(), this, next);
+        return true;
+    }
+
     /**
      * Scans forward the nodes on the same line to see whether there is a 
      * deliberate left trim in effect. Returns true if the left trim was present.
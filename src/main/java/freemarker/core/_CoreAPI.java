@@ -20,8 +20,10 @@
 package freemarker.core;
 
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -75,6 +77,7 @@ public class _CoreAPI {
         addName(allNames, lcNames, ccNames, "attempt");
         addName(allNames, lcNames, ccNames, "autoesc", "autoEsc");
         addName(allNames, lcNames, ccNames, "break");
+        addName(allNames, lcNames, ccNames, "cache");
         addName(allNames, lcNames, ccNames, "call");
         addName(allNames, lcNames, ccNames, "case");
         addName(allNames, lcNames, ccNames, "comment");
@@ -220,6 +223,47 @@ public class _CoreAPI {
         parser.setPreventStrippings(preventStrippings);
     }
 
+    public static void setCompact(FMParser parser, boolean compact) {
+        parser.setCompact(compact);
+    }
+
+    public static long estimateRetainedSize(Template template) {
+        return TemplateSizeEstimator.estimateRetainedSize(template);
+    }
+
+    /**
+     * Returns the names of the templates that are included or imported with a literal name (like
+     * {@code <#include "foo.ftl">}) anywhere in the template, as they were written (so possibly relative). The list may
+     * contain duplicates.
+     */
+    public static List<String> getLiteralIncludedAndImportedTemplateNames(Template template) {
+        List<String> names = new ArrayList<String>();
+        TemplateElement rootElement = template.getRootTreeNode();
+        if (rootElement != null) {
+            addLiteralIncludedAndImportedTemplateNames(rootElement, names);
+        }
+        return names;
+    }
+
+    private static void addLiteralIncludedAndImportedTemplateNames(TemplateElement te, List<String> names) {
+        String name;
+        if (te instanceof Include) {
+            name = ((Include) te).getLiteralTemplateName();
+        } else if (te instanceof LibraryLoad) {
+            name = ((LibraryLoad) te).getLiteralTemplateName();
+        } else {
+            name = null;
+        }
+        if (name != null) {
+            names.add(name);
+        }
+        
+        int childCount = te.getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            addLiteralIncludedAndImportedTemplateNames(te.getChild(i), names);
+        }
+    }
+
     public static boolean isLazilyGeneratedSequenceModel(TemplateCollectionModel model) {
         return model instanceof LazilyGeneratedCollectionModel && ((LazilyGeneratedCollectionModel) model).isSequence();
     }
@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateModelIterator;
+
+/**
+ * Don't use this; used internally by FreeMarker, might changes without notice.
+ * 
+ * <p>A {@link TemplateModelIterator} over a forward-only source (like a streamed XML), where {@link #hasNext()} has
+ * to read past the content of the item last returned by {@link #next()}. As {@code #list} calls {@link #hasNext()}
+ * before it processes the current item, by default the iterator must preserve the content of that item in memory.
+ * Callers that are done with the current item when they call {@link #hasNext()} (like {@code #recurse}) should call
+ * {@link #releaseLastItem()} before that, so that its content can be just skipped.
+ * 
+ * @since 2.3.30
+ */
+public interface _ForwardOnlyTemplateModelIterator extends TemplateModelIterator {
+
+    /**
+     * Tells that the item last returned by {@link #next()} won't be used anymore.
+     */
+    void releaseLastItem() throws TemplateModelException;
+    
+}
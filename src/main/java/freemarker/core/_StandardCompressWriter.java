@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import freemarker.template.utility.StandardCompress;
+
+/**
+ * Don't use this; used internally by FreeMarker, might changes without notice.
+ * The {@link Writer} behind {@link StandardCompress} (and so behind {@code #compress}). Static text coming from a
+ * {@link TextBlock} is written with {@link #write(PrecompressedText)}, where the text was compressed in advance, so
+ * only its leading whitespace (which depends on what was written before it) has to be dealt with here.
+ * 
+ * @since 2.3.30
+ */
+public final class _StandardCompressWriter extends Writer {
+    
+    private static final int MAX_EOL_LENGTH = 2; // CRLF is two bytes
+    
+    private static final int AT_BEGINNING = 0;
+    private static final int SINGLE_LINE = 1;
+    private static final int INIT = 2;
+    private static final int SAW_CR = 3;
+    private static final int LINEBREAK_CR = 4;
+    private static final int LINEBREAK_CRLF = 5;
+    private static final int LINEBREAK_LF = 6;
+
+    private final Writer out;
+    private final char[] buf;
+    private final boolean singleLine;
+
+    private int pos = 0;
+    private boolean inWhitespace = true;
+    private int lineBreakState = AT_BEGINNING;
+
+    public _StandardCompressWriter(Writer out, int bufSize, boolean singleLine) {
+        this.out = out;
+        this.singleLine = singleLine;
+        buf = new char[Math.max(bufSize, MAX_EOL_LENGTH + 1)];
+    }
+    
+    boolean isSingleLine() {
+        return singleLine;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        for (; ; ) {
+            // Need to reserve space for the EOL potentially left in the state machine
+            int room = buf.length - pos - MAX_EOL_LENGTH; 
+            if (room >= len) {
+                writeHelper(cbuf, off, len);
+                break;
+            } else if (room <= 0) {
+                flushInternal();
+            } else {
+                writeHelper(cbuf, off, room);
+                flushInternal();
+                off += room;
+                len -= room;
+            }
+        }
+    }
+
+    /**
+     * Writes the text that was compressed with {@link #precompress(char[], boolean)}; the output is the same as if the
+     * original text was written with {@link #write(char[])}.
+     */
+    void write(PrecompressedText text) throws IOException {
+        if (text.hasLeadingWhitespace) {
+            inWhitespace = true;
+            if (lineBreakState == INIT) {
+                lineBreakState = text.lineBreakStateAfterLeadingWhitespaceFromInit;
+            } else if (lineBreakState == SAW_CR) {
+                lineBreakState = text.lineBreakStateAfterLeadingWhitespaceFromSawCr;
+            }
+        }
+        
+        char[] content = text.content;
+        if (content == null) {
+            // All whitespace
+            return;
+        }
+        
+        if (buf.length - pos < MAX_EOL_LENGTH) {
+            flushInternal();
+        }
+        if (inWhitespace) {
+            inWhitespace = false;
+            writeLineBreakOrSpace();
+        }
+        
+        int len = content.length;
+        if (buf.length - pos - MAX_EOL_LENGTH >= len) {
+            System.arraycopy(content, 0, buf, pos, len);
+            pos += len;
+        } else {
+            flushInternal();
+            out.write(content, 0, len);
+        }
+        
+        if (text.hasTrailingWhitespace) {
+            inWhitespace = true;
+            lineBreakState = text.lineBreakStateAfterTrailingWhitespace;
+        }
+    }
+
+    private void writeHelper(char[] cbuf, int off, int len) {
+        for (int i = off, end = off + len; i < end; i++) {
+            char c = cbuf[i];
+            if (Character.isWhitespace(c)) {
+                inWhitespace = true;
+                lineBreakState = nextLineBreakState(lineBreakState, c);
+            } else if (inWhitespace) {
+                inWhitespace = false;
+                writeLineBreakOrSpace();
+                buf[pos++] = c;
+            } else {
+                buf[pos++] = c;
+            }
+        }
+    }
+
+    /*
+      \r\n    => CRLF
+      \r[^\n] => CR
+      \r$     => CR
+      [^\r]\n => LF
+      ^\n     => LF
+    */
+    private static int nextLineBreakState(int lineBreakState, char c) {
+        switch (lineBreakState) {
+        case INIT:
+            if (c == '\r') {
+                return SAW_CR;
+            } else if (c == '\n') {
+                return LINEBREAK_LF;
+            }
+            break;
+        case SAW_CR:
+            if (c == '\n') {
+                return LINEBREAK_CRLF;
+            } else {
+                return LINEBREAK_CR;
+            }
+        }
+        return lineBreakState;
+    }
+
+    private void writeLineBreakOrSpace() {
+        switch (lineBreakState) {
+        case SAW_CR:
+            // whitespace ended with CR, fall through
+        case LINEBREAK_CR:
+            buf[pos++] = '\r';
+            break;
+        case LINEBREAK_CRLF:
+            buf[pos++] = '\r';
+            // fall through
+        case LINEBREAK_LF:
+            buf[pos++] = '\n';
+            break;
+        case AT_BEGINNING:
+            // ignore leading whitespace
+            break;
+        case INIT:
+        case SINGLE_LINE:
+            buf[pos++] = ' ';
+        }
+        lineBreakState = (singleLine) ? SINGLE_LINE : INIT;
+    }
+
+    private void flushInternal() throws IOException {
+        out.write(buf, 0, pos);
+        pos = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushInternal();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushInternal();
+    }
+    
+    /**
+     * Compresses the text in advance for {@link #write(PrecompressedText)}.
+     */
+    static PrecompressedText precompress(char[] text, boolean singleLine) {
+        int contentStart = 0;
+        while (contentStart < text.length && Character.isWhitespace(text[contentStart])) {
+            contentStart++;
+        }
+        
+        int fromInit = INIT;
+        int fromSawCr = SAW_CR;
+        for (int i = 0; i < contentStart; i++) {
+            fromInit = nextLineBreakState(fromInit, text[i]);
+            fromSawCr = nextLineBreakState(fromSawCr, text[i]);
+        }
+        
+        if (contentStart == text.length) {
+            return new PrecompressedText(singleLine, contentStart != 0, fromInit, fromSawCr, null, false, INIT);
+        }
+        
+        int contentEnd = text.length;
+        while (Character.isWhitespace(text[contentEnd - 1])) {
+            contentEnd--;
+        }
+        
+        // The content starts and ends with non-whitespace, so its compressed form doesn't depend on what was written
+        // before it. Running it through a writer that has just written a non-whitespace character gives that form.
+        CharArrayWriter compressedContent = new CharArrayWriter(contentEnd - contentStart);
+        _StandardCompressWriter contentCompressor = new _StandardCompressWriter(
+                compressedContent, Math.max(contentEnd - contentStart, 1) + MAX_EOL_LENGTH, singleLine);
+        contentCompressor.inWhitespace = false;
+        contentCompressor.lineBreakState = singleLine ? SINGLE_LINE : INIT;
+        try {
+            contentCompressor.write(text, contentStart, contentEnd - contentStart);
+            contentCompressor.close();
+        } catch (IOException e) {
+            throw new BugException(e); // CharArrayWriter doesn't throw that
+        }
+        
+        int afterTrailing = singleLine ? SINGLE_LINE : INIT;
+        for (int i = contentEnd; i < text.length; i++) {
+            afterTrailing = nextLineBreakState(afterTrailing, text[i]);
+        }
+        
+        return new PrecompressedText(
+                singleLine, contentStart != 0, fromInit, fromSawCr,
+                compressedContent.toCharArray(), contentEnd != text.length, afterTrailing);
+    }
+    
+    /**
+     * The result of {@link _StandardCompressWriter#precompress(char[], boolean)}.
+     */
+    static final class PrecompressedText {
+        private final boolean singleLine;
+        private final boolean hasLeadingWhitespace;
+        private final int lineBreakStateAfterLeadingWhitespaceFromInit;
+        private final int lineBreakStateAfterLeadingWhitespaceFromSawCr;
+        /** The compressed text between the leading and trailing whitespace; {@code null} if there's no such. */
+        private final char[] content;
+        private final boolean hasTrailingWhitespace;
+        private final int lineBreakStateAfterTrailingWhitespace;
+        
+        private PrecompressedText(
+                boolean singleLine, boolean hasLeadingWhitespace,
+                int lineBreakStateAfterLeadingWhitespaceFromInit, int lineBreakStateAfterLeadingWhitespaceFromSawCr,
+                char[] content,
+                boolean hasTrailingWhitespace, int lineBreakStateAfterTrailingWhitespace) {
+            this.singleLine = singleLine;
+            this.hasLeadingWhitespace = hasLeadingWhitespace;
+            this.lineBreakStateAfterLeadingWhitespaceFromInit = lineBreakStateAfterLeadingWhitespaceFromInit;
+            this.lineBreakStateAfterLeadingWhitespaceFromSawCr = lineBreakStateAfterLeadingWhitespaceFromSawCr;
+            this.content = content;
+            this.hasTrailingWhitespace = hasTrailingWhitespace;
+            this.lineBreakStateAfterTrailingWhitespace = lineBreakStateAfterTrailingWhitespace;
+        }
+        
+        boolean isSingleLine() {
+            return singleLine;
+        }
+    }
+    
+}
@@ -21,14 +21,29 @@ package freemarker.ext.ant;
 
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -39,16 +54,20 @@ import org.apache.tools.ant.DirectoryScanner;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.taskdefs.MatchingTask;
 import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
 import freemarker.ext.dom.NodeModel;
+import freemarker.core.ParseException;
 import freemarker.ext.xml.NodeListModel;
 import freemarker.template.Configuration;
+import freemarker.template.MalformedTemplateNameException;
 import freemarker.template.SimpleHash;
 import freemarker.template.SimpleScalar;
 import freemarker.template.Template;
 import freemarker.template.TemplateModel;
 import freemarker.template.TemplateNodeModel;
+import freemarker.template.TemplateNotFoundException;
 import freemarker.template.utility.ClassUtil;
 import freemarker.template.utility.SecurityUtilities;
 
@@ -150,7 +169,31 @@ import freemarker.template.utility.SecurityUtilities;
  *     <td valign="top">incremental</td>
  *     <td valign="top">indicates whether all files should be regenerated (no), or
  *       only those that are older than the XML file, the template file, or the
- *       project file (yes). Defaults to yes. </td>
+ *       project file (yes). If <tt>dependencyfile</tt> is set, the templates that
+ *       were included or imported when a file was last generated are checked too.
+ *       Defaults to yes. </td>
+ *     <td valign="top" align="center">No</td>
+ *   </tr>
+ *   <tr>
+ *     <td valign="top">dependencyfile</td>
+ *     <td valign="top">path of a file (relative to the project's basedir) where the task
+ *       records which templates were used to generate each output file, so that
+ *       incremental processing also notices changes in included or imported templates.
+ *       Templates that were looked up but didn't exist (like with <tt>ignore_missing=true</tt>,
+ *       or a more specific localized variant) are recorded too, and creating them later also
+ *       causes regeneration. The file is created if it doesn't exist yet. If omitted, included and imported
+ *       templates aren't checked.</td>
+ *     <td valign="top" align="center">No</td>
+ *   </tr>
+ *   <tr>
+ *     <td valign="top">threads</td>
+ *     <td valign="top">the number of XML files to process concurrently. Defaults to 1.
+ *       All threads share the same FreeMarker configuration (and hence the same
+ *       template cache), but each parses its XML files with its own parser. If
+ *       it's more than 1, the classes listed in <tt>models</tt> must be thread-safe.
+ *       It's ignored (with a warning) if <tt>prepareModel</tt> or
+ *       <tt>prepareEnvironment</tt> is used, as the Jython scripts are run
+ *       sequentially.</td>
  *     <td valign="top" align="center">No</td>
  *   </tr>
  *   <tr>
@@ -232,13 +275,22 @@ import freemarker.template.utility.SecurityUtilities;
 public class FreemarkerXmlTask
 extends
     MatchingTask {
+    /** Separates the template names in the dependency file values; template names practically never contain it. */
+    private static final String DEPENDENCY_SEPARATOR = "\n";
+    /**
+     * Marks the template names in the dependency file that were looked up, but didn't exist; if they are created
+     * later, the output must be regenerated, as the lookup would find them now.
+     */
+    private static final String MISSING_DEPENDENCY_PREFIX = "!";
+
     private JythonAntTask prepareModel;
     private JythonAntTask prepareEnvironment;
     private final DocumentBuilderFactory builderFactory;
-    private DocumentBuilder builder;
+    /** {@link DocumentBuilder}-s aren't thread-safe, so each processing thread has its own. */
+    private final ThreadLocal builders = new ThreadLocal();
     
     /** the {@link Configuration} used by this task. */
-    private Configuration cfg = new Configuration();
+    private final DependencyTrackingConfiguration cfg = new DependencyTrackingConfiguration();
     
     /** the destination directory */
     private File destDir;
@@ -286,6 +338,20 @@ extends
 
     private String models = "";
     private final Map modelsMap = new HashMap();
+
+    /** the number of XML files processed concurrently */
+    private int threads = 1;
+
+    /** the dependencyfile= attribute */
+    private String dependencyFileAttribute;
+
+    private File dependencyFile;
+
+    /** Maps XML file paths to the template names used when their output was last generated, as read at start. */
+    private Properties previousDependencies;
+
+    /** Like {@link #previousDependencies}, but this is what will be stored at the end; synchronized. */
+    private Map currentDependencies;
     
     
     
@@ -368,6 +434,28 @@ extends
     public void setModels(String models) {
         this.models = models;
     }
+
+    /**
+     * Sets the number of XML files processed concurrently. Defaults to 1.
+     * 
+     * @since 2.3.30
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new BuildException("The \"threads\" attribute must be at least 1, but was " + threads + ".");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Sets the path of the file (relative to the project's basedir) that stores which templates were used to
+     * generate each output file, so that incremental processing notices changes in included or imported templates.
+     * 
+     * @since 2.3.30
+     */
+    public void setDependencyfile(String dependencyFileAttribute) {
+        this.dependencyFileAttribute = dependencyFileAttribute;
+    }
     
     @Override
     public void execute() throws BuildException {
@@ -437,20 +525,97 @@ extends
         userPropertiesTemplate = wrapMap(project.getUserProperties());
 
         builderFactory.setValidating(validation);
-        try {
-            builder = builderFactory.newDocumentBuilder();
-        } catch (ParserConfigurationException e) {
-            throw new BuildException("Could not create document builder", e, getLocation());
+        // Fail early if the parser can't be created at all:
+        getDocumentBuilder();
+
+        if (dependencyFileAttribute != null && dependencyFileAttribute.length() > 0) {
+            dependencyFile = getProject().resolveFile(dependencyFileAttribute);
+            previousDependencies = loadDependencies(dependencyFile);
+            currentDependencies = Collections.synchronizedMap(new HashMap());
         }
 
         // get a list of files to work on
         list = scanner.getIncludedFiles();
         
+        int threads = this.threads;
+        if (threads > 1 && (prepareModel != null || prepareEnvironment != null)) {
+            log("The \"threads\" attribute is ignored, as prepareModel or prepareEnvironment is used.",
+                    Project.MSG_WARN);
+            threads = 1;
+        }
         
-        for (int i = 0; i < list.length; ++i) {
-            process(baseDir, list[i], destDir);
+        try {
+            if (threads == 1 || list.length < 2) {
+                for (int i = 0; i < list.length; ++i) {
+                    process(baseDir, list[i], destDir);
+                }
+            } else {
+                processConcurrently(list, Math.min(threads, list.length));
+            }
+        } finally {
+            if (dependencyFile != null) {
+                // Also stored after a failure, so that the files generated before it needn't be regenerated later.
+                storeDependencies(dependencyFile);
+            }
+        }
+    }
+    
+    private void processConcurrently(String[] list, int threads) throws BuildException {
+        final File baseDir = this.baseDir;
+        final File destDir = this.destDir;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List futures = new ArrayList(list.length);
+            for (int i = 0; i < list.length; ++i) {
+                final String xmlFile = list[i];
+                futures.add(executor.submit(new Runnable() {
+                    public void run() {
+                        process(baseDir, xmlFile, destDir);
+                    }
+                }));
+            }
+            // Waits in the order of submission, so that the reported error doesn't depend on the thread scheduling
+            // more than necessary.
+            for (Iterator it = futures.iterator(); it.hasNext(); ) {
+                try {
+                    ((Future) it.next()).get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof BuildException) {
+                        throw (BuildException) cause;
+                    }
+                    throw new BuildException(cause, getLocation());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BuildException("Interrupted while waiting for the XML files to be processed", e, getLocation());
+        } finally {
+            executor.shutdownNow();
+            try {
+                // The still running tasks could modify the outputs and the dependencies otherwise.
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
+
+    private DocumentBuilder getDocumentBuilder() throws BuildException {
+        DocumentBuilder builder = (DocumentBuilder) builders.get();
+        if (builder == null) {
+            try {
+                // DocumentBuilderFactory isn't guaranteed to be thread-safe
+                synchronized (builderFactory) {
+                    builder = builderFactory.newDocumentBuilder();
+                }
+            } catch (ParserConfigurationException e) {
+                throw new BuildException("Could not create document builder", e, getLocation());
+            }
+            builders.set(builder);
+        }
+        return builder;
+    }
     
     public void addConfiguredJython(JythonAntTask jythonAntTask) {
         this.prepareEnvironment = jythonAntTask;
@@ -480,20 +645,14 @@ extends
                                                  xmlFile.lastIndexOf('.')) + extension);
 
             // only process files that have changed
-            if (!incremental ||
-                (inFile.lastModified() > outFile.lastModified() ||
-                 templateFileLastModified > outFile.lastModified() ||
-                 projectFileLastModified > outFile.lastModified())) {
+            if (!isUpToDate(xmlFile, inFile, outFile)) {
                 ensureDirectoryFor(outFile);
 
                 //-- command line status
                 log("Input:  " + xmlFile, Project.MSG_INFO );
                 
-                if (projectTemplate == null && projectFile != null) {
-                    Document doc = builder.parse(projectFile);
-                    projectTemplate = new NodeListModel(builder.parse(projectFile));
-                    projectNode = NodeModel.wrap(doc);
-                }
+                DocumentBuilder builder = getDocumentBuilder();
+                loadProjectFileIfNeeded(builder);
 
                 // Build the file DOM
                 Document docNode = builder.parse(inFile);
@@ -531,14 +690,36 @@ extends
                         }
                         prepareEnvironment.execute(vars);
                     }
-                    env.process();
+                    Set dependencies;
+                    if (currentDependencies != null) {
+                        dependencies = new LinkedHashSet();
+                        cfg.addLookupDependencies(dependencies, templateName, null, parsedTemplate);
+                        cfg.startTrackingDependencies(dependencies);
+                    } else {
+                        dependencies = null;
+                    }
+                    try {
+                        env.process();
+                    } finally {
+                        if (dependencies != null) {
+                            cfg.stopTrackingDependencies();
+                        }
+                    }
                     writer.flush();
+                    if (dependencies != null) {
+                        currentDependencies.put(xmlFile, dependencies);
+                    }
                 } finally {
                     writer.close();
                 }
 
                 log("Output: " + outFile, Project.MSG_INFO );
                 
+            } else if (currentDependencies != null && previousDependencies != null) {
+                String dependencies = previousDependencies.getProperty(xmlFile);
+                if (dependencies != null) {
+                    currentDependencies.put(xmlFile, dependencies);
+                }
             }
         } catch (SAXParseException spe) {
             Throwable rootCause = spe;
@@ -559,6 +740,106 @@ extends
         }
     }
 
+    private boolean isUpToDate(String xmlFile, File inFile, File outFile) {
+        if (!incremental) {
+            return false;
+        }
+        long outFileLastModified = outFile.lastModified();
+        if (inFile.lastModified() > outFileLastModified
+                || templateFileLastModified > outFileLastModified
+                || projectFileLastModified > outFileLastModified) {
+            return false;
+        }
+        if (currentDependencies != null) {
+            String dependencies = previousDependencies != null ? previousDependencies.getProperty(xmlFile) : null;
+            if (dependencies == null) {
+                // We don't know what was included when the output was generated
+                return false;
+            }
+            StringTokenizer tok = new StringTokenizer(dependencies, DEPENDENCY_SEPARATOR);
+            while (tok.hasMoreTokens()) {
+                String dependency = tok.nextToken();
+                if (dependency.startsWith(MISSING_DEPENDENCY_PREFIX)) {
+                    // The lookup would find a different (or any) template now
+                    if (new File(templateDir, dependency.substring(MISSING_DEPENDENCY_PREFIX.length())).exists()) {
+                        return false;
+                    }
+                } else {
+                    // lastModified() returns 0 for missing files, in which case the output is regenerated, which will
+                    // fail if the template is still included.
+                    long dependencyLastModified = new File(templateDir, dependency).lastModified();
+                    if (dependencyLastModified == 0L || dependencyLastModified > outFileLastModified) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private synchronized void loadProjectFileIfNeeded(DocumentBuilder builder) throws SAXException, IOException {
+        if (projectTemplate == null && projectFile != null) {
+            Document doc = builder.parse(projectFile);
+            projectTemplate = new NodeListModel(builder.parse(projectFile));
+            projectNode = NodeModel.wrap(doc);
+        }
+    }
+
+    private Properties loadDependencies(File dependencyFile) throws BuildException {
+        if (!dependencyFile.isFile()) {
+            return null;
+        }
+        Properties dependencies = new Properties();
+        try {
+            InputStream in = new FileInputStream(dependencyFile);
+            try {
+                dependencies.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // Only makes all files to be regenerated
+            log("Failed to read dependency file " + dependencyFile + ": " + e, Project.MSG_WARN);
+            return null;
+        }
+        return dependencies;
+    }
+
+    private void storeDependencies(File dependencyFile) throws BuildException {
+        Properties dependencies = new Properties();
+        synchronized (currentDependencies) {
+            for (Iterator it = currentDependencies.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry entry = (Map.Entry) it.next();
+                Object value = entry.getValue();
+                String joinedValue;
+                if (value instanceof String) {
+                    joinedValue = (String) value;
+                } else {
+                    StringBuilder sb = new StringBuilder();
+                    for (Iterator depIt = ((Set) value).iterator(); depIt.hasNext(); ) {
+                        if (sb.length() != 0) {
+                            sb.append(DEPENDENCY_SEPARATOR);
+                        }
+                        sb.append((String) depIt.next());
+                    }
+                    joinedValue = sb.toString();
+                }
+                dependencies.setProperty((String) entry.getKey(), joinedValue);
+            }
+        }
+        try {
+            ensureDirectoryFor(dependencyFile);
+            OutputStream out = new FileOutputStream(dependencyFile);
+            try {
+                dependencies.store(out, "FreeMarker XML task: templates used for generating each output");
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            throw new BuildException("Failed to write dependency file " + dependencyFile, e, getLocation());
+        }
+    }
+
     private void generateModels() {
         StringTokenizer modelTokenizer = new StringTokenizer(models, ",; ");
         while (modelTokenizer.hasMoreTokens()) {
@@ -611,6 +892,85 @@ extends
         return model;
     }
 
+    /**
+     * Records the source name of the templates that were loaded by the current thread (typically via
+     * {@code #include} or {@code #import}) while tracking is on. The names that were tried by the lookup before the
+     * found template (like more specific localized variants), or all tried names if the template was missing (with
+     * {@code ignore_missing=true}), are recorded with {@link #MISSING_DEPENDENCY_PREFIX}.
+     */
+    private static class DependencyTrackingConfiguration extends Configuration {
+        
+        private final ThreadLocal trackedDependencies = new ThreadLocal();
+        
+        void startTrackingDependencies(Set dependencies) {
+            trackedDependencies.set(dependencies);
+        }
+        
+        void stopTrackingDependencies() {
+            trackedDependencies.set(null);
+        }
+
+        @Override
+        public Template getTemplate(String name, Locale locale, Object customLookupCondition, String encoding,
+                boolean parseAsFTL, boolean ignoreMissing)
+                throws TemplateNotFoundException, MalformedTemplateNameException, ParseException, IOException {
+            Template template = super.getTemplate(
+                    name, locale, customLookupCondition, encoding, parseAsFTL, ignoreMissing);
+            Set dependencies = (Set) trackedDependencies.get();
+            if (dependencies != null) {
+                addLookupDependencies(dependencies, name, locale, template);
+            }
+            return template;
+        }
+
+        /**
+         * Adds the dependencies that a lookup of the given template name has, assuming the default template lookup
+         * and acquisition strategies.
+         * 
+         * @param locale
+         *            {@code null} if the default locale was used for the lookup.
+         * @param template
+         *            The found template, or {@code null} if the lookup has failed.
+         */
+        void addLookupDependencies(Set dependencies, String name, Locale locale, Template template) {
+            String sourceName = template != null ? template.getSourceName() : null;
+            
+            String normalizedName = name.startsWith("/") ? name.substring(1) : name;
+            // With acquisition (a "*" step), we would have to record all the tried directories; we don't do that.
+            if (normalizedName.indexOf('*') == -1) {
+                if (getLocalizedLookup()) {
+                    if (locale == null) {
+                        locale = getLocale();
+                    }
+                    int lastDot = normalizedName.lastIndexOf('.');
+                    String prefix = lastDot == -1 ? normalizedName : normalizedName.substring(0, lastDot);
+                    String suffix = lastDot == -1 ? "" : normalizedName.substring(lastDot);
+                    // Same order as in TemplateLookupContext.lookupWithLocalizedThenAcquisitionStrategy:
+                    String localeName = "_" + locale.toString();
+                    while (true) {
+                        String triedName = prefix + localeName + suffix;
+                        if (triedName.equals(sourceName)) {
+                            break;
+                        }
+                        dependencies.add(MISSING_DEPENDENCY_PREFIX + triedName);
+                        int lastUnderscore = localeName.lastIndexOf('_');
+                        if (lastUnderscore == -1) {
+                            break;
+                        }
+                        localeName = localeName.substring(0, lastUnderscore);
+                    }
+                } else if (!normalizedName.equals(sourceName)) {
+                    dependencies.add(MISSING_DEPENDENCY_PREFIX + normalizedName);
+                }
+            }
+            
+            if (sourceName != null) {
+                dependencies.add(sourceName);
+            }
+        }
+        
+    }
+    
     protected void insertDefaults(Map root) {
         root.put("properties", propertiesTemplate);
         root.put("userProperties", userPropertiesTemplate);
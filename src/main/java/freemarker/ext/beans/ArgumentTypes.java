@@ -67,10 +67,7 @@ final class ArgumentTypes {
         int ln = args.length;
         Class<?>[] typesTmp = new Class[ln];
         for (int i = 0; i < ln; ++i) {
-            Object arg = args[i];
-            typesTmp[i] = arg == null
-                    ? (bugfixed ? Null.class : Object.class)
-                    : arg.getClass();
+            typesTmp[i] = getArgumentType(args[i], bugfixed);
         }
         
         // `typesTmp` is used so the array is only modified before it's stored in the final `types` field (see JSR-133)
@@ -78,6 +75,22 @@ final class ArgumentTypes {
         this.bugfixed = bugfixed;
     }
     
+    /**
+     * Returns the type that represents the argument in the {@link ArgumentTypes}; never {@code null}.
+     */
+    static Class<?> getArgumentType(Object arg, boolean bugfixed) {
+        return arg == null
+                ? (bugfixed ? Null.class : Object.class)
+                : arg.getClass();
+    }
+
+    /**
+     * Don't modify the returned array!
+     */
+    Class<?>[] getTypes() {
+        return types;
+    }
+    
     @Override
     public int hashCode() {
         int hash = 0;
@@ -101,6 +114,10 @@ final class ArgumentTypes {
             }
             return true;
         }
+        if (o instanceof OverloadedMethodsSubset.CachedArgumentTypes) {
+            // Used as the lookup key of these
+            return o.equals(this);
+        }
         return false;
     }
     
@@ -19,6 +19,8 @@
 package freemarker.ext.beans;
 
 import java.io.Serializable;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -27,7 +29,6 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
-import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import freemarker.template.TemplateModelException;
 import freemarker.template.utility.ClassUtil;
 import freemarker.template.utility.NullArgumentException;
@@ -58,11 +59,43 @@ abstract class OverloadedMethodsSubset {
      */
     private int[/*number of args*/][/*arg index*/] typeFlagsByParamCount;
     
-    // TODO: This can cause memory-leak when classes are re-loaded. However, first the genericClassIntrospectionCache
-    // and such need to be fixed in this regard. 
-    private final Map/*<ArgumentTypes, MaybeEmptyCallableMemberDescriptor>*/ argTypesToMemberDescCache
+    /**
+     * The maximum number of entries in {@link #recentArgTypesToMemberDescs}.
+     */
+    static final int MAX_RECENT_ARG_TYPES = 8;
+
+    /**
+     * The maximum number of entries in {@link #argTypesToMemberDescCache}; after this is reached, an old entry is
+     * evicted for each new one.
+     */
+    static final int MAX_CACHED_ARG_TYPES = 256;
+
+    /**
+     * The most recently used argument types, most recent first. This is checked before
+     * {@link #argTypesToMemberDescCache}, and doesn't need any object creation on a hit. This array is never
+     * modified, only replaced, so it's safe to read without synchronization. Its elements are taken from
+     * {@link #argTypesToMemberDescCache}.
+     */
+    private volatile CachedArgumentTypes[] recentArgTypesToMemberDescs = new CachedArgumentTypes[0];
+    
+    /**
+     * Counts the hits in {@link #argTypesToMemberDescCache} while {@link #recentArgTypesToMemberDescs} is full; used
+     * for limiting how often that array is replaced when the call site uses more argument types than it can hold.
+     * Not synchronized, as losing an update only changes the timing of the next replacement.
+     */
+    private int fullRecentArgTypesFallbackHits;
+
+    /**
+     * Maps {@link ArgumentTypes} to the {@link CachedArgumentTypes} that's equal to it (so keys and values are the
+     * same objects). The entries only weakly refer to the argument classes, so the cache doesn't prevent their
+     * unloading; the entries whose classes were garbage collected are removed when a new entry is added.
+     */
+    private final Map/*<CachedArgumentTypes, CachedArgumentTypes>*/ argTypesToMemberDescCache
             = new ConcurrentHashMap(6, 0.75f, 1);
     
+    /** The argument classes of the {@link #argTypesToMemberDescCache} entries that were garbage collected. */
+    private final ReferenceQueue collectedArgTypesQueue = new ReferenceQueue();
+    
     private final List/*<ReflectionCallableMemberDescriptor>*/ memberDescs = new LinkedList();
     
     /** Enables 2.3.21 {@link BeansWrapper} incompatibleImprovements */
@@ -133,24 +166,84 @@ abstract class OverloadedMethodsSubset {
         return unwrappingHintsByParamCount;
     }
     
-    @SuppressFBWarnings(value="JLM_JSR166_UTILCONCURRENT_MONITORENTER",
-            justification="Locks for member descriptor creation only")
     final MaybeEmptyCallableMemberDescriptor getMemberDescriptorForArgs(Object[] args, boolean varArg) {
+        CachedArgumentTypes[] recentArgTypes = recentArgTypesToMemberDescs;
+        for (int i = 0; i < recentArgTypes.length; i++) {
+            CachedArgumentTypes recent = recentArgTypes[i];
+            if (recent.matches(args, bugfixed)) {
+                return recent.memberDesc;
+            }
+        }
+        
         ArgumentTypes argTypes = new ArgumentTypes(args, bugfixed);
-        MaybeEmptyCallableMemberDescriptor memberDesc
-                = (MaybeEmptyCallableMemberDescriptor) argTypesToMemberDescCache.get(argTypes);
-        if (memberDesc == null) {
-            // Synchronized so that we won't unnecessarily create the same member desc. for multiple times in parallel.
-            synchronized (argTypesToMemberDescCache) {
-                memberDesc = (MaybeEmptyCallableMemberDescriptor) argTypesToMemberDescCache.get(argTypes);
-                if (memberDesc == null) {
-                    memberDesc = argTypes.getMostSpecific(memberDescs, varArg);
-                    argTypesToMemberDescCache.put(argTypes, memberDesc);
-                }
+        CachedArgumentTypes cachedArgTypes = (CachedArgumentTypes) argTypesToMemberDescCache.get(argTypes);
+        if (cachedArgTypes != null) {
+            // Only argument types that are seen repeatedly are promoted, and if the array is full, not on each hit,
+            // so that a call site with more argument types than what fits into it doesn't replace the array on
+            // each call.
+            if (recentArgTypes.length < MAX_RECENT_ARG_TYPES
+                    || ++fullRecentArgTypesFallbackHits % MAX_RECENT_ARG_TYPES == 0) {
+                addRecentArgTypes(recentArgTypes, cachedArgTypes);
             }
+            return cachedArgTypes.memberDesc;
         }
+        
+        // Not synchronized, as finding the most specific member is side-effect free, so if multiple threads do it
+        // in parallel, that's just some wasted work.
+        MaybeEmptyCallableMemberDescriptor memberDesc = argTypes.getMostSpecific(memberDescs, varArg);
+        putIntoArgTypesCache(new CachedArgumentTypes(argTypes, memberDesc, collectedArgTypesQueue));
         return memberDesc;
     }
+
+    /**
+     * Adds the argument types as the most recent, possibly dropping the least recent. Concurrent calls can overwrite
+     * each other's addition; that only means that the lost argument types have to be looked up again next time.
+     */
+    private void addRecentArgTypes(CachedArgumentTypes[] oldRecentArgTypes, CachedArgumentTypes cachedArgTypes) {
+        int newLength = Math.min(oldRecentArgTypes.length + 1, MAX_RECENT_ARG_TYPES);
+        CachedArgumentTypes[] newRecentArgTypes = new CachedArgumentTypes[newLength];
+        newRecentArgTypes[0] = cachedArgTypes;
+        System.arraycopy(oldRecentArgTypes, 0, newRecentArgTypes, 1, newLength - 1);
+        recentArgTypesToMemberDescs = newRecentArgTypes;
+    }
+
+    private void putIntoArgTypesCache(CachedArgumentTypes cachedArgTypes) {
+        ArgumentTypeReference collectedRef;
+        while ((collectedRef = (ArgumentTypeReference) collectedArgTypesQueue.poll()) != null) {
+            argTypesToMemberDescCache.remove(collectedRef.owner);
+        }
+        
+        if (argTypesToMemberDescCache.size() >= MAX_CACHED_ARG_TYPES) {
+            // Evicts an arbitrary entry. Concurrent puts can make the size slightly exceed the limit, but not grow
+            // further.
+            Iterator it = argTypesToMemberDescCache.keySet().iterator();
+            if (it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        argTypesToMemberDescCache.put(cachedArgTypes, cachedArgTypes);
+    }
+    
+    /** For unit testing only */
+    int getArgTypesCacheSize() {
+        return argTypesToMemberDescCache.size();
+    }
+    
+    /** For unit testing only */
+    Object[] getRecentArgTypes() {
+        return recentArgTypesToMemberDescs;
+    }
+    
+    /** For unit testing only: behaves as if the garbage collector has freed all cached argument classes. */
+    void enqueueCachedArgumentTypeReferences() {
+        for (Iterator it = argTypesToMemberDescCache.keySet().iterator(); it.hasNext(); ) {
+            CachedArgumentTypes cachedArgTypes = (CachedArgumentTypes) it.next();
+            for (int i = 0; i < cachedArgTypes.typeRefs.length; i++) {
+                cachedArgTypes.typeRefs[i].enqueue();
+            }
+        }
+    }
     
     Iterator/*<ReflectionCallableMemberDescriptor>*/ getMemberDescriptors() {
         return memberDescs.iterator();
@@ -423,5 +516,102 @@ abstract class OverloadedMethodsSubset {
             }
         }
     }
+
+    /**
+     * An entry of {@link OverloadedMethodsSubset#argTypesToMemberDescCache}, and of
+     * {@link OverloadedMethodsSubset#recentArgTypesToMemberDescs}. Only weakly refers to the argument classes, so it
+     * doesn't prevent their unloading. It's equal to the {@link ArgumentTypes} that has the same types, so it can be
+     * looked up with that.
+     */
+    static final class CachedArgumentTypes {
+        
+        private final ArgumentTypeReference[] typeRefs;
+        private final int hashCode;
+        private final MaybeEmptyCallableMemberDescriptor memberDesc;
+
+        CachedArgumentTypes(ArgumentTypes argTypes, MaybeEmptyCallableMemberDescriptor memberDesc,
+                ReferenceQueue queue) {
+            Class[] types = argTypes.getTypes();
+            ArgumentTypeReference[] typeRefs = new ArgumentTypeReference[types.length];
+            for (int i = 0; i < types.length; i++) {
+                typeRefs[i] = new ArgumentTypeReference(types[i], this, queue);
+            }
+            this.typeRefs = typeRefs;
+            this.hashCode = argTypes.hashCode();
+            this.memberDesc = memberDesc;
+        }
+        
+        /**
+         * Tells if the argument types are the same as with {@link ArgumentTypes#ArgumentTypes(Object[], boolean)}.
+         */
+        boolean matches(Object[] args, boolean bugfixed) {
+            if (args.length != typeRefs.length) {
+                return false;
+            }
+            for (int i = 0; i < args.length; i++) {
+                if (typeRefs[i].get() != ArgumentTypes.getArgumentType(args[i], bugfixed)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        /**
+         * Tells if the types are the same as the given ones, which can't contain {@code null}. So an entry whose
+         * class was garbage collected is only equal to itself.
+         */
+        boolean matches(Class[] types) {
+            if (types.length != typeRefs.length) {
+                return false;
+            }
+            for (int i = 0; i < types.length; i++) {
+                if (typeRefs[i].get() != types[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (o instanceof ArgumentTypes) {
+                return matches(((ArgumentTypes) o).getTypes());
+            }
+            if (o instanceof CachedArgumentTypes) {
+                CachedArgumentTypes other = (CachedArgumentTypes) o;
+                if (other.typeRefs.length != typeRefs.length) {
+                    return false;
+                }
+                for (int i = 0; i < typeRefs.length; i++) {
+                    Class type = (Class) typeRefs[i].get();
+                    if (type == null || type != other.typeRefs[i].get()) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            return false;
+        }
+        
+    }
+    
+    private static final class ArgumentTypeReference extends WeakReference {
+        
+        private final CachedArgumentTypes owner;
+
+        ArgumentTypeReference(Class type, CachedArgumentTypes owner, ReferenceQueue queue) {
+            super(type, queue);
+            this.owner = owner;
+        }
+        
+    }
     
 }
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.ext.beans;
+
+import java.text.DateFormat;
+import java.text.MessageFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Immutable, thread-safe replacement of a {@link MessageFormat} that was created for a given pattern and locale;
+ * used by {@link ResourceBundleModel}. Patterns where all placeholders are simple (like <code>{0}</code>, but not
+ * like <code>{0,number}</code>) are parsed into literal and argument parts once, and then formatted without any
+ * {@link MessageFormat} involved, and without locking. For other patterns, a {@link MessageFormat} is created once,
+ * and a clone of it is used for each formatting (as {@link MessageFormat} isn't thread-safe), which is still much
+ * cheaper than re-parsing the pattern.
+ * 
+ * <p>The output is the same as of {@link MessageFormat#format(Object)} with the same pattern and locale.
+ */
+final class PrecompiledMessageFormat {
+
+    /** Longest argument index we parse ourselves; longer ones are left to {@link MessageFormat} (to fail). */
+    private static final int MAX_ARGUMENT_INDEX_LENGTH = 6;
+    
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private final Locale locale;
+    
+    /**
+     * Literal {@link String}-s and argument indexes ({@link Integer}-s), in the order of appearance; {@code null} if
+     * the pattern is not simple.
+     */
+    private final Object[] parts;
+    
+    /** The prototype that we clone for formatting; {@code null} if the pattern is simple. */
+    private final MessageFormat messageFormat;
+    
+    /** Sum of the length of the literal parts; used to estimate the output length. */ 
+    private final int literalsLength;
+
+    PrecompiledMessageFormat(String pattern, Locale locale) {
+        this.locale = locale;
+        Object[] parts = parseSimplePattern(pattern);
+        if (parts != null) {
+            int literalsLength = 0;
+            for (Object part : parts) {
+                if (part instanceof String) {
+                    literalsLength += ((String) part).length();
+                }
+            }
+            this.parts = parts;
+            this.literalsLength = literalsLength;
+            this.messageFormat = null;
+        } else {
+            MessageFormat messageFormat = new MessageFormat(pattern);
+            messageFormat.setLocale(locale);
+            this.parts = null;
+            this.literalsLength = 0;
+            this.messageFormat = messageFormat;
+        }
+    }
+
+    String format(Object[] args) {
+        if (parts == null) {
+            return ((MessageFormat) messageFormat.clone()).format(args);
+        }
+        
+        if (args == null) {
+            // Like MessageFormat, leave all placeholders as is
+            args = NO_ARGS;
+        }
+        StringBuilder sb = new StringBuilder(literalsLength + 16 * args.length);
+        for (Object part : parts) {
+            if (part instanceof String) {
+                sb.append((String) part);
+            } else {
+                int argIdx = ((Integer) part).intValue();
+                if (argIdx >= args.length) {
+                    sb.append('{').append(argIdx).append('}');
+                } else {
+                    appendArgument(args[argIdx], sb);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Formats the argument like {@link MessageFormat} does for a placeholder without format type.
+     */
+    private void appendArgument(Object arg, StringBuilder sb) {
+        if (arg == null) {
+            sb.append("null");
+        } else if (arg instanceof String) {
+            sb.append((String) arg);
+        } else if (arg instanceof Number) {
+            sb.append(NumberFormat.getInstance(locale).format(arg));
+        } else if (arg instanceof Date) {
+            sb.append(DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT, locale).format(arg));
+        } else {
+            String s = arg.toString();
+            sb.append(s != null ? s : "null");
+        }
+    }
+
+    /**
+     * Parses the pattern according the {@link MessageFormat} quoting rules, if it only contains simple placeholders.
+     * 
+     * @return The parts of the pattern, or {@code null} if the pattern has a non-simple (or malformed) placeholder.
+     */
+    private static Object[] parseSimplePattern(String pattern) {
+        List<Object> parts = new ArrayList<Object>();
+        StringBuilder literal = new StringBuilder();
+        boolean inQuote = false;
+        int len = pattern.length();
+        int i = 0;
+        while (i < len) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                if (i + 1 < len && pattern.charAt(i + 1) == '\'') {
+                    literal.append('\'');
+                    i += 2;
+                } else {
+                    inQuote = !inQuote;
+                    i++;
+                }
+            } else if (c == '{' && !inQuote) {
+                int indexStart = i + 1;
+                int indexEnd = indexStart;
+                while (indexEnd < len && isAsciiDigit(pattern.charAt(indexEnd))) {
+                    indexEnd++;
+                }
+                if (indexEnd == indexStart || indexEnd - indexStart > MAX_ARGUMENT_INDEX_LENGTH
+                        || indexEnd == len || pattern.charAt(indexEnd) != '}') {
+                    return null;
+                }
+                if (literal.length() != 0) {
+                    parts.add(literal.toString());
+                    literal.setLength(0);
+                }
+                parts.add(Integer.valueOf(pattern.substring(indexStart, indexEnd)));
+                i = indexEnd + 1;
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        if (literal.length() != 0) {
+            parts.add(literal.toString());
+        }
+        return parts.toArray();
+    }
+
+    private static boolean isAsciiDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+    
+}
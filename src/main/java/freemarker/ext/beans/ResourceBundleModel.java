@@ -21,13 +21,15 @@ package freemarker.ext.beans;
 
 import java.text.MessageFormat;
 import java.util.Enumeration;
-import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import freemarker.core._DelayedJQuote;
 import freemarker.core._TemplateModelException;
@@ -65,7 +67,10 @@ public class ResourceBundleModel
             }
         };
 
-    private Hashtable formats = null;
+    private static final Map<ResourceBundle, ConcurrentMap<String, PrecompiledMessageFormat>> FORMATS_BY_BUNDLE
+            = new WeakHashMap<ResourceBundle, ConcurrentMap<String, PrecompiledMessageFormat>>();
+
+    private volatile ConcurrentMap<String, PrecompiledMessageFormat> formats;
 
     public ResourceBundleModel(ResourceBundle bundle, BeansWrapper wrapper) {
         super(bundle, wrapper);
@@ -114,7 +119,8 @@ public class ResourceBundleModel
     /**
      * Takes first argument as a resource key, looks up a string in resource bundle
      * with this key, then applies a MessageFormat.format on the string with the
-     * rest of the arguments. The created MessageFormats are cached for later reuse.
+     * rest of the arguments. The parsed message patterns are cached for later reuse, and shared with the other
+     * {@link ResourceBundleModel}-s that wrap the same {@link ResourceBundle}.
      */
     public Object exec(List arguments)
         throws TemplateModelException {
@@ -149,37 +155,38 @@ public class ResourceBundleModel
      */
     public String format(String key, Object[] params)
         throws MissingResourceException {
-        // Check to see if we already have a cache for message formats
-        // and construct it if we don't
-        // NOTE: this block statement should be synchronized. However
-        // concurrent creation of two caches will have no harmful
-        // consequences, and we avoid a performance hit.
-        /* synchronized(this) */
-        {
-            if (formats == null)
-                formats = new Hashtable();
+        ConcurrentMap<String, PrecompiledMessageFormat> formats = this.formats;
+        if (formats == null) {
+            formats = getFormatsForBundle(getBundle());
+            this.formats = formats;
         }
 
-        MessageFormat format = null;
-        // Check to see if we already have a requested MessageFormat cached
-        // and construct it if we don't
-        // NOTE: this block statement should be synchronized. However
-        // concurrent creation of two formats will have no harmful
-        // consequences, and we avoid a performance hit.
-        /* synchronized(formats) */
-        {
-            format = (MessageFormat) formats.get(key);
-            if (format == null) {
-                format = new MessageFormat(((ResourceBundle) object).getString(key));
-                format.setLocale(getBundle().getLocale());
-                formats.put(key, format);
+        PrecompiledMessageFormat format = formats.get(key);
+        if (format == null) {
+            // Concurrent creation of the same format is harmless, as they are equivalent. 
+            format = new PrecompiledMessageFormat(getBundle().getString(key), getBundle().getLocale());
+            PrecompiledMessageFormat prevFormat = formats.putIfAbsent(key, format);
+            if (prevFormat != null) {
+                format = prevFormat;
             }
         }
+        
+        return format.format(params);
+    }
 
-        // Perform the formatting. We synchronize on it in case it
-        // contains date formatting, which is not thread-safe.
-        synchronized (format) {
-            return format.format(params);
+    /**
+     * Returns the formats shared by all {@link ResourceBundleModel}-s that wrap the same {@link ResourceBundle}
+     * (note that a {@link ResourceBundle} has a fixed locale). The bundle is only weakly referenced, so this doesn't
+     * prevent unloading the classes that it belongs to.
+     */
+    private static ConcurrentMap<String, PrecompiledMessageFormat> getFormatsForBundle(ResourceBundle bundle) {
+        synchronized (FORMATS_BY_BUNDLE) {
+            ConcurrentMap<String, PrecompiledMessageFormat> formats = FORMATS_BY_BUNDLE.get(bundle);
+            if (formats == null) {
+                formats = new ConcurrentHashMap<String, PrecompiledMessageFormat>();
+                FORMATS_BY_BUNDLE.put(bundle, formats);
+            }
+            return formats;
         }
     }
 
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.ext.dom;
+
+import freemarker.template.TemplateScalarModel;
+import freemarker.template.TemplateSequenceModel;
+import freemarker.template.utility.Constants;
+
+/**
+ * A text, comment, or processing instruction node of a {@link StreamingNodeModel}. Adjacent text and CDATA sections
+ * are merged into a single text node.
+ */
+class StreamingCharacterDataModel extends StreamingNodeModel implements TemplateScalarModel {
+    
+    static final int TEXT = 0;
+    static final int COMMENT = 1;
+    static final int PI = 2;
+    
+    private final int type;
+    private final String piTarget;
+    private final String data;
+
+    StreamingCharacterDataModel(StreamingNodeModel parent, int type, String piTarget, String data) {
+        super(parent);
+        this.type = type;
+        this.piTarget = piTarget;
+        this.data = data;
+    }
+
+    public String getAsString() {
+        return data;
+    }
+
+    public String getNodeName() {
+        switch (type) {
+        case COMMENT: return "@comment";
+        case PI: return "@pi$" + piTarget;
+        default: return "@text";
+        }
+    }
+
+    public String getNodeType() {
+        switch (type) {
+        case COMMENT: return "comment";
+        case PI: return "pi";
+        default: return "text";
+        }
+    }
+
+    public TemplateSequenceModel getChildNodes() {
+        return Constants.EMPTY_SEQUENCE;
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.ext.dom;
+
+import freemarker.core.Environment;
+import freemarker.core._ForwardOnlyTemplateModelIterator;
+import freemarker.template.TemplateCollectionModel;
+import freemarker.template.TemplateHashModel;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateModelIterator;
+import freemarker.template.TemplateScalarModel;
+import freemarker.template.TemplateSequenceModel;
+
+/**
+ * The child nodes of a {@link StreamingParentNodeModel}, or only its child elements with a given name. How the child
+ * nodes are read is decided when the value is used: if it's listed (as a {@link TemplateCollectionModel}), and none of
+ * the content of the parent was read yet, then it's read node by node. Otherwise, the parent is materialized (read
+ * into a DOM subtree), and then this behaves like the equivalent {@link NodeListModel} (or the single
+ * {@link NodeModel}, if there's exactly one match).
+ */
+class StreamingChildNodesModel
+        implements TemplateCollectionModel, TemplateSequenceModel, TemplateHashModel, TemplateScalarModel {
+    
+    private final StreamingParentNodeModel parent;
+    /** {@code null} for all child nodes, {@code "*"} for all child elements, or else an element name. */
+    private final String nameFilter;
+    
+    private TemplateSequenceModel materializedResult;
+    
+    StreamingChildNodesModel(StreamingParentNodeModel parent, String nameFilter) {
+        this.parent = parent;
+        this.nameFilter = nameFilter;
+    }
+
+    public TemplateModelIterator iterator() throws TemplateModelException {
+        if (parent.getChildrenState() == StreamingParentNodeModel.CHILDREN_MATERIALIZED) {
+            return new MaterializedIterator(getMaterializedResult());
+        }
+        parent.startStreamingChildren();
+        return new StreamingIterator();
+    }
+
+    public TemplateModel get(int index) throws TemplateModelException {
+        return getMaterializedResult().get(index);
+    }
+
+    public int size() throws TemplateModelException {
+        return getMaterializedResult().size();
+    }
+
+    public TemplateModel get(String key) throws TemplateModelException {
+        return ((TemplateHashModel) getMaterializedResult()).get(key);
+    }
+
+    public boolean isEmpty() throws TemplateModelException {
+        return size() == 0;
+    }
+
+    public String getAsString() throws TemplateModelException {
+        TemplateSequenceModel materializedResult = getMaterializedResult();
+        if (materializedResult instanceof TemplateScalarModel) {
+            return ((TemplateScalarModel) materializedResult).getAsString();
+        }
+        throw new TemplateModelException(
+                "Can't convert to string, because instead of exactly 1 matching XML node there were "
+                + materializedResult.size() + ". Use [index], or #list.");
+    }
+    
+    private TemplateSequenceModel getMaterializedResult() throws TemplateModelException {
+        if (materializedResult == null) {
+            NodeModel materializedParent = parent.getMaterialized();
+            materializedResult = nameFilter == null
+                    ? materializedParent.getChildNodes()
+                    // NodeModel-s are also sequences, when there's exactly 1 match:
+                    : (TemplateSequenceModel) materializedParent.get(nameFilter);
+        }
+        return materializedResult;
+    }
+    
+    private boolean matches(StreamingNodeModel node) {
+        if (nameFilter == null) {
+            return true;
+        }
+        if (!(node instanceof StreamingElementModel)) {
+            return false;
+        }
+        return nameFilter.equals("*")
+                || ((StreamingElementModel) node).matchesName(nameFilter, Environment.getCurrentEnvironment());
+    }
+    
+    private class StreamingIterator implements _ForwardOnlyTemplateModelIterator {
+        
+        private StreamingNodeModel lastReturned;
+        private boolean lastReturnedReleased;
+        private StreamingNodeModel nextNode;
+        private boolean nextNodeFetched;
+
+        public TemplateModel next() throws TemplateModelException {
+            fetchNextNode();
+            if (nextNode == null) {
+                throw new TemplateModelException("The collection has no more items.");
+            }
+            lastReturned = nextNode;
+            lastReturnedReleased = false;
+            nextNode = null;
+            nextNodeFetched = false;
+            return lastReturned;
+        }
+
+        public boolean hasNext() throws TemplateModelException {
+            fetchNextNode();
+            return nextNode != null;
+        }
+
+        public void releaseLastItem() {
+            lastReturnedReleased = true;
+        }
+        
+        private void fetchNextNode() throws TemplateModelException {
+            if (nextNodeFetched) {
+                return;
+            }
+            
+            if (lastReturned instanceof StreamingElementModel && !lastReturnedReleased) {
+                // The caller might still need the content of the last element (like #list calls hasNext() before
+                // processing the current item), so we can't just skip it.
+                StreamingElementModel lastElement = (StreamingElementModel) lastReturned;
+                if (!lastElement.isClosed()
+                        && lastElement.getChildrenState() == StreamingParentNodeModel.CHILDREN_UNREAD) {
+                    lastElement.getMaterialized();
+                }
+            }
+            lastReturned = null;
+            
+            StreamingNodeModel node;
+            do {
+                node = parent.readNextChild();
+            } while (node != null && !matches(node));
+            nextNode = node;
+            nextNodeFetched = true;
+        }
+        
+    }
+    
+    private static class MaterializedIterator implements TemplateModelIterator {
+        
+        private final TemplateSequenceModel sequence;
+        private final int size;
+        private int nextIndex;
+
+        MaterializedIterator(TemplateSequenceModel sequence) throws TemplateModelException {
+            this.sequence = sequence;
+            this.size = sequence.size();
+        }
+
+        public TemplateModel next() throws TemplateModelException {
+            return sequence.get(nextIndex++);
+        }
+
+        public boolean hasNext() {
+            return nextIndex < size;
+        }
+        
+    }
+
+}
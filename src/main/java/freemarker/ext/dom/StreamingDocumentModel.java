@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.ext.dom;
+
+import freemarker.core.Environment;
+import freemarker.template.TemplateHashModel;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.utility.Constants;
+
+/**
+ * The document node of a {@link StreamingNodeModel}. 
+ */
+class StreamingDocumentModel extends StreamingParentNodeModel implements TemplateHashModel {
+    
+    private StreamingElementModel rootElement;
+
+    StreamingDocumentModel(StreamingXMLCursor cursor) {
+        super(null, cursor);
+    }
+
+    public String getNodeName() {
+        return "@document";
+    }
+
+    public String getNodeType() {
+        return "document";
+    }
+    
+    @Override
+    String getDescription() {
+        return "the document node";
+    }
+
+    /**
+     * Supports {@code "*"}, which returns the root element, and element names, which return the root element if its
+     * name matches, otherwise an empty sequence. 
+     */
+    public TemplateModel get(String key) throws TemplateModelException {
+        if (key.equals("*") || DomStringUtil.isXMLNameLike(key)) {
+            StreamingElementModel rootElement = getRootElement();
+            if (key.equals("*") || rootElement.matchesName(key, Environment.getCurrentEnvironment())) {
+                return rootElement;
+            } else {
+                return Constants.EMPTY_SEQUENCE;
+            }
+        }
+        throw new TemplateModelException(
+                "Unsupported key on a streamed XML document: " + key + ". You can only get the root element (by "
+                + "name, or with \"*\"), and then use that.");
+    }
+
+    public boolean isEmpty() {
+        return false;
+    }
+    
+    private StreamingElementModel getRootElement() throws TemplateModelException {
+        if (rootElement == null) {
+            startStreamingChildren();
+            StreamingNodeModel child;
+            while ((child = readNextChild()) != null) {
+                if (child instanceof StreamingElementModel) {
+                    rootElement = (StreamingElementModel) child;
+                    break;
+                }
+            }
+            if (rootElement == null) {
+                throw new TemplateModelException("The streamed XML document has no root element.");
+            }
+        }
+        return rootElement;
+    }
+
+    @Override
+    NodeModel getMaterialized() throws TemplateModelException {
+        throw new TemplateModelException(
+                "This operation would need to read the whole streamed XML document into memory, which isn't "
+                + "supported. Only the child nodes of the document can be listed with #list or #recurse.");
+    }
+
+}
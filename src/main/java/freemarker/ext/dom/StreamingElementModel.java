@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.ext.dom;
+
+import javax.xml.stream.XMLStreamReader;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import freemarker.core.Environment;
+import freemarker.template.SimpleScalar;
+import freemarker.template.Template;
+import freemarker.template.TemplateHashModel;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateScalarModel;
+
+/**
+ * An element of a {@link StreamingNodeModel}. The name, namespace and attributes are available right away; the
+ * content is either read node by node, or as a whole into a DOM subtree (see {@link #getMaterialized()}).
+ */
+class StreamingElementModel extends StreamingParentNodeModel implements TemplateHashModel, TemplateScalarModel {
+    
+    private final String localName;
+    private final String namespaceURI;
+    private final String prefix;
+    /** Groups of 4: namespace URI (or {@code null}), local name, prefix (or {@code null}), value */
+    private final String[] attributes;
+    /** Pairs of prefix (or {@code null} for the default namespace) and namespace URI */
+    private final String[] namespaceDeclarations;
+    
+    private NodeModel materialized;
+    
+    /**
+     * @param reader
+     *            Must be at the {@code START_ELEMENT} event of this element.
+     */
+    StreamingElementModel(StreamingParentNodeModel parent, StreamingXMLCursor cursor, XMLStreamReader reader) {
+        super(parent, cursor);
+        localName = reader.getLocalName();
+        String namespaceURI = reader.getNamespaceURI();
+        this.namespaceURI = namespaceURI != null ? namespaceURI : "";
+        prefix = StreamingXMLCursor.emptyToNull(reader.getPrefix());
+        
+        int attCount = reader.getAttributeCount();
+        attributes = new String[attCount * 4];
+        for (int i = 0; i < attCount; i++) {
+            attributes[i * 4] = StreamingXMLCursor.emptyToNull(reader.getAttributeNamespace(i));
+            attributes[i * 4 + 1] = reader.getAttributeLocalName(i);
+            attributes[i * 4 + 2] = StreamingXMLCursor.emptyToNull(reader.getAttributePrefix(i));
+            attributes[i * 4 + 3] = reader.getAttributeValue(i);
+        }
+        
+        int nsCount = reader.getNamespaceCount();
+        namespaceDeclarations = new String[nsCount * 2];
+        for (int i = 0; i < nsCount; i++) {
+            namespaceDeclarations[i * 2] = reader.getNamespacePrefix(i);
+            namespaceDeclarations[i * 2 + 1] = reader.getNamespaceURI(i);
+        }
+    }
+
+    public String getNodeName() {
+        return localName;
+    }
+
+    public String getNodeType() {
+        return "element";
+    }
+    
+    @Override
+    public String getNodeNamespace() {
+        return namespaceURI;
+    }
+    
+    @Override
+    String getDescription() {
+        return "<" + StreamingXMLCursor.toQName(prefix, localName) + ">";
+    }
+
+    /**
+     * Supports attribute names prefixed with {@code "@"}, which return the attribute value as string (or
+     * {@code null}), and element names and {@code "*"}, which return the matching child elements (see
+     * {@link StreamingChildNodesModel}). For any other key, the element is {@linkplain #getMaterialized()
+     * materialized}, and the key is resolved with {@link NodeModel#get(String)}.
+     */
+    public TemplateModel get(String key) throws TemplateModelException {
+        if (key.startsWith("@") && !key.startsWith("@@") && DomStringUtil.isXMLNameLike(key, 1)) {
+            String value = getAttributeValue(key.substring(1));
+            return value != null ? new SimpleScalar(value) : null;
+        } else if (key.equals("*") || DomStringUtil.isXMLNameLike(key)) {
+            return new StreamingChildNodesModel(this, key);
+        } else {
+            return getMaterialized().get(key);
+        }
+    }
+
+    public boolean isEmpty() {
+        return false;
+    }
+
+    /**
+     * Returns the text content, like {@link ElementModel#getAsString()}; this materializes the element.
+     */
+    public String getAsString() throws TemplateModelException {
+        return ((TemplateScalarModel) getMaterialized()).getAsString();
+    }
+    
+    @Override
+    NodeModel getMaterialized() throws TemplateModelException {
+        if (materialized == null) {
+            checkNotSkipped();
+            if (getChildrenState() == CHILDREN_STREAMED) {
+                throw new TemplateModelException(
+                        "The whole content of this streamed XML element (" + getDescription() + ") is needed, but "
+                        + "it's not available anymore, because its child nodes were already read one by one (with "
+                        + "#recurse, #list, or ?children). Get what you need with child element names, or as text, "
+                        + "before that.");
+            }
+            Element domElement = cursor.materialize(this);
+            setChildrenState(CHILDREN_MATERIALIZED);
+            materialized = NodeModel.wrap(domElement);
+        }
+        return materialized;
+    }
+
+    boolean matchesName(String name, Environment env) {
+        return DomStringUtil.matchesName(name, localName, namespaceURI, env);
+    }
+    
+    /**
+     * Creates a DOM element with the same name, namespace declarations, and attributes as this element has.
+     */
+    Element createDOMElement(Document doc) {
+        Element element = doc.createElementNS(
+                StreamingXMLCursor.emptyToNull(namespaceURI), StreamingXMLCursor.toQName(prefix, localName));
+        for (int i = 0; i < namespaceDeclarations.length; i += 2) {
+            StreamingXMLCursor.setNamespaceDeclaration(
+                    element, namespaceDeclarations[i], namespaceDeclarations[i + 1]);
+        }
+        for (int i = 0; i < attributes.length; i += 4) {
+            element.setAttributeNS(
+                    attributes[i], StreamingXMLCursor.toQName(attributes[i + 2], attributes[i + 1]),
+                    attributes[i + 3]);
+        }
+        return element;
+    }
+    
+    /**
+     * Finds the attribute like {@link ElementModel} does: by the qualified name as written in the XML, or by the
+     * local name and the namespace that's mapped to the prefix with {@code #ftl ns_prefixes}.
+     */
+    private String getAttributeValue(String qname) {
+        for (int i = 0; i < attributes.length; i += 4) {
+            if (qname.equals(StreamingXMLCursor.toQName(attributes[i + 2], attributes[i + 1]))) {
+                return attributes[i + 3];
+            }
+        }
+        
+        int colonIndex = qname.indexOf(':');
+        if (colonIndex > 0) {
+            String prefix = qname.substring(0, colonIndex);
+            String uri;
+            if (prefix.equals(Template.DEFAULT_NAMESPACE_PREFIX)) {
+                uri = Environment.getCurrentEnvironment().getDefaultNS();
+            } else {
+                uri = Environment.getCurrentEnvironment().getNamespaceForPrefix(prefix);
+            }
+            if (uri != null) {
+                String localName = qname.substring(1 + colonIndex);
+                for (int i = 0; i < attributes.length; i += 4) {
+                    if (uri.equals(attributes[i]) && localName.equals(attributes[i + 1])) {
+                        return attributes[i + 3];
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+}
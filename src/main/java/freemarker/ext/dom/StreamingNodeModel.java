@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.ext.dom;
+
+import java.io.InputStream;
+import java.io.Reader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateNodeModel;
+
+/**
+ * A forward-only XML node model that reads the XML with a StAX {@link XMLStreamReader} while the template is
+ * processed, so unlike {@link NodeModel}, it doesn't need the whole document in memory. This is for transforming XML
+ * files that are too big for DOM, like large data exports that consist of many smaller "records".
+ * 
+ * <p>
+ * The supported navigation patterns are:
+ * <ul>
+ * <li>{@code #recurse} and {@code #visit}, also {@code ?children} listed with {@code #list}. These read the child
+ * nodes one by one, and the content of a child is skipped when the handler of that child has finished without reading
+ * it.
+ * <li>Getting the child elements by name ({@code elem.name}, also {@code elem.*}), and listing them with
+ * {@code #list}. The non-matching child nodes are skipped.
+ * <li>Getting an attribute of an element ({@code elem.@name}). The value is a string, or {@code null} if the
+ * attribute doesn't exist.
+ * <li>{@code ?parent}, {@code ?node_name}, {@code ?node_type}, {@code ?node_namespace}.
+ * <li>Anything else (like {@code ${elem}}, {@code elem.name?size}, {@code elem.name[0]}, {@code elem.@@markup},
+ * XPath) on an element whose content wasn't read yet. This reads the whole content of that element into a DOM
+ * subtree, and from then on that element works as a {@link NodeModel}. As this is typically done for the small
+ * "records" only, the memory usage stays bounded. (Note that {@code ?parent} on the DOM nodes inside such a subtree
+ * goes up only to that element; above it you get a document that contains only that element.)
+ * </ul>
+ * 
+ * <p>
+ * As the XML is read only once, going back to content that was already read past fails with a
+ * {@link TemplateModelException} that explains the situation. For example, reading the children of an element with
+ * {@code #recurse} (or listing {@code ?children}), and then getting a child element by name. Also, when an element
+ * is listed with {@code #list}, to find out if there's a next item (for {@code ?has_next} and {@code #sep}), the
+ * content of the current item is read into a DOM subtree, so prefer {@code #recurse} for items whose content is huge.
+ * The document can only be traversed once, so it can't be reused across template processings.
+ * 
+ * <p>
+ * Instances aren't thread safe; use a separate one for each template processing. Closing the
+ * {@link XMLStreamReader} (and the {@link InputStream}/{@link Reader}) is left to the caller, which should do that
+ * after the template processing has finished.
+ * 
+ * @since 2.3.30
+ */
+public abstract class StreamingNodeModel implements TemplateNodeModel {
+    
+    private final StreamingNodeModel parent;
+    
+    StreamingNodeModel(StreamingNodeModel parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Creates a streaming document node that reads the XML with an {@link XMLStreamReader} created with default
+     * settings, except that DTD-s and external entities aren't supported (for security). If you need different
+     * parser settings, use {@link #wrap(XMLStreamReader)}.
+     */
+    public static StreamingNodeModel parse(InputStream in) throws XMLStreamException {
+        return wrap(createXMLInputFactory().createXMLStreamReader(in));
+    }
+
+    /**
+     * Same as {@link #parse(InputStream)}, but reads the XML from a {@link Reader}.
+     */
+    public static StreamingNodeModel parse(Reader in) throws XMLStreamException {
+        return wrap(createXMLInputFactory().createXMLStreamReader(in));
+    }
+    
+    /**
+     * Creates a streaming document node that reads the XML with the given {@link XMLStreamReader}, which must be
+     * positioned at the beginning of the document (at the {@code START_DOCUMENT} event).
+     */
+    public static StreamingNodeModel wrap(XMLStreamReader reader) {
+        return new StreamingXMLCursor(reader).getDocument();
+    }
+    
+    private static XMLInputFactory createXMLInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    }
+
+    public TemplateNodeModel getParentNode() throws TemplateModelException {
+        return parent;
+    }
+    
+    public String getNodeNamespace() throws TemplateModelException {
+        return null;
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.ext.dom;
+
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateSequenceModel;
+
+/**
+ * A {@link StreamingNodeModel} that can have child nodes, that is, an element or the document.
+ */
+abstract class StreamingParentNodeModel extends StreamingNodeModel {
+    
+    /** None of the child nodes were read yet. */
+    static final int CHILDREN_UNREAD = 0;
+    /** The child nodes are being read one by one (or were already read that way). */
+    static final int CHILDREN_STREAMED = 1;
+    /** The whole content was read into a DOM subtree. */
+    static final int CHILDREN_MATERIALIZED = 2;
+    
+    final StreamingXMLCursor cursor;
+    private int childrenState = CHILDREN_UNREAD;
+    private boolean closed;
+
+    StreamingParentNodeModel(StreamingNodeModel parent, StreamingXMLCursor cursor) {
+        super(parent);
+        this.cursor = cursor;
+    }
+    
+    public TemplateSequenceModel getChildNodes() throws TemplateModelException {
+        return new StreamingChildNodesModel(this, null);
+    }
+    
+    /**
+     * Tells if the end of this node was already reached in the XML stream.
+     */
+    final boolean isClosed() {
+        return closed;
+    }
+    
+    final void setClosed() {
+        closed = true;
+    }
+    
+    final int getChildrenState() {
+        return childrenState;
+    }
+    
+    final void setChildrenState(int childrenState) {
+        this.childrenState = childrenState;
+    }
+    
+    /**
+     * Called before reading the child nodes one by one.
+     * 
+     * @throws TemplateModelException If the child nodes can't be read anymore.
+     */
+    final void startStreamingChildren() throws TemplateModelException {
+        if (childrenState == CHILDREN_STREAMED) {
+            throw new TemplateModelException(
+                    "The child nodes of this streamed XML " + getNodeType() + " (" + getDescription() + ") were "
+                    + "already read, and they can only be read once. (Maybe #recurse, #list, or ?children was already "
+                    + "used on it.)");
+        }
+        checkNotSkipped();
+        childrenState = CHILDREN_STREAMED;
+    }
+    
+    final void checkNotSkipped() throws TemplateModelException {
+        if (closed && childrenState == CHILDREN_UNREAD) {
+            throw new TemplateModelException(
+                    "The content of this streamed XML " + getNodeType() + " (" + getDescription() + ") was already "
+                    + "skipped, as the processing has moved past it. With streamed XML, you can't go back to an "
+                    + "earlier point of the document.");
+        }
+    }
+    
+    /**
+     * Reads the next child node; the rest of the previously read child element is skipped.
+     * 
+     * @return {@code null} if there are no more child nodes.
+     */
+    final StreamingNodeModel readNextChild() throws TemplateModelException {
+        return cursor.readNextChild(this);
+    }
+    
+    /**
+     * Used in error messages.
+     */
+    abstract String getDescription();
+    
+    /**
+     * Returns the DOM equivalent of this node, reading its whole content into memory if it wasn't done yet.
+     * 
+     * @throws TemplateModelException
+     *             If it's not possible, because some of the content was already read in streaming mode, or because
+     *             this node type doesn't support this.
+     */
+    abstract NodeModel getMaterialized() throws TemplateModelException;
+
+}
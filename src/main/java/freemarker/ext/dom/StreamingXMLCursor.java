@@ -0,0 +1,294 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.ext.dom;
+
+import java.util.ArrayList;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+
+import freemarker.template.TemplateModelException;
+
+/**
+ * Wraps the {@link XMLStreamReader} of a {@link StreamingNodeModel} document, and keeps track of which elements are
+ * open (their start tag was read, but their end tag wasn't yet). All reading goes through this.
+ */
+final class StreamingXMLCursor {
+    
+    private final XMLStreamReader reader;
+    private final StreamingDocumentModel document;
+    
+    /** The last is the innermost. Only contains elements for which a {@link StreamingElementModel} was created. */
+    private final ArrayList<StreamingParentNodeModel> openNodes = new ArrayList<StreamingParentNodeModel>();
+    
+    /** Whether the current event of the {@link #reader} was already processed. */
+    private boolean currentEventConsumed;
+    
+    private DocumentBuilderFactory documentBuilderFactory;
+    
+    StreamingXMLCursor(XMLStreamReader reader) {
+        this.reader = reader;
+        document = new StreamingDocumentModel(this);
+        openNodes.add(document);
+    }
+    
+    StreamingDocumentModel getDocument() {
+        return document;
+    }
+
+    /**
+     * Reads the next child node of the parent. If the previous child is an element whose end tag wasn't reached yet,
+     * the rest of it is skipped.
+     * 
+     * @return {@code null} if there are no more child nodes.
+     */
+    StreamingNodeModel readNextChild(StreamingParentNodeModel parent) throws TemplateModelException {
+        if (parent.isClosed()) {
+            return null;
+        }
+        try {
+            StreamingParentNodeModel innermost;
+            while ((innermost = getInnermostOpenNode()) != parent) {
+                skipRestOf(innermost);
+            }
+            
+            while (true) {
+                int event = nextEvent();
+                switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    StreamingElementModel element = new StreamingElementModel(parent, this, reader);
+                    openNodes.add(element);
+                    return element;
+                case XMLStreamConstants.END_ELEMENT:
+                case XMLStreamConstants.END_DOCUMENT:
+                    closeInnermostOpenNode();
+                    return null;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    return new StreamingCharacterDataModel(
+                            parent, StreamingCharacterDataModel.TEXT, null, readCoalescedText());
+                case XMLStreamConstants.COMMENT:
+                    return new StreamingCharacterDataModel(
+                            parent, StreamingCharacterDataModel.COMMENT, null, reader.getText());
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    return new StreamingCharacterDataModel(
+                            parent, StreamingCharacterDataModel.PI, reader.getPITarget(), reader.getPIData());
+                default:
+                    // Ignored, like START_DOCUMENT and DTD 
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new TemplateModelException("Failed to read the streamed XML", e);
+        }
+    }
+    
+    /**
+     * Skips the rest of the node, including the content of its open descendants. 
+     */
+    void skipRestOf(StreamingParentNodeModel node) throws TemplateModelException {
+        try {
+            while (!node.isClosed()) {
+                skipRestOfInnermostOpenNode();
+            }
+        } catch (XMLStreamException e) {
+            throw new TemplateModelException("Failed to read the streamed XML", e);
+        }
+    }
+    
+    private void skipRestOfInnermostOpenNode() throws XMLStreamException {
+        int depth = 0;
+        while (true) {
+            int event = nextEvent();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (depth == 0) {
+                    closeInnermostOpenNode();
+                    return;
+                }
+                depth--;
+            } else if (event == XMLStreamConstants.END_DOCUMENT) {
+                closeInnermostOpenNode();
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Reads the whole content of the element into a DOM subtree. The element must be the innermost open node, and
+     * none of its content was read yet.
+     * 
+     * @return The element, which is also the document element of its own {@link Document}.
+     */
+    Element materialize(StreamingElementModel element) throws TemplateModelException {
+        if (getInnermostOpenNode() != element) {
+            throw new IllegalStateException("Not the innermost open element");
+        }
+        
+        try {
+            Document doc = newDocument();
+            Element domElement = element.createDOMElement(doc);
+            doc.appendChild(domElement);
+            
+            Node currentNode = domElement;
+            while (currentNode != null) {
+                int event = nextEvent();
+                switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    Element childElement = createDOMElement(doc, reader);
+                    currentNode.appendChild(childElement);
+                    currentNode = childElement;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    if (currentNode == domElement) {
+                        currentNode = null;
+                        closeInnermostOpenNode();
+                    } else {
+                        currentNode = currentNode.getParentNode();
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    Node lastChild = currentNode.getLastChild();
+                    if (lastChild instanceof Text) {
+                        ((Text) lastChild).appendData(reader.getText());
+                    } else {
+                        currentNode.appendChild(doc.createTextNode(reader.getText()));
+                    }
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    currentNode.appendChild(doc.createComment(reader.getText()));
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    currentNode.appendChild(
+                            doc.createProcessingInstruction(reader.getPITarget(), reader.getPIData()));
+                    break;
+                case XMLStreamConstants.END_DOCUMENT:
+                    throw new TemplateModelException("Unexpected end of the streamed XML");
+                default:
+                    // Ignored
+                }
+            }
+            
+            return domElement;
+        } catch (XMLStreamException e) {
+            throw new TemplateModelException("Failed to read the streamed XML", e);
+        }
+    }
+    
+    /**
+     * Creates a DOM element from the current {@code START_ELEMENT} event.
+     */
+    private static Element createDOMElement(Document doc, XMLStreamReader reader) {
+        Element element = doc.createElementNS(
+                emptyToNull(reader.getNamespaceURI()), toQName(reader.getPrefix(), reader.getLocalName()));
+        int nsCount = reader.getNamespaceCount();
+        for (int i = 0; i < nsCount; i++) {
+            setNamespaceDeclaration(element, reader.getNamespacePrefix(i), reader.getNamespaceURI(i));
+        }
+        int attCount = reader.getAttributeCount();
+        for (int i = 0; i < attCount; i++) {
+            element.setAttributeNS(
+                    emptyToNull(reader.getAttributeNamespace(i)),
+                    toQName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+                    reader.getAttributeValue(i));
+        }
+        return element;
+    }
+    
+    static void setNamespaceDeclaration(Element element, String prefix, String uri) {
+        element.setAttributeNS(
+                XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+                prefix == null || prefix.length() == 0 ? "xmlns" : "xmlns:" + prefix,
+                uri != null ? uri : "");
+    }
+    
+    static String toQName(String prefix, String localName) {
+        return prefix == null || prefix.length() == 0 ? localName : prefix + ":" + localName;
+    }
+    
+    static String emptyToNull(String s) {
+        return s == null || s.length() == 0 ? null : s;
+    }
+    
+    private Document newDocument() throws TemplateModelException {
+        if (documentBuilderFactory == null) {
+            documentBuilderFactory = DocumentBuilderFactory.newInstance();
+            documentBuilderFactory.setNamespaceAware(true);
+        }
+        try {
+            return documentBuilderFactory.newDocumentBuilder().newDocument();
+        } catch (ParserConfigurationException e) {
+            throw new TemplateModelException("Failed to create DOM document", e);
+        }
+    }
+    
+    private String readCoalescedText() throws XMLStreamException {
+        String text = reader.getText();
+        StringBuilder sb = null;
+        while (true) {
+            int event = nextEvent();
+            if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE) {
+                if (sb == null) {
+                    sb = new StringBuilder(text);
+                }
+                sb.append(reader.getText());
+            } else {
+                currentEventConsumed = false;
+                return sb != null ? sb.toString() : text;
+            }
+        }
+    }
+    
+    private int nextEvent() throws XMLStreamException {
+        if (!currentEventConsumed) {
+            currentEventConsumed = true;
+            return reader.getEventType();
+        }
+        if (reader.getEventType() == XMLStreamConstants.END_DOCUMENT) {
+            return XMLStreamConstants.END_DOCUMENT;
+        }
+        return reader.next();
+    }
+    
+    private StreamingParentNodeModel getInnermostOpenNode() {
+        return openNodes.isEmpty() ? null : openNodes.get(openNodes.size() - 1);
+    }
+    
+    private void closeInnermostOpenNode() {
+        if (!openNodes.isEmpty()) {
+            openNodes.remove(openNodes.size() - 1).setClosed();
+        }
+    }
+
+}
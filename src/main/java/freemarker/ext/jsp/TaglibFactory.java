@@ -20,13 +20,19 @@
 package freemarker.ext.jsp;
 
 import java.beans.IntrospectionException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
@@ -47,6 +53,12 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.regex.Pattern;
@@ -125,11 +137,15 @@ public class TaglibFactory implements TemplateHashModel {
 
     private static final String PLATFORM_FILE_ENCODING = SecurityUtilities.getSystemProperty("file.encoding", "utf-8");
 
+    private static final int MAX_AUTO_TLD_SCANNING_THREADS = 8;
+
     private final ServletContext servletContext;
 
     private ObjectWrapper objectWrapper;
     private List/*<MetaInfTldSource>*/ metaInfTldSources = DEFAULT_META_INF_TLD_SOURCES;
     private List/*<String>*/ classpathTlds = DEFAULT_CLASSPATH_TLDS;
+    private File tldIndexFile;
+    private int tldScanningThreads = 1;
     
     boolean test_emulateNoUrlToFileConversions = false;
     boolean test_emulateNoJarURLConnections = false;
@@ -377,6 +393,61 @@ public class TaglibFactory implements TemplateHashModel {
         this.classpathTlds = classpathTlds;
     }
 
+    /**
+     * See {@link #setTldIndexFile(File)}.
+     * 
+     * @since 2.3.30
+     */
+    public File getTldIndexFile() {
+        return tldIndexFile;
+    }
+
+    /**
+     * Sets the file where the taglib URI-s found in the {@code WEB-INF/lib} jars (see
+     * {@link WebInfPerLibJarMetaInfTldSource}) are persisted, so that on later starts of the web application the jars
+     * that haven't changed since then (judging from their size and last modification time) needn't be opened and
+     * their TLD-s needn't be parsed again. The file is created or updated as needed; if it can't be read or written,
+     * that's logged, and TLD discovery works as if it wasn't set. Only jars that are accessible as {@link File}-s are
+     * indexed. Defaults to {@code null}, which means that there's no index file.
+     * 
+     * <p>
+     * This is usually set via the init-params of {@link FreemarkerServlet}.
+     * 
+     * @since 2.3.30
+     */
+    public void setTldIndexFile(File tldIndexFile) {
+        checkNotStarted();
+        this.tldIndexFile = tldIndexFile;
+    }
+
+    /**
+     * See {@link #setTldScanningThreads(int)}.
+     * 
+     * @since 2.3.30
+     */
+    public int getTldScanningThreads() {
+        return tldScanningThreads;
+    }
+
+    /**
+     * Sets the maximum number of threads used to scan the {@code WEB-INF/lib} jars for TLD-s in parallel. 1 (the
+     * default) means that the jars are scanned one after the other on the thread that has requested the taglib, just
+     * like before this setting was added. 0 means that it's decided automatically based on the number of available
+     * processors. The order in which the found TLD-s take precedence doesn't depend on this setting.
+     * 
+     * <p>
+     * This is usually set via the init-params of {@link FreemarkerServlet}.
+     * 
+     * @since 2.3.30
+     */
+    public void setTldScanningThreads(int tldScanningThreads) {
+        checkNotStarted();
+        if (tldScanningThreads < 0) {
+            throw new IllegalArgumentException("tldScanningThreads can't be negative");
+        }
+        this.tldScanningThreads = tldScanningThreads;
+    }
+
     private void checkNotStarted() {
         synchronized (lock) {
             if (nextTldLocationLookupPhase != 0) {
@@ -540,14 +611,134 @@ public class TaglibFactory implements TemplateHashModel {
         }
 
         Set libEntPaths = servletContext.getResourcePaths("/WEB-INF/lib");
-        if (libEntPaths != null) {
-            for (Iterator iter = libEntPaths.iterator(); iter.hasNext(); ) {
-                final String libEntryPath = (String) iter.next();
-                if (isJarPath(libEntryPath)) {
-                    addTldLocationsFromServletContextJar(libEntryPath);
+        if (libEntPaths == null) {
+            return;
+        }
+        
+        List<String> jarResourcePaths = new ArrayList<String>();
+        for (Iterator iter = libEntPaths.iterator(); iter.hasNext(); ) {
+            final String libEntryPath = (String) iter.next();
+            if (isJarPath(libEntryPath)) {
+                jarResourcePaths.add(libEntryPath);
+            }
+        }
+        
+        final TldIndex prevTldIndex = tldIndexFile != null ? TldIndex.loadOrEmpty(tldIndexFile) : null;
+        final List<ServletContextJarTlds> jarsTlds = scanServletContextJars(jarResourcePaths, prevTldIndex);
+        
+        // The results are processed in the original order of the jars, so the earlier jar wins on URI collision.
+        final TldIndex newTldIndex = tldIndexFile != null ? new TldIndex() : null;
+        boolean tldIndexChanged = false;
+        for (ServletContextJarTlds jarTlds : jarsTlds) {
+            for (JarTld tld : jarTlds.tlds) {
+                addTldLocation(
+                        new ServletContextJarEntryTldLocation(jarTlds.jarResourcePath, tld.entryPath),
+                        tld.taglibUri);
+            }
+            if (newTldIndex != null && jarTlds.indexable) {
+                newTldIndex.put(jarTlds.jarResourcePath, jarTlds.jarLength, jarTlds.jarLastModified, jarTlds.tlds);
+                if (!jarTlds.fromIndex) {
+                    tldIndexChanged = true;
                 }
             }
         }
+        if (newTldIndex != null && (tldIndexChanged || newTldIndex.size() != prevTldIndex.size())) {
+            newTldIndex.saveOrLogError(tldIndexFile);
+        }
+    }
+
+    /**
+     * Scans the jars (possibly in parallel), and returns the results in the same order as the jars were specified.
+     */
+    private List<ServletContextJarTlds> scanServletContextJars(
+            final List<String> jarResourcePaths, final TldIndex tldIndex)
+            throws IOException, SAXException {
+        final int threadCount = Math.min(
+                tldScanningThreads != 0
+                        ? tldScanningThreads
+                        : Math.min(Runtime.getRuntime().availableProcessors(), MAX_AUTO_TLD_SCANNING_THREADS),
+                jarResourcePaths.size());
+        
+        final List<ServletContextJarTlds> results = new ArrayList<ServletContextJarTlds>(jarResourcePaths.size());
+        if (threadCount <= 1) {
+            for (String jarResourcePath : jarResourcePaths) {
+                results.add(scanServletContextJar(jarResourcePath, tldIndex));
+            }
+            return results;
+        }
+        
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Scanning " + jarResourcePaths.size() + " jars on " + threadCount + " threads");
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount, TldScanningThreadFactory.INSTANCE);
+        try {
+            List<Future<ServletContextJarTlds>> futures
+                    = new ArrayList<Future<ServletContextJarTlds>>(jarResourcePaths.size());
+            for (final String jarResourcePath : jarResourcePaths) {
+                futures.add(executor.submit(new Callable<ServletContextJarTlds>() {
+                    public ServletContextJarTlds call() throws Exception {
+                        return scanServletContextJar(jarResourcePath, tldIndex);
+                    }
+                }));
+            }
+            for (Future<ServletContextJarTlds> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof SAXException) {
+                        throw (SAXException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    } else {
+                        throw new BugException(cause);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for TLD scanning to finish");
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Finds the *.tld-s inside a jar in the servlet context, or takes them from the TLD index if the jar hasn't
+     * changed since it was indexed. This doesn't modify the state of the {@link TaglibFactory}, so it can be called
+     * from multiple threads concurrently.
+     */
+    private ServletContextJarTlds scanServletContextJar(final String jarResourcePath, final TldIndex tldIndex)
+            throws IOException, SAXException {
+        final File jarResourceAsFile = tldIndex != null ? servletContextResourceToExistingFileOrNull(jarResourcePath)
+                : null;
+        final long jarLength;
+        final long jarLastModified;
+        if (jarResourceAsFile != null) {
+            jarLength = jarResourceAsFile.length();
+            jarLastModified = jarResourceAsFile.lastModified();
+            List<JarTld> indexedTlds = tldIndex.get(jarResourcePath, jarLength, jarLastModified);
+            if (indexedTlds != null) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Using the TLD index instead of scanning unchanged jar: servletContext:"
+                            + jarResourcePath);
+                }
+                return new ServletContextJarTlds(jarResourcePath, jarLength, jarLastModified, indexedTlds, true, true);
+            }
+        } else {
+            jarLength = -1;
+            jarLastModified = -1;
+        }
+        
+        final List<JarTld> tlds = new ArrayList<JarTld>();
+        final boolean allTldsParsed = addTldsFromServletContextJar(jarResourcePath, tlds);
+        return new ServletContextJarTlds(jarResourcePath, jarLength, jarLastModified, tlds, false,
+                jarResourceAsFile != null && allTldsParsed);
     }
 
     private void addTldLocationsFromClasspathTlds() throws SAXException, IOException, TaglibGettingException {
@@ -592,12 +783,15 @@ public class TaglibFactory implements TemplateHashModel {
     }
 
     /**
-     * Finds and processes *.tld inside a jar in the servet context.
+     * Finds *.tld inside a jar in the servet context, and collects the taglib URI-s defined in them.
+     * 
+     * @return Whether all TLD-s were successfully parsed.
      */
-    private void addTldLocationsFromServletContextJar(
-            final String jarResourcePath)
+    private boolean addTldsFromServletContextJar(
+            final String jarResourcePath, final List<JarTld> tlds)
             throws IOException, MalformedURLException, SAXException {
         final String metaInfEntryPath = normalizeJarEntryPath(META_INF_ABS_PATH, true);
+        boolean allTldsParsed = true;
         
         // Null for non-random-access backing resource:
         final JarFile jarFile = servletContextResourceToFileOrNull(jarResourcePath);
@@ -606,12 +800,22 @@ public class TaglibFactory implements TemplateHashModel {
                 LOG.debug("Scanning for " + META_INF_ABS_PATH + "*.tld-s in JarFile: servletContext:"
                         + jarResourcePath);
             }
-            for (Enumeration/*<JarEntry>*/ entries = jarFile.entries(); entries.hasMoreElements(); ) {
-                final JarEntry curEntry = (JarEntry) entries.nextElement();
-                final String curEntryPath = normalizeJarEntryPath(curEntry.getName(), false);
-                if (curEntryPath.startsWith(metaInfEntryPath) && curEntryPath.endsWith(".tld")) {
-                    addTldLocationFromTld(new ServletContextJarEntryTldLocation(jarResourcePath, curEntryPath));
+            try {
+                for (Enumeration/*<JarEntry>*/ entries = jarFile.entries(); entries.hasMoreElements(); ) {
+                    final JarEntry curEntry = (JarEntry) entries.nextElement();
+                    final String curEntryPath = normalizeJarEntryPath(curEntry.getName(), false);
+                    if (curEntryPath.startsWith(metaInfEntryPath) && curEntryPath.endsWith(".tld")) {
+                        TldLocation tldLocation = new ServletContextJarEntryTldLocation(jarResourcePath, curEntryPath);
+                        InputStream in = tldLocation.getInputStream();
+                        try {
+                            allTldsParsed &= addTldFromServletContextJar(in, tldLocation, curEntryPath, tlds);
+                        } finally {
+                            in.close();
+                        }
+                    }
                 }
+            } finally {
+                jarFile.close();
             }
         } else {  // jarFile == null => fall back to streamed access
             if (LOG.isDebugEnabled()) {
@@ -632,8 +836,9 @@ public class TaglibFactory implements TemplateHashModel {
         
                         String curEntryPath = normalizeJarEntryPath(curEntry.getName(), false);
                         if (curEntryPath.startsWith(metaInfEntryPath) && curEntryPath.endsWith(".tld")) {
-                            addTldLocationFromTld(zipIn,
-                                    new ServletContextJarEntryTldLocation(jarResourcePath, curEntryPath)); 
+                            allTldsParsed &= addTldFromServletContextJar(zipIn,
+                                    new ServletContextJarEntryTldLocation(jarResourcePath, curEntryPath),
+                                    curEntryPath, tlds); 
                         }
                     }
                 } finally {
@@ -643,6 +848,26 @@ public class TaglibFactory implements TemplateHashModel {
                 in.close();
             }
         }
+        return allTldsParsed;
+    }
+
+    /**
+     * @return Whether the TLD was successfully parsed.
+     */
+    private boolean addTldFromServletContextJar(
+            InputStream reusedIn, TldLocation tldLocation, String entryPath, List<JarTld> tlds)
+            throws IOException {
+        String taglibUri;
+        try {
+            taglibUri = getTaglibUriFromTld(reusedIn, tldLocation.getXmlSystemId());
+        } catch (SAXException e) {
+            onTldParsingError(tldLocation, e);
+            return false;
+        }
+        if (taglibUri != null) {
+            tlds.add(new JarTld(entryPath, taglibUri));
+        }
+        return true;
     }
 
     /**
@@ -790,10 +1015,7 @@ public class TaglibFactory implements TemplateHashModel {
         try {
             taglibUri = getTaglibUriFromTld(reusedIn, tldLocation.getXmlSystemId());
         } catch (SAXException e) {
-            LOG.error("Error while parsing TLD; skipping: " + tldLocation, e);
-            synchronized (failedTldLocations) {
-                failedTldLocations.add(tldLocation.toString());
-            }
+            onTldParsingError(tldLocation, e);
             taglibUri = null;
         }
         if (taglibUri != null) {
@@ -801,6 +1023,13 @@ public class TaglibFactory implements TemplateHashModel {
         }
     }
 
+    private void onTldParsingError(TldLocation tldLocation, SAXException e) {
+        LOG.error("Error while parsing TLD; skipping: " + tldLocation, e);
+        synchronized (failedTldLocations) {
+            failedTldLocations.add(tldLocation.toString());
+        }
+    }
+
     private void addTldLocation(TldLocation tldLocation, String taglibUri) {
         if (tldLocations.containsKey(taglibUri)) {
             if (LOG.isDebugEnabled()) {
@@ -1057,6 +1286,18 @@ public class TaglibFactory implements TemplateHashModel {
         return new JarFile(jarResourceAsFile);
     }
 
+    /**
+     * Gets a servlet context resource as a {@link File} if possible, return {@code null} otherwise.
+     */
+    private File servletContextResourceToExistingFileOrNull(final String resourcePath) throws MalformedURLException {
+        URL resourceUrl = servletContext.getResource(resourcePath);
+        if (resourceUrl == null) {
+            return null;
+        }
+        File resourceAsFile = urlToFileOrNull(resourceUrl);
+        return resourceAsFile != null && resourceAsFile.isFile() ? resourceAsFile : null;
+    }
+
     private static URL tryCreateServletContextJarEntryUrl(
             ServletContext servletContext, final String servletContextJarFilePath, final String entryPath) {
         try {
@@ -1939,6 +2180,177 @@ public class TaglibFactory implements TemplateHashModel {
     
     }
     
+    /**
+     * A TLD found in a jar.
+     */
+    private static final class JarTld {
+        private final String entryPath;
+        private final String taglibUri;
+
+        JarTld(String entryPath, String taglibUri) {
+            this.entryPath = entryPath;
+            this.taglibUri = taglibUri;
+        }
+    }
+
+    /**
+     * The result of scanning a servlet context jar for TLD-s.
+     */
+    private static final class ServletContextJarTlds {
+        private final String jarResourcePath;
+        /** -1 if the jar is not a {@link File}. */
+        private final long jarLength;
+        /** -1 if the jar is not a {@link File}. */
+        private final long jarLastModified;
+        private final List<JarTld> tlds;
+        private final boolean fromIndex;
+        /** Whether the result can be stored in the TLD index. */
+        private final boolean indexable;
+
+        ServletContextJarTlds(String jarResourcePath, long jarLength, long jarLastModified, List<JarTld> tlds,
+                boolean fromIndex, boolean indexable) {
+            this.jarResourcePath = jarResourcePath;
+            this.jarLength = jarLength;
+            this.jarLastModified = jarLastModified;
+            this.tlds = tlds;
+            this.fromIndex = fromIndex;
+            this.indexable = indexable;
+        }
+    }
+
+    /**
+     * The persistent index of the TLD-s in the servlet context jars; see {@link TaglibFactory#setTldIndexFile(File)}.
+     * Not thread-safe, but it's only read concurrently.
+     */
+    private static final class TldIndex {
+        private static final String FORMAT_ID = "FreeMarker TaglibFactory TLD index, format 1";
+
+        private final Map<String, IndexedJar> indexedJars = new HashMap<String, IndexedJar>();
+
+        static TldIndex loadOrEmpty(File file) {
+            if (!file.isFile()) {
+                return new TldIndex();
+            }
+            
+            TldIndex tldIndex = new TldIndex();
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                try {
+                    if (!FORMAT_ID.equals(in.readUTF())) {
+                        LOG.warn("Ignoring TLD index file with unknown format: " + StringUtil.jQuoteNoXSS(file));
+                        return new TldIndex();
+                    }
+                    int jarCount = in.readInt();
+                    for (int jarIdx = 0; jarIdx < jarCount; jarIdx++) {
+                        String jarResourcePath = in.readUTF();
+                        long jarLength = in.readLong();
+                        long jarLastModified = in.readLong();
+                        int tldCount = in.readInt();
+                        List<JarTld> tlds = new ArrayList<JarTld>(tldCount);
+                        for (int tldIdx = 0; tldIdx < tldCount; tldIdx++) {
+                            String entryPath = in.readUTF();
+                            String taglibUri = in.readUTF();
+                            tlds.add(new JarTld(entryPath, taglibUri));
+                        }
+                        tldIndex.put(jarResourcePath, jarLength, jarLastModified, tlds);
+                    }
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                LOG.warn("Failed to read TLD index file (it will be rebuilt): " + StringUtil.jQuoteNoXSS(file), e);
+                return new TldIndex();
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Loaded TLD index for " + tldIndex.size() + " jars from " + StringUtil.jQuoteNoXSS(file));
+            }
+            return tldIndex;
+        }
+
+        /**
+         * Saves the index into a temporary file, and then renames that to the target file, so an interrupted save
+         * won't leave a truncated index behind.
+         */
+        void saveOrLogError(File file) {
+            File tempFile = new File(file.getPath() + ".tmp");
+            try {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+                try {
+                    out.writeUTF(FORMAT_ID);
+                    out.writeInt(indexedJars.size());
+                    for (Map.Entry<String, IndexedJar> ent : indexedJars.entrySet()) {
+                        IndexedJar indexedJar = ent.getValue();
+                        out.writeUTF(ent.getKey());
+                        out.writeLong(indexedJar.length);
+                        out.writeLong(indexedJar.lastModified);
+                        out.writeInt(indexedJar.tlds.size());
+                        for (JarTld tld : indexedJar.tlds) {
+                            out.writeUTF(tld.entryPath);
+                            out.writeUTF(tld.taglibUri);
+                        }
+                    }
+                } finally {
+                    out.close();
+                }
+                if (!tempFile.renameTo(file)) {
+                    // On some platforms renameTo doesn't replace the existing file.
+                    if (!file.delete() || !tempFile.renameTo(file)) {
+                        throw new IOException("Failed to rename " + StringUtil.jQuoteNoXSS(tempFile) + " to "
+                                + StringUtil.jQuoteNoXSS(file));
+                    }
+                }
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Saved TLD index for " + size() + " jars to " + StringUtil.jQuoteNoXSS(file));
+                }
+            } catch (IOException e) {
+                LOG.warn("Failed to save TLD index file: " + StringUtil.jQuoteNoXSS(file), e);
+                tempFile.delete();
+            }
+        }
+
+        /**
+         * @return {@code null} if the jar is not in the index, or it has changed since it was indexed.
+         */
+        List<JarTld> get(String jarResourcePath, long jarLength, long jarLastModified) {
+            IndexedJar indexedJar = indexedJars.get(jarResourcePath);
+            return indexedJar != null && indexedJar.length == jarLength && indexedJar.lastModified == jarLastModified
+                    ? indexedJar.tlds : null;
+        }
+
+        void put(String jarResourcePath, long jarLength, long jarLastModified, List<JarTld> tlds) {
+            indexedJars.put(jarResourcePath, new IndexedJar(jarLength, jarLastModified, tlds));
+        }
+
+        int size() {
+            return indexedJars.size();
+        }
+
+        private static final class IndexedJar {
+            private final long length;
+            private final long lastModified;
+            private final List<JarTld> tlds;
+
+            IndexedJar(long length, long lastModified, List<JarTld> tlds) {
+                this.length = length;
+                this.lastModified = lastModified;
+                this.tlds = tlds;
+            }
+        }
+    }
+
+    /**
+     * Creates daemon threads, so a stuck scanning never prevents the JVM from exiting.
+     */
+    private static final class TldScanningThreadFactory implements ThreadFactory {
+        private static final TldScanningThreadFactory INSTANCE = new TldScanningThreadFactory();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "FreeMarker TLD scanner");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
     private static class URLWithExternalForm implements Comparable {
 
         private final URL url;
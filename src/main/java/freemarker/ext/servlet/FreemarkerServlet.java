@@ -19,6 +19,7 @@
 
 package freemarker.ext.servlet;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Writer;
 import java.nio.charset.Charset;
@@ -254,6 +255,16 @@ import freemarker.template.utility.StringUtil;
  * {@value #SYSTEM_PROPERTY_CLASSPATH_TLDS} system property. If both the init-param and the system property exists, the
  * items listed in system property will be added after those specified by the init-param.</li>
  * 
+ * <li><strong>{@value #INIT_PARAM_TLD_INDEX_FILE}</strong> (since 2.3.30): The path of the file where the taglib URI-s
+ * found in the {@code WEB-INF/lib} jars are persisted, so that unchanged jars needn't be scanned again when the web
+ * application is restarted; see {@link TaglibFactory#setTldIndexFile(File)}. A relative path is resolved against the
+ * temporary directory that the servlet container provides for the web application (the
+ * {@code javax.servlet.context.tempdir} servlet context attribute). Defaults to no index file.</li>
+ * 
+ * <li><strong>{@value #INIT_PARAM_TLD_SCANNING_THREADS}</strong> (since 2.3.30): The maximum number of threads used
+ * to scan the {@code WEB-INF/lib} jars for TLD-s; see {@link TaglibFactory#setTldScanningThreads(int)}. Defaults to
+ * 1, which means that the jars are scanned sequentially. 0 means automatic.</li>
+ * 
  * <li><strong>"Debug"</strong>: Deprecated, has no effect since 2.3.22. (Earlier it has enabled/disabled sending
  * debug-level log messages to the servlet container log, but this servlet doesn't log debug level messages into the
  * servlet container log anymore, only into the FreeMarker log.)</li>
@@ -396,6 +407,20 @@ public class FreemarkerServlet extends HttpServlet {
      */
     public static final String INIT_PARAM_CLASSPATH_TLDS = "ClasspathTlds";
     
+    /**
+     * Init-param name - see the {@link FreemarkerServlet} class documentation about the init-params.
+     * 
+     * @since 2.3.30
+     */
+    public static final String INIT_PARAM_TLD_INDEX_FILE = "TldIndexFile";
+    
+    /**
+     * Init-param name - see the {@link FreemarkerServlet} class documentation about the init-params.
+     * 
+     * @since 2.3.30
+     */
+    public static final String INIT_PARAM_TLD_SCANNING_THREADS = "TldScanningThreads";
+    
     private static final String INIT_PARAM_DEBUG = "Debug";
 
     private static final String DEPR_INITPARAM_TEMPLATE_DELAY = "TemplateDelay";
@@ -484,6 +509,9 @@ public class FreemarkerServlet extends HttpServlet {
 
     private static final String ATTR_JETTY_CP_TAGLIB_JAR_PATTERNS
             = "org.eclipse.jetty.server.webapp.ContainerIncludeJarPattern";
+
+    /** The standard servlet context attribute that stores the temporary directory of the web application. */
+    private static final String ATTR_SERVLET_CONTEXT_TEMP_DIR = "javax.servlet.context.tempdir";
     
     private static final String EXPIRATION_DATE;
 
@@ -524,6 +552,8 @@ public class FreemarkerServlet extends HttpServlet {
     private OverrideResponseLocale overrideResponseLocale = OverrideResponseLocale.ALWAYS;
     private List/*<MetaInfTldSource>*/ metaInfTldSources;
     private List/*<String>*/ classpathTlds;
+    private String tldIndexFile;
+    private int tldScanningThreads = 1;
 
     private Object lazyInitFieldsLock = new Object();
     @SuppressFBWarnings(value="SE_BAD_FIELD", justification="Not investing into making this Servlet serializable")
@@ -687,6 +717,13 @@ public class FreemarkerServlet extends HttpServlet {
                     }
                     newClasspathTlds.addAll(InitParamParser.parseCommaSeparatedList(value));
                     classpathTlds = newClasspathTlds;
+                } else if (name.equals(INIT_PARAM_TLD_INDEX_FILE)) {
+                    tldIndexFile = value.trim();
+                } else if (name.equals(INIT_PARAM_TLD_SCANNING_THREADS)) {
+                    tldScanningThreads = Integer.parseInt(value.trim());
+                    if (tldScanningThreads < 0) {
+                        throw new IllegalArgumentException("Can't be negative");
+                    }
                 } else {
                     config.setSetting(name, value);
                 }
@@ -1141,6 +1178,22 @@ public class FreemarkerServlet extends HttpServlet {
             taglibFactory.setClasspathTlds(mergedClassPathTlds);
         }
         
+        if (tldIndexFile != null && tldIndexFile.length() != 0) {
+            File file = new File(tldIndexFile);
+            if (!file.isAbsolute()) {
+                Object tempDir = servletContext.getAttribute(ATTR_SERVLET_CONTEXT_TEMP_DIR);
+                if (!(tempDir instanceof File)) {
+                    throw new TemplateModelException("The \"" + INIT_PARAM_TLD_INDEX_FILE + "\" init-param is a "
+                            + "relative path, but the servlet container doesn't provide a temporary directory to "
+                            + "resolve it against (\"" + ATTR_SERVLET_CONTEXT_TEMP_DIR + "\" servlet context "
+                            + "attribute).");
+                }
+                file = new File((File) tempDir, tldIndexFile);
+            }
+            taglibFactory.setTldIndexFile(file);
+        }
+        taglibFactory.setTldScanningThreads(tldScanningThreads);
+        
         return taglibFactory;        
     }
 
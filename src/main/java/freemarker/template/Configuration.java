@@ -46,7 +46,10 @@ import java.util.concurrent.ConcurrentMap;
 
 import freemarker.cache.CacheStorage;
 import freemarker.cache.ClassTemplateLoader;
+import freemarker.cache.ConcurrentCacheStorage;
 import freemarker.cache.FileTemplateLoader;
+import freemarker.cache.ImmutableTemplateLoader;
+import freemarker.cache.IndexedClassTemplateLoader;
 import freemarker.cache.MruCacheStorage;
 import freemarker.cache.MultiTemplateLoader;
 import freemarker.cache.SoftCacheStorage;
@@ -74,6 +77,7 @@ import freemarker.core.PlainTextOutputFormat;
 import freemarker.core.RTFOutputFormat;
 import freemarker.core.TemplateConfiguration;
 import freemarker.core.TemplateMarkupOutputModel;
+import freemarker.core.TemplateSamplingProfiler;
 import freemarker.core.UndefinedOutputFormat;
 import freemarker.core.UnregisteredOutputFormatException;
 import freemarker.core.XHTMLOutputFormat;
@@ -323,10 +327,41 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
     /** Alias to the {@code ..._SNAKE_CASE} variation. @since 2.3.25 */
     public static final String FALLBACK_ON_NULL_LOOP_VARIABLE_KEY = FALLBACK_ON_NULL_LOOP_VARIABLE_KEY_SNAKE_CASE;
 
+    /** Legacy, snake case ({@code like_this}) variation of the setting name. @since 2.3.30 */
+    public static final String DATA_MODEL_LOOKUP_CACHING_KEY_SNAKE_CASE = "data_model_lookup_caching";
+    /** Modern, camel case ({@code likeThis}) variation of the setting name. @since 2.3.30 */
+    public static final String DATA_MODEL_LOOKUP_CACHING_KEY_CAMEL_CASE = "dataModelLookupCaching";
+    /** Alias to the {@code ..._SNAKE_CASE} variation. @since 2.3.30 */
+    public static final String DATA_MODEL_LOOKUP_CACHING_KEY = DATA_MODEL_LOOKUP_CACHING_KEY_SNAKE_CASE;
+
+    /** Legacy, snake case ({@code like_this}) variation of the setting name. @since 2.3.30 */
+    public static final String COMPRESS_OUTPUT_KEY_SNAKE_CASE = "compress_output";
+    /** Modern, camel case ({@code likeThis}) variation of the setting name. @since 2.3.30 */
+    public static final String COMPRESS_OUTPUT_KEY_CAMEL_CASE = "compressOutput";
+    /** Alias to the {@code ..._SNAKE_CASE} variation. @since 2.3.30 */
+    public static final String COMPRESS_OUTPUT_KEY = COMPRESS_OUTPUT_KEY_SNAKE_CASE;
+
+    /** Legacy, snake case ({@code like_this}) variation of the setting name. @since 2.3.30 */
+    public static final String TEMPLATE_LOOKUP_MISS_CACHE_SIZE_KEY_SNAKE_CASE = "template_lookup_miss_cache_size";
+    /** Modern, camel case ({@code likeThis}) variation of the setting name. @since 2.3.30 */
+    public static final String TEMPLATE_LOOKUP_MISS_CACHE_SIZE_KEY_CAMEL_CASE = "templateLookupMissCacheSize";
+    /** Alias to the {@code ..._SNAKE_CASE} variation. @since 2.3.30 */
+    public static final String TEMPLATE_LOOKUP_MISS_CACHE_SIZE_KEY = TEMPLATE_LOOKUP_MISS_CACHE_SIZE_KEY_SNAKE_CASE;
+
+    /** Legacy, snake case ({@code like_this}) variation of the setting name. @since 2.3.30 */
+    public static final String COMPACT_TEMPLATES_KEY_SNAKE_CASE = "compact_templates";
+    /** Modern, camel case ({@code likeThis}) variation of the setting name. @since 2.3.30 */
+    public static final String COMPACT_TEMPLATES_KEY_CAMEL_CASE = "compactTemplates";
+    /** Alias to the {@code ..._SNAKE_CASE} variation. @since 2.3.30 */
+    public static final String COMPACT_TEMPLATES_KEY = COMPACT_TEMPLATES_KEY_SNAKE_CASE;
+
     private static final String[] SETTING_NAMES_SNAKE_CASE = new String[] {
         // Must be sorted alphabetically!
         AUTO_ESCAPING_POLICY_KEY_SNAKE_CASE,
         CACHE_STORAGE_KEY_SNAKE_CASE,
+        COMPACT_TEMPLATES_KEY_SNAKE_CASE,
+        COMPRESS_OUTPUT_KEY_SNAKE_CASE,
+        DATA_MODEL_LOOKUP_CACHING_KEY_SNAKE_CASE,
         DEFAULT_ENCODING_KEY_SNAKE_CASE,
         FALLBACK_ON_NULL_LOOP_VARIABLE_KEY_SNAKE_CASE,
         INCOMPATIBLE_IMPROVEMENTS_KEY_SNAKE_CASE,
@@ -341,6 +376,7 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
         TAG_SYNTAX_KEY_SNAKE_CASE,
         TEMPLATE_CONFIGURATIONS_KEY_SNAKE_CASE,
         TEMPLATE_LOADER_KEY_SNAKE_CASE,
+        TEMPLATE_LOOKUP_MISS_CACHE_SIZE_KEY_SNAKE_CASE,
         TEMPLATE_LOOKUP_STRATEGY_KEY_SNAKE_CASE,
         TEMPLATE_NAME_FORMAT_KEY_SNAKE_CASE,
         TEMPLATE_UPDATE_DELAY_KEY_SNAKE_CASE,
@@ -351,6 +387,9 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
         // Must be sorted alphabetically!
         AUTO_ESCAPING_POLICY_KEY_CAMEL_CASE,
         CACHE_STORAGE_KEY_CAMEL_CASE,
+        COMPACT_TEMPLATES_KEY_CAMEL_CASE,
+        COMPRESS_OUTPUT_KEY_CAMEL_CASE,
+        DATA_MODEL_LOOKUP_CACHING_KEY_CAMEL_CASE,
         DEFAULT_ENCODING_KEY_CAMEL_CASE,
         FALLBACK_ON_NULL_LOOP_VARIABLE_KEY_CAMEL_CASE,
         INCOMPATIBLE_IMPROVEMENTS_KEY_CAMEL_CASE,
@@ -365,6 +404,7 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
         TAG_SYNTAX_KEY_CAMEL_CASE,
         TEMPLATE_CONFIGURATIONS_KEY_CAMEL_CASE,
         TEMPLATE_LOADER_KEY_CAMEL_CASE,
+        TEMPLATE_LOOKUP_MISS_CACHE_SIZE_KEY_CAMEL_CASE,
         TEMPLATE_LOOKUP_STRATEGY_KEY_CAMEL_CASE,
         TEMPLATE_NAME_FORMAT_KEY_CAMEL_CASE,
         TEMPLATE_UPDATE_DELAY_KEY_CAMEL_CASE,
@@ -546,6 +586,9 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
     private int namingConvention = AUTO_DETECT_NAMING_CONVENTION;
     private int tabSize = 8;  // Default from JavaCC 3.x
     private boolean fallbackOnNullLoopVariable = true;  // Default for backward compatibility
+    private boolean dataModelLookupCaching;
+    private boolean compressOutput;
+    private boolean compactTemplates;
     private boolean preventStrippings;
 
     private TemplateCache cache;
@@ -555,6 +598,11 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
     private boolean templateNameFormatExplicitlySet;
     private boolean cacheStorageExplicitlySet;
     
+    private CacheStorage fragmentCacheStorage = new MruCacheStorage(100, 1000);
+    private int fragmentCacheMaxEntryLength = 64 * 1024;
+    
+    private volatile TemplateSamplingProfiler templateSamplingProfiler;
+    
     private boolean objectWrapperExplicitlySet;
     private boolean templateExceptionHandlerExplicitlySet;
     private boolean attemptExceptionReporterExplicitlySet;
@@ -976,6 +1024,7 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
                 loader, storage, templateLookupStrategy, templateNameFormat, templateConfigurations, this);
         cache.clear(); // for fully BC behavior
         cache.setDelay(oldCache.getDelay());
+        cache.setLookupMissCacheSize(oldCache.getLookupMissCacheSize());
         cache.setLocalizedLookup(localizedLookup);
     }
     
@@ -1526,6 +1575,80 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
         }
     }
 
+    /**
+     * Sets the {@link CacheStorage} used by the {@code #cache} directive to store the output fragments it has
+     * rendered; the earlier content of the fragment cache will be dropt.
+     * 
+     * <p>The default is an {@link MruCacheStorage} that keeps 100 fragments strongly and 1000 softly referenced. The
+     * keys put into the storage are internal objects that identify the {@code #cache} directive call place (by the
+     * template source name, its last modification time, and the position in the template, but they don't reference the
+     * {@link Template}), the value of its {@code key} parameter, and the current locale, time zones, and number,
+     * date/time and boolean formats. The values are internal objects too, that hold the output as a {@link String}
+     * and its expiration time. If you don't want fragment caching at all, use {@link freemarker.cache.NullCacheStorage} (you can't use
+     * {@code null}). Just like with {@link #setCacheStorage(CacheStorage)}, storages that aren't
+     * {@link freemarker.cache.ConcurrentCacheStorage}-s will be accessed from a {@code synchronized} block.
+     * 
+     * @since 2.3.30
+     */
+    public void setFragmentCacheStorage(CacheStorage fragmentCacheStorage) {
+        NullArgumentException.check("fragmentCacheStorage", fragmentCacheStorage);
+        this.fragmentCacheStorage = fragmentCacheStorage;
+    }
+
+    /**
+     * The getter pair of {@link #setFragmentCacheStorage(CacheStorage)}.
+     * 
+     * @since 2.3.30
+     */
+    public CacheStorage getFragmentCacheStorage() {
+        return fragmentCacheStorage;
+    }
+
+    /**
+     * Sets the maximum length (in characters) of an output fragment that the {@code #cache} directive will store.
+     * Longer fragments are still rendered and printed normally, but they are re-rendered each time. This protects
+     * the fragment cache (which by default is bound by entry count only) from being filled with huge strings.
+     * Defaults to 65536.
+     * 
+     * @since 2.3.30
+     */
+    public void setFragmentCacheMaxEntryLength(int fragmentCacheMaxEntryLength) {
+        if (fragmentCacheMaxEntryLength < 0) {
+            throw new IllegalArgumentException("\"fragmentCacheMaxEntryLength\" can't be negative");
+        }
+        this.fragmentCacheMaxEntryLength = fragmentCacheMaxEntryLength;
+    }
+
+    /**
+     * The getter pair of {@link #setFragmentCacheMaxEntryLength(int)}.
+     * 
+     * @since 2.3.30
+     */
+    public int getFragmentCacheMaxEntryLength() {
+        return fragmentCacheMaxEntryLength;
+    }
+
+    /**
+     * Sets the {@link TemplateSamplingProfiler} that will take samples from the templates processed with this
+     * {@link Configuration}. The profiler only takes samples while it's {@linkplain TemplateSamplingProfiler#start()
+     * started}. Template processings that were already running when this was called won't be sampled. Defaults to
+     * {@code null}, which means that no profiling is done, and there's no overhead at all.
+     * 
+     * @since 2.3.30
+     */
+    public void setTemplateSamplingProfiler(TemplateSamplingProfiler templateSamplingProfiler) {
+        this.templateSamplingProfiler = templateSamplingProfiler;
+    }
+
+    /**
+     * The getter pair of {@link #setTemplateSamplingProfiler(TemplateSamplingProfiler)}.
+     * 
+     * @since 2.3.30
+     */
+    public TemplateSamplingProfiler getTemplateSamplingProfiler() {
+        return templateSamplingProfiler;
+    }
+
     /**
      * Sets the file system directory from which to load templates. This is equivalent to
      * {@code setTemplateLoader(new FileTemplateLoader(dir))}, so see
@@ -1654,6 +1777,10 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
      * I/O). The {@link #getTemplate(String)} (or some of its overloads) call will only return after this all is
      * done, so it will return the fresh template.
      * 
+     * <p>
+     * This setting is ignored if the template loader is an {@link ImmutableTemplateLoader} (like
+     * {@link IndexedClassTemplateLoader}), as then the templates can't change.
+     * 
      * @since 2.3.23
      */
     public void setTemplateUpdateDelayMilliseconds(long millis) {
@@ -1668,6 +1795,39 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
     public long getTemplateUpdateDelayMilliseconds() {
         return cache.getDelay();
     }
+
+    /**
+     * Sets for how many template source names (like {@code "foo_en_US.ftl"}) should FreeMarker remember that the
+     * {@link TemplateLoader} doesn't have them. When a template is looked up, FreeMarker usually tries several names
+     * that most often don't exist, like the localized variations because of {@link #setLocalizedLookup(boolean)}, or
+     * the parent directories with acquisition ({@code *} path steps). Without this, those misses are repeated for
+     * each requested template name, locale, encoding, etc. combination (as the result of the whole lookup is cached
+     * for each combination separately), which can mean a lot of I/O, for example if you have many locales. With this,
+     * a miss is remembered for the same amount of time as {@link #setTemplateUpdateDelayMilliseconds(long)}, for all
+     * lookups; if the template loader is an {@link ImmutableTemplateLoader}, then it's remembered forever. When the
+     * number of remembered misses would exceed this size, the least recently used ones are forgotten. Calling
+     * {@link #clearTemplateCache()} or {@link #removeTemplateFromCache(String, Locale, Object, String, boolean)} also
+     * forgets all remembered misses.
+     * 
+     * <p>
+     * The default is 0, which means that misses aren't remembered this way. Don't enable this if whether the
+     * {@link TemplateLoader} finds a template depends on something else than the template name (like on a
+     * thread-local variable).
+     * 
+     * @since 2.3.30
+     */
+    public void setTemplateLookupMissCacheSize(int maxSize) {
+        cache.setLookupMissCacheSize(maxSize);
+    }
+
+    /**
+     * The getter pair of {@link #setTemplateLookupMissCacheSize(int)}.
+     * 
+     * @since 2.3.30
+     */
+    public int getTemplateLookupMissCacheSize() {
+        return cache.getLookupMissCacheSize();
+    }
     
     /**
      * Sets whether directives such as {@code if}, {@code else}, etc must be written as {@code #if}, {@code #else}, etc.
@@ -2612,6 +2772,93 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
         this.fallbackOnNullLoopVariable = fallbackOnNullLoopVariable;
     }
 
+    /**
+     * The getter pair of {@link #setDataModelLookupCaching(boolean)}.
+     *
+     * @since 2.3.30
+     */
+    public boolean getDataModelLookupCaching() {
+        return dataModelLookupCaching;
+    }
+
+    /**
+     * Specifies if the result of reading a top-level variable from the data-model (or, if it's not there, from the
+     * {@linkplain #setSharedVariable(String, TemplateModel) shared variables}) is remembered until the end of the
+     * template processing, so that later reads of the same variable needn't query the data-model again. This also
+     * applies if the variable was missing, which matters for templates that check the same missing variables
+     * repeatedly (like {@code foo??}, or {@code foo!'default'}). Variables created in templates (like with
+     * {@code #assign}, {@code #global}, or {@code #local}) are still looked up as usual, since they are in scopes
+     * that are searched before the data-model. Defaults to {@code false}.
+     *
+     * <p>Only set this to {@code true} if the data-model and the shared variables don't change while a template is
+     * being processed. Notably, when the data-model is a {@link freemarker.ext.servlet.AllHttpScopesHashModel} (as
+     * with the {@link freemarker.ext.servlet.FreemarkerServlet}), JSP custom tags or other Java code that sets
+     * request, session, or servlet context attributes during the template processing would break that assumption.
+     * The gain is the biggest where querying the data-model is relatively expensive; for example the
+     * {@link freemarker.ext.servlet.AllHttpScopesHashModel} checks several attribute scopes one after the other
+     * until the variable is found.
+     *
+     * @since 2.3.30
+     */
+    public void setDataModelLookupCaching(boolean dataModelLookupCaching) {
+        this.dataModelLookupCaching = dataModelLookupCaching;
+    }
+
+    /**
+     * The getter pair of {@link #setCompressOutput(boolean)}.
+     *
+     * @since 2.3.30
+     */
+    public boolean getCompressOutput() {
+        return compressOutput;
+    }
+
+    /**
+     * Specifies if the whole output of template processing is compressed as if the main template was enclosed into
+     * {@code <#compress>...</#compress>}; that is, leading and trailing whitespace is removed, and each other
+     * whitespace sequence is replaced with a single line break (if the sequence contained a line break) or a single
+     * space. Defaults to {@code false}. This can be used to minify HTML output for example, but note that it changes
+     * the content of {@code <pre>} and {@code <textarea>} elements and alike too. As this setting applies to all
+     * templates, use {@code #compress} in the templates instead if only some of them should be compressed.
+     *
+     * <p>The static text of the templates is compressed only once per {@link Template}, so at runtime only the
+     * output of interpolations and such, and the boundaries between them and the static text, has to be processed.
+     *
+     * @since 2.3.30
+     */
+    public void setCompressOutput(boolean compressOutput) {
+        this.compressOutput = compressOutput;
+    }
+
+    /**
+     * The getter pair of {@link #setCompactTemplates(boolean)}.
+     *
+     * @since 2.3.30
+     */
+    public boolean getCompactTemplates() {
+        return compactTemplates;
+    }
+
+    /**
+     * Specifies if the {@link Template}-s created from now on should use a more compact in-memory representation, at
+     * the cost of somewhat slower parsing, and much slower access to the template source (which is normally only
+     * needed for error messages). Defaults to {@code false}. This is useful if a lot of templates are kept in the
+     * template cache (see {@link #setCacheStorage(CacheStorage)}). In compact mode:
+     * <ul>
+     *   <li>The template source, which is kept for error messages and {@link Template#getSource(int, int, int, int)},
+     *       is stored compressed.
+     *   <li>The arrays holding the child elements of the parsed template are trimmed to their exact size.
+     *   <li>Identical identifier names and short static texts are shared among all compact templates.
+     * </ul>
+     * 
+     * <p>Use {@link Template#getEstimatedRetainedSize()} to see how much memory the templates need.
+     *
+     * @since 2.3.30
+     */
+    public void setCompactTemplates(boolean compactTemplates) {
+        this.compactTemplates = compactTemplates;
+    }
+
     /**
      * Getter pair of {@link #setPreventStrippings(boolean)}.
      * 
@@ -3141,6 +3388,27 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
     public void clearTemplateCache() {
         cache.clear();
     }
+
+    /**
+     * Removes all entries from the output fragment cache used by the {@code #cache} directive (see
+     * {@link #setFragmentCacheStorage(CacheStorage)}), so all fragments will be re-rendered when they are next
+     * needed.
+     * 
+     * <p>This method is thread-safe and can be called while the engine processes templates.
+     * 
+     * @since 2.3.30
+     */
+    public void clearFragmentCache() {
+        CacheStorage fragmentCacheStorage = this.fragmentCacheStorage;
+        if (fragmentCacheStorage instanceof ConcurrentCacheStorage
+                && ((ConcurrentCacheStorage) fragmentCacheStorage).isConcurrent()) {
+            fragmentCacheStorage.clear();
+        } else {
+            synchronized (fragmentCacheStorage) {
+                fragmentCacheStorage.clear();
+            }
+        }
+    }
     
     /**
      * Equivalent to {@link
@@ -3213,6 +3481,45 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
     throws IOException {
         cache.removeTemplate(name, locale, customLookupCondition, encoding, parse);
     }    
+
+    /**
+     * Removes the template with the given name from the template cache (for all locales, encodings, etc.), together
+     * with all the cached templates that depend on it, directly or indirectly. A template depends on another if it
+     * includes or imports it with a literal name (like {@code <#include "foo.ftl">}), or has it as auto-include or
+     * auto-import. See {@link TemplateCache#removeTemplateAndDependents(String)} for more.
+     * 
+     * <p>This method is thread-safe and can be called while the engine processes templates.
+     * 
+     * @since 2.3.30
+     */
+    public void removeTemplateAndDependentsFromCache(String name) throws MalformedTemplateNameException {
+        cache.removeTemplateAndDependents(name);
+    }
+
+    /**
+     * Like {@link #removeTemplateAndDependentsFromCache(String)}, but immediately loads the removed templates again.
+     * See {@link TemplateCache#reloadTemplateAndDependents(String)} for more.
+     * 
+     * <p>This method is thread-safe and can be called while the engine processes templates.
+     * 
+     * @since 2.3.30
+     */
+    public void reloadTemplateAndDependentsInCache(String name) throws IOException {
+        cache.reloadTemplateAndDependents(name);
+    }
+
+    /**
+     * Returns the names of the cached templates that depend on the given template. See
+     * {@link TemplateCache#getDependentTemplateNames(String, boolean)} for more.
+     * 
+     * <p>This method is thread-safe and can be called while the engine processes templates.
+     * 
+     * @since 2.3.30
+     */
+    public Set<String> getCachedDependentTemplateNames(String name, boolean transitive)
+            throws MalformedTemplateNameException {
+        return cache.getDependentTemplateNames(name, transitive);
+    }
     
     /**
      * The getter pair of {@link #setLocalizedLookup(boolean)}.
@@ -3440,6 +3747,18 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
             } else if (FALLBACK_ON_NULL_LOOP_VARIABLE_KEY_SNAKE_CASE.equals(name)
                     || FALLBACK_ON_NULL_LOOP_VARIABLE_KEY_CAMEL_CASE.equals(name)) {
                 setFallbackOnNullLoopVariable(StringUtil.getYesNo(value));
+            } else if (DATA_MODEL_LOOKUP_CACHING_KEY_SNAKE_CASE.equals(name)
+                    || DATA_MODEL_LOOKUP_CACHING_KEY_CAMEL_CASE.equals(name)) {
+                setDataModelLookupCaching(StringUtil.getYesNo(value));
+            } else if (COMPRESS_OUTPUT_KEY_SNAKE_CASE.equals(name)
+                    || COMPRESS_OUTPUT_KEY_CAMEL_CASE.equals(name)) {
+                setCompressOutput(StringUtil.getYesNo(value));
+            } else if (TEMPLATE_LOOKUP_MISS_CACHE_SIZE_KEY_SNAKE_CASE.equals(name)
+                    || TEMPLATE_LOOKUP_MISS_CACHE_SIZE_KEY_CAMEL_CASE.equals(name)) {
+                setTemplateLookupMissCacheSize(Integer.parseInt(value));
+            } else if (COMPACT_TEMPLATES_KEY_SNAKE_CASE.equals(name)
+                    || COMPACT_TEMPLATES_KEY_CAMEL_CASE.equals(name)) {
+                setCompactTemplates(StringUtil.getYesNo(value));
             } else {
                 unknown = true;
             }
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.template;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import freemarker.ext.util.WrapperTemplateModel;
+import freemarker.template.utility.ObjectWrapperWithAPISupport;
+
+/**
+ * Adapts a {@link Future} to {@link TemplateFutureModel}. The result of the {@link Future} is wrapped with the
+ * {@link ObjectWrapper} passed to {@link #adapt(Future, ObjectWrapper)}, when it's first requested by the template.
+ * 
+ * <p>
+ * This adapter isn't used automatically by {@link DefaultObjectWrapper}; you have to put it into the data-model
+ * yourself, or create it in a custom {@link ObjectWrapper}.
+ * 
+ * <p>
+ * Thread safety: A {@link DefaultFutureAdapter} is as thread-safe as the {@link Future} that it wraps is.
+ * 
+ * @since 2.3.30
+ */
+public class DefaultFutureAdapter extends WrappingTemplateModel implements TemplateFutureModel,
+        AdapterTemplateModel, WrapperTemplateModel, TemplateModelWithAPISupport {
+
+    private final Future<?> future;
+
+    /**
+     * Factory method for creating new adapter instances.
+     * 
+     * @param future
+     *            The {@link Future} to adapt; can't be {@code null}.
+     */
+    public static DefaultFutureAdapter adapt(Future<?> future, ObjectWrapper wrapper) {
+        return new DefaultFutureAdapter(future, wrapper);
+    }
+
+    private DefaultFutureAdapter(Future<?> future, ObjectWrapper wrapper) {
+        super(wrapper);
+        this.future = future;
+    }
+
+    public boolean isDone() {
+        return future.isDone();
+    }
+
+    public TemplateModel get() throws TemplateModelException {
+        Object value;
+        try {
+            value = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TemplateModelException("Interrupted while waiting for the value of a Future.", e);
+        } catch (ExecutionException e) {
+            throw new TemplateModelException("The computation of the value of a Future has failed; see cause.",
+                    e.getCause());
+        } catch (CancellationException e) {
+            throw new TemplateModelException("The computation of the value of a Future was cancelled.", e);
+        }
+        return value instanceof TemplateModel ? (TemplateModel) value : wrap(value);
+    }
+
+    public Object getWrappedObject() {
+        return future;
+    }
+
+    public Object getAdaptedObject(Class hint) {
+        return getWrappedObject();
+    }
+
+    public TemplateModel getAPI() throws TemplateModelException {
+        return ((ObjectWrapperWithAPISupport) getObjectWrapper()).wrapAsAPI(future);
+    }
+
+}
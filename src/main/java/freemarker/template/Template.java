@@ -19,15 +19,15 @@
 
 package freemarker.template;
 
-import java.io.BufferedReader;
-import java.io.FilterReader;
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayReader;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
 import java.io.Writer;
-import java.lang.reflect.UndeclaredThrowableException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -36,6 +36,9 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Vector;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import freemarker.cache.TemplateCache;
 import freemarker.cache.TemplateLoader;
@@ -55,6 +58,8 @@ import freemarker.core.TextBlock;
 import freemarker.core.TokenMgrError;
 import freemarker.core._CoreAPI;
 import freemarker.debug.impl.DebuggerService;
+import freemarker.template.utility.CollectionUtils;
+import freemarker.template.utility.NullArgumentException;
 
 /**
  * Stores an already parsed template, ready to be processed (rendered) for unlimited times, possibly from multiple
@@ -93,7 +98,27 @@ public class Template extends Configurable {
     private OutputFormat outputFormat;
     private final String name;
     private final String sourceName;
-    private final ArrayList lines = new ArrayList();
+    /**
+     * The last modification time of the template source, as returned by {@link TemplateLoader#getLastModified(Object)}
+     * when the template was loaded, or -1 if that's unknown.
+     */
+    private long lastModified = -1;
+    /**
+     * The source code as it was read; used by {@link #getSource(int, int, int, int)}. It's {@code null} if
+     * {@link #compressedSource} is used instead.
+     */
+    private char[] source;
+    /**
+     * The UTF-8 encoded source code compressed with {@link Deflater}, if the template was created with
+     * {@link Configuration#getCompactTemplates()} set to {@code true}, otherwise {@code null}.
+     */
+    private byte[] compressedSource;
+    /**
+     * The index of the first character of each line in {@link #source}, followed by the length of the source (so it has
+     * one more element than the number of lines). Calculated on demand, as it's only needed for error messages and
+     * such.
+     */
+    private volatile int[] lineStarts;
     private final ParserConfiguration parserConfiguration;
     private Map prefixToNamespaceURILookup = new HashMap();
     private Map namespaceURIToPrefixLookup = new HashMap();
@@ -231,35 +256,28 @@ public class Template extends Configurable {
         this(name, sourceName, cfg, customParserConfiguration);
         
         this.setEncoding(encoding);
-        LineTableBuilder ltbReader;
         try {
             ParserConfiguration actualParserConfiguration = getParserConfiguration();
             
-            if (!(reader instanceof BufferedReader) && !(reader instanceof StringReader)) {
-                reader = new BufferedReader(reader, READER_BUFFER_SIZE);
-            }
-            ltbReader = new LineTableBuilder(reader, actualParserConfiguration);
-            reader = ltbReader;
+            // Reading all in advance is faster than letting the parser pull the characters through a filter, and it
+            // also ensures that I/O errors aren't treated as EOF by JavaCC.
+            source = readAll(reader);
             
             try {
-                FMParser parser = new FMParser(this, reader, actualParserConfiguration);
+                FMParser parser = new FMParser(
+                        this, new CharArrayReader(source), actualParserConfiguration);
                 if (cfg != null) {
                     _CoreAPI.setPreventStrippings(parser, cfg.getPreventStrippings());
+                    _CoreAPI.setCompact(parser, cfg.getCompactTemplates());
                 }
-                try {
-                    this.rootElement = parser.Root();
-                } catch (IndexOutOfBoundsException exc) {
-                    // There's a JavaCC bug where the Reader throws a RuntimeExcepton and then JavaCC fails with
-                    // IndexOutOfBoundsException. If that wasn't the case, we just rethrow. Otherwise we suppress the
-                    // IndexOutOfBoundsException and let the real cause to be thrown later. 
-                    if (!ltbReader.hasFailure()) {
-                        throw exc;
-                    }
-                    rootElement = null;
-                }
+                this.rootElement = parser.Root();
                 this.actualTagSyntax = parser._getLastTagSyntax();
                 this.interpolationSyntax = actualParserConfiguration.getInterpolationSyntax();
                 this.actualNamingConvention = parser._getLastNamingConvention();
+                if (cfg != null && cfg.getCompactTemplates()) {
+                    compressedSource = compressSource(source);
+                    source = null;
+                }
             } catch (TokenMgrError exc) {
                 // TokenMgrError VS ParseException is not an interesting difference for the user, so we just convert it
                 // to ParseException
@@ -272,9 +290,6 @@ public class Template extends Configurable {
             reader.close();
         }
         
-        // Throws any exception that JavaCC has silently treated as EOF:
-        ltbReader.throwFailure();
-        
         DebuggerService.registerTemplate(this);
         namespaceURIToPrefixLookup = Collections.unmodifiableMap(namespaceURIToPrefixLookup);
         prefixToNamespaceURILookup = Collections.unmodifiableMap(prefixToNamespaceURILookup);
@@ -460,6 +475,47 @@ public class Template extends Configurable {
     */
     public Environment createProcessingEnvironment(Object dataModel, Writer out, ObjectWrapper wrapper)
     throws TemplateException, IOException {
+        return new Environment(this, wrapDataModel(dataModel, wrapper), out);
+    }
+
+    /**
+     * Like {@link #createProcessingEnvironment(Object, Writer, ObjectWrapper)}, but instead of creating a new
+     * {@link Environment}, it resets and returns one that was earlier created for this template, and isn't used
+     * anymore. See {@link Environment#reset(TemplateHashModel, Writer)} for more.
+     * 
+     * <p>Example:
+     * 
+     * <pre>
+     * Environment env = myTemplate.createProcessingEnvironment(root1, out1, null);
+     * env.process();
+     * ...
+     * myTemplate.resetProcessingEnvironment(env, root2, out2, null);
+     * env.process();</pre>
+     * 
+     * @param env
+     *            The {@link Environment} to reuse; its {@link Environment#getMainTemplate()} must be this template.
+     * 
+     * @return The {@code env} parameter value, for convenience.
+     * 
+     * @throws IllegalArgumentException
+     *             If the {@link Environment} was created for another template.
+     * @throws IllegalStateException
+     *             If the {@link Environment} is processing a template at the moment.
+     * 
+     * @since 2.3.30
+     */
+    public Environment resetProcessingEnvironment(Environment env, Object dataModel, Writer out,
+            ObjectWrapper wrapper) throws TemplateException {
+        NullArgumentException.check("env", env);
+        if (env.getMainTemplate() != this) {
+            throw new IllegalArgumentException("The Environment was created for another template: "
+                    + env.getMainTemplate().getName());
+        }
+        env.reset(wrapDataModel(dataModel, wrapper), out);
+        return env;
+    }
+    
+    private TemplateHashModel wrapDataModel(Object dataModel, ObjectWrapper wrapper) throws TemplateModelException {
         final TemplateHashModel dataModelHash;
         if (dataModel instanceof TemplateHashModel) {
             dataModelHash = (TemplateHashModel) dataModel;
@@ -486,7 +542,7 @@ public class Template extends Configurable {
                 }
             }
         }
-        return new Environment(this, dataModelHash, out);
+        return dataModelHash;
     }
 
     /**
@@ -720,6 +776,21 @@ public class Template extends Configurable {
         this.autoEscaping = autoEscaping;
     }
     
+    /**
+     * Meant to be called by the {@link TemplateCache} only, before the template is published.
+     */
+    void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+    
+    /**
+     * The last modification time of the template source, as the {@link TemplateLoader} has reported it when the
+     * template was loaded, or -1 if that's unknown (like when the template wasn't created by the {@link TemplateCache}).
+     */
+    long getLastModified() {
+        return lastModified;
+    }
+    
     /**
      * Dump the raw template in canonical form.
      */
@@ -779,129 +850,195 @@ public class Template extends Configurable {
         --beginColumn;
         --endColumn;
         --endLine;
+        char[] source = getSourceChars();
+        int[] lineStarts = getLineStarts(source);
+        int lineCount = lineStarts.length - 1;
         StringBuilder buf = new StringBuilder();
         for (int i = beginLine ; i <= endLine; i++) {
-            if (i < lines.size()) {
-                buf.append(lines.get(i));
+            if (i < lineCount) {
+                appendLine(i, lineStarts, source, buf);
             }
         }
-        int lastLineLength = lines.get(endLine).toString().length();
+        if (endLine >= lineCount) {
+            throw new IndexOutOfBoundsException("Line index " + endLine + " is out of bounds; line count: " + lineCount);
+        }
+        int lastLineLength = appendLine(endLine, lineStarts, source, new StringBuilder()).length();
         int trailingCharsToDelete = lastLineLength - endColumn - 1;
         buf.delete(0, beginColumn);
         buf.delete(buf.length() - trailingCharsToDelete, buf.length());
         return buf.toString();
     }
-
+    
     /**
-     * Reader that builds up the line table info for us, and also helps in working around JavaCC's exception
-     * suppression.
+     * Appends the line to the {@link StringBuilder}, with line break at its end (if there's any), and the tabs
+     * replaced with spaces if the tab size is not 1.
      */
-    private class LineTableBuilder extends FilterReader {
-        
-        private final int tabSize;
-        private final StringBuilder lineBuf = new StringBuilder();
-        int lastChar;
-        boolean closed;
-        
-        /** Needed to work around JavaCC behavior where it silently treats any errors as EOF. */ 
-        private Exception failure; 
-
-        /**
-         * @param r the character stream to wrap
-         */
-        LineTableBuilder(Reader r, ParserConfiguration parserConfiguration) {
-            super(r);
-            tabSize = parserConfiguration.getTabSize();
+    private StringBuilder appendLine(int lineIdx, int[] lineStarts, char[] source, StringBuilder buf) {
+        final int start = lineStarts[lineIdx];
+        final int end = lineStarts[lineIdx + 1];
+        final int tabSize = getParserConfiguration().getTabSize();
+        if (tabSize == 1) {
+            return buf.append(source, start, end - start);
         }
         
-        public boolean hasFailure() {
-            return failure != null;
-        }
-
-        public void throwFailure() throws IOException {
-            if (failure != null) {
-                if (failure instanceof IOException) {
-                    throw (IOException) failure;
+        final int lineStartInBuf = buf.length();
+        int runStart = start;
+        for (int i = start; i < end; i++) {
+            if (source[i] == '\t') {
+                buf.append(source, runStart, i - runStart);
+                int numSpaces = tabSize - ((buf.length() - lineStartInBuf) % tabSize);
+                for (int j = 0; j < numSpaces; j++) {
+                    buf.append(' ');
                 }
-                if (failure instanceof RuntimeException) {
-                    throw (RuntimeException) failure;
-                }
-                throw new UndeclaredThrowableException(failure);
+                runStart = i + 1;
             }
         }
+        return buf.append(source, runStart, end - runStart);
+    }
 
-        @Override
-        public int read() throws IOException {
-            try {
-                int c = in.read();
-                handleChar(c);
-                return c;
-            } catch (Exception e) {
-                throw rememberException(e);
-            }
+    private int[] getLineStarts(char[] source) {
+        int[] lineStarts = this.lineStarts;
+        if (lineStarts == null) {
+            // Benign race: all threads calculate the same.
+            lineStarts = calculateLineStarts(source);
+            this.lineStarts = lineStarts;
         }
+        return lineStarts;
+    }
 
-        private IOException rememberException(Exception e) throws IOException {
-            // JavaCC used to read from the Reader after it was closed. So we must not treat that as a failure. 
-            if (!closed) {
-                failure = e;
-            }
-            if (e instanceof IOException) {
-                return (IOException) e;
+    /**
+     * Returns the source code; in compact mode it's decompressed on each call, so avoid calling this repeatedly.
+     */
+    private char[] getSourceChars() {
+        if (source != null) {
+            return source;
+        }
+        if (compressedSource != null) {
+            return decompressSource(compressedSource);
+        }
+        return CollectionUtils.EMPTY_CHAR_ARRAY;
+    }
+    
+    /**
+     * A line ends after a {@code \n}, a {@code \r}, or a {@code \r\n}. The last line is only counted if it's not
+     * empty.
+     */
+    private static int[] calculateLineStarts(char[] source) {
+        final int length = source.length;
+        int[] lineStarts = new int[64];
+        int lineCount = 0;
+        int lineStart = 0;
+        for (int i = 0; i < length; i++) {
+            char c = source[i];
+            if (c == '\n' || c == '\r') {
+                if (c == '\r' && i + 1 < length && source[i + 1] == '\n') {
+                    i++;
+                }
+                if (lineCount + 1 >= lineStarts.length) {
+                    lineStarts = copyOf(lineStarts, lineStarts.length * 2);
+                }
+                lineStarts[lineCount++] = lineStart;
+                lineStart = i + 1;
             }
-            if (e instanceof RuntimeException) {
-                throw (RuntimeException) e;
+        }
+        if (lineStart < length) {
+            if (lineCount + 1 >= lineStarts.length) {
+                lineStarts = copyOf(lineStarts, lineStarts.length + 1);
             }
-            throw new UndeclaredThrowableException(e);
+            lineStarts[lineCount++] = lineStart;
         }
+        lineStarts[lineCount] = length;
+        return copyOf(lineStarts, lineCount + 1);
+    }
+    
+    private static int[] copyOf(int[] array, int newLength) {
+        int[] newArray = new int[newLength];
+        System.arraycopy(array, 0, newArray, 0, Math.min(array.length, newLength));
+        return newArray;
+    }
 
-        @Override
-        public int read(char cbuf[], int off, int len) throws IOException {
-            try {
-                int numchars = in.read(cbuf, off, len);
-                for (int i = off; i < off + numchars; i++) {
-                    char c = cbuf[i];
-                    handleChar(c);
-                }
-                return numchars;
-            } catch (Exception e) {
-                throw rememberException(e);
+    private static char[] readAll(Reader reader) throws IOException {
+        char[] buf = new char[READER_BUFFER_SIZE];
+        int length = 0;
+        int readLength;
+        while ((readLength = reader.read(buf, length, buf.length - length)) != -1) {
+            length += readLength;
+            if (length == buf.length) {
+                char[] newBuf = new char[buf.length * 2];
+                System.arraycopy(buf, 0, newBuf, 0, length);
+                buf = newBuf;
             }
         }
+        if (length == buf.length) {
+            return buf;
+        }
+        char[] result = new char[length];
+        System.arraycopy(buf, 0, result, 0, length);
+        return result;
+    }
 
-        @Override
-        public void close() throws IOException {
-            if (lineBuf.length() > 0) {
-                lines.add(lineBuf.toString());
-                lineBuf.setLength(0);
+    private static byte[] compressSource(char[] source) {
+        byte[] utf8Source;
+        try {
+            utf8Source = new String(source).getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new BugException(e);
+        }
+        
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(utf8Source);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(utf8Source.length / 4 + 16);
+            byte[] buf = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buf, 0, deflater.deflate(buf));
             }
-            super.close();
-            closed = true;
+            return out.toByteArray();
+        } finally {
+            deflater.end();
         }
+    }
 
-        private void handleChar(int c) {
-            if (c == '\n' || c == '\r') {
-                if (lastChar == '\r' && c == '\n') { // CRLF under Windoze
-                    int lastIndex = lines.size() - 1;
-                    String lastLine = (String) lines.get(lastIndex);
-                    lines.set(lastIndex, lastLine + '\n');
-                } else {
-                    lineBuf.append((char) c);
-                    lines.add(lineBuf.toString());
-                    lineBuf.setLength(0);
-                }
-            } else if (c == '\t' && tabSize != 1) {
-                int numSpaces = tabSize - (lineBuf.length() % tabSize);
-                for (int i = 0; i < numSpaces; i++) {
-                    lineBuf.append(' ');
+    private static char[] decompressSource(byte[] compressedSource) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressedSource);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(compressedSource.length * 4);
+            byte[] buf = new byte[4096];
+            while (!inflater.finished()) {
+                int len = inflater.inflate(buf);
+                if (len == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new BugException("Truncated compressed template source");
                 }
-            } else {
-                lineBuf.append((char) c);
+                out.write(buf, 0, len);
             }
-            lastChar = c;
+            return new String(out.toByteArray(), "UTF-8").toCharArray();
+        } catch (DataFormatException e) {
+            throw new BugException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new BugException(e);
+        } finally {
+            inflater.end();
         }
     }
 
+    /**
+     * Returns a rough estimate of how many bytes of heap memory this template retains, like while it's in the
+     * template cache. This includes the parsed template, the source code (kept for error messages), and the
+     * settings stored in the {@link Template} object, but not the objects that are possibly shared with other
+     * templates (like the {@link Configuration}, or the names and texts shared because of
+     * {@link Configuration#setCompactTemplates(boolean)}). It calculates with the object layout of a 64 bit JVM with
+     * compressed object pointers, so the real size can differ depending on the JVM.
+     * 
+     * <p>This has to walk through all objects of the template, so it's not meant to be called frequently.
+     * 
+     * @since 2.3.30
+     */
+    public long getEstimatedRetainedSize() {
+        return _CoreAPI.estimateRetainedSize(this);
+    }
+
     /**
      * @deprecated Should only be used internally, and might will be removed later.
      */
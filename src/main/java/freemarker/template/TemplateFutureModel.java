@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.template;
+
+import freemarker.core.Environment;
+
+/**
+ * A placeholder for a value that is possibly still being computed (like the result of an asynchronous back-end
+ * call). This is not a template language data type; whenever an expression in a template evaluates to a
+ * {@link TemplateFutureModel}, FreeMarker replaces it with the result of {@link #get()}, so the template author never
+ * sees the placeholder itself.
+ * 
+ * <p>
+ * When the value is not yet available ({@link #isDone()} returns {@code false}), and the
+ * {@link Environment#getAutoFlush() auto_flush} setting is {@code true} (the default), the output written so far is
+ * flushed before FreeMarker starts waiting for the value. Thus the client can already receive (and start processing)
+ * the part of the page that precedes the slow part. Note that the processing thread still waits in {@link #get()};
+ * FreeMarker executes templates by walking the AST on the call stack, so it can't release the thread in the
+ * middle of template processing.
+ * 
+ * <p>
+ * {@link DefaultFutureAdapter} implements this for {@link java.util.concurrent.Future}-s.
+ * 
+ * @since 2.3.30
+ */
+public interface TemplateFutureModel extends TemplateModel {
+
+    /**
+     * Tells if the value is already available, that is, if {@link #get()} would return without waiting.
+     */
+    boolean isDone();
+
+    /**
+     * Returns the value, waiting for it to become available if necessary.
+     * 
+     * @return The value, or {@code null} if the value is missing. Mustn't be another {@link TemplateFutureModel}.
+     */
+    TemplateModel get() throws TemplateModelException;
+
+}
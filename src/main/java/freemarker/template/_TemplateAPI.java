@@ -125,6 +125,14 @@ public class _TemplateAPI {
         t.setAutoEscaping(autoEscaping);
     }
     
+    public static void setLastModified(Template t, long lastModified) {
+        t.setLastModified(lastModified);
+    }
+    
+    public static long getLastModified(Template t) {
+        return t.getLastModified();
+    }
+    
     public static void setOutputFormat(Template t, OutputFormat outputFormat) {
         t.setOutputFormat(outputFormat);
     }
@@ -25,8 +25,7 @@ import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.Locale;
 import java.util.TimeZone;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Date and time related utilities.
@@ -88,35 +87,60 @@ public class DateUtil {
     private static final String REGEX_ISO8601_EXTENDED_TIME_BASE
             = "([0-9]{2})(?::([0-9]{2})(?::([0-9]{2})(?:[\\.,]([0-9]+))?)?)?";
         
-    private static final Pattern PATTERN_XS_DATE = Pattern.compile(
-            REGEX_XS_DATE_BASE + REGEX_XS_OPTIONAL_TIME_ZONE);
-    private static final Pattern PATTERN_ISO8601_BASIC_DATE = Pattern.compile(
-            REGEX_ISO8601_BASIC_DATE_BASE); // No time zone allowed here
-    private static final Pattern PATTERN_ISO8601_EXTENDED_DATE = Pattern.compile(
-            REGEX_ISO8601_EXTENDED_DATE_BASE); // No time zone allowed here
-
-    private static final Pattern PATTERN_XS_TIME = Pattern.compile(
-            REGEX_XS_TIME_BASE + REGEX_XS_OPTIONAL_TIME_ZONE);
-    private static final Pattern PATTERN_ISO8601_BASIC_TIME = Pattern.compile(
-            REGEX_ISO8601_BASIC_TIME_BASE + REGEX_ISO8601_BASIC_OPTIONAL_TIME_ZONE);
-    private static final Pattern PATTERN_ISO8601_EXTENDED_TIME = Pattern.compile(
-            REGEX_ISO8601_EXTENDED_TIME_BASE + REGEX_ISO8601_EXTENDED_OPTIONAL_TIME_ZONE);
-    
-    private static final Pattern PATTERN_XS_DATE_TIME = Pattern.compile(
-            REGEX_XS_DATE_BASE
+    // The regular expressions are only used in error messages; the parsing is done by hand-written code that
+    // mimics them, as that's much faster.
+    
+    private static final String REGEX_XS_DATE
+            = REGEX_XS_DATE_BASE + REGEX_XS_OPTIONAL_TIME_ZONE;
+    private static final String REGEX_ISO8601_BASIC_DATE
+            = REGEX_ISO8601_BASIC_DATE_BASE; // No time zone allowed here
+    private static final String REGEX_ISO8601_EXTENDED_DATE
+            = REGEX_ISO8601_EXTENDED_DATE_BASE; // No time zone allowed here
+
+    private static final String REGEX_XS_TIME
+            = REGEX_XS_TIME_BASE + REGEX_XS_OPTIONAL_TIME_ZONE;
+    private static final String REGEX_ISO8601_BASIC_TIME
+            = REGEX_ISO8601_BASIC_TIME_BASE + REGEX_ISO8601_BASIC_OPTIONAL_TIME_ZONE;
+    private static final String REGEX_ISO8601_EXTENDED_TIME
+            = REGEX_ISO8601_EXTENDED_TIME_BASE + REGEX_ISO8601_EXTENDED_OPTIONAL_TIME_ZONE;
+    
+    private static final String REGEX_XS_DATE_TIME
+            = REGEX_XS_DATE_BASE
             + "T" + REGEX_XS_TIME_BASE
-            + REGEX_XS_OPTIONAL_TIME_ZONE);
-    private static final Pattern PATTERN_ISO8601_BASIC_DATE_TIME = Pattern.compile(
-            REGEX_ISO8601_BASIC_DATE_BASE
+            + REGEX_XS_OPTIONAL_TIME_ZONE;
+    private static final String REGEX_ISO8601_BASIC_DATE_TIME
+            = REGEX_ISO8601_BASIC_DATE_BASE
             + "T" + REGEX_ISO8601_BASIC_TIME_BASE
-            + REGEX_ISO8601_BASIC_OPTIONAL_TIME_ZONE);
-    private static final Pattern PATTERN_ISO8601_EXTENDED_DATE_TIME = Pattern.compile(
-            REGEX_ISO8601_EXTENDED_DATE_BASE
+            + REGEX_ISO8601_BASIC_OPTIONAL_TIME_ZONE;
+    private static final String REGEX_ISO8601_EXTENDED_DATE_TIME
+            = REGEX_ISO8601_EXTENDED_DATE_BASE
             + "T" + REGEX_ISO8601_EXTENDED_TIME_BASE
-            + REGEX_ISO8601_EXTENDED_OPTIONAL_TIME_ZONE);
+            + REGEX_ISO8601_EXTENDED_OPTIONAL_TIME_ZONE;
+    
+    /** Syntax variations understood by the hand-written parser. */
+    private static final int SYNTAX_XS = 0;
+    private static final int SYNTAX_ISO8601_BASIC = 1;
+    private static final int SYNTAX_ISO8601_EXTENDED = 2;
+    
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
     
-    private static final Pattern PATTERN_XS_TIME_ZONE = Pattern.compile(
-            REGEX_XS_TIME_ZONE);
+    /** Days from 0000-03-01 to 1970-01-01 in the proleptic Gregorian calendar. */
+    private static final long DAYS_0000_03_01_TO_1970_01_01 = 719468;
+    
+    /**
+     * Above this year {@link TrivialCalendarFieldsToDateConverter} falls back to using a {@link Calendar}, so that we
+     * don't have to replicate its range checks and overflow behavior.
+     */
+    private static final int FAST_PATH_MAX_YEAR = 1000000;
+    
+    /**
+     * The time zones created for explicit offsets in parsed strings, indexed with {@code (negative ? 24 * 60 : 0) +
+     * hours * 60 + minutes}. Creating them with {@link TimeZone#getTimeZone(String)} is relatively expensive. These
+     * are only passed to {@link TrivialCalendarFieldsToDateConverter}, which doesn't modify them, so they can be
+     * shared; other {@link CalendarFieldsToDateConverter}-s get a clone.
+     */
+    private static final AtomicReferenceArray<TimeZone> OFFSET_TIME_ZONES
+            = new AtomicReferenceArray<TimeZone>(2 * 24 * 60);
     
     private static final String MSG_YEAR_0_NOT_ALLOWED
             = "Year 0 is not allowed in XML schema dates. BC 1 is -1, AD 1 is 1.";
@@ -234,11 +258,10 @@ public class DateUtil {
      *        that although date-only formats has no time zone offset part,
      *        the result still depends on the time zone, as days start and end
      *        at different points on the time line in different zones.      
-     * @param calendarFactory the factory that will create the calendar used
-     *        internally for calculations. The point of this parameter is that
-     *        creating a new calendar is relatively expensive, so it's desirable
-     *        to reuse calendars and only set their time and zone. (This was
-     *        tested on Sun JDK 1.6 x86 Win, where it gave 2x-3x speedup.) 
+     * @param calendarFactory ignored since 2.3.30, as the calculation doesn't
+     *        use a calendar anymore; can be {@code null}. (Earlier it was the
+     *        factory that created the calendar used internally for
+     *        calculations.) It's still here for backward compatibility.
      */
     public static String dateToISO8601String(
             Date date,
@@ -277,7 +300,11 @@ public class DateUtil {
             timeZone = UTC;
         }
         
-        GregorianCalendar cal = calendarFactory.get(timeZone, date);
+        final long time = date.getTime();
+        final int offset = timeZone.getOffset(time);
+        final long localTime = time + offset;
+        final long localDays = floorDiv(localTime, MILLIS_PER_DAY);
+        final int millisOfDay = (int) (localTime - localDays * MILLIS_PER_DAY);
 
         int maxLength;
         if (!timePart) {
@@ -293,10 +320,22 @@ public class DateUtil {
         int dstIdx = 0;
         
         if (datePart) {
-            int x = cal.get(Calendar.YEAR);
-            if (x > 0 && cal.get(Calendar.ERA) == GregorianCalendar.BC) {
-                x = -x + (xsMode ? 0 : 1);
-            }
+            // Civil from days algorithm, for the proleptic Gregorian calendar. See:
+            // http://howardhinnant.github.io/date_algorithms.html#civil_from_days
+            final long shiftedDays = localDays + DAYS_0000_03_01_TO_1970_01_01;
+            final long era400 = (shiftedDays >= 0 ? shiftedDays : shiftedDays - 146096) / 146097;
+            final int dayOfEra400 = (int) (shiftedDays - era400 * 146097);
+            final int yearOfEra400
+                    = (dayOfEra400 - dayOfEra400 / 1460 + dayOfEra400 / 36524 - dayOfEra400 / 146096) / 365;
+            final int dayOfShiftedYear = dayOfEra400 - (365 * yearOfEra400 + yearOfEra400 / 4 - yearOfEra400 / 100);
+            final int shiftedMonth = (5 * dayOfShiftedYear + 2) / 153; // 0 is March
+            final int dayOfMonth = dayOfShiftedYear - (153 * shiftedMonth + 2) / 5 + 1;
+            final int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+            // The astronomical year number, where 0 is 1 BC, -1 is 2 BC, etc. That's also the ISO 8601 year number.
+            final long year = yearOfEra400 + era400 * 400 + (month <= 2 ? 1 : 0);
+            
+            // XML Schema has no year 0, so there -1 is 1 BC:
+            int x = (int) (year <= 0 && xsMode ? year - 1 : year);
             if (x >= 0 && x < 9999) {
                 res[dstIdx++] = (char) ('0' + x / 1000);
                 res[dstIdx++] = (char) ('0' + x % 1000 / 100);
@@ -316,13 +355,11 @@ public class DateUtil {
     
             res[dstIdx++] = '-';
             
-            x = cal.get(Calendar.MONTH) + 1;
-            dstIdx = append00(res, dstIdx, x);
+            dstIdx = append00(res, dstIdx, month);
     
             res[dstIdx++] = '-';
             
-            x = cal.get(Calendar.DAY_OF_MONTH);
-            dstIdx = append00(res, dstIdx, x);
+            dstIdx = append00(res, dstIdx, dayOfMonth);
 
             if (timePart) {
                 res[dstIdx++] = 'T';
@@ -330,30 +367,25 @@ public class DateUtil {
         }
 
         if (timePart) {
-            int x = cal.get(Calendar.HOUR_OF_DAY);
+            int x = millisOfDay / (60 * 60 * 1000);
             dstIdx = append00(res, dstIdx, x);
     
             if (accuracy >= ACCURACY_MINUTES) {
                 res[dstIdx++] = ':';
         
-                x = cal.get(Calendar.MINUTE);
+                x = millisOfDay / (60 * 1000) % 60;
                 dstIdx = append00(res, dstIdx, x);
         
                 if (accuracy >= ACCURACY_SECONDS) {
                     res[dstIdx++] = ':';
             
-                    x = cal.get(Calendar.SECOND);
+                    x = millisOfDay / 1000 % 60;
                     dstIdx = append00(res, dstIdx, x);
             
                     if (accuracy >= ACCURACY_MILLISECONDS) {
-                        x = cal.get(Calendar.MILLISECOND);
+                        x = millisOfDay % 1000;
                         int forcedDigits = accuracy == ACCURACY_MILLISECONDS_FORCED ? 3 : 0;
                         if (x != 0 || forcedDigits != 0) {
-                            if (x > 999) {
-                                // Shouldn't ever happen...
-                                throw new RuntimeException(
-                                        "Calendar.MILLISECOND > 999");
-                            }
                             res[dstIdx++] = '.';
                             do {
                                 res[dstIdx++] = (char) ('0' + (x / 100));
@@ -370,7 +402,7 @@ public class DateUtil {
             if (timeZone == UTC) {
                 res[dstIdx++] = 'Z';
             } else {
-                int dt = timeZone.getOffset(date.getTime());
+                int dt = offset;
                 boolean positive;
                 if (dt < 0) {
                     positive = false;
@@ -404,6 +436,39 @@ public class DateUtil {
         return new String(res, 0, dstIdx);
     }
     
+    private static long floorDiv(long x, long y) {
+        long r = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            r--;
+        }
+        return r;
+    }
+    
+    /**
+     * Days from civil algorithm, for the proleptic Gregorian calendar. See:
+     * http://howardhinnant.github.io/date_algorithms.html#days_from_civil
+     * 
+     * @param year The astronomical year number, so 0 is 1 BC.
+     * @param month 1-based
+     * @param day 1-based
+     * 
+     * @return Days since 1970-01-01
+     */
+    private static long daysFromCivil(long year, int month, int day) {
+        if (month <= 2) {
+            year--;
+        }
+        final long era400 = (year >= 0 ? year : year - 399) / 400;
+        final int yearOfEra400 = (int) (year - era400 * 400);
+        final int dayOfShiftedYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        final int dayOfEra400 = yearOfEra400 * 365 + yearOfEra400 / 4 - yearOfEra400 / 100 + dayOfShiftedYear;
+        return era400 * 146097 + dayOfEra400 - DAYS_0000_03_01_TO_1970_01_01;
+    }
+    
+    private static boolean isLeapYear(int year) {
+        return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+    
     /** 
      * Appends a number between 0 and 99 padded to 2 digits.
      */
@@ -432,12 +497,12 @@ public class DateUtil {
             String dateStr, TimeZone defaultTimeZone,
             CalendarFieldsToDateConverter calToDateConverter) 
             throws DateParseException {
-        Matcher m = PATTERN_XS_DATE.matcher(dateStr);
-        if (!m.matches()) {
-            throw new DateParseException("The value didn't match the expected pattern: " + PATTERN_XS_DATE); 
+        int[] groups = newGroups(4);
+        if (!matchDate(dateStr, SYNTAX_XS, groups)) {
+            throw new DateParseException("The value didn't match the expected pattern: " + REGEX_XS_DATE); 
         }
         return parseDate_parseMatcher(
-                m, defaultTimeZone, true, calToDateConverter);
+                dateStr, groups, defaultTimeZone, true, calToDateConverter);
     }
 
     /**
@@ -447,27 +512,26 @@ public class DateUtil {
             String dateStr, TimeZone defaultTimeZone,
             CalendarFieldsToDateConverter calToDateConverter) 
             throws DateParseException {
-        Matcher m = PATTERN_ISO8601_EXTENDED_DATE.matcher(dateStr);
-        if (!m.matches()) {
-            m = PATTERN_ISO8601_BASIC_DATE.matcher(dateStr);
-            if (!m.matches()) {
+        int[] groups = newGroups(3);
+        if (!matchDate(dateStr, SYNTAX_ISO8601_EXTENDED, groups)) {
+            if (!matchDate(dateStr, SYNTAX_ISO8601_BASIC, groups)) {
                 throw new DateParseException("The value didn't match the expected pattern: "
-                            + PATTERN_ISO8601_EXTENDED_DATE + " or "
-                            + PATTERN_ISO8601_BASIC_DATE);
+                            + REGEX_ISO8601_EXTENDED_DATE + " or "
+                            + REGEX_ISO8601_BASIC_DATE);
             }
         }
         return parseDate_parseMatcher(
-                m, defaultTimeZone, false, calToDateConverter);
+                dateStr, groups, defaultTimeZone, false, calToDateConverter);
     }
     
     private static Date parseDate_parseMatcher(
-            Matcher m, TimeZone defaultTZ,
+            String s, int[] groups, TimeZone defaultTZ,
             boolean xsMode,
             CalendarFieldsToDateConverter calToDateConverter) 
             throws DateParseException {
         NullArgumentException.check("defaultTZ", defaultTZ);
         try {
-            int year = groupToInt(m.group(1), "year", Integer.MIN_VALUE, Integer.MAX_VALUE);
+            int year = groupToInt(s, groups, 1, "year", Integer.MIN_VALUE, Integer.MAX_VALUE);
             
             int era;
             // Starting from ISO 8601:2000 Second Edition, 0001 is AD 1, 0000 is BC 1, -0001 is BC 2.
@@ -483,10 +547,10 @@ public class DateUtil {
                 era = GregorianCalendar.AD;
             }
             
-            int month = groupToInt(m.group(2), "month", 1, 12) - 1;
-            int day = groupToInt(m.group(3), "day-of-month", 1, 31);
+            int month = groupToInt(s, groups, 2, "month", 1, 12) - 1;
+            int day = groupToInt(s, groups, 3, "day-of-month", 1, 31);
 
-            TimeZone tz = xsMode ? parseMatchingTimeZone(m.group(4), defaultTZ) : defaultTZ;
+            TimeZone tz = xsMode ? parseMatchingTimeZone(s, groups, 4, defaultTZ, calToDateConverter) : defaultTZ;
             
             return calToDateConverter.calculate(era, year, month, day, 0, 0, 0, 0, false, tz);
         } catch (IllegalArgumentException e) {
@@ -506,11 +570,11 @@ public class DateUtil {
     public static Date parseXSTime(
             String timeStr, TimeZone defaultTZ, CalendarFieldsToDateConverter calToDateConverter) 
             throws DateParseException {
-        Matcher m = PATTERN_XS_TIME.matcher(timeStr);
-        if (!m.matches()) {
-            throw new DateParseException("The value didn't match the expected pattern: " + PATTERN_XS_TIME);
+        int[] groups = newGroups(5);
+        if (!matchTime(timeStr, SYNTAX_XS, groups)) {
+            throw new DateParseException("The value didn't match the expected pattern: " + REGEX_XS_TIME);
         }
-        return parseTime_parseMatcher(m, defaultTZ, calToDateConverter);
+        return parseTime_parseMatcher(timeStr, groups, defaultTZ, calToDateConverter);
     }
 
     /**
@@ -519,27 +583,26 @@ public class DateUtil {
     public static Date parseISO8601Time(
             String timeStr, TimeZone defaultTZ, CalendarFieldsToDateConverter calToDateConverter) 
             throws DateParseException {
-        Matcher m = PATTERN_ISO8601_EXTENDED_TIME.matcher(timeStr);
-        if (!m.matches()) {
-            m = PATTERN_ISO8601_BASIC_TIME.matcher(timeStr);
-            if (!m.matches()) {
+        int[] groups = newGroups(5);
+        if (!matchTime(timeStr, SYNTAX_ISO8601_EXTENDED, groups)) {
+            if (!matchTime(timeStr, SYNTAX_ISO8601_BASIC, groups)) {
                 throw new DateParseException("The value didn't match the expected pattern: "
-                            + PATTERN_ISO8601_EXTENDED_TIME + " or "
-                            + PATTERN_ISO8601_BASIC_TIME);
+                            + REGEX_ISO8601_EXTENDED_TIME + " or "
+                            + REGEX_ISO8601_BASIC_TIME);
             }
         }
-        return parseTime_parseMatcher(m, defaultTZ, calToDateConverter);
+        return parseTime_parseMatcher(timeStr, groups, defaultTZ, calToDateConverter);
     }
     
     private static Date parseTime_parseMatcher(
-            Matcher m, TimeZone defaultTZ,
+            String s, int[] groups, TimeZone defaultTZ,
             CalendarFieldsToDateConverter calToDateConverter) 
             throws DateParseException {
         NullArgumentException.check("defaultTZ", defaultTZ);
         try {
             // ISO 8601 allows both 00:00 and 24:00,
             // but Calendar.set(...) doesn't if the Calendar is not lenient.
-            int hours = groupToInt(m.group(1), "hour-of-day", 0, 24);
+            int hours = groupToInt(s, groups, 1, "hour-of-day", 0, 24);
             boolean hourWas24;
             if (hours == 24) {
                 hours = 0;
@@ -549,18 +612,16 @@ public class DateUtil {
                 hourWas24 = false;
             }
             
-            final String minutesStr = m.group(2);
-            int minutes = minutesStr != null ? groupToInt(minutesStr, "minute", 0, 59) : 0;
+            int minutes = isGroupMatched(groups, 2) ? groupToInt(s, groups, 2, "minute", 0, 59) : 0;
             
-            final String secsStr = m.group(3);
             // Allow 60 because of leap seconds
-            int secs = secsStr != null ? groupToInt(secsStr, "second", 0, 60) : 0;
+            int secs = isGroupMatched(groups, 3) ? groupToInt(s, groups, 3, "second", 0, 60) : 0;
             
-            int millisecs = groupToMillisecond(m.group(4));
+            int millisecs = groupToMillisecond(s, groups, 4);
             
             // As a time is just the distance from the beginning of the day,
             // the time-zone offest should be 0 usually.
-            TimeZone tz = parseMatchingTimeZone(m.group(5), defaultTZ);
+            TimeZone tz = parseMatchingTimeZone(s, groups, 5, defaultTZ, calToDateConverter);
             
             // Continue handling the 24:00 special case
             int day;
@@ -598,13 +659,13 @@ public class DateUtil {
     public static Date parseXSDateTime(
             String dateTimeStr, TimeZone defaultTZ, CalendarFieldsToDateConverter calToDateConverter) 
             throws DateParseException {
-        Matcher m = PATTERN_XS_DATE_TIME.matcher(dateTimeStr);
-        if (!m.matches()) {
+        int[] groups = newGroups(8);
+        if (!matchDateTime(dateTimeStr, SYNTAX_XS, groups)) {
             throw new DateParseException(
-                    "The value didn't match the expected pattern: " + PATTERN_XS_DATE_TIME);
+                    "The value didn't match the expected pattern: " + REGEX_XS_DATE_TIME);
         }
         return parseDateTime_parseMatcher(
-                m, defaultTZ, true, calToDateConverter);
+                dateTimeStr, groups, defaultTZ, true, calToDateConverter);
     }
 
     /**
@@ -613,27 +674,26 @@ public class DateUtil {
     public static Date parseISO8601DateTime(
             String dateTimeStr, TimeZone defaultTZ, CalendarFieldsToDateConverter calToDateConverter) 
             throws DateParseException {
-        Matcher m = PATTERN_ISO8601_EXTENDED_DATE_TIME.matcher(dateTimeStr);
-        if (!m.matches()) {
-            m = PATTERN_ISO8601_BASIC_DATE_TIME.matcher(dateTimeStr);
-            if (!m.matches()) {
+        int[] groups = newGroups(8);
+        if (!matchDateTime(dateTimeStr, SYNTAX_ISO8601_EXTENDED, groups)) {
+            if (!matchDateTime(dateTimeStr, SYNTAX_ISO8601_BASIC, groups)) {
                 throw new DateParseException("The value (" + dateTimeStr + ") didn't match the expected pattern: "
-                            + PATTERN_ISO8601_EXTENDED_DATE_TIME + " or "
-                            + PATTERN_ISO8601_BASIC_DATE_TIME);
+                            + REGEX_ISO8601_EXTENDED_DATE_TIME + " or "
+                            + REGEX_ISO8601_BASIC_DATE_TIME);
             }
         }
         return parseDateTime_parseMatcher(
-                m, defaultTZ, false, calToDateConverter);
+                dateTimeStr, groups, defaultTZ, false, calToDateConverter);
     }
     
     private static Date parseDateTime_parseMatcher(
-            Matcher m, TimeZone defaultTZ,
+            String s, int[] groups, TimeZone defaultTZ,
             boolean xsMode,
             CalendarFieldsToDateConverter calToDateConverter) 
             throws DateParseException {
         NullArgumentException.check("defaultTZ", defaultTZ);
         try {
-            int year = groupToInt(m.group(1), "year", Integer.MIN_VALUE, Integer.MAX_VALUE);
+            int year = groupToInt(s, groups, 1, "year", Integer.MIN_VALUE, Integer.MAX_VALUE);
             
             int era;
             // Starting from ISO 8601:2000 Second Edition, 0001 is AD 1, 0000 is BC 1, -0001 is BC 2.
@@ -649,12 +709,12 @@ public class DateUtil {
                 era = GregorianCalendar.AD;
             }
             
-            int month = groupToInt(m.group(2), "month", 1, 12) - 1;
-            int day = groupToInt(m.group(3), "day-of-month", 1, 31);
+            int month = groupToInt(s, groups, 2, "month", 1, 12) - 1;
+            int day = groupToInt(s, groups, 3, "day-of-month", 1, 31);
             
             // ISO 8601 allows both 00:00 and 24:00,
             // but cal.set(...) doesn't if the Calendar is not lenient.
-            int hours = groupToInt(m.group(4), "hour-of-day", 0, 24);
+            int hours = groupToInt(s, groups, 4, "hour-of-day", 0, 24);
             boolean hourWas24;
             if (hours == 24) {
                 hours = 0;
@@ -664,18 +724,16 @@ public class DateUtil {
                 hourWas24 = false;
             }
             
-            final String minutesStr = m.group(5);
-            int minutes = minutesStr != null ? groupToInt(minutesStr, "minute", 0, 59) : 0;
+            int minutes = isGroupMatched(groups, 5) ? groupToInt(s, groups, 5, "minute", 0, 59) : 0;
             
-            final String secsStr = m.group(6);
             // Allow 60 because of leap seconds
-            int secs = secsStr != null ? groupToInt(secsStr, "second", 0, 60) : 0;
+            int secs = isGroupMatched(groups, 6) ? groupToInt(s, groups, 6, "second", 0, 60) : 0;
             
-            int millisecs = groupToMillisecond(m.group(7));
+            int millisecs = groupToMillisecond(s, groups, 7);
             
             // As a time is just the distance from the beginning of the day,
             // the time-zone offest should be 0 usually.
-            TimeZone tz = parseMatchingTimeZone(m.group(8), defaultTZ);
+            TimeZone tz = parseMatchingTimeZone(s, groups, 8, defaultTZ, calToDateConverter);
             
             // Continue handling the 24:00 specail case
             if (hourWas24) {
@@ -704,109 +762,356 @@ public class DateUtil {
      */
     public static TimeZone parseXSTimeZone(String timeZoneStr)
             throws DateParseException {
-        Matcher m = PATTERN_XS_TIME_ZONE.matcher(timeZoneStr);
-        if (!m.matches()) {
+        int[] groups = newGroups(1);
+        int end = matchOptionalTimeZone(timeZoneStr, 0, SYNTAX_XS, groups, 1);
+        if (end != timeZoneStr.length() || !isGroupMatched(groups, 1)) {
             throw new DateParseException(
-                    "The time zone offset didn't match the expected pattern: " + PATTERN_XS_TIME_ZONE);
+                    "The time zone offset didn't match the expected pattern: " + REGEX_XS_TIME_ZONE);
+        }
+        if (timeZoneStr.equals("Z")) {
+            return DateUtil.UTC;
+        }
+        // Not cached, as the caller might modifies the returned object:
+        return createOffsetTimeZone(timeZoneStr, 0, timeZoneStr.length());
+    }
+    
+    /**
+     * Creates an array for storing the start and end index of the capturing groups, similarly as a
+     * {@link java.util.regex.Matcher} would. Group 0 is unused. 
+     */
+    private static int[] newGroups(int groupCount) {
+        return new int[(groupCount + 1) * 2];
+    }
+    
+    private static void setGroup(int[] groups, int groupIdx, int start, int end) {
+        groups[groupIdx * 2] = start;
+        groups[groupIdx * 2 + 1] = end;
+    }
+    
+    private static void setGroupUnmatched(int[] groups, int groupIdx) {
+        groups[groupIdx * 2] = -1;
+        groups[groupIdx * 2 + 1] = -1;
+    }
+    
+    private static boolean isGroupMatched(int[] groups, int groupIdx) {
+        return groups[groupIdx * 2] != -1;
+    }
+    
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+    
+    private static int skipDigits(String s, int idx) {
+        final int ln = s.length();
+        while (idx < ln && isDigit(s.charAt(idx))) {
+            idx++;
+        }
+        return idx;
+    }
+
+    /**
+     * Tells if there are 2 digits at the given index.
+     */
+    private static boolean is00(String s, int idx) {
+        return idx + 1 < s.length() && isDigit(s.charAt(idx)) && isDigit(s.charAt(idx + 1));
+    }
+    
+    private static boolean isCharAt(String s, int idx, char c) {
+        return idx < s.length() && s.charAt(idx) == c;
+    }
+    
+    /**
+     * Matches the same as the {@code REGEX_..._DATE} regular expressions (depending on the syntax), and fills the
+     * groups (1: year, 2: month, 3: day, and in XS syntax only, 4: time zone) like the regular expression would.
+     */
+    private static boolean matchDate(String s, int syntax, int[] groups) {
+        int idx = matchDateBase(s, syntax, groups);
+        if (idx == -1) {
+            return false;
+        }
+        if (syntax == SYNTAX_XS) {
+            idx = matchOptionalTimeZone(s, idx, syntax, groups, 4);
+        } // Else no time zone allowed here
+        return idx == s.length();
+    }
+    
+    /**
+     * @return The index after the date part, or -1 if it didn't match.
+     */
+    private static int matchDateBase(String s, int syntax, int[] groups) {
+        int idx = 0;
+        
+        // Year:
+        final int yearStart = idx;
+        if (isCharAt(s, idx, '-')) {
+            idx++;
+        }
+        final int yearDigitsStart = idx;
+        final int digitsEnd = skipDigits(s, idx);
+        final int yearEnd;
+        if (syntax == SYNTAX_ISO8601_BASIC) {
+            // The year takes all digits except the last 4, which are the month and the day.
+            yearEnd = digitsEnd - 4;
+            if (yearEnd - yearDigitsStart < 4) {
+                return -1;
+            }
+        } else {
+            yearEnd = digitsEnd;
+            if (yearEnd - yearDigitsStart < (syntax == SYNTAX_XS ? 1 : 4)) {
+                return -1;
+            }
+        }
+        setGroup(groups, 1, yearStart, yearEnd);
+        idx = yearEnd;
+        
+        // Month and day:
+        for (int groupIdx = 2; groupIdx <= 3; groupIdx++) {
+            if (syntax != SYNTAX_ISO8601_BASIC) {
+                if (!isCharAt(s, idx, '-')) {
+                    return -1;
+                }
+                idx++;
+            }
+            if (!is00(s, idx)) {
+                return -1;
+            }
+            setGroup(groups, groupIdx, idx, idx + 2);
+            idx += 2;
+        }
+        
+        return idx;
+    }
+
+    /**
+     * Matches the same as the {@code REGEX_..._TIME} regular expressions (depending on the syntax), and fills the
+     * groups (1: hours, 2: minutes, 3: seconds, 4: fraction seconds, 5: time zone) like the regular expression would.
+     */
+    private static boolean matchTime(String s, int syntax, int[] groups) {
+        int idx = matchTimeBase(s, 0, syntax, groups, 1);
+        return idx != -1 && matchOptionalTimeZone(s, idx, syntax, groups, 5) == s.length();
+    }
+    
+    /**
+     * Matches the same as the {@code REGEX_..._DATE_TIME} regular expressions (depending on the syntax), and fills the
+     * groups (1: year, 2: month, 3: day, 4: hours, 5: minutes, 6: seconds, 7: fraction seconds, 8: time zone) like the
+     * regular expression would.
+     */
+    private static boolean matchDateTime(String s, int syntax, int[] groups) {
+        int idx = matchDateBase(s, syntax, groups);
+        if (idx == -1 || !isCharAt(s, idx, 'T')) {
+            return false;
+        }
+        idx = matchTimeBase(s, idx + 1, syntax, groups, 4);
+        return idx != -1 && matchOptionalTimeZone(s, idx, syntax, groups, 8) == s.length();
+    }
+
+    /**
+     * @return The index after the time part, or -1 if it didn't match.
+     */
+    private static int matchTimeBase(String s, int idx, int syntax, int[] groups, int firstGroupIdx) {
+        if (!is00(s, idx)) {
+            return -1;
+        }
+        setGroup(groups, firstGroupIdx, idx, idx + 2);
+        idx += 2;
+        
+        // Minutes, and seconds. These are optional in ISO 8601, but if the minutes are missing, the seconds must be
+        // missing too.
+        final int fractionGroupIdx = firstGroupIdx + 3;
+        for (int groupIdx = firstGroupIdx + 1; groupIdx < fractionGroupIdx; groupIdx++) {
+            int startIdx = syntax == SYNTAX_ISO8601_BASIC ? idx : idx + 1;
+            if ((syntax == SYNTAX_ISO8601_BASIC || isCharAt(s, idx, ':')) && is00(s, startIdx)) {
+                setGroup(groups, groupIdx, startIdx, startIdx + 2);
+                idx = startIdx + 2;
+            } else {
+                if (syntax == SYNTAX_XS) {
+                    return -1;
+                }
+                for (; groupIdx <= fractionGroupIdx; groupIdx++) {
+                    setGroupUnmatched(groups, groupIdx);
+                }
+                return idx;
+            }
+        }
+        
+        // Fraction seconds
+        if (isCharAt(s, idx, '.') || syntax != SYNTAX_XS && isCharAt(s, idx, ',')) {
+            int fractionEnd = skipDigits(s, idx + 1);
+            if (fractionEnd != idx + 1) {
+                setGroup(groups, fractionGroupIdx, idx + 1, fractionEnd);
+                return fractionEnd;
+            }
+        }
+        setGroupUnmatched(groups, fractionGroupIdx);
+        return idx;
+    }
+    
+    /**
+     * Matches the optional time zone at the end of a date/time/date-time, similarly as the
+     * {@code REGEX_..._OPTIONAL_TIME_ZONE} regular expressions.
+     * 
+     * @return The index after the time zone, or the same index if the time zone wasn't matched.
+     */
+    private static int matchOptionalTimeZone(String s, int idx, int syntax, int[] groups, int groupIdx) {
+        setGroupUnmatched(groups, groupIdx);
+        if (idx >= s.length()) {
+            return idx;
+        }
+        char c = s.charAt(idx);
+        if (c == 'Z') {
+            setGroup(groups, groupIdx, idx, idx + 1);
+            return idx + 1;
+        }
+        if ((c != '+' && c != '-') || !is00(s, idx + 1)) {
+            return idx;
+        }
+        int endIdx = idx + 3;
+        if (syntax == SYNTAX_XS) {
+            if (!isCharAt(s, endIdx, ':') || !is00(s, endIdx + 1)) {
+                return idx;
+            }
+            endIdx += 3;
+        } else if (syntax == SYNTAX_ISO8601_EXTENDED) {
+            if (isCharAt(s, endIdx, ':') && is00(s, endIdx + 1)) {
+                endIdx += 3;
+            }
+        } else {
+            if (is00(s, endIdx)) {
+                endIdx += 2;
+            }
         }
-        return parseMatchingTimeZone(timeZoneStr, null);
+        setGroup(groups, groupIdx, idx, endIdx);
+        return endIdx;
     }
 
-    private static int groupToInt(String g, String gName,
+    private static int groupToInt(String s, int[] groups, int groupIdx, String gName,
             int min, int max)
             throws DateParseException {
-        if (g == null) {
+        if (!isGroupMatched(groups, groupIdx)) {
             throw new DateParseException("The " + gName + " part "
                     + "is missing.");
         }
+        return digitsToInt(s, groups[groupIdx * 2], groups[groupIdx * 2 + 1], gName, min, max);
+    }
 
-        int start;
-        
-        // Remove minus sign, so we can remove the 0-s later:
+    /**
+     * Parses an integer that consists of ASCII digits, optionally preceded by a minus sign.
+     */
+    private static int digitsToInt(String s, int start, int end, String gName,
+            int min, int max)
+            throws DateParseException {
         boolean negative;
-        if (g.startsWith("-")) {
+        if (start < end && s.charAt(start) == '-') {
             negative = true;
-            start = 1;
+            start++;
         } else {
             negative = false;
-            start = 0;
-        }
-        
-        // Remove leading 0-s:
-        while (start < g.length() - 1 && g.charAt(start) == '0') {
-            start++;
         }
-        if (start != 0) {
-            g = g.substring(start);
+        if (start == end) {
+            throw new DateParseException("The " + gName + " part "
+                    + "is a malformed integer.");
         }
         
-        try {
-            int r = Integer.parseInt(g);
-            if (negative) {
-                r = -r;
-            }
-            if (r < min) {
-                throw new DateParseException("The " + gName + " part "
-                    + "must be at least " + min + ".");
-            }
-            if (r > max) {
+        long r = 0;
+        for (int i = start; i < end; i++) {
+            r = r * 10 + (s.charAt(i) - '0');
+            if (r > Integer.MAX_VALUE) {
                 throw new DateParseException("The " + gName + " part "
-                    + "can't be more than " + max + ".");
+                        + "is a malformed integer.");
             }
-            return r;
-        } catch (NumberFormatException e) {
+        }
+        if (negative) {
+            r = -r;
+        }
+        if (r < min) {
             throw new DateParseException("The " + gName + " part "
-                    + "is a malformed integer.");
+                + "must be at least " + min + ".");
+        }
+        if (r > max) {
+            throw new DateParseException("The " + gName + " part "
+                + "can't be more than " + max + ".");
         }
+        return (int) r;
     }
 
+    /**
+     * @param calToDateConverter
+     *            The converter to which the returned time zone will be passed; if it's not a
+     *            {@link TrivialCalendarFieldsToDateConverter}, a shared time zone object is never returned.
+     */
     private static TimeZone parseMatchingTimeZone(
-            String s, TimeZone defaultZone)
+            String s, int[] groups, int groupIdx, TimeZone defaultZone,
+            CalendarFieldsToDateConverter calToDateConverter)
             throws DateParseException {
-        if (s == null) {
+        if (!isGroupMatched(groups, groupIdx)) {
             return defaultZone;
         }
-        if (s.equals("Z")) {
+        final int start = groups[groupIdx * 2];
+        final int end = groups[groupIdx * 2 + 1];
+        if (s.charAt(start) == 'Z') {
             return DateUtil.UTC;
         }
         
+        final boolean negative = s.charAt(start) == '-';
+        final int hours = digitsToInt(s, start + 1, start + 3, "offset-hours", 0, 23);
+        final int minutes;
+        if (end - start > 3) {
+            int minutesStart = s.charAt(start + 3) == ':' ? start + 4 : start + 3;
+            minutes = digitsToInt(s, minutesStart, minutesStart + 2, "offset-minutes", 0, 59);
+        } else {
+            minutes = 0;
+        }
+        
+        final int cacheIdx = (negative ? 24 * 60 : 0) + hours * 60 + minutes;
+        TimeZone tz = OFFSET_TIME_ZONES.get(cacheIdx);
+        if (tz == null) {
+            tz = createOffsetTimeZone(s, start, end);
+            OFFSET_TIME_ZONES.set(cacheIdx, tz);
+        }
+        // A custom converter might modify or keep the object we pass to it. Cloning is still much cheaper than
+        // TimeZone.getTimeZone(String).
+        return calToDateConverter instanceof TrivialCalendarFieldsToDateConverter ? tz : (TimeZone) tz.clone();
+    }
+    
+    /**
+     * @param start The index of the {@code +} or {@code -}
+     * @param end The index after the time zone offset
+     */
+    private static TimeZone createOffsetTimeZone(String s, int start, int end) throws DateParseException {
         StringBuilder sb = new StringBuilder(9);
         sb.append("GMT");
-        sb.append(s.charAt(0));
+        sb.append(s.charAt(start));
         
-        String h = s.substring(1, 3);
-        groupToInt(h, "offset-hours", 0, 23);
-        sb.append(h);
+        digitsToInt(s, start + 1, start + 3, "offset-hours", 0, 23);
+        sb.append(s, start + 1, start + 3);
         
-        String m;
-        int ln = s.length();
-        if (ln > 3) {
-            int startIdx = s.charAt(3) == ':' ? 4 : 3;
-            m = s.substring(startIdx, startIdx + 2);
-            groupToInt(m, "offset-minutes", 0, 59);
+        if (end - start > 3) {
+            int minutesStart = s.charAt(start + 3) == ':' ? start + 4 : start + 3;
+            digitsToInt(s, minutesStart, minutesStart + 2, "offset-minutes", 0, 59);
             sb.append(':');
-            sb.append(m);
+            sb.append(s, minutesStart, minutesStart + 2);
         }
         
         return TimeZone.getTimeZone(sb.toString());
     }
 
-    private static int groupToMillisecond(String g)
+    private static int groupToMillisecond(String s, int[] groups, int groupIdx)
             throws DateParseException {
-        if (g == null) {
+        if (!isGroupMatched(groups, groupIdx)) {
             return 0;
         }
         
-        if (g.length() > 3) {
-            g = g.substring(0, 3);
-        }
-        int i = groupToInt(g, "partial-seconds", 0, Integer.MAX_VALUE);
-        return g.length() == 1 ? i * 100 : (g.length() == 2 ? i * 10 : i);
+        final int start = groups[groupIdx * 2];
+        final int end = Math.min(groups[groupIdx * 2 + 1], start + 3);
+        int i = digitsToInt(s, start, end, "partial-seconds", 0, Integer.MAX_VALUE);
+        int ln = end - start;
+        return ln == 1 ? i * 100 : (ln == 2 ? i * 10 : i);
     }
     
     /**
      * Used internally by {@link DateUtil}; don't use its implementations for
-     * anything else.
+     * anything else. Since 2.3.30 {@link DateUtil} doesn't call it anymore, but
+     * it's still accepted as parameter for backward compatibility.
      */
     public interface DateToISO8601CalendarFactory {
         
@@ -827,6 +1132,11 @@ public class DateUtil {
 
         /**
          * Calculates the {@link Date} from the specified calendar fields.
+         * 
+         * @param tz
+         *            Unless this is a {@link TrivialCalendarFieldsToDateConverter}, this is either the default time
+         *            zone that the caller has passed to {@link DateUtil}, or a new object that the implementation can
+         *            modify or keep.
          */
         Date calculate(int era, int year, int month, int day, int hours, int minutes, int secs, int millisecs,
                 boolean addOneDay,
@@ -871,6 +1181,23 @@ public class DateUtil {
 
         public Date calculate(int era, int year, int month, int day, int hours, int minutes, int secs, int millisecs,
                 boolean addOneDay, TimeZone tz) {
+            if (era == GregorianCalendar.AD && year >= 1 && year < FAST_PATH_MAX_YEAR && isFixedOffsetTimeZone(tz)) {
+                checkFieldRange("MONTH", month, 0, 11);
+                checkFieldRange("DAY_OF_MONTH", day, 1, getMonthLength(year, month + 1));
+                checkFieldRange("HOUR_OF_DAY", hours, 0, 23);
+                checkFieldRange("MINUTE", minutes, 0, 59);
+                checkFieldRange("SECOND", secs, 0, 59);
+                checkFieldRange("MILLISECOND", millisecs, 0, 999);
+                
+                long days = daysFromCivil(year, month + 1, day);
+                if (addOneDay) {
+                    days++;
+                }
+                return new Date(days * MILLIS_PER_DAY
+                        + hours * 3600000L + minutes * 60000L + secs * 1000L + millisecs
+                        - tz.getRawOffset());
+            }
+            
             if (calendar == null) {
                 calendar = new GregorianCalendar(tz, Locale.US);
                 calendar.setLenient(false);
@@ -897,6 +1224,40 @@ public class DateUtil {
             
             return calendar.getTime();
         }
+        
+        /**
+         * Tells if the time zone is known to have no daylight saving and no historical offset changes, in which case
+         * we don't need a {@link Calendar} to do the calculation.
+         */
+        private static boolean isFixedOffsetTimeZone(TimeZone tz) {
+            if (tz == UTC) {
+                return true;
+            }
+            String id = tz.getID();
+            return (id.equals("UTC") || id.equals("GMT")
+                    || id.length() == 9 && id.startsWith("GMT") && id.charAt(6) == ':')
+                    && !tz.useDaylightTime();
+        }
+        
+        /**
+         * Throws the same exception as a non-lenient {@link GregorianCalendar} would. 
+         */
+        private static void checkFieldRange(String fieldName, int value, int min, int max) {
+            if (value < min || value > max) {
+                throw new IllegalArgumentException(fieldName + ": " + value);
+            }
+        }
+        
+        private static int getMonthLength(int year, int month) {
+            switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4: case 6: case 9: case 11:
+                return 30;
+            default:
+                return 31;
+            }
+        }
 
     }
     
@@ -105,6 +105,27 @@ public class StringUtil {
         XMLOrHTMLEnc(s, HTML_APOS, out);
     }
     
+    /**
+     * Tells for the characters up to {@code '>'} if they might need escaping in XML/HTML. Looking up a character here
+     * is cheaper than a chain of comparisons, and the letters and most punctuation (which are above {@code '>'}) are
+     * filtered out with a single comparison. 
+     */
+    private static final boolean[] XML_ESC_CANDIDATES = createXMLEscCandidates();
+
+    private static boolean[] createXMLEscCandidates() {
+        boolean[] candidates = new boolean['>' + 1];
+        candidates['<'] = true;
+        candidates['>'] = true;
+        candidates['&'] = true;
+        candidates['"'] = true;
+        candidates['\''] = true;
+        return candidates;
+    }
+    
+    private static boolean isXMLEscCandidate(char c) {
+        return c <= '>' && XML_ESC_CANDIDATES[c];
+    }
+    
     private static String XMLOrHTMLEnc(String s, boolean escGT, boolean escQuot, char[] apos) {
         final int ln = s.length();
         
@@ -113,90 +134,73 @@ public class StringUtil {
         int lastEscIdx = 0;
         int plusOutLn = 0;
         for (int i = 0; i < ln; i++) {
-            escape: do {
-                final char c = s.charAt(i);
-                switch (c) {
-                case '<':
-                    plusOutLn += LT.length - 1;
-                    break;
-                case '>':
-                    if (!(escGT || maybeCDataEndGT(s, i))) {
-                        break escape;
-                    }
-                    plusOutLn += GT.length - 1;
-                    break;
-                case '&':
-                    plusOutLn += AMP.length - 1;
-                    break;
-                case '"':
-                    if (!escQuot) {
-                        break escape;
-                    }
-                    plusOutLn += QUOT.length - 1;
-                    break;
-                case '\'': // apos
-                    if (apos == null) {
-                        break escape;
-                    }
-                    plusOutLn += apos.length - 1;
-                    break;
-                default:
-                    break escape;
-                }
-                
-                if (firstEscIdx == -1) {
-                    firstEscIdx = i;
-                }
-                lastEscIdx = i;
-            } while (false);
+            final char c = s.charAt(i);
+            if (!isXMLEscCandidate(c)) {
+                continue;
+            }
+            final char[] replacement = getXMLOrHTMLEscReplacement(s, i, c, escGT, escQuot, apos);
+            if (replacement == null) {
+                continue;
+            }
+            plusOutLn += replacement.length - 1;
+            if (firstEscIdx == -1) {
+                firstEscIdx = i;
+            }
+            lastEscIdx = i;
         }
         
         if (firstEscIdx == -1) {
             return s; // Nothing to escape
         } else {
             final char[] esced = new char[ln + plusOutLn];
-            if (firstEscIdx != 0) {
-                s.getChars(0, firstEscIdx, esced, 0);
-            }
-            int dst = firstEscIdx;
-            scan: for (int i = firstEscIdx; i <= lastEscIdx; i++) {
+            // The unescaped runs are copied with getChars, not char-by-char:
+            int runStart = 0;
+            int dst = 0;
+            for (int i = firstEscIdx; i <= lastEscIdx; i++) {
                 final char c = s.charAt(i);
-                switch (c) {
-                case '<':
-                    dst = shortArrayCopy(LT, esced, dst);
-                    continue scan;
-                case '>':
-                    if (!(escGT || maybeCDataEndGT(s, i))) {
-                        break;
-                    }
-                    dst = shortArrayCopy(GT, esced, dst);
-                    continue scan;
-                case '&':
-                    dst = shortArrayCopy(AMP, esced, dst);
-                    continue scan;
-                case '"':
-                    if (!escQuot) {
-                        break;
-                    }
-                    dst = shortArrayCopy(QUOT, esced, dst);
-                    continue scan;
-                case '\'': // apos
-                    if (apos == null) {
-                        break;
-                    }
-                    dst = shortArrayCopy(apos, esced, dst);
-                    continue scan;
+                if (!isXMLEscCandidate(c)) {
+                    continue;
                 }
-                esced[dst++] = c;
+                final char[] replacement = getXMLOrHTMLEscReplacement(s, i, c, escGT, escQuot, apos);
+                if (replacement == null) {
+                    continue;
+                }
+                if (runStart != i) {
+                    s.getChars(runStart, i, esced, dst);
+                    dst += i - runStart;
+                }
+                dst = shortArrayCopy(replacement, esced, dst);
+                runStart = i + 1;
             }
-            if (lastEscIdx != ln - 1) {
-                s.getChars(lastEscIdx + 1, ln, esced, dst);
+            if (runStart != ln) {
+                s.getChars(runStart, ln, esced, dst);
             }
             
             return String.valueOf(esced);
         }
     }
     
+    /**
+     * @param c The character at index {@code i}, for which {@link #isXMLEscCandidate(char)} has returned
+     *     {@code true}.
+     * @return {@code null} if the character need not be escaped
+     */
+    private static char[] getXMLOrHTMLEscReplacement(
+            String s, int i, char c, boolean escGT, boolean escQuot, char[] apos) {
+        switch (c) {
+        case '<':
+            return LT;
+        case '>':
+            return escGT || maybeCDataEndGT(s, i) ? GT : null;
+        case '&':
+            return AMP;
+        case '"':
+            return escQuot ? QUOT : null;
+        default: // apos
+            return apos;
+        }
+    }
+    
     private static boolean maybeCDataEndGT(String s, int i) {
         if (i == 0) return true;
         if (s.charAt(i - 1) != ']') return false;
@@ -209,7 +213,7 @@ public class StringUtil {
         int ln = s.length();
         for (int i = 0; i < ln; i++) {
             char c = s.charAt(i);
-            if (c == '<' || c == '>' || c == '&' || c == '"' || c == '\'') {
+            if (isXMLEscCandidate(c)) {
                 int flushLn = i - writtenEnd;
                 if (flushLn != 0) {
                     out.write(s, writtenEnd, flushLn);
@@ -1405,6 +1409,7 @@ public class StringUtil {
         
         int ln = s.length();
         StringBuilder sb = null;
+        int runStart = 0;  // The start of the section that needs no escaping, and wasn't yet appended to sb
         for (int i = 0; i < ln; i++) {
             final char c = s.charAt(i);
             final int escapeType;  // 
@@ -1469,8 +1474,11 @@ public class StringUtil {
                 if (escapeType != NO_ESC) { // If needs escaping
                     if (sb == null) {
                         sb = new StringBuilder(ln + 6);
-                        sb.append(s.substring(0, i));
                     }
+                    if (runStart != i) {
+                        sb.append(s, runStart, i);
+                    }
+                    runStart = i + 1;
                     
                     sb.append('\\');
                     if (escapeType > 0x20) {
@@ -1495,12 +1503,16 @@ public class StringUtil {
                 }
                 // Falls through when escapeType == NO_ESC 
             }
-            // Needs no escaping
-                
-            if (sb != null) sb.append(c);
+            // Needs no escaping; will be appended to sb together with the rest of the run
         } // for each characters
         
-        return sb == null ? s : sb.toString();
+        if (sb == null) {
+            return s;
+        }
+        if (runStart != ln) {
+            sb.append(s, runStart, ln);
+        }
+        return sb.toString();
     }
 
     private static char toHexDigit(int d) {
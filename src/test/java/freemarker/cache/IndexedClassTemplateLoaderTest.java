@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Locale;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateNotFoundException;
+
+public class IndexedClassTemplateLoaderTest {
+
+    private File tempDir;
+    private URLClassLoader classLoader;
+
+    @Before
+    public void setup() throws IOException {
+        tempDir = Files.createTempDir();
+
+        File jarFile = new File(tempDir, "templates.jar");
+        ZipOutputStream zipOut = new ZipOutputStream(new FileOutputStream(jarFile));
+        try {
+            addZipEntry(zipOut, "tpl/", null);
+            addZipEntry(zipOut, "tpl/a.ftl", "a from jar");
+            addZipEntry(zipOut, "tpl/both.ftl", "both from jar");
+            addZipEntry(zipOut, "tpl/c_en.ftl", "c_en from jar");
+            addZipEntry(zipOut, "tpl/sub/", null);
+            addZipEntry(zipOut, "tpl/sub/d.ftl", "d from jar");
+            addZipEntry(zipOut, "other/e.ftl", "e from jar");
+        } finally {
+            zipOut.close();
+        }
+
+        File classesDir = new File(tempDir, "classes");
+        FileUtils.write(new File(classesDir, "tpl/both.ftl"), "both from dir");
+        FileUtils.write(new File(classesDir, "tpl/sub/f.ftl"), "f from dir");
+        FileUtils.write(new File(classesDir, "tpl/sub/inc.ftl"), "<#include 'd.ftl'>");
+
+        classLoader = new URLClassLoader(
+                new URL[] { jarFile.toURI().toURL(), classesDir.toURI().toURL() }, null);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(tempDir);
+    }
+
+    private static void addZipEntry(ZipOutputStream zipOut, String name, String content) throws IOException {
+        zipOut.putNextEntry(new ZipEntry(name));
+        if (content != null) {
+            zipOut.write(content.getBytes("UTF-8"));
+        }
+        zipOut.closeEntry();
+    }
+
+    @Test
+    public void testLookups() throws Exception {
+        IndexedClassTemplateLoader tl = new IndexedClassTemplateLoader(classLoader, "/tpl");
+        assertEquals("tpl/", tl.getBasePackagePath());
+        assertEquals(6, tl.getTemplateCount());
+
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_29);
+        cfg.setTemplateLoader(tl);
+        cfg.setLocale(Locale.US);
+
+        assertEquals("a from jar", cfg.getTemplate("a.ftl").toString());
+        // The first classpath element wins:
+        assertEquals("both from jar", cfg.getTemplate("both.ftl").toString());
+        assertEquals("c_en from jar", cfg.getTemplate("c.ftl").toString());
+        assertEquals("d from jar", cfg.getTemplate("sub/d.ftl").toString());
+        assertEquals("f from dir", cfg.getTemplate("/sub/f.ftl").toString());
+        assertEquals("d from jar", processToString(cfg.getTemplate("sub/inc.ftl")));
+
+        try {
+            cfg.getTemplate("e.ftl");
+            fail();
+        } catch (TemplateNotFoundException e) {
+            assertTrue(e.getMessage().contains(IndexedClassTemplateLoader.class.getSimpleName()));
+        }
+        assertNull(tl.findTemplateSource("../other/e.ftl"));
+    }
+
+    @Test
+    public void testNoStalenessChecks() throws Exception {
+        final int[] findCount = new int[1];
+        IndexedClassTemplateLoader tl = new IndexedClassTemplateLoader(classLoader, "tpl/") {
+            @Override
+            public Object findTemplateSource(String name) throws IOException {
+                findCount[0]++;
+                return super.findTemplateSource(name);
+            }
+        };
+
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_29);
+        cfg.setTemplateLoader(tl);
+        cfg.setLocalizedLookup(false);
+        cfg.setTemplateUpdateDelayMilliseconds(0);
+
+        Template t = cfg.getTemplate("a.ftl");
+        assertEquals(1, findCount[0]);
+        assertNull(cfg.getTemplate("missing.ftl", null, null, true, true));
+        assertEquals(2, findCount[0]);
+        Thread.sleep(5);
+        for (int i = 0; i < 10; i++) {
+            assertSame(t, cfg.getTemplate("a.ftl"));
+            assertNull(cfg.getTemplate("missing.ftl", null, null, true, true));
+        }
+        assertEquals(2, findCount[0]);
+
+        cfg.clearTemplateCache();
+        assertNotSame(t, cfg.getTemplate("a.ftl"));
+        assertEquals(3, findCount[0]);
+    }
+
+    @Test
+    public void testJarFileNotKeptOpen() throws Exception {
+        IndexedClassTemplateLoader tl = new IndexedClassTemplateLoader(classLoader, "/tpl");
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_29);
+        cfg.setTemplateLoader(tl);
+        cfg.setLocalizedLookup(false);
+        assertEquals("a from jar", cfg.getTemplate("a.ftl").toString());
+        
+        // Fails on Windows if the jar is still open:
+        classLoader.close();
+        File jarFile = new File(tempDir, "templates.jar");
+        assertTrue(jarFile.delete());
+        
+        // A jar that was kept open would still show the old content:
+        ZipOutputStream zipOut = new ZipOutputStream(new FileOutputStream(jarFile));
+        try {
+            addZipEntry(zipOut, "tpl/", null);
+            addZipEntry(zipOut, "tpl/sub/d.ftl", "d from new jar");
+        } finally {
+            zipOut.close();
+        }
+        assertEquals("d from new jar", cfg.getTemplate("sub/d.ftl").toString());
+        try {
+            cfg.getTemplate("c_en.ftl");
+            fail();
+        } catch (FileNotFoundException e) {
+            assertTrue(e.getMessage().contains("c_en.ftl"));
+        }
+        assertTrue(jarFile.delete());
+    }
+
+    @Test
+    public void testRootPackageNotAllowed() throws Exception {
+        try {
+            new IndexedClassTemplateLoader(classLoader, "/");
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private static String processToString(Template t) throws Exception {
+        StringWriter sw = new StringWriter();
+        t.process(null, sw);
+        return sw.toString();
+    }
+
+}
@@ -24,12 +24,14 @@ import static org.junit.Assert.*;
 import java.io.IOException;
 import java.io.Reader;
 import java.net.URL;
+import java.util.Collections;
 import java.util.Locale;
 
 import org.hamcrest.Matchers;
 import org.junit.Test;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
 import freemarker.core.ParseException;
 import freemarker.template.Configuration;
@@ -220,6 +222,86 @@ public class TemplateCacheTest {
         assertEquals("v10", cfg.getTemplate("t.ftl").toString()); // still v10
     }
     
+    @Test
+    public void testLookupMissCache() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_29);
+        cfg.setCacheStorage(new StrongCacheStorage());
+        MonitoredTemplateLoader loader = new MonitoredTemplateLoader();
+        loader.putTemplate("t.ftl", "t");
+        loader.putTemplate("t_de.ftl", "t_de");
+        cfg.setTemplateLoader(loader);
+        cfg.setTemplateUpdateDelayMilliseconds(Long.MAX_VALUE);
+        assertEquals(0, cfg.getTemplateLookupMissCacheSize());
+        cfg.setSetting(Configuration.TEMPLATE_LOOKUP_MISS_CACHE_SIZE_KEY, "100");
+        assertEquals(100, cfg.getTemplateLookupMissCacheSize());
+        
+        assertEquals("t", cfg.getTemplate("t.ftl", Locale.US).toString());
+        assertEquals(ImmutableList.of("t_en_US.ftl", "t_en.ftl", "t.ftl"), loader.getNamesSearched());
+        loader.clearEvents();
+        
+        // Different TemplateKey, but the misses are shared:
+        assertEquals("t", cfg.getTemplate("t.ftl", Locale.US, "iso-8859-1").toString());
+        assertEquals("t", cfg.getTemplate("t.ftl", Locale.UK).toString());
+        assertEquals(ImmutableList.of("t.ftl", "t_en_GB.ftl", "t.ftl"), loader.getNamesSearched());
+        loader.clearEvents();
+        
+        assertEquals("t_de", cfg.getTemplate("t.ftl", Locale.GERMANY).toString());
+        assertEquals(ImmutableList.of("t_de_DE.ftl", "t_de.ftl"), loader.getNamesSearched());
+        loader.clearEvents();
+        
+        // Acquisition:
+        assertNull(cfg.getTemplate("a/b/*/c.ftl", Locale.US, null, true, true));
+        assertEquals(
+                ImmutableList.of(
+                        "a/b/c_en_US.ftl", "a/c_en_US.ftl", "c_en_US.ftl",
+                        "a/b/c_en.ftl", "a/c_en.ftl", "c_en.ftl",
+                        "a/b/c.ftl", "a/c.ftl", "c.ftl"),
+                loader.getNamesSearched());
+        loader.clearEvents();
+        assertNull(cfg.getTemplate("a/*/c.ftl", Locale.UK, null, true, true));
+        assertEquals(ImmutableList.of("a/c_en_GB.ftl", "c_en_GB.ftl"), loader.getNamesSearched());
+        loader.clearEvents();
+        
+        cfg.removeTemplateFromCache("t.ftl", Locale.UK);
+        assertEquals("t", cfg.getTemplate("t.ftl", Locale.UK).toString());
+        assertEquals(ImmutableList.of("t_en_GB.ftl", "t_en.ftl", "t.ftl"), loader.getNamesSearched());
+        loader.clearEvents();
+        
+        cfg.clearTemplateCache();
+        assertEquals("t", cfg.getTemplate("t.ftl", Locale.US).toString());
+        assertEquals(ImmutableList.of("t_en_US.ftl", "t_en.ftl", "t.ftl"), loader.getNamesSearched());
+        loader.clearEvents();
+        
+        // Expires with the update delay:
+        cfg.setTemplateUpdateDelayMilliseconds(0);
+        assertEquals("t", cfg.getTemplate("t.ftl", Locale.CANADA).toString());
+        assertEquals(ImmutableList.of("t_en_CA.ftl", "t_en.ftl", "t.ftl"), loader.getNamesSearched());
+        loader.clearEvents();
+        
+        // Survives recreating the TemplateCache:
+        cfg.setLocalizedLookup(false);
+        assertEquals(100, cfg.getTemplateLookupMissCacheSize());
+    }
+    
+    @Test
+    public void testLookupMissCacheSizeLimit() throws IOException {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_29);
+        MonitoredTemplateLoader loader = new MonitoredTemplateLoader();
+        cfg.setTemplateLoader(loader);
+        cfg.setLocalizedLookup(false);
+        cfg.setTemplateUpdateDelayMilliseconds(Long.MAX_VALUE);
+        cfg.setTemplateLookupMissCacheSize(2);
+        
+        for (String name : new String[] { "a.ftl", "b.ftl", "c.ftl" }) {
+            assertNull(cfg.getTemplate(name, Locale.US, null, true, true));
+        }
+        // With a different locale, so that the negative results cached for the whole lookup aren't used: 
+        for (String name : new String[] { "a.ftl", "c.ftl", "b.ftl" }) {
+            assertNull(cfg.getTemplate(name, Locale.UK, null, true, true));
+        }
+        assertEquals(ImmutableList.of("a.ftl", "b.ftl", "c.ftl", "a.ftl", "b.ftl"), loader.getNamesSearched());
+    }
+    
     @Test
     public void testIncompatibleImprovementsChangesURLConCaching() throws IOException {
         Version newVersion = Configuration.VERSION_2_3_21;
@@ -419,6 +501,140 @@ public class TemplateCacheTest {
         }
     }
     
+    @Test
+    public void testDependentTemplateNames() throws IOException {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_29);
+        StringTemplateLoader tl = new StringTemplateLoader();
+        tl.putTemplate("main.ftl", "<#include 'inc/a.ftl'><#import '/lib.ftl' as lib>");
+        tl.putTemplate("inc/a.ftl", "<#if false><#include 'b.ftl'></#if>");
+        tl.putTemplate("inc/b.ftl", "b");
+        tl.putTemplate("lib.ftl", "<#macro m></#macro>");
+        tl.putTemplate("dynamic.ftl", "<#assign n = 'lib.ftl'><#include n><#include '${n}'>");
+        tl.putTemplate("other.ftl", "<#include './inc/../lib.ftl'>");
+        cfg.setTemplateLoader(tl);
+        
+        assertEquals(Collections.emptySet(), cfg.getCachedDependentTemplateNames("lib.ftl", true));
+        
+        for (String name : new String[] { "main.ftl", "inc/a.ftl", "inc/b.ftl", "lib.ftl", "dynamic.ftl",
+                "other.ftl" }) {
+            cfg.getTemplate(name);
+        }
+        assertEquals(ImmutableSet.of("main.ftl", "other.ftl"), cfg.getCachedDependentTemplateNames("lib.ftl", true));
+        assertEquals(ImmutableSet.of("main.ftl", "other.ftl"), cfg.getCachedDependentTemplateNames("/lib.ftl", false));
+        assertEquals(ImmutableSet.of("inc/a.ftl"), cfg.getCachedDependentTemplateNames("inc/b.ftl", false));
+        assertEquals(ImmutableSet.of("inc/a.ftl", "main.ftl"), cfg.getCachedDependentTemplateNames("inc/b.ftl", true));
+        assertEquals(Collections.emptySet(), cfg.getCachedDependentTemplateNames("main.ftl", true));
+        
+        // Changing a template changes its dependencies on reload:
+        tl.putTemplate("other.ftl", "<#include 'inc/b.ftl'>");
+        cfg.removeTemplateFromCache("other.ftl");
+        assertEquals(ImmutableSet.of("main.ftl"), cfg.getCachedDependentTemplateNames("lib.ftl", true));
+        cfg.getTemplate("other.ftl");
+        assertEquals(ImmutableSet.of("inc/a.ftl", "other.ftl"),
+                cfg.getCachedDependentTemplateNames("inc/b.ftl", false));
+        
+        cfg.clearTemplateCache();
+        assertEquals(Collections.emptySet(), cfg.getCachedDependentTemplateNames("inc/b.ftl", true));
+    }
+
+    @Test
+    public void testDependentTemplateNamesWithAutoIncludeAndImport() throws IOException {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_29);
+        StringTemplateLoader tl = new StringTemplateLoader();
+        tl.putTemplate("main.ftl", "main");
+        tl.putTemplate("header.ftl", "header");
+        tl.putTemplate("lib.ftl", "<#macro m></#macro>");
+        cfg.setTemplateLoader(tl);
+        cfg.addAutoInclude("/header.ftl");
+        cfg.addAutoImport("lib", "lib.ftl");
+        
+        cfg.getTemplate("main.ftl");
+        assertEquals(ImmutableSet.of("main.ftl"), cfg.getCachedDependentTemplateNames("header.ftl", true));
+        assertEquals(ImmutableSet.of("main.ftl"), cfg.getCachedDependentTemplateNames("lib.ftl", true));
+    }
+    
+    @Test
+    public void testDependentTemplateNamesAfterRecheck() throws IOException {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_29);
+        StringTemplateLoader tl = new StringTemplateLoader();
+        tl.putTemplate("main.ftl", "<#include 'lib.ftl'>");
+        tl.putTemplate("lib.ftl", "lib");
+        cfg.setTemplateLoader(tl);
+        cfg.setTemplateUpdateDelayMilliseconds(0);
+        
+        Template main = cfg.getTemplate("main.ftl");
+        for (int i = 0; i < 3; i++) {
+            // The up-to-date check stores a new cache entry each time; the graph must follow that.
+            assertSame(main, cfg.getTemplate("main.ftl"));
+            System.gc();
+            assertEquals(ImmutableSet.of("main.ftl"), cfg.getCachedDependentTemplateNames("lib.ftl", true));
+        }
+    }
+    
+    @Test
+    public void testDependentTemplateNamesForgottenWhenStorageDropsEntry() throws IOException {
+        StringTemplateLoader tl = new StringTemplateLoader();
+        tl.putTemplate("main.ftl", "<#include 'lib.ftl'>");
+        tl.putTemplate("lib.ftl", "lib");
+        // Drops every entry immediately:
+        TemplateCache cache = new TemplateCache(
+                tl, new NullCacheStorage(), new Configuration(Configuration.VERSION_2_3_29));
+        
+        Template main = cache.getTemplate("main.ftl", Locale.US, null, "UTF-8", true).getTemplate();
+        assertEquals(ImmutableSet.of("main.ftl"), cache.getDependentTemplateNames("lib.ftl", true));
+        // Keeps the template reachable until this point:
+        assertEquals("main.ftl", main.getName());
+        
+        // Simulates that the template was garbage collected, as the storage doesn't reference it:
+        cache.enqueueAllDependencyGraphEntries();
+        assertEquals(Collections.emptySet(), cache.getDependentTemplateNames("lib.ftl", true));
+    }
+    
+    @Test
+    public void testRemoveAndReloadTemplateAndDependents() throws IOException {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_29);
+        StringTemplateLoader tl = new StringTemplateLoader();
+        tl.putTemplate("main.ftl", "<#include 'a.ftl'>");
+        tl.putTemplate("a.ftl", "<#include 'b.ftl'>");
+        tl.putTemplate("b.ftl", "b");
+        tl.putTemplate("unrelated.ftl", "<#include 'a.ftl'>");
+        cfg.setTemplateLoader(tl);
+        cfg.setTemplateUpdateDelayMilliseconds(Long.MAX_VALUE);
+        
+        Template main = cfg.getTemplate("main.ftl");
+        Template mainDe = cfg.getTemplate("main.ftl", Locale.GERMAN);
+        Template a = cfg.getTemplate("a.ftl");
+        Template b = cfg.getTemplate("b.ftl");
+        Template unrelated = cfg.getTemplate("unrelated.ftl");
+        
+        cfg.removeTemplateAndDependentsFromCache("a.ftl");
+        assertSame(b, cfg.getTemplate("b.ftl"));
+        assertNotSame(a, cfg.getTemplate("a.ftl"));
+        assertNotSame(main, cfg.getTemplate("main.ftl"));
+        assertNotSame(mainDe, cfg.getTemplate("main.ftl", Locale.GERMAN));
+        assertNotSame(unrelated, cfg.getTemplate("unrelated.ftl"));
+        
+        main = cfg.getTemplate("main.ftl");
+        mainDe = cfg.getTemplate("main.ftl", Locale.GERMAN);
+        a = cfg.getTemplate("a.ftl");
+        cfg.reloadTemplateAndDependentsInCache("b.ftl");
+        Template newMain = cfg.getTemplate("main.ftl", null, null, null, true, true);
+        assertNotNull(newMain);
+        assertNotSame(main, newMain);
+        // Was already reloaded, so now it's cached:
+        assertSame(newMain, cfg.getTemplate("main.ftl"));
+        assertNotSame(mainDe, cfg.getTemplate("main.ftl", Locale.GERMAN));
+        assertNotSame(a, cfg.getTemplate("a.ftl"));
+        assertNotSame(b, cfg.getTemplate("b.ftl"));
+        
+        // A template that was deleted since is reloaded as missing, while the others are still reloaded:
+        tl.removeTemplate("a.ftl");
+        main = cfg.getTemplate("main.ftl");
+        cfg.reloadTemplateAndDependentsInCache("a.ftl");
+        assertNull(cfg.getTemplate("a.ftl", null, null, null, true, true));
+        assertNotSame(main, cfg.getTemplate("main.ftl"));
+    }
+    
     private static class MonitoredClassTemplateLoader extends ClassTemplateLoader {
         
         private Boolean lastTemplateSourceModification;
@@ -0,0 +1,367 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import freemarker.cache.NullCacheStorage;
+import freemarker.cache.StringTemplateLoader;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateExceptionHandler;
+import freemarker.test.TemplateTest;
+
+public class CacheDirectiveTest extends TemplateTest {
+
+    private final Counter counter = new Counter();
+
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        return new Configuration(Configuration.VERSION_2_3_29);
+    }
+
+    @Before
+    public void addCounter() {
+        addToDataModel("c", counter);
+    }
+
+    @Test
+    public void testReplaysCachedOutput() throws Exception {
+        addTemplate("t", "a<#cache>[${c.next()}]</#cache>b");
+        assertOutputForNamed("t", "a[1]b");
+        assertOutputForNamed("t", "a[1]b");
+        assertEquals(1, counter.get());
+    }
+
+    @Test
+    public void testCallPlacesAreSeparate() throws Exception {
+        addTemplate("t", "<#cache>${c.next()}</#cache> <#cache>${c.next()}</#cache>");
+        assertOutputForNamed("t", "1 2");
+        assertOutputForNamed("t", "1 2");
+    }
+
+    @Test
+    public void testKey() throws Exception {
+        addTemplate("t", "<#list ['a', 'b', 'a'] as k><#cache key=k>${k}${c.next()} </#cache></#list>");
+        assertOutputForNamed("t", "a1 b2 a1 ");
+        assertOutputForNamed("t", "a1 b2 a1 ");
+    }
+
+    @Test
+    public void testLocaleIsPartOfTheKey() throws Exception {
+        addTemplate("t",
+                "<#macro m><#cache>${c.next()}</#cache></#macro>"
+                + "<#setting locale='en_US'><@m/> <#setting locale='de_DE'><@m/> <#setting locale='en_US'><@m/>");
+        assertOutputForNamed("t", "1 2 1");
+        assertOutputForNamed("t", "1 2 1");
+    }
+
+    @Test
+    public void testFormattingSettingsArePartOfTheKey() throws Exception {
+        addToDataModel("d", new Date(0));
+        addTemplate("t",
+                "<#macro m><#cache key='k'>${c.next()?c}: ${d?datetime?string.iso} ${1.5} ${d?date} ${true?string}"
+                + "</#cache></#macro>"
+                + "<#setting locale='en_US'><#setting time_zone='UTC'><@m/>; "
+                + "<#setting time_zone='Asia/Tokyo'><@m/>; "
+                + "<#setting sql_date_and_time_time_zone='UTC'><@m/>; "
+                + "<#setting number_format='0.00'><@m/>; "
+                + "<#setting date_format='yyyy'><@m/>; "
+                + "<#setting boolean_format='y,n'><@m/>");
+        String expectedOutput = "1: 1970-01-01T00:00:00Z 1.5 Jan 1, 1970 true; "
+                + "2: 1970-01-01T09:00:00+09:00 1.5 Jan 1, 1970 true; "
+                + "3: 1970-01-01T09:00:00+09:00 1.5 Jan 1, 1970 true; "
+                + "4: 1970-01-01T09:00:00+09:00 1.50 Jan 1, 1970 true; "
+                + "5: 1970-01-01T09:00:00+09:00 1.50 1970 true; "
+                + "6: 1970-01-01T09:00:00+09:00 1.50 1970 y";
+        assertOutputForNamed("t", expectedOutput);
+        assertOutputForNamed("t", expectedOutput);
+    }
+
+    @Test
+    public void testTtl() throws Exception {
+        addTemplate("t", "<#cache ttl=0>${c.next()}</#cache>");
+        assertOutputForNamed("t", "1");
+        assertOutputForNamed("t", "2");
+
+        addTemplate("t2", "<#cache ttl=3600 key='x'>${c.next()}</#cache>");
+        assertOutputForNamed("t2", "3");
+        assertOutputForNamed("t2", "3");
+
+        addTemplate("t3", "<#cache ttl=0.05>${c.next()}</#cache>");
+        assertOutputForNamed("t3", "4");
+        Thread.sleep(100);
+        assertOutputForNamed("t3", "5");
+    }
+
+    @Test
+    public void testAutoEscaping() throws Exception {
+        addToDataModel("x", "<x>");
+        addTemplate("t.ftlh", "<#cache>${x}${c.next()}</#cache>");
+        assertOutputForNamed("t.ftlh", "&lt;x&gt;1");
+        assertOutputForNamed("t.ftlh", "&lt;x&gt;1");
+    }
+
+    @Test
+    public void testEmptyBody() throws Exception {
+        assertOutput("a<#cache></#cache>b", "ab");
+        assertOutput("a<#cache key='k'></#cache>b", "ab");
+    }
+
+    @Test
+    public void testIncompleteOutputIsNotCached() throws Exception {
+        addTemplate("t",
+                "<#macro m><#cache>${c.next()}<#return>x</#cache></#macro>"
+                + "<@m/>;"
+                + "<#list 1..2 as i><#cache>${c.next()}<#break></#cache></#list>;"
+                + "<#attempt><#cache>${c.next()}${noSuchVar}</#cache><#recover>r</#attempt>");
+        assertOutputForNamed("t", "1;2;r");
+        assertOutputForNamed("t", "4;5;r");
+    }
+
+    @Test
+    public void testOutputWithHandledErrorIsNotCached() throws Exception {
+        getConfiguration().setTemplateExceptionHandler(TemplateExceptionHandler.IGNORE_HANDLER);
+        addTemplate("t", "<#cache>[${x}]</#cache>");
+        assertOutputForNamed("t", "[]");
+        addToDataModel("x", "OK");
+        assertOutputForNamed("t", "[OK]");
+        assertOutputForNamed("t", "[OK]");
+    }
+
+    @Test
+    public void testSideEffectsAreNotReplayed() throws Exception {
+        addTemplate("lib", "<#macro m>m</#macro>");
+        addTemplate("t",
+                "<#cache><#assign title='Home'><#import 'lib' as lib><#function f>f</#function>nav</#cache>"
+                + " ${title!'-'} ${(lib.m)???c} ${f???c}");
+        assertOutputForNamed("t", "nav Home true true");
+        // Macro and function definitions are template-level, so they don't depend on executing the body:
+        assertOutputForNamed("t", "nav - false true");
+    }
+
+    @Test
+    public void testMaxEntryLength() throws Exception {
+        getConfiguration().setFragmentCacheMaxEntryLength(2);
+        addTemplate("t", "<#cache>${c.next()}</#cache> <#cache>long${c.next()}</#cache>");
+        assertOutputForNamed("t", "1 long2");
+        assertOutputForNamed("t", "1 long3");
+    }
+
+    @Test
+    public void testStorage() throws Exception {
+        Configuration cfg = getConfiguration();
+        addTemplate("t", "<#cache>${c.next()}</#cache>");
+        assertOutputForNamed("t", "1");
+        assertOutputForNamed("t", "1");
+        
+        cfg.clearFragmentCache();
+        assertOutputForNamed("t", "2");
+        assertOutputForNamed("t", "2");
+        
+        cfg.setFragmentCacheStorage(NullCacheStorage.INSTANCE);
+        assertOutputForNamed("t", "3");
+        assertOutputForNamed("t", "4");
+    }
+
+    @Test
+    public void testRecursion() throws Exception {
+        addTemplate("t",
+                "<#macro m n><#cache>(${n}<#if n != 0><@m n - 1 /></#if>)</#cache></#macro>"
+                + "<@m 2 />");
+        assertOutputForNamed("t", "(2(1(0)))");
+        assertOutputForNamed("t", "(2(1(0)))");
+    }
+
+    @Test
+    public void testConcurrentMissesRenderOnce() throws Exception {
+        final Gate gate = new Gate();
+        addToDataModel("gate", gate);
+        addTemplate("t", "<#cache>${gate.pass()}${c.next()}</#cache>");
+        final Template t = getConfiguration().getTemplate("t");
+        
+        final String[] otherOutput = new String[1];
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    otherOutput[0] = getOutput(t);
+                } catch (Exception e) {
+                    otherOutput[0] = e.toString();
+                }
+            }
+        };
+        other.start();
+        gate.entered.await();
+        
+        final String[] waitingOutput = new String[1];
+        Thread waiting = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    waitingOutput[0] = getOutput(t);
+                } catch (Throwable e) {
+                    waitingOutput[0] = e.toString();
+                }
+            }
+        };
+        waiting.start();
+        Thread.sleep(50);
+        gate.release.countDown();
+        
+        other.join();
+        waiting.join();
+        assertEquals("ok1", otherOutput[0]);
+        assertEquals("ok1", waitingOutput[0]);
+        assertEquals(1, counter.get());
+    }
+
+    @Test
+    public void testNestedCachesInOppositeOrderDontDeadlock() throws Exception {
+        addToDataModel("barrier", new Barrier(2));
+        // ttl=0, so that the outer fragment of one thread isn't replayed as the inner fragment of the other. 
+        addTemplate("lib",
+                "<#macro m keys><#cache key=keys[0] ttl=0>"
+                + "<#if keys?size == 2>${barrier.await()}<@m keys[1..] /></#if>${keys[0]}"
+                + "</#cache></#macro>");
+        addTemplate("t1", "<#import 'lib' as lib><@lib.m ['a', 'b'] />");
+        addTemplate("t2", "<#import 'lib' as lib><@lib.m ['b', 'a'] />");
+        
+        RenderingThread thread1 = new RenderingThread(getConfiguration().getTemplate("t1"));
+        RenderingThread thread2 = new RenderingThread(getConfiguration().getTemplate("t2"));
+        thread1.start();
+        thread2.start();
+        thread1.join(10000);
+        thread2.join(10000);
+        assertFalse("Deadlocked", thread1.isAlive() || thread2.isAlive());
+        assertEquals("ba", thread1.output);
+        assertEquals("ab", thread2.output);
+    }
+
+    @Test
+    public void testCachedOutputSurvivesReloadingUnchangedTemplate() throws Exception {
+        Configuration cfg = getConfiguration();
+        StringTemplateLoader tl = new StringTemplateLoader();
+        cfg.setTemplateLoader(tl);
+        tl.putTemplate("t", "<#cache>${c.next()}</#cache>", 1000L);
+        assertOutputForNamed("t", "1");
+        
+        Template oldTemplate = cfg.getTemplate("t");
+        cfg.clearTemplateCache();
+        assertNotSame(oldTemplate, cfg.getTemplate("t"));
+        assertOutputForNamed("t", "1");
+        
+        tl.putTemplate("t", "<#cache>${c.next()}</#cache>", 2000L);
+        cfg.clearTemplateCache();
+        assertOutputForNamed("t", "2");
+        assertOutputForNamed("t", "2");
+    }
+
+    @Test
+    public void testTemplatesWithoutLastModifiedAreSeparate() throws Exception {
+        Template t1 = new Template("t", "<#cache>${c.next()}</#cache>", getConfiguration());
+        assertOutput(t1, "1");
+        assertOutput(t1, "1");
+        Template t2 = new Template("t", "<#cache>${c.next()}</#cache>", getConfiguration());
+        assertOutput(t2, "2");
+        assertOutput(t1, "1");
+    }
+
+    @Test
+    public void testParameterErrors() throws Exception {
+        assertErrorContains("<#cache foo=1></#cache>", ParseException.class,
+                "Unsupported named #cache parameter", "\"foo\"");
+        assertErrorContains("<#cache key=1 key=2></#cache>", ParseException.class, "Duplicate", "\"key\"");
+        assertErrorContains("<#cache ttl=-1></#cache>", "\"ttl\"", "non-negative");
+        assertErrorContains("<#cache ttl='x'></#cache>", "number");
+    }
+
+    @Test
+    public void testCanonicalForm() throws Exception {
+        Template t = new Template(null, "<#cache key=k ttl=60>x</#cache>", getConfiguration());
+        assertEquals("<#cache key=k ttl=60>x</#cache>", t.getRootTreeNode().getCanonicalForm());
+    }
+
+    public static class Counter {
+        private final AtomicInteger value = new AtomicInteger();
+        
+        public int next() {
+            return value.incrementAndGet();
+        }
+        
+        int get() {
+            return value.get();
+        }
+    }
+
+    public static class Barrier {
+        private final CyclicBarrier barrier;
+        
+        Barrier(int parties) {
+            barrier = new CyclicBarrier(parties);
+        }
+        
+        public String await() throws Exception {
+            barrier.await(10, TimeUnit.SECONDS);
+            return "";
+        }
+    }
+
+    private class RenderingThread extends Thread {
+        private final Template template;
+        private volatile String output;
+        
+        RenderingThread(Template template) {
+            this.template = template;
+            setDaemon(true);
+        }
+        
+        @Override
+        public void run() {
+            try {
+                output = getOutput(template);
+            } catch (Throwable e) {
+                output = e.toString();
+            }
+        }
+    }
+
+    public static class Gate {
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        
+        public String pass() throws InterruptedException {
+            entered.countDown();
+            release.await();
+            return "ok";
+        }
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.test.TemplateTest;
+
+public class CompactTemplatesTest extends TemplateTest {
+
+    private static final String TEMPLATE_SOURCE = ""
+            + "<#macro m x>\n"
+            + "  <p>${x}</p>\n"
+            + "</#macro>\n"
+            + "<#list 1..3 as i>\n"
+            + "\t<@m x=\"Item ${i}\" /><#sep>, </#sep>\n"
+            + "</#list>\n"
+            + "<#if true>\r\n"
+            + "  ${'a' + 'b'}\r\n"
+            + "</#if>\n"
+            + "<#assign h = { 'k': 1 }>${h.k}\n"
+            + "árvíztűrő tükörfúrógép\n";
+
+    @Test
+    public void testSameOutput() throws IOException, TemplateException {
+        assertEquals(getOutput(createTemplate(false)), getOutput(createTemplate(true)));
+    }
+
+    @Test
+    public void testSameSource() throws IOException {
+        Template normalTemplate = createTemplate(false);
+        Template compactTemplate = createTemplate(true);
+        assertEquals(normalTemplate.toString(), compactTemplate.toString());
+        for (int line = 1; line <= 11; line++) {
+            for (int col = 1; col <= 3; col++) {
+                assertEquals(
+                        normalTemplate.getSource(1, line, col, line),
+                        compactTemplate.getSource(1, line, col, line));
+            }
+        }
+    }
+
+    @Test
+    public void testErrorMessagesShowSource() throws IOException {
+        setConfiguration(createConfiguration(true));
+        TemplateException e = (TemplateException) assertErrorContains(
+                "<#if true>\n  ${1 + noSuchVar}\n</#if>", "==> noSuchVar", "line 2");
+        assertThat(e.getFTLInstructionStack(), containsString("${1 + noSuchVar}"));
+    }
+
+    @Test
+    public void testChildBuffersAreTrimmed() throws IOException {
+        assertChildBuffersTrimmed(createTemplate(true).getRootTreeNode());
+    }
+
+    private void assertChildBuffersTrimmed(TemplateElement te) {
+        TemplateElement[] childBuffer = te.getChildBuffer();
+        if (childBuffer == null) {
+            assertEquals(0, te.getChildCount());
+        } else {
+            assertEquals(te.getChildCount(), childBuffer.length);
+            for (TemplateElement child : childBuffer) {
+                assertChildBuffersTrimmed(child);
+            }
+        }
+    }
+
+    @Test
+    public void testSharedContent() throws IOException {
+        Template t1 = createTemplate(true);
+        Template t2 = createTemplate(true);
+        TemplateElement interpolation1 = findElement(t1.getRootTreeNode(), DollarVariable.class);
+        TemplateElement interpolation2 = findElement(t2.getRootTreeNode(), DollarVariable.class);
+        assertNotSame(interpolation1, interpolation2);
+        String name1 = ((Identifier) interpolation1.getParameterValue(0)).getName();
+        String name2 = ((Identifier) interpolation2.getParameterValue(0)).getName();
+        assertEquals("x", name1);
+        assertSame(name1, name2);
+    }
+
+    private TemplateElement findElement(TemplateElement te, Class<? extends TemplateElement> elementClass) {
+        if (elementClass.isInstance(te)) {
+            return te;
+        }
+        for (int i = 0; i < te.getChildCount(); i++) {
+            TemplateElement result = findElement(te.getChild(i), elementClass);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testEstimatedRetainedSize() throws IOException {
+        long normalSize = createTemplate(false).getEstimatedRetainedSize();
+        long compactSize = createTemplate(true).getEstimatedRetainedSize();
+        assertTrue(normalSize > TEMPLATE_SOURCE.length() * 2);
+        assertTrue(compactSize > 0);
+        assertTrue(compactSize < normalSize);
+    }
+
+    @Test
+    public void testSetting() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_29);
+        assertFalse(cfg.getCompactTemplates());
+        cfg.setSetting(Configuration.COMPACT_TEMPLATES_KEY_SNAKE_CASE, "true");
+        assertTrue(cfg.getCompactTemplates());
+        cfg.setSetting(Configuration.COMPACT_TEMPLATES_KEY_CAMEL_CASE, "false");
+        assertFalse(cfg.getCompactTemplates());
+    }
+
+    private Template createTemplate(boolean compact) throws IOException {
+        return new Template("test.ftl", TEMPLATE_SOURCE, createConfiguration(compact));
+    }
+
+    private Configuration createConfiguration(boolean compact) {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_29);
+        cfg.setCompactTemplates(compact);
+        return cfg;
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.SimpleNumber;
+import freemarker.template.Template;
+import freemarker.template.TemplateBooleanModel;
+import freemarker.template.TemplateExceptionHandler;
+import freemarker.template.utility.StandardCompress;
+import freemarker.test.TemplateTest;
+
+public class CompressTest extends TemplateTest {
+
+    private static final char[] CHARS = { 'a', 'b', ' ', ' ', '\t', '\r', '\n', '\n' };
+
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_29);
+        // So that the output is exactly the template content with the interpolations resolved
+        cfg.setWhitespaceStripping(false);
+        return cfg;
+    }
+
+    @Test
+    public void testBasics() throws Exception {
+        assertOutput("<#compress>  a  b \n\n c\r\n d\r e  </#compress>", "a b\nc\r\nd\re");
+        assertOutput("<#compress> \n ${'  x  '} y${' \n'}z </#compress>", "x y\nz");
+        assertOutput("<#compress>${'a'}  ${' '}  ${'b'}</#compress>", "a b");
+        assertOutput("<#compress>a\r${''}\nb</#compress>", "a\r\nb");
+        assertOutput("<#compress>   </#compress>", "");
+        assertOutput("<#compress>a${'\r'}  b</#compress>", "a\rb");
+        addToDataModel("sc", StandardCompress.INSTANCE);
+        assertOutput("<@sc single_line=true> a \n b ${'\n'} c </@sc>", "a b c");
+    }
+
+    @Test
+    public void testSameAsWithoutPrecompression() throws Exception {
+        Random rnd = new Random(1234);
+        addToDataModel("sc", StandardCompress.INSTANCE);
+        for (int i = 0; i < 2000; i++) {
+            int pieceCount = 1 + rnd.nextInt(6);
+            StringBuilder ftlBody = new StringBuilder();
+            StringBuilder expectedRawOutput = new StringBuilder();
+            List<String> dynamicValues = new ArrayList<String>();
+            for (int pieceIdx = 0; pieceIdx < pieceCount; pieceIdx++) {
+                String piece = randomString(rnd);
+                expectedRawOutput.append(piece);
+                if (rnd.nextBoolean()) {
+                    ftlBody.append("${d[" + dynamicValues.size() + "]}");
+                    dynamicValues.add(piece);
+                } else {
+                    ftlBody.append(piece);
+                }
+            }
+            addToDataModel("d", dynamicValues);
+
+            assertOutput(
+                    "<#compress>" + ftlBody + "</#compress>",
+                    compressWithoutPrecompression(expectedRawOutput.toString(), false, null));
+            assertOutput(
+                    "<@sc single_line=true>" + ftlBody + "</@sc>",
+                    compressWithoutPrecompression(expectedRawOutput.toString(), true, null));
+            int bufferSize = 3 + rnd.nextInt(5);
+            assertOutput(
+                    "<@sc buffer_size=" + bufferSize + ">" + ftlBody + "</@sc>",
+                    compressWithoutPrecompression(expectedRawOutput.toString(), false, bufferSize));
+        }
+    }
+
+    @Test
+    public void testSameTextInBothModes() throws Exception {
+        addToDataModel("sc", StandardCompress.INSTANCE);
+        assertOutput(
+                "<#macro m> a \n b </#macro>"
+                + "<#compress><@m/></#compress>|<@sc single_line=true><@m/></@sc>|<#compress><@m/></#compress>",
+                "a\nb|a b|a\nb");
+    }
+
+    @Test
+    public void testCompressOutputSetting() throws Exception {
+        Configuration cfg = getConfiguration();
+        assertFalse(cfg.getCompressOutput());
+        assertOutput(" a \n ${' b '} ", " a \n  b  ");
+
+        cfg.setSetting(Configuration.COMPRESS_OUTPUT_KEY_SNAKE_CASE, "true");
+        assertTrue(cfg.getCompressOutput());
+        assertOutput(" a \n ${' b '} ", "a\nb");
+        assertOutput(" a <#compress> b  c </#compress> d ", "a b c d");
+
+        addTemplate("inc.ftl", "  i  ");
+        cfg.addAutoInclude("inc.ftl");
+        assertOutput(" a ", "i a");
+
+        cfg.setSetting(Configuration.COMPRESS_OUTPUT_KEY_CAMEL_CASE, "false");
+        assertFalse(cfg.getCompressOutput());
+    }
+
+    @Test
+    public void testCompressOutputSettingOnError() throws Exception {
+        getConfiguration().setCompressOutput(true);
+        getConfiguration().setTemplateExceptionHandler(TemplateExceptionHandler.RETHROW_HANDLER);
+        StringWriter out = new StringWriter();
+        try {
+            new Template(null, " a  b ${noSuchVar}", getConfiguration())
+                    .process(null, out);
+            fail();
+        } catch (InvalidReferenceException e) {
+            // expected
+        }
+        assertEquals("a b", out.toString());
+    }
+
+    private static String randomString(Random rnd) {
+        int len = rnd.nextInt(8);
+        StringBuilder sb = new StringBuilder(len);
+        for (int i = 0; i < len; i++) {
+            sb.append(CHARS[rnd.nextInt(CHARS.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static String compressWithoutPrecompression(String s, boolean singleLine, Integer bufferSize)
+            throws Exception {
+        Map<String, Object> args = new HashMap<String, Object>();
+        if (singleLine) {
+            args.put("single_line", TemplateBooleanModel.TRUE);
+        }
+        if (bufferSize != null) {
+            args.put("buffer_size", new SimpleNumber(bufferSize));
+        }
+        StringWriter out = new StringWriter();
+        Writer w = StandardCompress.INSTANCE.getWriter(out, args);
+        // Character by character, so that nothing could be precompressed
+        for (int i = 0; i < s.length(); i++) {
+            w.write(s.charAt(i));
+        }
+        w.close();
+        return out.toString();
+    }
+
+}
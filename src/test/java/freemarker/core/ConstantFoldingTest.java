@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import org.junit.Test;
+
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.test.TemplateTest;
+
+public class ConstantFoldingTest extends TemplateTest {
+
+    @Test
+    public void testEnvironmentIndependentStringBuiltIns() throws Exception {
+        assertFolded("'  foo bar '?trim?cap_first", "Foo bar");
+        assertFolded("'Foo'?uncap_first", "foo");
+        assertFolded("'foo bar'?capitalize", "Foo Bar");
+        assertFolded("'foo\\n'?chop_linebreak", "foo");
+        assertFolded("'a\"b'?j_string", "a\\\"b");
+        assertFolded("'a\"b'?js_string", "a\\\"b");
+        assertFolded("'a\"b'?json_string", "a\\\"b");
+        assertFolded("' abc '?trim?length + 1", "4");
+        assertNotFolded("'x' + ' abc '?trim?length", "x3");
+        assertFolded("('abc' + 'def')?length", "6");
+    }
+
+    @Test
+    public void testEnvironmentDependentNotFolded() throws Exception {
+        getConfiguration().setLocale(new Locale("tr"));
+        assertNotFolded("'i'?upper_case", "İ");
+        assertNotFolded("1000?length", "5");
+        assertNotFolded("x?trim", "x");
+    }
+
+    @Test
+    public void testErrorLocationAfterFolding() throws Exception {
+        assertErrorContains("\n${'foo'?trim?number}", "line 2, column 3");
+        assertErrorContains("${'foo'?cap_first + noSuchVar}", "noSuchVar", "line 1, column 21");
+    }
+
+    @Test
+    public void testAdjacentTextBlocksMerged() throws Exception {
+        Template t = new Template(null, "a\n  <#t>\nb\n<#lt>  c", getConfiguration());
+        assertEquals("a\nb\n  c", getOutput(t));
+        TemplateElement root = t.getRootTreeNode();
+        assertTrue(root instanceof TextBlock);
+        assertEquals(1, root.getBeginLine());
+        assertEquals(4, root.getEndLine());
+
+        t = new Template(null, "a<#noparse>b</#noparse>c", getConfiguration());
+        assertEquals("abc", getOutput(t));
+        assertEquals(3, t.getRootTreeNode().getChildCount());
+    }
+
+    private void assertFolded(String exp, String output) throws IOException, TemplateException {
+        assertEquals(output, evalAndGetConstantValue(exp, output, true));
+    }
+
+    private void assertNotFolded(String exp, String output) throws IOException, TemplateException {
+        evalAndGetConstantValue(exp, output, false);
+    }
+
+    private String evalAndGetConstantValue(String exp, String output, boolean folded)
+            throws IOException, TemplateException {
+        addToDataModel("x", " x ");
+        Template t = new Template(null, "${" + exp + "}", getConfiguration());
+        assertEquals(output, getOutput(t));
+        Expression expression = (Expression) t.getRootTreeNode().getParameterValue(0);
+        assertEquals(folded, expression.constantValue != null);
+        return folded ? expression.constantValue.toString() : null;
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.SimpleHash;
+import freemarker.template.SimpleScalar;
+import freemarker.template.Template;
+import freemarker.template.TemplateHashModel;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.utility.NullWriter;
+import freemarker.test.TemplateTest;
+
+public class DataModelLookupCachingTest extends TemplateTest {
+
+    private final List<String> dataModelGets = new ArrayList<String>();
+
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_29);
+        cfg.setSharedVariable("shared", "S");
+        return cfg;
+    }
+
+    @Override
+    protected Object createDataModel() {
+        final SimpleHash values = new SimpleHash(getConfiguration().getObjectWrapper());
+        values.put("x", "X");
+        return new TemplateHashModel() {
+            public TemplateModel get(String key) throws TemplateModelException {
+                dataModelGets.add(key);
+                return values.get(key);
+            }
+
+            public boolean isEmpty() throws TemplateModelException {
+                return values.isEmpty();
+            }
+        };
+    }
+
+    @Before
+    public void clearGets() {
+        dataModelGets.clear();
+    }
+
+    @Test
+    public void testDisabledByDefault() throws Exception {
+        assertFalse(getConfiguration().getDataModelLookupCaching());
+        assertOutput("${x}${x}${missing!'-'}${missing!'-'}", "XX--");
+        assertEquals(4, dataModelGets.size());
+    }
+
+    @Test
+    public void testEnabled() throws Exception {
+        getConfiguration().setDataModelLookupCaching(true);
+        assertOutput(
+                "${x}${x}${missing!'-'}${(missing??)?c}<#list 1..3 as i>${x}${shared}${missing!}</#list>${shared}",
+                "XX-falseXSXSXSS");
+        assertEquals(3, dataModelGets.size());
+        assertTrue(dataModelGets.contains("x"));
+        assertTrue(dataModelGets.contains("missing"));
+        assertTrue(dataModelGets.contains("shared"));
+    }
+
+    @Test
+    public void testTemplateVariablesStillShadow() throws Exception {
+        getConfiguration().setDataModelLookupCaching(true);
+        assertOutput(
+                "${x}${missing!'-'}"
+                + "<#assign x = 'A'><#global missing = 'G'>${x}${missing}"
+                + "<#macro m><#local missing = 'L'>${missing}</#macro><@m />"
+                + "${.globals.x}${.data_model.x}${.data_model.missing!'-'}",
+                "X-AGLXX-");
+        assertEquals(2, dataModelGets.size());
+    }
+
+    @Test
+    public void testNotSharedBetweenProcessings() throws Exception {
+        getConfiguration().setDataModelLookupCaching(true);
+        assertOutput("${x}${x}", "XX");
+        assertOutput("${x}${x}", "XX");
+        assertEquals(2, dataModelGets.size());
+    }
+
+    @Test
+    public void testSetting() throws Exception {
+        Configuration cfg = getConfiguration();
+        cfg.setSetting(Configuration.DATA_MODEL_LOOKUP_CACHING_KEY_SNAKE_CASE, "true");
+        assertTrue(cfg.getDataModelLookupCaching());
+        cfg.setSetting(Configuration.DATA_MODEL_LOOKUP_CACHING_KEY_CAMEL_CASE, "false");
+        assertFalse(cfg.getDataModelLookupCaching());
+    }
+
+    @Test
+    public void testEnvironmentAPI() throws Exception {
+        getConfiguration().setDataModelLookupCaching(true);
+        Environment env = new Template(null, "", getConfiguration())
+                .createProcessingEnvironment(createDataModel(), NullWriter.INSTANCE);
+        assertEquals("X", ((SimpleScalar) env.getVariable("x")).getAsString());
+        assertNull(env.getVariable("missing"));
+        env.setVariable("missing", new SimpleScalar("V"));
+        assertEquals("V", ((SimpleScalar) env.getVariable("missing")).getAsString());
+        assertNull(env.getDataModelOrSharedVariable("missing"));
+        assertEquals(2, dataModelGets.size());
+    }
+
+}
@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import freemarker.cache.StringTemplateLoader;
+import freemarker.template.AttemptExceptionReporter;
+import freemarker.template.Configuration;
+import freemarker.template.SimpleHash;
+import freemarker.template.Template;
+import freemarker.template.TemplateDirectiveBody;
+import freemarker.template.TemplateDirectiveModel;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+
+public class EnvironmentResetTest {
+    
+    private static final Object CUSTOM_STATE_KEY = new Object();
+    
+    private static final String MAIN_TEMPLATE = ""
+            + "[${g!'-'} ${m!'-'} ${.globals.lib!'-'} ${.locale} ${1.5} ${x}]"
+            + "<#if x % 2 == 0><#setting locale='de_DE'><#setting number_format='0.00'></#if>"
+            + "<#global g = x><#assign m = x * 2>"
+            + "<#import 'lib.ftl' as lib><@lib.m n=x />"
+            + "<#attempt>${(x % 3 == 0)?then(noSuchVar, x)}<#recover>E</#attempt>"
+            + "<@dirty />"
+            + "<#list 1..x % 4 as i>${i}<#sep>,</#list>"
+            + "[${1.5} ${x?c} ${.locale}]";
+    
+    @Test
+    public void testOutputIsSameAsWithNewEnvironment() throws Exception {
+        Configuration cfg = newConfiguration();
+        Template t = cfg.getTemplate("main.ftl");
+        
+        Random random = new Random(1234);
+        Environment reusedEnv = null;
+        for (int i = 0; i < 1000; i++) {
+            Map<String, Object> dataModel = ImmutableMap.<String, Object>of("x", random.nextInt(100));
+            
+            StringWriter expectedOut = new StringWriter();
+            t.process(dataModel, expectedOut);
+            
+            StringWriter actualOut = new StringWriter();
+            if (reusedEnv == null) {
+                reusedEnv = t.createProcessingEnvironment(dataModel, actualOut);
+            } else {
+                assertSame(reusedEnv, t.resetProcessingEnvironment(reusedEnv, dataModel, actualOut, null));
+            }
+            reusedEnv.process();
+            
+            assertEquals(expectedOut.toString(), actualOut.toString());
+        }
+    }
+    
+    @Test
+    public void testNoStateLeaks() throws Exception {
+        Configuration cfg = newConfiguration();
+        Template t = cfg.getTemplate("main.ftl");
+        
+        Environment newEnv = t.createProcessingEnvironment(ImmutableMap.of("x", 2), new StringWriter());
+        Map<String, Object> expectedState = getState(newEnv);
+        
+        Environment env = t.createProcessingEnvironment(ImmutableMap.of("x", 2), new StringWriter());
+        env.process();
+        env.setTimeZone(TimeZone.getTimeZone("GMT+01:00"));
+        env.setCustomAttribute("a", "b");
+        env.setAutoImports(ImmutableMap.of("x", "lib.ftl"));
+        env.addAutoInclude("lib.ftl");
+        env.setCustomNumberFormats(ImmutableMap.of("x", HexTemplateNumberFormatFactory.INSTANCE));
+        env.setLazyAutoImports(true);
+        env.setOutputEncoding("UTF-8");
+        env.setURLEscapingCharset("UTF-8");
+        env.setSQLDateAndTimeTimeZone(TimeZone.getTimeZone("GMT+01:00"));
+        assertNotEquals(expectedState, getState(env));
+        
+        t.resetProcessingEnvironment(env, ImmutableMap.of("x", 2), new StringWriter(), null);
+        assertEquals(expectedState, getState(env));
+        
+        assertNull(env.getCustomAttribute("a"));
+        assertNull(env.getCustomState(CUSTOM_STATE_KEY));
+        assertEquals(cfg.getLocale(), env.getLocale());
+        assertEquals(cfg.getNumberFormat(), env.getNumberFormat());
+        assertEquals(cfg.getTimeZone(), env.getTimeZone());
+        assertEquals(cfg.getAutoImports(), env.getAutoImports());
+        assertEquals(cfg.getAutoIncludes(), env.getAutoIncludes());
+        assertNull(env.getGlobalVariable("g"));
+        assertNull(env.getVariable("m"));
+        assertNull(env.getGlobalNamespace().get("lib"));
+    }
+    
+    @Test
+    public void testResetWhileProcessingFails() throws Exception {
+        Configuration cfg = newConfiguration();
+        Template t = new Template(null, "<@reset />", cfg);
+        Environment env = t.createProcessingEnvironment(null, new StringWriter());
+        env.setVariable("reset", new TemplateDirectiveModel() {
+            public void execute(Environment env, Map params, TemplateModel[] loopVars, TemplateDirectiveBody body)
+                    throws TemplateException, IOException {
+                try {
+                    env.reset(new SimpleHash(env.getObjectWrapper()), env.getOut());
+                    fail();
+                } catch (IllegalStateException e) {
+                    env.getOut().write("OK");
+                }
+            }
+        });
+        StringWriter out = new StringWriter();
+        env.setOut(out);
+        env.process();
+        assertEquals("OK", out.toString());
+    }
+    
+    @Test
+    public void testResetForOtherTemplateFails() throws Exception {
+        Configuration cfg = newConfiguration();
+        Template t1 = cfg.getTemplate("main.ftl");
+        Template t2 = cfg.getTemplate("lib.ftl");
+        Environment env = t1.createProcessingEnvironment(null, new StringWriter());
+        try {
+            t2.resetProcessingEnvironment(env, null, new StringWriter(), null);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("another template"));
+        }
+    }
+    
+    private Configuration newConfiguration() {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_29);
+        cfg.setLocale(Locale.US);
+        StringTemplateLoader tl = new StringTemplateLoader();
+        tl.putTemplate("main.ftl", MAIN_TEMPLATE);
+        tl.putTemplate("lib.ftl", "<#macro m n><#local l = n>(${l})</#macro>");
+        cfg.setTemplateLoader(tl);
+        cfg.setSharedVariable("dirty", new DirtyingDirective());
+        cfg.setAttemptExceptionReporter(new AttemptExceptionReporter() {
+            public void report(TemplateException te, Environment env) {
+                // Expected to happen, so don't spam the log
+            }
+        });
+        return cfg;
+    }
+    
+    /**
+     * Returns a comparable description of the fields of the {@link Environment} (including the inherited ones).
+     */
+    private static Map<String, Object> getState(Environment env) throws Exception {
+        Map<String, Object> state = new LinkedHashMap<String, Object>();
+        for (Class<?> c = Environment.class; c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                field.setAccessible(true);
+                state.put(c.getSimpleName() + "." + field.getName(), describe(field.get(env)));
+            }
+        }
+        // Caches that are allowed to survive a reset:
+        state.remove("Environment.cNumberFormat");
+        state.remove("Environment.isoBuiltInCalendarFactory");
+        return state;
+    }
+    
+    private static Object describe(Object value) throws TemplateModelException {
+        if (value == null || value instanceof String || value instanceof Boolean || value instanceof Number
+                || value instanceof Locale || value instanceof Template || value instanceof Configurable) {
+            return value;
+        }
+        if (value instanceof Environment.Namespace) {
+            return "Namespace" + toSortedStrings(((Environment.Namespace) value).toMap().keySet());
+        }
+        // Empty containers that are kept for reuse are treated as if they weren't created yet:
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            return map.isEmpty() ? null : "Map" + toSortedStrings(map.keySet());
+        }
+        if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            return collection.isEmpty() ? null : "Collection" + collection.size();
+        }
+        if (value instanceof Object[]) {
+            List<Object> nonNulls = new ArrayList<Object>();
+            for (Object item : (Object[]) value) {
+                if (item != null) {
+                    nonNulls.add(item);
+                }
+            }
+            return "Array" + nonNulls;
+        }
+        if (value instanceof LocalContextStack) {
+            int size = ((LocalContextStack) value).size();
+            return size == 0 ? null : "LocalContextStack" + size;
+        }
+        // Different for each Environment, like the data-model or the Writer:
+        return value.getClass();
+    }
+    
+    private static TreeSet<String> toSortedStrings(Collection<?> values) {
+        TreeSet<String> result = new TreeSet<String>();
+        for (Object value : values) {
+            result.add(String.valueOf(value));
+        }
+        return result;
+    }
+    
+    public static class DirtyingDirective implements TemplateDirectiveModel {
+
+        public void execute(Environment env, Map params, TemplateModel[] loopVars, TemplateDirectiveBody body)
+                throws TemplateException, IOException {
+            if (env.getCustomState(CUSTOM_STATE_KEY) != null) {
+                throw new AssertionError("Custom state has leaked");
+            }
+            if (env.getCustomAttribute("dirty") != null) {
+                throw new AssertionError("Custom attribute has leaked");
+            }
+            env.setCustomState(CUSTOM_STATE_KEY, "dirty");
+            env.setCustomAttribute("dirty", "dirty");
+        }
+        
+    }
+    
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import freemarker.template.Template;
+import freemarker.test.TemplateTest;
+
+public class EvalBuiltInTest extends TemplateTest {
+
+    @Test
+    public void testJSON() throws Exception {
+        addToDataModel("s", "{ \"a\": [1, -2.5, true, false, \"x\\ny\\\"\"], \"b\" : {}, \"c\": [], \"d\": 007 }");
+        assertOutput("<#assign v = s?eval>"
+                + "${v.a[0]} ${v.a[1]} ${v.a[2]?c} ${v.a[3]?c} ${v.a[4]} ${v.b?size} ${v.c?size} ${v.d}"
+                + " ${v?keys?join(',')}",
+                "1 -2.5 true false x\ny\" 0 0 7 a,b,c,d");
+    }
+
+    @Test
+    public void testJSONFastPathGivesSameASTAsParser() throws Exception {
+        Template t = new Template(null, "", getConfiguration());
+        for (String s : new String[] {
+                "[]", "{}", " [ 1 , 2.50 , -3 ] ", "{\"a\": {\"b\": [true, false]}}", "[\"\\\"\\\\\\n\\x41\"]",
+                "[\"a'b\"]" }) {
+            Expression fastExp = JSONLiteralParser.parse(t, getConfiguration(), s);
+            assertNotNull(s, fastExp);
+            Template parsed = new Template(null, "${(" + s + ")?size}", getConfiguration());
+            BuiltIn sizeBI = (BuiltIn) parsed.getRootTreeNode().getParameterValue(0);
+            Expression parsedExp = ((ParentheticalExpression) sizeBI.target).getNestedExpression();
+            assertEquals(parsedExp.getCanonicalForm(), fastExp.getCanonicalForm());
+        }
+    }
+
+    @Test
+    public void testJSONFastPathGivesUp() throws Exception {
+        Template t = new Template(null, "", getConfiguration());
+        for (String s : new String[] {
+                "", "1", "\"s\"", "[1e3]", "[1.]", "[01x]", "[null]", "[\"\\u0041\"]", "[\"\\/\"]", "[\"${x}\"]",
+                "[\"#{x}\"]", "[\"[=x]\"]", "['s']", "[1,]", "{\"a\" 1}", "{a: 1}", "[1] + [2]", "[truex]", "[- 1]",
+                "[\"\n\"]", "[" }) {
+            assertNull(s, JSONLiteralParser.parse(t, getConfiguration(), s));
+        }
+    }
+
+    @Test
+    public void testFallbackToParser() throws Exception {
+        addToDataModel("x", "X");
+        assertOutput("${'[\"${x}\"]'?eval[0]}", "X");
+        assertOutput("${'[1, x, - 1]'?eval?join(', ')}", "1, X, -1");
+        assertErrorContains("${'[null]'?eval[0]}", "null");
+        assertErrorContains("${'[\"\\\\u0041\"]'?eval[0]}", "Failed to \"?eval\"");
+    }
+
+    @Test
+    public void testRepeatedEvaluation() throws Exception {
+        addToDataModel("x", 1);
+        assertOutput("<#list 1..3 as i>${'x + 1'?eval}${('[' + i + ']')?eval[0]}${('{\"k\": ' + i + '}')?eval.k};</#list>",
+                "211;222;233;");
+    }
+
+    @Test
+    public void testCachedExpressionSeesCurrentEnvironment() throws Exception {
+        assertOutput("<#list ['a', 'b'] as x><#assign y = x>${'y'?eval}</#list>", "ab");
+        assertErrorContains("<#list ['a', 'b'] as x>${'nosuch'?eval}</#list>", "nosuch");
+    }
+
+    @Test
+    public void testInheritedOutputFormat() throws Exception {
+        assertOutput("<#ftl outputFormat='HTML'>${'\"<\" + \"&\"'?eval}", "&lt;&amp;");
+        assertOutput("<#ftl outputFormat='HTML'><#noAutoEsc>${'\"<\"'?eval}</#noAutoEsc>", "<");
+    }
+
+}
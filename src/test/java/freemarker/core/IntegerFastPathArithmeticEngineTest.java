@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static freemarker.core.ArithmeticEngine.*;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.TemplateException;
+import freemarker.test.TemplateTest;
+
+public class IntegerFastPathArithmeticEngineTest extends TemplateTest {
+
+    private static final Number[] SAMPLES = new Number[] {
+            0, 1, -1, 2, 7, -13, 1000, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE - 1,
+            (long) Integer.MAX_VALUE + 1, Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE / 3, Long.MIN_VALUE + 1,
+            -1L, 3L, (short) 5, (byte) -3,
+            new BigDecimal("1.5"), new BigDecimal("-2"), BigInteger.TEN, 0.25, -3.5f };
+
+    @Test
+    public void testSameResultsAsBigDecimalEngine() throws TemplateException {
+        for (Number n1 : SAMPLES) {
+            for (Number n2 : SAMPLES) {
+                String desc = n1 + " and " + n2;
+                assertNumericallyEquals(desc,
+                        BIGDECIMAL_ENGINE.add(n1, n2), INTEGER_FAST_PATH_ENGINE.add(n1, n2));
+                assertNumericallyEquals(desc,
+                        BIGDECIMAL_ENGINE.subtract(n1, n2), INTEGER_FAST_PATH_ENGINE.subtract(n1, n2));
+                assertNumericallyEquals(desc,
+                        BIGDECIMAL_ENGINE.multiply(n1, n2), INTEGER_FAST_PATH_ENGINE.multiply(n1, n2));
+                assertEquals(desc,
+                        BIGDECIMAL_ENGINE.compareNumbers(n1, n2), INTEGER_FAST_PATH_ENGINE.compareNumbers(n1, n2));
+                if (n2.doubleValue() != 0) {
+                    assertEquals(desc,
+                            BIGDECIMAL_ENGINE.divide(n1, n2), INTEGER_FAST_PATH_ENGINE.divide(n1, n2));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testResultTypes() {
+        assertEquals(Integer.valueOf(3), INTEGER_FAST_PATH_ENGINE.add(1, 2));
+        assertEquals(Integer.valueOf(3), INTEGER_FAST_PATH_ENGINE.add(1L, (byte) 2));
+        assertEquals(Long.valueOf(Integer.MAX_VALUE + 1L), INTEGER_FAST_PATH_ENGINE.add(Integer.MAX_VALUE, 1));
+        assertEquals(Long.valueOf(Integer.MIN_VALUE - 1L), INTEGER_FAST_PATH_ENGINE.subtract(Integer.MIN_VALUE, 1));
+        assertEquals(new BigDecimal(Long.MAX_VALUE).add(BigDecimal.ONE),
+                INTEGER_FAST_PATH_ENGINE.add(Long.MAX_VALUE, 1));
+        assertEquals(new BigDecimal(Long.MAX_VALUE).multiply(BigDecimal.valueOf(2)),
+                INTEGER_FAST_PATH_ENGINE.multiply(Long.MAX_VALUE, 2));
+        assertEquals(new BigDecimal(Long.MIN_VALUE).negate(),
+                INTEGER_FAST_PATH_ENGINE.multiply(Long.MIN_VALUE, -1));
+        assertEquals(new BigDecimal("3.5"), INTEGER_FAST_PATH_ENGINE.add(1, new BigDecimal("2.5")));
+    }
+
+    @Test
+    public void testToNumber() {
+        assertEquals(Integer.valueOf(0), INTEGER_FAST_PATH_ENGINE.toNumber("0"));
+        assertEquals(Integer.valueOf(5), INTEGER_FAST_PATH_ENGINE.toNumber("0005"));
+        assertEquals(Integer.valueOf(-12), INTEGER_FAST_PATH_ENGINE.toNumber("-12"));
+        assertEquals(Integer.valueOf(12), INTEGER_FAST_PATH_ENGINE.toNumber("+12"));
+        assertEquals(Long.valueOf(123456789012345678L), INTEGER_FAST_PATH_ENGINE.toNumber("123456789012345678"));
+        assertEquals(new BigDecimal("1234567890123456789"), INTEGER_FAST_PATH_ENGINE.toNumber("1234567890123456789"));
+        assertEquals(new BigDecimal("1.0"), INTEGER_FAST_PATH_ENGINE.toNumber("1.0"));
+        assertEquals(new BigDecimal("1.5E3"), INTEGER_FAST_PATH_ENGINE.toNumber("1.5E3"));
+        assertEquals(Double.valueOf(Double.POSITIVE_INFINITY), INTEGER_FAST_PATH_ENGINE.toNumber("INF"));
+        try {
+            INTEGER_FAST_PATH_ENGINE.toNumber("-");
+            fail();
+        } catch (NumberFormatException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testInTemplates() throws Exception {
+        String ftl = "<#assign s = 0><#list 1..100 as i><#assign s = s + i * 2 - 1></#list>${s} "
+                + "${7 / 2} ${7 % 4} ${(2147483647 + 1)?c} ${1 + 0.5} ${(1 < 2)?c} ${3 * -2}";
+        assertOutput(ftl, "10,000 3.5 3 2147483648 1.5 true -6");
+        getConfiguration().setSetting(Configuration.ARITHMETIC_ENGINE_KEY, "integer_fast_path");
+        assertSame(INTEGER_FAST_PATH_ENGINE, getConfiguration().getArithmeticEngine());
+        assertOutput(ftl, "10,000 3.5 3 2147483648 1.5 true -6");
+    }
+
+    private static void assertNumericallyEquals(String desc, Number expected, Number actual) {
+        assertEquals(desc, 0, BIGDECIMAL_ENGINE.compareNumbers(expected, actual));
+    }
+
+}
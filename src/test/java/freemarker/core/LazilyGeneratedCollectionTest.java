@@ -99,6 +99,24 @@ public class LazilyGeneratedCollectionTest extends TemplateTest {
                 "[iterator][hasNext][next][hasNext][next]2[hasNext][next]3");
     }
 
+    @Test
+    public void chunkTest() throws Exception {
+        assertOutput("<#list coll?sequence?chunk(2) as row>(<#list row as it>${it}</#list>)</#list>",
+                "[iterator][hasNext][hasNext][next][hasNext][next][hasNext](12)[hasNext][next][hasNext][hasNext](3)");
+        assertOutput("<#list collLong?filter(it -> it != 3)?sequence?chunk(2, 0) as row>(${row?join(' ')})</#list>",
+                "[iterator][hasNext][next][hasNext][next][hasNext][next][hasNext][next](1 2)"
+                + "[hasNext][next][hasNext][next](4 5)[hasNext](6 0)");
+        assertOutput("<#list seq?map(it -> it * 10)?chunk(2, 0) as row>(${row?join(' ')})</#list>",
+                "[size][get 0][get 1](10 20)[get 2](30 0)");
+        assertOutput("${collLong?sequence?chunk(4)?size}",
+                "[iterator][hasNext][hasNext][next][hasNext][next][hasNext][next][hasNext][next]"
+                + "[hasNext][hasNext][next][hasNext][next][hasNext][hasNext]2");
+        assertOutput("<#assign chunks = coll?sequence?chunk(2)>${chunks?size} ${chunks[1][0]}",
+                "[iterator][hasNext][next][hasNext][next][hasNext][next][hasNext]2 3");
+        assertErrorContains("<#list coll?chunk(2) as row></#list>", "sequence", "evaluated to a collection");
+        assertErrorContains("<#list coll?filter(it -> true)?chunk(2) as row></#list>", "sequence");
+    }
+
     @Test
     public void sizeBasicsTest() throws Exception {
         assertOutput("${seq?size}",
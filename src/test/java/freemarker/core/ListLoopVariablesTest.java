@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import freemarker.template.Configuration;
+import freemarker.template.TemplateException;
+import freemarker.test.TemplateTest;
+
+public class ListLoopVariablesTest extends TemplateTest {
+
+    @Test
+    public void testRanges() throws IOException, TemplateException {
+        assertOutput("<#list 1..4 as i>${i}<#sep>, </#list>", "1, 2, 3, 4");
+        assertOutput("<#list 4..1 as i>${i}<#sep>, </#list>", "4, 3, 2, 1");
+        assertOutput("<#list 1..<4 as i>${i}<#sep>, </#list>", "1, 2, 3");
+        assertOutput("<#list 4..<1 as i>${i}<#sep>, </#list>", "4, 3, 2");
+        assertOutput("<#list 1..*3 as i>${i}<#sep>, </#list>", "1, 2, 3");
+        assertOutput("<#list -130..-127 as i>${i}<#sep>, </#list>", "-130, -129, -128, -127");
+        assertOutput("<#list 1022..1025 as i>${i?c}<#sep>, </#list>", "1022, 1023, 1024, 1025");
+        assertOutput("<#list 2147483646..2147483647 as i>${i?c}<#sep>, </#list>", "2147483646, 2147483647");
+        assertOutput("<#list 1..0 as i>${i}<#sep>, </#list>", "1, 0");
+        assertOutput("<#list 1..<1 as i>${i}<#else>empty</#list>", "empty");
+        assertOutput("<#list 1..3><#items as i>${i}<#sep>, </#items></#list>", "1, 2, 3");
+        assertOutput("<#list 1..5 as i><#if i == 3><#break></#if>${i}</#list>", "12");
+        assertOutput("<#assign r = 10..12><#list r as i>${i} ${r[i - 10]}; </#list>", "10 10; 11 11; 12 12; ");
+        
+        getConfiguration().setIncompatibleImprovements(Configuration.VERSION_2_3_21); // Makes 1.. listable
+        assertOutput("<#list 1.. as i>${i}<#if i == 3><#break></#if></#list>", "123");
+    }
+    
+    @Test
+    public void testIndexAndCounter() throws IOException, TemplateException {
+        assertOutput("<#list ['a', 'b', 'c'] as x>${x?index}/${x?counter}/${x_index}<#sep>, </#list>",
+                "0/1/0, 1/2/1, 2/3/2");
+        
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1100; i++) {
+            expected.append(i).append('/').append(i + 1).append(';');
+        }
+        assertOutput("<#list 1..1100 as x>${x?index?c}/${x?counter?c};</#list>", expected.toString());
+        
+        assertOutput("<#list 1..3 as x><#assign idx = x?index></#list>${idx}", "2");
+    }
+    
+    @Test
+    public void testItemCycle() throws IOException, TemplateException {
+        addToDataModel("xs", ImmutableList.of("a", "b", "c", "d", "e"));
+        assertOutput("<#list xs as x>${x?item_cycle('1', '2')}${x?item_cycle('x', 'y', 'z')}<#sep>, </#list>",
+                "1x, 2y, 1z, 2x, 1y");
+        assertOutput("<#list xs as x><#assign c = x?item_cycle>${c('1', '2')}</#list>", "12121");
+        assertOutput("<#list xs as x><#list 1..2 as y>${y?item_cycle('-', '+')}</#list>${x?item_cycle('1', '2')}|"
+                + "</#list>",
+                "-+1|-+2|-+1|-+2|-+1|");
+    }
+    
+    @Test
+    public void testSmallIntegerModelsAreShared() {
+        assertSame(SmallIntegerModels.valueOf(0), SmallIntegerModels.valueOf(0));
+        assertSame(SmallIntegerModels.valueOf(-128), SmallIntegerModels.valueOf(-128));
+        assertSame(SmallIntegerModels.valueOf(1023), SmallIntegerModels.valueOf(1023));
+        assertNotSame(SmallIntegerModels.valueOf(1024), SmallIntegerModels.valueOf(1024));
+        assertNotSame(SmallIntegerModels.valueOf(-129), SmallIntegerModels.valueOf(-129));
+        for (int i = -200; i < 1200; i++) {
+            assertEquals(Integer.valueOf(i), SmallIntegerModels.valueOf(i).getAsNumber());
+        }
+    }
+
+}
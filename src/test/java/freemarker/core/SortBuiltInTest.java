@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import freemarker.template.Configuration;
+import freemarker.test.TemplateTest;
+
+public class SortBuiltInTest extends TemplateTest {
+
+    @Test
+    public void testNumbersOfSameType() throws Exception {
+        assertOutput("${[3, 1, 2, -5, 0]?sort?join(' ')}", "-5 0 1 2 3");
+        addToDataModel("longs", Arrays.asList(3L, Long.MIN_VALUE, 1L, Long.MAX_VALUE));
+        assertOutput("<#list longs?sort as x>${x?c}<#sep> </#list>",
+                "-9223372036854775808 1 3 9223372036854775807");
+        addToDataModel("doubles", Arrays.asList(0.5, -0.0, 0.0, -2.5, Double.POSITIVE_INFINITY));
+        assertOutput("${doubles?sort?join(' ')}", "-2.5 -0 0 0.5 ∞");
+    }
+
+    @Test
+    public void testNumbersOfMixedTypes() throws Exception {
+        addToDataModel("xs", Arrays.asList(
+                3, 1.5, new BigDecimal("1.25"), 2L, new BigInteger("-7"), (short) 0, 1.5f, (byte) 1));
+        assertOutput("${xs?sort?join(' ')}", "-7 0 1 1.25 1.5 1.5 2 3");
+        for (String engine : new String[] { "bigdecimal", "conservative" }) {
+            getConfiguration().setSetting(Configuration.ARITHMETIC_ENGINE_KEY, engine);
+            assertOutput("${xs?sort?join(' ')}", "-7 0 1 1.25 1.5 1.5 2 3");
+        }
+    }
+
+    @Test
+    public void testNumbersOfMixedTypesWithInfinity() throws Exception {
+        addToDataModel("xs", Arrays.asList(3, Double.NEGATIVE_INFINITY, 2L, Double.POSITIVE_INFINITY, 1));
+        assertOutput("${xs?sort?join(' ')}", "-∞ 1 2 3 ∞");
+    }
+
+    @Test
+    public void testStrings() throws Exception {
+        assertOutput("${['b', 'C', 'a', 'á', 'A']?sort?join(' ')}", "a A á b C");
+        getConfiguration().setLocale(new java.util.Locale("hu"));
+        assertOutput("${['cs', 'cz', 'ca']?sort?join(' ')}", "ca cz cs");
+    }
+
+    @Test
+    public void testStability() throws Exception {
+        assertOutput(
+                "<#list [{'k': 2, 'v': 'a'}, {'k': 1, 'v': 'b'}, {'k': 2, 'v': 'c'}, {'k': 1, 'v': 'd'}]"
+                + "?sort_by('k') as it>${it.v}</#list>",
+                "bdac");
+        assertOutput(
+                "<#list [{'k': 'y', 'v': 'a'}, {'k': 'x', 'v': 'b'}, {'k': 'y', 'v': 'c'}]"
+                + "?sort_by('k') as it>${it.v}</#list>",
+                "bac");
+    }
+
+    @Test
+    public void testSortByMultipleKeys() throws Exception {
+        addToDataModel("xs", Arrays.asList(
+                ImmutableMap.of("p", ImmutableMap.of("n", 2.5)),
+                ImmutableMap.of("p", ImmutableMap.of("n", 1)),
+                ImmutableMap.of("p", ImmutableMap.of("n", new BigDecimal("2")))));
+        assertOutput("<#list xs?sort_by(['p', 'n']) as x>${x.p.n} </#list>", "1 2 2.5 ");
+        addToDataModel("empty", Collections.emptyList());
+        assertOutput("${empty?sort_by('x')?size}", "0");
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        assertErrorContains("${[1, 'a']?sort?join(' ')}", "must be numbers");
+        assertErrorContains("${['a', 1]?sort?join(' ')}", "must be strings");
+    }
+
+}
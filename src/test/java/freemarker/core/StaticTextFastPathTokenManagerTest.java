@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.Random;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+public class StaticTextFastPathTokenManagerTest {
+
+    private static final String[] PIECES = {
+            "a", "xyz", "árvíz", " ", "  ", "\t", "\n", "\r\n", "\r",
+            "$", "#", "<", "[", "{", "}", "]", ">", "/", "@", "=",
+            "${x}", "#{x}", "[=x]", "${'a b'}",
+            "<#if x>", "</#if>", "[#if x]", "[/#if]", "<#else>", "<#list xs as x>", "</#list>",
+            "<#-- c -->", "[#-- c --]", "<@m />", "[@m/]", "<@m>", "</@m>", "<#t>", "<#nt>",
+            "<#noparse>", "</#noparse>", "<#ftl>", "[#ftl]", "<#assign x = 1>" };
+
+    @Test
+    public void testSameTokensAsGenerated() throws Exception {
+        Random rnd = new Random(4321);
+        int[] tagSyntaxes = {
+                Configuration.ANGLE_BRACKET_TAG_SYNTAX,
+                Configuration.SQUARE_BRACKET_TAG_SYNTAX,
+                Configuration.AUTO_DETECT_TAG_SYNTAX };
+        for (int i = 0; i < 3000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int pieceCount = rnd.nextInt(20);
+            for (int pieceIdx = 0; pieceIdx < pieceCount; pieceIdx++) {
+                sb.append(PIECES[rnd.nextInt(PIECES.length)]);
+            }
+            String ftl = sb.toString();
+
+            Configuration cfg = new Configuration(Configuration.VERSION_2_3_29);
+            cfg.setTagSyntax(tagSyntaxes[i % tagSyntaxes.length]);
+            cfg.setTabSize(1 + rnd.nextInt(8));
+            
+            assertEquals(ftl, 
+                    tokenize(ftl, cfg, false),
+                    tokenize(ftl, cfg, true));
+        }
+    }
+
+    @Test
+    public void testLongStaticText() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            sb.append(i % 7 == 0 ? "\r\n\t " : "word ");
+        }
+        sb.append("${x}");
+        String ftl = sb.toString();
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_29);
+        assertEquals(tokenize(ftl, cfg, false), tokenize(ftl, cfg, true));
+    }
+
+    private String tokenize(String ftl, Configuration cfg, boolean fastPath) throws Exception {
+        SimpleCharStream charStream = new SimpleCharStream(new StringReader(ftl), 1, 1);
+        charStream.setTabSize(cfg.getTabSize());
+        FMParserTokenManager tokenManager = fastPath
+                ? new StaticTextFastPathTokenManager(charStream) : new FMParserTokenManager(charStream);
+        new FMParser(new Template(null, "", cfg), false, tokenManager, cfg);
+
+        StringBuilder sb = new StringBuilder();
+        try {
+            Token token;
+            do {
+                token = tokenManager.getNextToken();
+                sb.append(token.kind).append(' ')
+                        .append(token.beginLine).append(':').append(token.beginColumn).append('-')
+                        .append(token.endLine).append(':').append(token.endColumn).append(' ')
+                        .append(token.image).append('\n');
+            } while (token.kind != FMParserConstants.EOF);
+        } catch (TokenMgrError e) {
+            sb.append("Error: ").append(e.getMessage());
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.TemplateMethodModelEx;
+import freemarker.template.TemplateModelException;
+import freemarker.test.TemplateTest;
+
+public class TemplateSamplingProfilerTest extends TemplateTest {
+
+    private final TemplateSamplingProfiler profiler = new TemplateSamplingProfiler();
+
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_29);
+        cfg.setTemplateSamplingProfiler(profiler);
+        return cfg;
+    }
+
+    @Before
+    public void addSampleMethod() {
+        addToDataModel("sample", new TemplateMethodModelEx() {
+            public Object exec(List arguments) throws TemplateModelException {
+                profiler.takeSamples();
+                return "";
+            }
+        });
+    }
+
+    @Test
+    public void testCollapsedStacks() throws Exception {
+        addTemplate("t.ftl",
+                "<#macro m>\n"
+                + "  <#list 1..2 as i>\n"
+                + "    ${sample()}<#t>\n"
+                + "  </#list>\n"
+                + "</#macro>\n"
+                + "<@m />${sample()}<@m />");
+        assertOutputForNamed("t.ftl", "");
+        
+        assertEquals(5, profiler.getSampleCount());
+        Map<String, Long> counts = profiler.getSampleCountsByStack();
+        assertEquals(3, counts.size());
+        assertEquals(Long.valueOf(2), counts.get(
+                "t.ftl:1:1 root;t.ftl:6:1 @m;t.ftl:1:1 #macro m;t.ftl:2:3 #list 1..2 as i;t.ftl:3:5 ${sample()}"));
+        assertEquals(
+                "t.ftl:1:1 root;t.ftl:6:1 @m;t.ftl:1:1 #macro m;t.ftl:2:3 #list 1..2 as i;t.ftl:3:5 ${sample()} 2\n"
+                + "t.ftl:1:1 root;t.ftl:6:18 @m;t.ftl:1:1 #macro m;t.ftl:2:3 #list 1..2 as i;t.ftl:3:5 ${sample()} 2\n"
+                + "t.ftl:1:1 root;t.ftl:6:7 ${sample()} 1\n",
+                profiler.getCollapsedStacks());
+        
+        profiler.reset();
+        assertEquals(0, profiler.getSampleCount());
+        assertEquals("", profiler.getCollapsedStacks());
+    }
+
+    @Test
+    public void testIncludedTemplate() throws Exception {
+        addTemplate("inc.ftl", "${sample()}");
+        addTemplate("t.ftl", "<#include 'inc.ftl'>");
+        assertOutputForNamed("t.ftl", "");
+        assertEquals("t.ftl:1:1 #include \"inc.ftl\";inc.ftl:1:1 ${sample()} 1\n", profiler.getCollapsedStacks());
+    }
+
+    @Test
+    public void testSpecialCharactersAreReplaced() throws Exception {
+        addTemplate("a;b.ftl", "${sample()}");
+        assertOutputForNamed("a;b.ftl", "");
+        assertEquals("a,b.ftl:1:1 ${sample()} 1\n", profiler.getCollapsedStacks());
+    }
+
+    @Test
+    public void testNotSampledWhenNotProcessing() throws Exception {
+        profiler.takeSamples();
+        assertEquals(0, profiler.getSampleCount());
+
+        addTemplate("t.ftl", "x");
+        assertOutputForNamed("t.ftl", "x");
+        profiler.takeSamples();
+        assertEquals(0, profiler.getSampleCount());
+    }
+
+    @Test
+    public void testBackgroundSampling() throws Exception {
+        TemplateSamplingProfiler profiler = new TemplateSamplingProfiler(1);
+        getConfiguration().setTemplateSamplingProfiler(profiler);
+        addToDataModel("sleep", new TemplateMethodModelEx() {
+            public Object exec(List arguments) throws TemplateModelException {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    throw new TemplateModelException(e);
+                }
+                return "";
+            }
+        });
+        addTemplate("t.ftl", "<#list 1..20 as i>${sleep()}</#list>");
+        
+        assertFalse(profiler.isRunning());
+        profiler.start();
+        try {
+            assertTrue(profiler.isRunning());
+            assertOutputForNamed("t.ftl", "");
+        } finally {
+            profiler.stop();
+        }
+        assertFalse(profiler.isRunning());
+        
+        assertTrue(profiler.getSampleCount() > 0);
+        assertTrue(profiler.getCollapsedStacks(), profiler.getCollapsedStacks().contains("t.ftl:1:1 #list 1..20 as i;t.ftl:1:19 ${sleep()} "));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidInterval() {
+        new TemplateSamplingProfiler(0);
+    }
+
+}
@@ -0,0 +1,350 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.ant;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import freemarker.template.TemplateException;
+
+@SuppressWarnings("deprecation")
+public class FreemarkerXmlTaskTest {
+
+    /** The last modification time of the inputs; outputs generated by the tests are always newer. */
+    private static final long SOURCE_LAST_MODIFIED = 1500000000000L;
+    /** Used to mark outputs as being generated after the inputs, but earlier than the current time. */
+    private static final long OUTPUT_LAST_MODIFIED = SOURCE_LAST_MODIFIED + 1000000L;
+    private static final String UNTOUCHED = "untouched";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File xmlDir;
+    private File templateDir;
+    private File destDir;
+    private File dependencyFile;
+    private Locale prevDefaultLocale;
+
+    @Before
+    public void setUp() throws IOException {
+        xmlDir = tempFolder.newFolder("xml");
+        templateDir = tempFolder.newFolder("templates");
+        destDir = new File(tempFolder.getRoot(), "out");
+        dependencyFile = new File(tempFolder.getRoot(), "deps.properties");
+
+        prevDefaultLocale = Locale.getDefault();
+        // The localized lookup of the task's Configuration uses the default locale
+        Locale.setDefault(Locale.US);
+    }
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(prevDefaultLocale);
+    }
+
+    @Test
+    public void testConcurrentProcessing() throws IOException {
+        writeTemplate("main.ftl", "${.node.root.@v}");
+        for (int i = 0; i < 20; i++) {
+            writeXml("f" + i + ".xml", "<root v='v" + i + "'/>");
+        }
+
+        executeTask(4, false);
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals("v" + i, readOutput("f" + i));
+        }
+    }
+
+    @Test
+    public void testConcurrentProcessingFailure() throws IOException {
+        writeTemplate("main.ftl", "${.node.root.@v}<#if .node.root.@fail?has_content>${noSuchVariable}</#if>");
+        for (int i = 0; i < 20; i++) {
+            writeXml("f" + i + ".xml", i == 7 ? "<root v='v7' fail='yes'/>" : "<root v='v" + i + "'/>");
+        }
+
+        try {
+            executeTask(4, false);
+            fail();
+        } catch (BuildException e) {
+            assertTrue(e.getCause() instanceof TemplateException);
+            assertTrue(e.getCause().getMessage().contains("noSuchVariable"));
+        }
+
+        assertFalse(getOutputFile("f7").exists());
+        for (int i = 0; i < 7; i++) {
+            assertEquals("v" + i, readOutput("f" + i));
+        }
+    }
+
+    @Test
+    public void testDependencyFileWrittenAndReadBack() throws IOException {
+        writeTemplate("main.ftl", "[<#include .node.root.@inc>]");
+        writeTemplate("incA.ftl", "A");
+        writeTemplate("incB.ftl", "B");
+        writeXml("a.xml", "<root inc='incA.ftl'/>");
+        writeXml("b.xml", "<root inc='incB.ftl'/>");
+
+        executeTask(1, true);
+        assertEquals("[A]", readOutput("a"));
+        assertEquals("[B]", readOutput("b"));
+
+        Properties deps = loadDependencies();
+        assertEquals(2, deps.size());
+        assertDependencies(deps.getProperty("a.xml"), new String[] { "main.ftl", "incA.ftl" }, "incB.ftl");
+        assertDependencies(deps.getProperty("b.xml"), new String[] { "main.ftl", "incB.ftl" }, "incA.ftl");
+        assertDependencies(deps.getProperty("a.xml"), new String[] { "!main_en_US.ftl", "!incA_en.ftl" }, null);
+
+        // Nothing has changed, so nothing is regenerated, and the records are kept:
+        markOutputsUntouched("a", "b");
+        executeTask(1, true);
+        assertEquals(UNTOUCHED, readOutput("a"));
+        assertEquals(UNTOUCHED, readOutput("b"));
+        assertEquals(deps, loadDependencies());
+    }
+
+    @Test
+    public void testTouchedIncludedTemplateForcesRegeneration() throws IOException {
+        writeTemplate("main.ftl", "[<#include .node.root.@inc>]");
+        writeTemplate("incA.ftl", "A");
+        writeTemplate("incB.ftl", "B");
+        writeXml("a.xml", "<root inc='incA.ftl'/>");
+        writeXml("b.xml", "<root inc='incB.ftl'/>");
+
+        executeTask(2, true);
+        markOutputsUntouched("a", "b");
+
+        assertTrue(new File(templateDir, "incA.ftl").setLastModified(OUTPUT_LAST_MODIFIED + 1000));
+        executeTask(2, true);
+        assertEquals("[A]", readOutput("a"));
+        assertEquals(UNTOUCHED, readOutput("b"));
+    }
+
+    @Test
+    public void testChangedIncludedTemplateIsIgnoredWithoutDependencyFile() throws IOException {
+        writeTemplate("main.ftl", "[<#include 'inc.ftl'>]");
+        writeTemplate("inc.ftl", "1");
+        writeXml("a.xml", "<root/>");
+
+        executeTask(1, false);
+        markOutputsUntouched("a");
+
+        assertTrue(new File(templateDir, "inc.ftl").setLastModified(OUTPUT_LAST_MODIFIED + 1000));
+        executeTask(1, false);
+        assertEquals(UNTOUCHED, readOutput("a"));
+    }
+
+    @Test
+    public void testMissingRecordForcesRegeneration() throws IOException {
+        writeTemplate("main.ftl", "[<#include 'inc.ftl'>]");
+        writeTemplate("inc.ftl", "1");
+        writeXml("a.xml", "<root/>");
+        writeXml("b.xml", "<root/>");
+
+        executeTask(1, true);
+
+        // Record of b.xml missing:
+        Properties deps = loadDependencies();
+        deps.remove("b.xml");
+        storeDependencies(deps);
+        markOutputsUntouched("a", "b");
+        executeTask(1, true);
+        assertEquals(UNTOUCHED, readOutput("a"));
+        assertEquals("[1]", readOutput("b"));
+        assertNotNull(loadDependencies().getProperty("b.xml"));
+
+        // Whole dependency file missing:
+        assertTrue(dependencyFile.delete());
+        markOutputsUntouched("a", "b");
+        executeTask(1, true);
+        assertEquals("[1]", readOutput("a"));
+        assertEquals("[1]", readOutput("b"));
+        assertEquals(2, loadDependencies().size());
+    }
+
+    @Test
+    public void testDeletedIncludedTemplateForcesRegeneration() throws IOException {
+        writeTemplate("main.ftl", "[<#include 'inc.ftl' ignore_missing=true>]");
+        writeTemplate("inc.ftl", "1");
+        writeXml("a.xml", "<root/>");
+
+        executeTask(1, true);
+        markOutputsUntouched("a");
+
+        assertTrue(new File(templateDir, "inc.ftl").delete());
+        executeTask(1, true);
+        assertEquals("[]", readOutput("a"));
+    }
+
+    @Test
+    public void testCreatedMissingTemplateForcesRegeneration() throws IOException {
+        writeTemplate("main.ftl", "[<#include 'opt.ftl' ignore_missing=true>]");
+        writeXml("a.xml", "<root/>");
+
+        executeTask(1, true);
+        assertEquals("[]", readOutput("a"));
+        assertDependencies(loadDependencies().getProperty("a.xml"),
+                new String[] { "!opt_en_US.ftl", "!opt_en.ftl", "!opt.ftl" }, "opt.ftl");
+
+        markOutputsUntouched("a");
+        executeTask(1, true);
+        assertEquals(UNTOUCHED, readOutput("a"));
+
+        // Even if it's older than the output, as it was missing when the output was generated:
+        writeTemplate("opt.ftl", "1");
+        executeTask(1, true);
+        assertEquals("[1]", readOutput("a"));
+    }
+
+    @Test
+    public void testCreatedLocalizedVariantForcesRegeneration() throws IOException {
+        writeTemplate("main.ftl", "[<#include 'inc.ftl'>]");
+        writeTemplate("inc.ftl", "default");
+        writeXml("a.xml", "<root/>");
+
+        executeTask(1, true);
+        assertEquals("[default]", readOutput("a"));
+
+        markOutputsUntouched("a");
+        writeTemplate("inc_en.ftl", "en");
+        executeTask(1, true);
+        assertEquals("[en]", readOutput("a"));
+        assertDependencies(loadDependencies().getProperty("a.xml"),
+                new String[] { "!inc_en_US.ftl", "inc_en.ftl" }, "!inc.ftl");
+
+        // A less specific variant is not a dependency anymore:
+        markOutputsUntouched("a");
+        assertTrue(new File(templateDir, "inc.ftl").setLastModified(OUTPUT_LAST_MODIFIED + 1000));
+        executeTask(1, true);
+        assertEquals(UNTOUCHED, readOutput("a"));
+    }
+
+    private void executeTask(int threads, boolean withDependencyFile) {
+        Project project = new Project();
+        project.init();
+        project.setBaseDir(tempFolder.getRoot());
+
+        FreemarkerXmlTask task = new FreemarkerXmlTask();
+        task.setProject(project);
+        task.setBasedir(xmlDir);
+        task.setDestdir(destDir);
+        task.setTemplateDir(templateDir);
+        task.setTemplate("main.ftl");
+        task.setIncludes("*.xml");
+        task.setEncoding("UTF-8");
+        task.setTemplateEncoding("UTF-8");
+        task.setThreads(threads);
+        if (withDependencyFile) {
+            task.setDependencyfile(dependencyFile.getName());
+        }
+        task.execute();
+    }
+
+    private void writeTemplate(String name, String content) throws IOException {
+        writeSource(new File(templateDir, name), content);
+    }
+
+    private void writeXml(String name, String content) throws IOException {
+        writeSource(new File(xmlDir, name), content);
+    }
+
+    private void writeSource(File file, String content) throws IOException {
+        FileUtils.write(file, content, "UTF-8");
+        assertTrue(file.setLastModified(SOURCE_LAST_MODIFIED));
+    }
+
+    private File getOutputFile(String baseName) {
+        return new File(destDir, baseName + ".html");
+    }
+
+    private String readOutput(String baseName) throws IOException {
+        return FileUtils.readFileToString(getOutputFile(baseName), "UTF-8");
+    }
+
+    /**
+     * Replaces the content of the outputs, so that we can see if they were regenerated, and makes them older than
+     * anything that is modified later by the test.
+     */
+    private void markOutputsUntouched(String... baseNames) throws IOException {
+        for (String baseName : baseNames) {
+            File outputFile = getOutputFile(baseName);
+            FileUtils.write(outputFile, UNTOUCHED, "UTF-8");
+            assertTrue(outputFile.setLastModified(OUTPUT_LAST_MODIFIED));
+        }
+    }
+
+    private Properties loadDependencies() throws IOException {
+        Properties deps = new Properties();
+        InputStream in = new FileInputStream(dependencyFile);
+        try {
+            deps.load(in);
+        } finally {
+            in.close();
+        }
+        return deps;
+    }
+
+    private void storeDependencies(Properties deps) throws IOException {
+        OutputStream out = new FileOutputStream(dependencyFile);
+        try {
+            deps.store(out, null);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void assertDependencies(String dependencies, String[] expected, String unexpected) {
+        assertNotNull(dependencies);
+        String[] actual = dependencies.split("\n");
+        for (String name : expected) {
+            assertTrue(name + " not in " + dependencies, contains(actual, name));
+        }
+        if (unexpected != null) {
+            assertFalse(unexpected + " in " + dependencies, contains(actual, unexpected));
+        }
+    }
+
+    private static boolean contains(String[] names, String name) {
+        for (String n : names) {
+            if (n.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.beans;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class OverloadedMethodsSubsetCacheTest {
+
+    @Test
+    public void testSameResultAsWithoutCache() throws Exception {
+        List<Object[]> argLists = new ArrayList<Object[]>();
+        argLists.add(new Object[] { "s" });
+        argLists.add(new Object[] { 1 });
+        argLists.add(new Object[] { new StringBuilder() });
+        argLists.add(new Object[] { new StringBuffer() });
+        argLists.add(new Object[] { 1L });
+        argLists.add(new Object[] { 1.5 });
+        argLists.add(new Object[] { new BigDecimal("1.5") });
+        argLists.add(new Object[] { new Date() });
+        argLists.add(new Object[] { new HashMap<Object, Object>() });
+        argLists.add(new Object[] { new ArrayList<Object>() });
+        argLists.add(new Object[] { null });
+        argLists.add(new Object[] { "s", 1 });
+        argLists.add(new Object[] { "s", null });
+        argLists.add(new Object[] { 1, "s" });
+        argLists.add(new Object[] { });
+        assertTrue(argLists.size() > OverloadedMethodsSubset.MAX_RECENT_ARG_TYPES);
+        
+        for (boolean bugfixed : new boolean[] { false, true }) {
+            OverloadedMethodsSubset subset = createSubset(bugfixed);
+            for (int round = 0; round < 3; round++) {
+                for (Object[] args : argLists) {
+                    assertEquals(
+                            getDeclaration(createSubset(bugfixed).getMemberDescriptorForArgs(args, false)),
+                            getDeclaration(subset.getMemberDescriptorForArgs(args, false)));
+                }
+                // Same argument types repeatedly, which should be served from the recently used argument types:
+                for (Object[] args : argLists) {
+                    String expected = getDeclaration(createSubset(bugfixed).getMemberDescriptorForArgs(args, false));
+                    for (int i = 0; i < 3; i++) {
+                        assertEquals(expected, getDeclaration(subset.getMemberDescriptorForArgs(args, false)));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSelectedMethods() throws Exception {
+        OverloadedMethodsSubset subset = createSubset(true);
+        for (int i = 0; i < 2; i++) {
+            assertEquals("m(String)", getDeclaration(subset.getMemberDescriptorForArgs(new Object[] { "s" }, false)));
+            assertEquals("m(CharSequence)", getDeclaration(
+                    subset.getMemberDescriptorForArgs(new Object[] { new StringBuilder() }, false)));
+            assertEquals("m(Integer)", getDeclaration(subset.getMemberDescriptorForArgs(new Object[] { 1 }, false)));
+            assertEquals("m(Object)", getDeclaration(
+                    subset.getMemberDescriptorForArgs(new Object[] { new Date() }, false)));
+            assertEquals("m(String, Object)", getDeclaration(
+                    subset.getMemberDescriptorForArgs(new Object[] { "s", null }, false)));
+            assertSame(EmptyCallableMemberDescriptor.NO_SUCH_METHOD,
+                    subset.getMemberDescriptorForArgs(new Object[] { 1, "s" }, false));
+        }
+    }
+
+    @Test
+    public void testMoreArgumentTypesThanRecentlyUsedSlots() throws Exception {
+        List<Object[]> argLists = new ArrayList<Object[]>();
+        for (Object arg : new Object[] {
+                "s", 1, 1L, 1.5, (short) 1, (byte) 1, 1.5f, new BigDecimal("1.5"), new Date(),
+                new HashMap<Object, Object>(), new TreeMap<Object, Object>(),
+                new ArrayList<Object>(), new LinkedList<Object>(), new StringBuilder(), new StringBuffer(), 'c', null }) {
+            argLists.add(new Object[] { arg });
+        }
+        assertTrue(argLists.size() > 2 * OverloadedMethodsSubset.MAX_RECENT_ARG_TYPES);
+        
+        OverloadedMethodsSubset subset = createSubset(true);
+        List<String> expectedDecls = new ArrayList<String>();
+        for (Object[] args : argLists) {
+            expectedDecls.add(getDeclaration(subset.getMemberDescriptorForArgs(args, false)));
+        }
+        assertEquals(argLists.size(), subset.getArgTypesCacheSize());
+        
+        // Cycling through the argument types can't be served from the recently used ones, but they are all in the
+        // cache, and the array of the recently used ones is only rarely replaced.
+        int calls = 0;
+        int recentArgTypesReplacements = 0;
+        Object[] recentArgTypes = subset.getRecentArgTypes();
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < argLists.size(); i++) {
+                assertEquals(expectedDecls.get(i),
+                        getDeclaration(subset.getMemberDescriptorForArgs(argLists.get(i), false)));
+                calls++;
+                if (subset.getRecentArgTypes() != recentArgTypes) {
+                    recentArgTypesReplacements++;
+                    recentArgTypes = subset.getRecentArgTypes();
+                }
+            }
+        }
+        assertEquals(argLists.size(), subset.getArgTypesCacheSize());
+        // Until the array is full, each hit adds to it, after that only every MAX_RECENT_ARG_TYPES-th:
+        assertTrue(recentArgTypesReplacements <= OverloadedMethodsSubset.MAX_RECENT_ARG_TYPES
+                + calls / OverloadedMethodsSubset.MAX_RECENT_ARG_TYPES);
+    }
+
+    @Test
+    public void testArgumentTypesFromForeignClassLoader() throws Exception {
+        OverloadedMethodsSubset subset = createSubset(true);
+        
+        Class<?> foreignClass = new ForeignClassLoader().defineForeignClass(ForeignArg.class);
+        assertNotSame(ForeignArg.class, foreignClass);
+        Object[] foreignArgs = new Object[] { foreignClass.newInstance() };
+        for (int i = 0; i < 3; i++) {
+            assertEquals("m(Object)", getDeclaration(subset.getMemberDescriptorForArgs(foreignArgs, false)));
+            // Cached despite that the class loader isn't related to the members or FreeMarker:
+            assertEquals(1, subset.getArgTypesCacheSize());
+        }
+        
+        // Same class name, but different class:
+        Class<?> foreignClass2 = new ForeignClassLoader().defineForeignClass(ForeignArg.class);
+        assertEquals("m(Object)", getDeclaration(
+                subset.getMemberDescriptorForArgs(new Object[] { foreignClass2.newInstance() }, false)));
+        assertEquals(2, subset.getArgTypesCacheSize());
+        
+        // Entries whose classes were garbage collected are removed when a new entry is added:
+        subset.enqueueCachedArgumentTypeReferences();
+        assertEquals("m(String)", getDeclaration(subset.getMemberDescriptorForArgs(new Object[] { "s" }, false)));
+        assertEquals(1, subset.getArgTypesCacheSize());
+        
+        // The cache is bounded, but still caches new argument types after the limit was reached:
+        for (int i = 0; i < OverloadedMethodsSubset.MAX_CACHED_ARG_TYPES + 10; i++) {
+            Object arg = new ForeignClassLoader().defineForeignClass(ForeignArg.class).newInstance();
+            assertEquals("m(Object)", getDeclaration(
+                    subset.getMemberDescriptorForArgs(new Object[] { arg }, false)));
+            assertTrue(subset.getArgTypesCacheSize() <= OverloadedMethodsSubset.MAX_CACHED_ARG_TYPES);
+        }
+        Object[] args = new Object[] { 1 };
+        assertEquals("m(Integer)", getDeclaration(subset.getMemberDescriptorForArgs(args, false)));
+        int cacheSize = subset.getArgTypesCacheSize();
+        assertEquals("m(Integer)", getDeclaration(subset.getMemberDescriptorForArgs(args, false)));
+        assertEquals(cacheSize, subset.getArgTypesCacheSize());
+    }
+
+    private static OverloadedMethodsSubset createSubset(boolean bugfixed) {
+        OverloadedMethodsSubset subset = new OverloadedFixArgsMethods(bugfixed);
+        for (Method m : Overloads.class.getMethods()) {
+            if (m.getName().equals("m")) {
+                subset.addCallableMemberDescriptor(new ReflectionCallableMemberDescriptor(m, m.getParameterTypes()));
+            }
+        }
+        return subset;
+    }
+
+    private static String getDeclaration(MaybeEmptyCallableMemberDescriptor memberDesc) {
+        if (!(memberDesc instanceof ReflectionCallableMemberDescriptor)) {
+            return memberDesc == EmptyCallableMemberDescriptor.NO_SUCH_METHOD ? "NO_SUCH_METHOD"
+                    : memberDesc == EmptyCallableMemberDescriptor.AMBIGUOUS_METHOD ? "AMBIGUOUS_METHOD"
+                    : String.valueOf(memberDesc);
+        }
+        String decl = ((ReflectionCallableMemberDescriptor) memberDesc).getDeclaration();
+        return decl.substring(decl.lastIndexOf('.') + 1).replace("java.lang.", "");
+    }
+
+    public static class ForeignArg {
+        // Loaded by ForeignClassLoader too
+    }
+    
+    /**
+     * Defines its own version of a class, like a web application class loader that isn't related to the class loader
+     * of FreeMarker.
+     */
+    private static class ForeignClassLoader extends ClassLoader {
+        
+        ForeignClassLoader() {
+            super(OverloadedMethodsSubsetCacheTest.class.getClassLoader());
+        }
+        
+        Class<?> defineForeignClass(Class<?> cl) throws IOException {
+            InputStream in = cl.getResourceAsStream(cl.getName().substring(cl.getName().lastIndexOf('.') + 1)
+                    + ".class");
+            byte[] bytes;
+            try {
+                bytes = IOUtils.toByteArray(in);
+            } finally {
+                in.close();
+            }
+            return defineClass(cl.getName(), bytes, 0, bytes.length);
+        }
+        
+    }
+
+    public static class Overloads {
+        public void m(Object o) { }
+        public void m(String s) { }
+        public void m(CharSequence s) { }
+        public void m(Integer n) { }
+        public void m(Number n) { }
+        public void m(String s, Object o) { }
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.ext.beans;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.text.MessageFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.ListResourceBundle;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import freemarker.template.Configuration;
+import freemarker.template.SimpleScalar;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateScalarModel;
+
+public class PrecompiledMessageFormatTest {
+
+    private static final Object[] ARGS = new Object[] {
+            "s", 1234.5, new Date(123456789000L), null, new BigDecimal("-0.25"), Boolean.TRUE };
+
+    @Test
+    public void testSameOutputAsMessageFormat() {
+        for (String pattern : new String[] {
+                "", "x", "{0}", "a{0}b{1}c", "{1}{0}{1}", "{2} {3} {4} {5}", "{9}", "{10}x",
+                "It''s {0}", "It's {0}", "'{0}' {0}", "'{'{0}'}'", "a '' b", "'quoted ''x'' {1}", "}{0}}",
+                "{4,number}", "{1,number,#.##}", "{2,date,yyyy}", "{1,choice,0#none|1#one|1<many}" }) {
+            for (Locale locale : new Locale[] { Locale.US, Locale.GERMANY }) {
+                assertSameOutput(pattern, locale, ARGS);
+                assertSameOutput(pattern, locale, new Object[0]);
+                assertSameOutput(pattern, locale, null);
+            }
+        }
+    }
+
+    @Test
+    public void testMalformedPatterns() {
+        for (String pattern : new String[] { "{", "{0", "a{0,number", "{-1}", "{ 0}", "{0 }", "{x}" }) {
+            try {
+                new PrecompiledMessageFormat(pattern, Locale.US);
+                fail(pattern);
+            } catch (IllegalArgumentException e) {
+                // Expected, like with MessageFormat
+            }
+        }
+    }
+
+    @Test
+    public void testResourceBundleModel() throws Exception {
+        BeansWrapper bw = new BeansWrapperBuilder(Configuration.VERSION_2_3_21).build();
+        final ResourceBundleModel model = new ResourceBundleModel(new TestBundle(), bw);
+        assertEquals("Hello Joe, you have 1,234 messages", format(model, "hello", "Joe", 1234));
+        assertEquals("Hello Joe, you have 1,234 messages", model.format("hello", new Object[] { "Joe", 1234 }));
+        assertEquals("Hello {0}, you have {1} messages", model.format("hello", null));
+        
+        // Another model of the same bundle shares the cache, but it shouldn't matter for the output:
+        ResourceBundleModel model2 = new ResourceBundleModel(model.getBundle(), bw);
+        assertEquals("Hello Ann, you have 0 messages", format(model2, "hello", "Ann", 0));
+        
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> futures = new java.util.ArrayList<Future<String>>();
+            for (int i = 0; i < 200; i++) {
+                final int n = i;
+                futures.add(executor.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        return model.format("date", new Object[] { new Date(n * 86400000L) });
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                MessageFormat expected = new MessageFormat("{0,date,yyyy-MM-dd HH:mm}", Locale.US);
+                assertEquals(expected.format(new Object[] { new Date(i * 86400000L) }), futures.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static String format(ResourceBundleModel model, String key, Object... args) throws Exception {
+        ImmutableList.Builder<TemplateModel> argModels = ImmutableList.builder();
+        argModels.add(new SimpleScalar(key));
+        for (Object arg : args) {
+            argModels.add(model.wrap(arg));
+        }
+        return ((TemplateScalarModel) model.exec(argModels.build())).getAsString();
+    }
+
+    private static void assertSameOutput(String pattern, Locale locale, Object[] args) {
+        MessageFormat messageFormat = new MessageFormat(pattern);
+        messageFormat.setLocale(locale);
+        assertEquals(pattern, messageFormat.format(args), new PrecompiledMessageFormat(pattern, locale).format(args));
+    }
+
+    public static class TestBundle extends ListResourceBundle {
+        @Override
+        protected Object[][] getContents() {
+            return new Object[][] {
+                    { "hello", "Hello {0}, you have {1} messages" },
+                    { "date", "{0,date,yyyy-MM-dd HH:mm}" } };
+        }
+        
+        @Override
+        public Locale getLocale() {
+            return Locale.US;
+        }
+    }
+
+}
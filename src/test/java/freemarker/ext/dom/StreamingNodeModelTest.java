@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.ext.dom;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+import freemarker.template.Template;
+import freemarker.test.TemplateTest;
+
+public class StreamingNodeModelTest extends TemplateTest {
+
+    private static final String CATALOG_XML = "<?xml version='1.0'?>"
+            + "<catalog>\n"
+            + "  <!-- Books -->\n"
+            + "  <book id='b1'><title>First</title><price>10</price></book>\n"
+            + "  <book id='b2'><title>Second &amp; <![CDATA[<more>]]></title><price>20</price></book>\n"
+            + "  <magazine id='m1'><title>Third</title></magazine>\n"
+            + "  <book id='b3'><title>Fourth</title><price>40</price><?pi x?></book>\n"
+            + "</catalog>";
+
+    private static final String RECURSE_FTL = ""
+            + "<#macro catalog>[<#recurse>]</#macro>"
+            + "<#macro book>B(${.node.@id}:${.node.title}:${.node.price})</#macro>"
+            + "<#macro magazine>M(${.node.@id}<#recurse>)</#macro>"
+            + "<#macro title>T=${.node}</#macro>"
+            + "<#macro @text>${.node?trim}</#macro>"
+            + "<#macro @comment>C</#macro>"
+            + "<#recurse doc>";
+
+    @Test
+    public void testRecurseSameAsDOM() throws Exception {
+        assertSameAsDOM(CATALOG_XML, RECURSE_FTL,
+                "[CB(b1:First:10)B(b2:Second & <more>:20)M(m1T=Third)B(b3:Fourth:40)]");
+    }
+
+    @Test
+    public void testListByName() throws Exception {
+        assertSameAsDOM(CATALOG_XML,
+                "<#list doc.catalog.book as b>${b.@id}=${b.title}<#sep>, </#list>",
+                "b1=First, b2=Second & <more>, b3=Fourth");
+        assertSameAsDOM(CATALOG_XML,
+                "<#list doc.catalog.* as e>${e?node_name}<#sep>, </#list>",
+                "book, book, magazine, book");
+        assertSameAsDOM(CATALOG_XML,
+                "<#list doc['*'].book as b>${b.@id}<#sep>, </#list>",
+                "b1, b2, b3");
+        assertSameAsDOM(CATALOG_XML,
+                "<#list doc.catalog.noSuchElement as e>${e}</#list>",
+                "");
+    }
+
+    @Test
+    public void testAttributes() throws Exception {
+        // Unlike with NodeModel, attributes are plain strings, and missing attributes are null:
+        assertStreamingOutput(CATALOG_XML,
+                "<#list doc.catalog.book as b>${b.@id?upper_case}:${b.@noSuchAttr!'-'}:${b.@id?is_string?c}"
+                + "<#sep>, </#list>",
+                "B1:-:true, B2:-:true, B3:-:true");
+    }
+
+    @Test
+    public void testChildren() throws Exception {
+        assertSameAsDOM(CATALOG_XML,
+                "<#list doc.catalog?children as c>"
+                + "<#if c?node_type != 'text' || c?trim != ''>${c?node_type}:${c?node_name}; </#if>"
+                + "</#list>",
+                "comment:@comment; element:book; element:book; element:magazine; element:book; ");
+        assertSameAsDOM(CATALOG_XML,
+                "<#list doc.catalog.magazine as m><#list m?children as c>${c?node_name}</#list></#list>",
+                "title");
+    }
+
+    @Test
+    public void testParentAndAncestors() throws Exception {
+        assertSameAsDOM(CATALOG_XML,
+                "<#macro catalog><#recurse></#macro>"
+                + "<#macro book>${.node?parent?node_name}/${.node?node_name}; </#macro>"
+                + "<#macro magazine><#recurse></#macro>"
+                + "<#macro title>${.node?parent?node_name}/${.node?node_name}; </#macro>"
+                + "<#macro @text></#macro><#macro @comment></#macro>"
+                + "<#recurse doc>",
+                "catalog/book; catalog/book; magazine/title; catalog/book; ");
+    }
+
+    @Test
+    public void testNamespaces() throws Exception {
+        String xml = "<root xmlns='http://example.com/ns1' xmlns:n2='http://example.com/ns2'>"
+                + "<a>A</a><n2:b n2:x='X' y='Y'>B</n2:b><a>A2</a></root>";
+        String ftlHeader = "<#ftl ns_prefixes={'D':'http://example.com/ns1', 'n2':'http://example.com/ns2'}>";
+        assertSameAsDOM(xml,
+                ftlHeader + "<#list doc.root.a as a>${a}</#list>",
+                "AA2");
+        assertSameAsDOM(xml,
+                ftlHeader + "<#list doc.root['n2:b'] as b>${b}${b['@n2:x']}${b.@y}</#list>",
+                "BXY");
+        assertSameAsDOM(xml,
+                ftlHeader + "<#list doc.root.* as e>${e?node_namespace}<#sep>, </#list>",
+                "http://example.com/ns1, http://example.com/ns2, http://example.com/ns1");
+    }
+
+    @Test
+    public void testManyRecords() throws Exception {
+        StringBuilder xml = new StringBuilder("<records>");
+        int expectedSum = 0;
+        for (int i = 0; i < 5000; i++) {
+            xml.append("<r n='").append(i).append("'><skipped><deep>").append(i).append("</deep></skipped></r>");
+            expectedSum += i;
+        }
+        xml.append("</records>");
+        assertSameAsDOM(xml.toString(),
+                "<#assign sum = 0>"
+                + "<#macro records><#recurse></#macro>"
+                + "<#macro r><#assign sum += .node.@n?number></#macro>"
+                + "<#recurse doc>${sum?c}",
+                Integer.toString(expectedSum));
+    }
+
+    @Test
+    public void testChildrenCanBeReadOnlyOnce() throws Exception {
+        assertStreamingErrorContains(CATALOG_XML,
+                "<#list doc.catalog.book as b>${b.@id}</#list><#list doc.catalog.book as b>${b.@id}</#list>",
+                "<catalog>", "already read", "only be read once");
+    }
+
+    @Test
+    public void testNoWholeContentAfterStreaming() throws Exception {
+        assertStreamingErrorContains(CATALOG_XML,
+                "<#list doc.catalog.book as b>${b.@id}</#list>${doc.catalog.book?size}",
+                "<catalog>", "not available anymore");
+    }
+
+    @Test
+    public void testNoGoingBack() throws Exception {
+        assertStreamingErrorContains(CATALOG_XML,
+                "<#macro catalog><#recurse></#macro>"
+                + "<#macro book><#if !first??><#global first = .node></#if></#macro>"
+                + "<#macro magazine></#macro><#macro @text></#macro><#macro @comment></#macro>"
+                + "<#recurse doc>${first.title}",
+                "<book>", "already skipped");
+    }
+
+    @Test
+    public void testNoWholeDocument() throws Exception {
+        assertStreamingErrorContains(CATALOG_XML, "${doc?children?size}", "whole streamed XML document");
+        assertStreamingErrorContains(CATALOG_XML, "${doc.@@markup}", "Unsupported key");
+    }
+
+    @Test
+    public void testMaterializedElement() throws Exception {
+        // Non-listing access reads the element into a DOM subtree, so all NodeModel features are available on it:
+        assertSameAsDOM(CATALOG_XML,
+                "<#list doc.catalog.book as b><#if b.@id == 'b2'>${b.@@markup}</#if></#list>",
+                "<book id=\"b2\"><title>Second &amp; &lt;more></title><price>20</price></book>");
+        assertSameAsDOM(CATALOG_XML,
+                "<#list doc.catalog.book as b>${b['price']?number * 2}<#sep>, </#list>",
+                "20, 40, 80");
+    }
+
+    private void assertSameAsDOM(String xml, String ftl, String expectedOutput) throws Exception {
+        Template t = new Template(null, ftl, getConfiguration());
+
+        addToDataModel("doc", NodeModel.parse(new InputSource(new StringReader(xml)), false, false));
+        assertOutput(t, expectedOutput);
+
+        addToDataModel("doc", StreamingNodeModel.parse(new StringReader(xml)));
+        assertOutput(t, expectedOutput);
+    }
+
+    private void assertStreamingOutput(String xml, String ftl, String expectedOutput) throws Exception {
+        addToDataModel("doc", StreamingNodeModel.parse(new StringReader(xml)));
+        assertOutput(ftl, expectedOutput);
+    }
+
+    private void assertStreamingErrorContains(String xml, String ftl, String... expectedSubstrings)
+            throws Exception {
+        addToDataModel("doc", StreamingNodeModel.parse(new StringReader(xml)));
+        assertErrorContains(ftl, expectedSubstrings);
+    }
+
+}
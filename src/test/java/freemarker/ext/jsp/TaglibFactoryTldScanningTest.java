@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.ext.jsp;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import freemarker.ext.beans.BeansWrapperBuilder;
+import freemarker.template.Configuration;
+import freemarker.template.MockServletContext;
+import freemarker.template.TemplateHashModel;
+import freemarker.template.TemplateModelException;
+
+public class TaglibFactoryTldScanningTest {
+
+    private static final long JAR_LAST_MODIFIED = 1500000000000L;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File libDir;
+    private File indexFile;
+
+    @Before
+    public void setUp() throws IOException {
+        libDir = tempFolder.newFolder("lib");
+        indexFile = new File(tempFolder.getRoot(), "tld-index.bin");
+    }
+
+    @Test
+    public void testEarlierJarWinsRegardlessOfThreadCount() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            // Only the jars with odd index define the URI "http://example.com/shared"; the first of them must win.
+            writeJar("lib" + i + ".jar", i % 2 == 1 ? "http://example.com/shared" : "http://example.com/u" + i,
+                    "f" + i);
+        }
+        assertEquals(1, newTaglibFactory().getTldScanningThreads());
+        for (int threads : new int[] { 0, 1, 4 }) {
+            TaglibFactory taglibFactory = newTaglibFactory();
+            taglibFactory.setTldScanningThreads(threads);
+            TemplateHashModel taglib = (TemplateHashModel) taglibFactory.get("http://example.com/shared");
+            assertNotNull(taglib.get("f1"));
+            assertNull(taglib.get("f3"));
+            assertNotNull(((TemplateHashModel) taglibFactory.get("http://example.com/u18")).get("f18"));
+        }
+    }
+
+    @Test
+    public void testTldIndex() throws Exception {
+        writeJar("a.jar", "http://example.com/a", "fa");
+        writeJar("x.jar", "http://example.com/x", "fx");
+        
+        {
+            TaglibFactory taglibFactory = newTaglibFactory();
+            taglibFactory.setTldIndexFile(indexFile);
+            assertNotNull(((TemplateHashModel) taglibFactory.get("http://example.com/a")).get("fa"));
+            assertTrue(indexFile.isFile());
+        }
+        
+        // Same size and last modification time, so the stale index entry will be used:
+        writeJar("a.jar", "http://example.com/b", "fb");
+        {
+            TaglibFactory taglibFactory = newTaglibFactory();
+            taglibFactory.setTldIndexFile(indexFile);
+            assertNotNull(((TemplateHashModel) taglibFactory.get("http://example.com/a")).get("fb"));
+            assertNotFound(taglibFactory, "http://example.com/b");
+        }
+        
+        // Without index, we see the real content:
+        {
+            TaglibFactory taglibFactory = newTaglibFactory();
+            assertNotFound(taglibFactory, "http://example.com/a");
+            assertNotNull(((TemplateHashModel) taglibFactory.get("http://example.com/b")).get("fb"));
+        }
+        
+        // Changed last modification time invalidates the index entry:
+        assertTrue(new File(libDir, "a.jar").setLastModified(JAR_LAST_MODIFIED + 1000));
+        {
+            TaglibFactory taglibFactory = newTaglibFactory();
+            taglibFactory.setTldIndexFile(indexFile);
+            assertNotFound(taglibFactory, "http://example.com/a");
+            assertNotNull(((TemplateHashModel) taglibFactory.get("http://example.com/b")).get("fb"));
+            assertNotNull(((TemplateHashModel) taglibFactory.get("http://example.com/x")).get("fx"));
+        }
+    }
+
+    @Test
+    public void testCorruptTldIndexIsIgnored() throws Exception {
+        writeJar("a.jar", "http://example.com/a", "fa");
+        FileOutputStream out = new FileOutputStream(indexFile);
+        try {
+            out.write(new byte[] { 1, 2, 3 });
+        } finally {
+            out.close();
+        }
+        
+        TaglibFactory taglibFactory = newTaglibFactory();
+        taglibFactory.setTldIndexFile(indexFile);
+        assertNotNull(((TemplateHashModel) taglibFactory.get("http://example.com/a")).get("fa"));
+        assertTrue(indexFile.length() > 3);
+    }
+
+    private void assertNotFound(TaglibFactory taglibFactory, String uri) {
+        try {
+            taglibFactory.get(uri);
+            fail();
+        } catch (TemplateModelException e) {
+            Throwable cause = e.getCause();
+            assertNotNull(cause);
+            assertTrue(cause.getMessage(), cause.getMessage().contains("No TLD was found"));
+        }
+    }
+
+    private TaglibFactory newTaglibFactory() {
+        TaglibFactory taglibFactory = new TaglibFactory(new LibDirServletContext());
+        taglibFactory.setObjectWrapper(new BeansWrapperBuilder(Configuration.VERSION_2_3_29).build());
+        return taglibFactory;
+    }
+
+    /**
+     * Writes a jar with a single TLD, whose size only depends on the length of the parameters.
+     */
+    private void writeJar(String fileName, String taglibUri, String functionName) throws IOException {
+        byte[] tld = ("<?xml version='1.0' encoding='UTF-8'?>"
+                + "<taglib>"
+                + "<tlib-version>1.0</tlib-version><short-name>t</short-name>"
+                + "<uri>" + taglibUri + "</uri>"
+                + "<function><name>" + functionName + "</name><function-class>java.lang.Math</function-class>"
+                + "<function-signature>int abs(int)</function-signature></function>"
+                + "</taglib>").getBytes(StandardCharsets.UTF_8);
+        
+        File jarFile = new File(libDir, fileName);
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jarFile));
+        try {
+            ZipEntry entry = new ZipEntry("META-INF/taglib.tld");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setTime(JAR_LAST_MODIFIED);
+            entry.setSize(tld.length);
+            entry.setCompressedSize(tld.length);
+            CRC32 crc = new CRC32();
+            crc.update(tld);
+            entry.setCrc(crc.getValue());
+            out.putNextEntry(entry);
+            out.write(tld);
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+        assertTrue(jarFile.setLastModified(JAR_LAST_MODIFIED));
+    }
+
+    private class LibDirServletContext extends MockServletContext {
+
+        @Override
+        public Set getResourcePaths(String path) {
+            if (!path.equals("/WEB-INF/lib")) {
+                return null;
+            }
+            Set<String> paths = new LinkedHashSet<String>();
+            File[] files = libDir.listFiles();
+            java.util.Arrays.sort(files, new java.util.Comparator<File>() {
+                public int compare(File o1, File o2) {
+                    return numberSuffix(o1.getName()) - numberSuffix(o2.getName());
+                }
+            });
+            for (File file : files) {
+                paths.add("/WEB-INF/lib/" + file.getName());
+            }
+            return paths;
+        }
+
+        @Override
+        public URL getResource(String path) throws MalformedURLException {
+            File file = toFile(path);
+            return file != null ? file.toURI().toURL() : null;
+        }
+
+        @Override
+        public InputStream getResourceAsStream(String path) {
+            File file = toFile(path);
+            try {
+                return file != null ? new FileInputStream(file) : null;
+            } catch (FileNotFoundException e) {
+                return null;
+            }
+        }
+
+        private File toFile(String path) {
+            if (!path.startsWith("/WEB-INF/lib/")) {
+                return null;
+            }
+            File file = new File(libDir, path.substring("/WEB-INF/lib/".length()));
+            return file.isFile() ? file : null;
+        }
+
+    }
+
+    private static int numberSuffix(String fileName) {
+        String digits = fileName.replaceAll("\\D", "");
+        return digits.length() != 0 ? Integer.parseInt(digits) : -1;
+    }
+
+}
@@ -20,6 +20,10 @@ package freemarker.template;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import org.junit.Test;
 
 public class GetSourceTest {
@@ -49,5 +53,82 @@ public class GetSourceTest {
             assertEquals("a\n\tb\nc", t.getSource(1, 1, 1, 3));
         }
     }
-    
+
+    @Test
+    public void testLineBreaksAndTabs() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_23);
+        cfg.setTabSize(4);
+        Template t = new Template(null, "ab\r\nc\td\re\n\n\tf\t\tg", cfg);
+        assertEquals("ab\r\nc   d\re\n\n    f       g", t.getSource(1, 1, 13, 5));
+        assertEquals("b\r\nc   d", t.getSource(2, 1, 5, 2));
+        assertEquals("e", t.getSource(1, 3, 1, 3));
+        assertEquals("f", t.getSource(5, 5, 5, 5));
+    }
+
+    @Test
+    public void testSameAsLegacyLineTable() throws Exception {
+        final char[] chars = { 'a', 'b', '\t', '\r', '\n', ' ' };
+        Random rnd = new Random(1234);
+        for (int tabSize : new int[] { 1, 4, 8 }) {
+            Configuration cfg = new Configuration(Configuration.VERSION_2_3_23);
+            cfg.setTabSize(tabSize);
+            for (int i = 0; i < 500; i++) {
+                StringBuilder sb = new StringBuilder();
+                int len = rnd.nextInt(30);
+                for (int j = 0; j < len; j++) {
+                    sb.append(chars[rnd.nextInt(chars.length)]);
+                }
+                String src = sb.toString();
+                Template t = new Template(null, src, cfg);
+                List<String> lines = buildLegacyLineTable(src, tabSize);
+                for (int lineIdx = 0; lineIdx < lines.size(); lineIdx++) {
+                    String line = lines.get(lineIdx);
+                    assertEquals(line, t.getSource(1, lineIdx + 1, line.length(), lineIdx + 1));
+                }
+                if (!lines.isEmpty()) {
+                    String lastLine = lines.get(lines.size() - 1);
+                    StringBuilder all = new StringBuilder();
+                    for (String line : lines) {
+                        all.append(line);
+                    }
+                    assertEquals(all.toString(), t.getSource(1, 1, lastLine.length(), lines.size()));
+                }
+            }
+        }
+    }
+
+    /**
+     * The algorithm of the line table builder used before 2.3.30, which stored the lines eagerly.
+     */
+    private static List<String> buildLegacyLineTable(String src, int tabSize) {
+        List<String> lines = new ArrayList<String>();
+        StringBuilder lineBuf = new StringBuilder();
+        int lastChar = 0;
+        for (int i = 0; i < src.length(); i++) {
+            char c = src.charAt(i);
+            if (c == '\n' || c == '\r') {
+                if (lastChar == '\r' && c == '\n') {
+                    int lastIndex = lines.size() - 1;
+                    lines.set(lastIndex, lines.get(lastIndex) + '\n');
+                } else {
+                    lineBuf.append(c);
+                    lines.add(lineBuf.toString());
+                    lineBuf.setLength(0);
+                }
+            } else if (c == '\t' && tabSize != 1) {
+                int numSpaces = tabSize - (lineBuf.length() % tabSize);
+                for (int j = 0; j < numSpaces; j++) {
+                    lineBuf.append(' ');
+                }
+            } else {
+                lineBuf.append(c);
+            }
+            lastChar = c;
+        }
+        if (lineBuf.length() > 0) {
+            lines.add(lineBuf.toString());
+        }
+        return lines;
+    }
+
 }
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.template;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+import org.junit.Test;
+
+import freemarker.test.TemplateTest;
+
+public class TemplateFutureModelTest extends TemplateTest {
+
+    @Test
+    public void testResolvedTransparently() throws Exception {
+        addToDataModel("f", futureOf("x"));
+        addToDataModel("fNull", futureOf(null));
+        addToDataModel("fBean", futureOf(new TestBean()));
+        assertOutput("${f} ${f?upper_case} ${f?is_string?c}", "x X true");
+        assertOutput("${fNull!'-'} ${fNull???c}", "- false");
+        assertOutput("${fBean.x}", "0");
+        assertOutput("<#assign v = f>${v}", "x");
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+            public Object call() throws Exception {
+                throw new IllegalStateException("backend down");
+            }
+        });
+        task.run();
+        addToDataModel("f", DefaultFutureAdapter.adapt(task, getConfiguration().getObjectWrapper()));
+        assertErrorContains("${f}", "Future", "failed");
+    }
+
+    @Test
+    public void testFlushesBeforeWaiting() throws Exception {
+        final FlushTrackingWriter out = new FlushTrackingWriter();
+        FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+            public Object call() throws Exception {
+                return "[flushed: " + out.flushedUpTo + "]";
+            }
+        });
+        Map<String, Object> dataModel = new HashMap<String, Object>();
+        dataModel.put("f", new UnstartedFutureModel(task));
+        new Template(null, "head ${f} tail", getConfiguration()).process(dataModel, out);
+        assertEquals("head [flushed: 5] tail", out.toString());
+    }
+
+    @Test
+    public void testNoFlushWithoutAutoFlush() throws Exception {
+        getConfiguration().setAutoFlush(false);
+        final FlushTrackingWriter out = new FlushTrackingWriter();
+        FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+            public Object call() throws Exception {
+                return "[flushed: " + out.flushedUpTo + "]";
+            }
+        });
+        Map<String, Object> dataModel = new HashMap<String, Object>();
+        dataModel.put("f", new UnstartedFutureModel(task));
+        new Template(null, "head ${f} tail", getConfiguration()).process(dataModel, out);
+        assertEquals("head [flushed: 0] tail", out.toString());
+        assertEquals(0, out.flushedUpTo);
+    }
+
+    private TemplateFutureModel futureOf(final Object value) {
+        FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+            public Object call() throws Exception {
+                return value;
+            }
+        });
+        task.run();
+        return DefaultFutureAdapter.adapt(task, getConfiguration().getObjectWrapper());
+    }
+
+    /**
+     * Reports not being done until {@link #get()} is called, which then runs the task on the calling thread.
+     */
+    private class UnstartedFutureModel implements TemplateFutureModel {
+        private final FutureTask<Object> task;
+
+        UnstartedFutureModel(FutureTask<Object> task) {
+            this.task = task;
+        }
+
+        public boolean isDone() {
+            return task.isDone();
+        }
+
+        public TemplateModel get() throws TemplateModelException {
+            task.run();
+            return DefaultFutureAdapter.adapt(task, getConfiguration().getObjectWrapper()).get();
+        }
+    }
+
+    private static class FlushTrackingWriter extends StringWriter {
+        private int flushedUpTo;
+
+        @Override
+        public void flush() {
+            flushedUpTo = getBuffer().length();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Do nothing
+        }
+    }
+
+}
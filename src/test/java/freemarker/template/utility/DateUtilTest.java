@@ -22,9 +22,13 @@ package freemarker.template.utility;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Calendar;
 import java.util.Date;
+import java.util.GregorianCalendar;
 import java.util.Locale;
+import java.util.Random;
 import java.util.TimeZone;
+import java.util.regex.Pattern;
 
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
@@ -917,6 +921,212 @@ public class DateUtilTest extends TestCase {
         assertJavaxAndFTLXSDateTimesSame("2014-01-01T23:59:59.1235");
     }
     
+    public void testFormattingAgreesWithCalendar() {
+        Random rnd = new Random(1234);
+        String[] tzIds = { "UTC", "GMT", "GMT+05:30", "Europe/Prague", "America/New_York", "Australia/Lord_Howe",
+                "Asia/Kathmandu", "Pacific/Apia" };
+        for (String tzId : tzIds) {
+            TimeZone tz = tzId.equals("UTC") ? DateUtil.UTC : TimeZone.getTimeZone(tzId);
+            GregorianCalendar cal = new GregorianCalendar(tz, Locale.US);
+            cal.setGregorianChange(new Date(Long.MIN_VALUE));
+            for (int i = 0; i < 5000; i++) {
+                // Roughly between year -10000 and 10000, but more often around 1970
+                long time = i % 2 == 0
+                        ? (long) ((rnd.nextDouble() - 0.5) * 2 * 12000L * 365 * 24 * 3600 * 1000)
+                        : (long) ((rnd.nextDouble() - 0.5) * 2 * 100L * 365 * 24 * 3600 * 1000);
+                Date date = new Date(time);
+                cal.setTime(date);
+                
+                int year = cal.get(Calendar.YEAR);
+                if (cal.get(Calendar.ERA) == GregorianCalendar.BC) {
+                    year = -year + 1;
+                }
+                String expectedTimePart = String.format("%02d:%02d:%02d.%03d",
+                        cal.get(Calendar.HOUR_OF_DAY), cal.get(Calendar.MINUTE), cal.get(Calendar.SECOND),
+                        cal.get(Calendar.MILLISECOND));
+                // Negative years aren't zero-padded
+                String expectedISO = String.format(year >= 0 ? "%04d-%02d-%02dT" : "%d-%02d-%02dT",
+                        year, cal.get(Calendar.MONTH) + 1,
+                        cal.get(Calendar.DAY_OF_MONTH))
+                        + expectedTimePart;
+                int xsYear = year <= 0 ? year - 1 : year;
+                String expectedXS = String.format(xsYear >= 0 ? "%04d-%02d-%02dT" : "%d-%02d-%02dT",
+                        xsYear, cal.get(Calendar.MONTH) + 1,
+                        cal.get(Calendar.DAY_OF_MONTH))
+                        + expectedTimePart;
+                
+                assertEquals(expectedISO, DateUtil.dateToISO8601String(date, true, true, false,
+                        DateUtil.ACCURACY_MILLISECONDS_FORCED, tz, calendarFactory));
+                assertEquals(expectedXS, DateUtil.dateToXSString(date, true, true, false,
+                        DateUtil.ACCURACY_MILLISECONDS_FORCED, tz, calendarFactory));
+            }
+        }
+    }
+    
+    public void testParsingAgreesWithRegularExpressions() {
+        final String xsTZ = "(Z|(?:[-+][0-9]{2}:[0-9]{2}))?";
+        final String isoBasicTZ = "(Z|(?:[-+][0-9]{2}(?:[0-9]{2})?))?";
+        final String isoExtendedTZ = "(Z|(?:[-+][0-9]{2}(?::[0-9]{2})?))?";
+        final String xsDate = "(-?[0-9]+)-([0-9]{2})-([0-9]{2})";
+        final String isoBasicDate = "(-?[0-9]{4,}?)([0-9]{2})([0-9]{2})";
+        final String isoExtendedDate = "(-?[0-9]{4,})-([0-9]{2})-([0-9]{2})";
+        final String xsTime = "([0-9]{2}):([0-9]{2}):([0-9]{2})(?:\\.([0-9]+))?";
+        final String isoBasicTime = "([0-9]{2})(?:([0-9]{2})(?:([0-9]{2})(?:[\\.,]([0-9]+))?)?)?";
+        final String isoExtendedTime = "([0-9]{2})(?::([0-9]{2})(?::([0-9]{2})(?:[\\.,]([0-9]+))?)?)?";
+        
+        final Pattern xsDatePattern = Pattern.compile(xsDate + xsTZ);
+        final Pattern isoDatePattern = Pattern.compile(isoExtendedDate + "|" + isoBasicDate);
+        final Pattern xsTimePattern = Pattern.compile(xsTime + xsTZ);
+        final Pattern isoTimePattern = Pattern.compile(
+                isoExtendedTime + isoExtendedTZ + "|" + isoBasicTime + isoBasicTZ);
+        final Pattern xsDateTimePattern = Pattern.compile(xsDate + "T" + xsTime + xsTZ);
+        final Pattern isoDateTimePattern = Pattern.compile(
+                isoExtendedDate + "T" + isoExtendedTime + isoExtendedTZ
+                + "|" + isoBasicDate + "T" + isoBasicTime + isoBasicTZ);
+        
+        final String[] fragments = { "0", "1", "2", "5", "9", "12", "00", "01", "24", "59", "60", "2014", "0000",
+                "-", "-", ":", ":", ".", ",", "T", "Z", "+", "+01:00", "-05:30", "+0130", "X", "" };
+        final TimeZone defaultTZ = TimeZone.getTimeZone("Europe/Prague");
+        final CalendarFieldsToDateConverter calendarOnlyConverter = new CalendarOnlyFieldsToDateConverter();
+        
+        Random rnd = new Random(4321);
+        for (int i = 0; i < 200000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int fragmentCount = rnd.nextInt(12);
+            for (int j = 0; j < fragmentCount; j++) {
+                sb.append(fragments[rnd.nextInt(fragments.length)]);
+            }
+            String s = sb.toString();
+            
+            for (int kind = 0; kind < 6; kind++) {
+                Pattern pattern;
+                switch (kind) {
+                case 0: pattern = xsDatePattern; break;
+                case 1: pattern = isoDatePattern; break;
+                case 2: pattern = xsTimePattern; break;
+                case 3: pattern = isoTimePattern; break;
+                case 4: pattern = xsDateTimePattern; break;
+                default: pattern = isoDateTimePattern; break;
+                }
+                
+                String fastResult = parseForComparison(kind, s, defaultTZ, cf2dc);
+                String calendarOnlyResult = parseForComparison(kind, s, defaultTZ, calendarOnlyConverter);
+                assertEquals(s, calendarOnlyResult, fastResult);
+                assertEquals(s + " (kind " + kind + "): " + fastResult,
+                        pattern.matcher(s).matches(), !fastResult.contains("didn't match the expected pattern"));
+            }
+        }
+    }
+    
+    private String parseForComparison(int kind, String s, TimeZone defaultTZ,
+            CalendarFieldsToDateConverter converter) {
+        try {
+            Date date;
+            switch (kind) {
+            case 0: date = DateUtil.parseXSDate(s, defaultTZ, converter); break;
+            case 1: date = DateUtil.parseISO8601Date(s, defaultTZ, converter); break;
+            case 2: date = DateUtil.parseXSTime(s, defaultTZ, converter); break;
+            case 3: date = DateUtil.parseISO8601Time(s, defaultTZ, converter); break;
+            case 4: date = DateUtil.parseXSDateTime(s, defaultTZ, converter); break;
+            default: date = DateUtil.parseISO8601DateTime(s, defaultTZ, converter); break;
+            }
+            return String.valueOf(date.getTime());
+        } catch (DateParseException e) {
+            return e.getMessage();
+        }
+    }
+    
+    public void testTrivialConverterAgreesWithCalendar() {
+        CalendarFieldsToDateConverter calendarOnlyConverter = new CalendarOnlyFieldsToDateConverter();
+        TimeZone[] timeZones = { DateUtil.UTC, TimeZone.getTimeZone("GMT"), TimeZone.getTimeZone("GMT+05:30"),
+                TimeZone.getTimeZone("GMT-11:00"), TimeZone.getTimeZone("Europe/Prague") };
+        Random rnd = new Random(5678);
+        for (int i = 0; i < 100000; i++) {
+            TimeZone tz = timeZones[rnd.nextInt(timeZones.length)];
+            int era = rnd.nextInt(10) == 0 ? GregorianCalendar.BC : GregorianCalendar.AD;
+            int year = rnd.nextInt(3) == 0 ? rnd.nextInt(10000) : 1900 + rnd.nextInt(200);
+            int month = rnd.nextInt(13);
+            int day = rnd.nextInt(32);
+            int hours = rnd.nextInt(25);
+            int minutes = rnd.nextInt(61);
+            int secs = rnd.nextInt(61);
+            int millisecs = rnd.nextInt(1001);
+            boolean addOneDay = rnd.nextBoolean();
+            
+            String expected = convertForComparison(calendarOnlyConverter,
+                    era, year, month, day, hours, minutes, secs, millisecs, addOneDay, tz);
+            String actual = convertForComparison(cf2dc,
+                    era, year, month, day, hours, minutes, secs, millisecs, addOneDay, tz);
+            assertEquals(expected.startsWith("IAE"), actual.startsWith("IAE"));
+            if (!expected.startsWith("IAE")) {
+                assertEquals(expected, actual);
+            }
+        }
+    }
+    
+    public void testCustomConverterGetsUnsharedOffsetTimeZone() throws DateParseException {
+        final TimeZone[] lastTimeZone = new TimeZone[1];
+        CalendarFieldsToDateConverter tzMutatingConverter = new CalendarOnlyFieldsToDateConverter() {
+            @Override
+            public Date calculate(int era, int year, int month, int day, int hours, int minutes, int secs,
+                    int millisecs, boolean addOneDay, TimeZone tz) {
+                Date result = super.calculate(era, year, month, day, hours, minutes, secs, millisecs, addOneDay,
+                        tz);
+                lastTimeZone[0] = tz;
+                tz.setRawOffset(0);
+                return result;
+            }
+        };
+
+        Date d1 = DateUtil.parseISO8601DateTime("2010-01-01T00:00:00+02:00", DateUtil.UTC, tzMutatingConverter);
+        TimeZone tz1 = lastTimeZone[0];
+        Date d2 = DateUtil.parseISO8601DateTime("2010-01-01T00:00:00+02:00", DateUtil.UTC, tzMutatingConverter);
+        assertNotSame(tz1, lastTimeZone[0]);
+        assertEquals(d1, d2);
+        assertEquals(d1,
+                DateUtil.parseISO8601DateTime("2010-01-01T00:00:00+02:00", DateUtil.UTC, cf2dc));
+        assertEquals("2009-12-31T22:00:00Z", DateUtil.dateToISO8601String(
+                d1, true, true, true, DateUtil.ACCURACY_SECONDS, DateUtil.UTC, null));
+    }
+
+    private String convertForComparison(CalendarFieldsToDateConverter converter,
+            int era, int year, int month, int day, int hours, int minutes, int secs, int millisecs,
+            boolean addOneDay, TimeZone tz) {
+        try {
+            return String.valueOf(converter.calculate(
+                    era, year, month, day, hours, minutes, secs, millisecs, addOneDay, tz).getTime());
+        } catch (IllegalArgumentException e) {
+            return "IAE";
+        }
+    }
+    
+    /**
+     * Does what {@link TrivialCalendarFieldsToDateConverter} did before it got a fast path.
+     */
+    private static class CalendarOnlyFieldsToDateConverter implements CalendarFieldsToDateConverter {
+
+        public Date calculate(int era, int year, int month, int day, int hours, int minutes, int secs,
+                int millisecs, boolean addOneDay, TimeZone tz) {
+            GregorianCalendar calendar = new GregorianCalendar(tz, Locale.US);
+            calendar.setLenient(false);
+            calendar.setGregorianChange(new Date(Long.MIN_VALUE));
+            calendar.clear();
+            calendar.set(Calendar.ERA, era);
+            calendar.set(Calendar.YEAR, year);
+            calendar.set(Calendar.MONTH, month);
+            calendar.set(Calendar.DAY_OF_MONTH, day);
+            calendar.set(Calendar.HOUR_OF_DAY, hours);
+            calendar.set(Calendar.MINUTE, minutes);
+            calendar.set(Calendar.SECOND, secs);
+            calendar.set(Calendar.MILLISECOND, millisecs);
+            if (addOneDay) {
+                calendar.add(Calendar.DAY_OF_MONTH, 1);
+            }
+            return calendar.getTime();
+        }
+        
+    }
+    
     private boolean isAtLeastJava6() {
         try {
             Class.forName("java.lang.management.LockInfo");
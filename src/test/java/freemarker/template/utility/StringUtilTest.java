@@ -109,6 +109,8 @@ public class StringUtilTest {
         assertEsc(">", "\\>", "\\u003E");
         assertEsc("]>", "]\\>", "]\\u003E");
         assertEsc("->", "-\\>", "-\\u003E");
+        assertEsc("abc\ndef\"ghi", "abc\\ndef\\\"ghi", "abc\\ndef\\\"ghi");
+        assertEsc("\"abc'", "\\\"abc\\'", "\\\"abc'");
     }
 
     @Test
@@ -349,6 +351,8 @@ public class StringUtilTest {
         testXHTMLEnc("a&gt;", "a>");
         testXHTMLEnc("&lt;&gt;", "<>");
         testXHTMLEnc("a&lt;&gt;b", "a<>b");
+        testXHTMLEnc("Hello &lt;b&gt;World&lt;/b&gt;, &quot;quoted&quot; &amp; it&#39;s done.",
+                "Hello <b>World</b>, \"quoted\" & it's done.");
     }
     
     private void testXHTMLEnc(String expected, String in) throws IOException {
@@ -416,6 +420,7 @@ public class StringUtilTest {
         assertEquals("a>", StringUtil.XMLEncNQG("a>"));
         assertEquals("&lt;>", StringUtil.XMLEncNQG("<>"));
         assertEquals("a&lt;>b", StringUtil.XMLEncNQG("a<>b"));
+        assertEquals("x\"y'&lt;z\"w'", StringUtil.XMLEncNQG("x\"y'<z\"w'"));
         
         assertEquals("&gt;", StringUtil.XMLEncNQG(">"));
         assertEquals("]&gt;", StringUtil.XMLEncNQG("]>"));